@@ -0,0 +1,46 @@
+package com.osttra.fx.blockstream.service;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link RevaluationKernel} summing as many trades at a time as the widest vector of the processor holds, with the
+ * incubating Vector API.
+ * <p>
+ * Only built by the {@code vector} Maven profile, and only used when the application runs with
+ * {@code --add-modules jdk.incubator.vector}. The values are computed with a multiplication and an addition, rather
+ * than a fused multiply-add, to round each trade as the scalar kernel does; the sums differ from the scalar ones by the
+ * order of the additions only.
+ */
+final class VectorRevaluationKernel implements RevaluationKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void accumulate(double[] baseAmounts, double[] quoteAmounts, double rate, int from, int to, double[] totals) {
+        DoubleVector rates = DoubleVector.broadcast(SPECIES, rate);
+        DoubleVector bases = DoubleVector.zero(SPECIES);
+        DoubleVector quotes = DoubleVector.zero(SPECIES);
+        DoubleVector values = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector base = DoubleVector.fromArray(SPECIES, baseAmounts, i);
+            DoubleVector quote = DoubleVector.fromArray(SPECIES, quoteAmounts, i);
+            bases = bases.add(base);
+            quotes = quotes.add(quote);
+            values = values.add(base.mul(rates).add(quote));
+        }
+        double base = bases.reduceLanes(VectorOperators.ADD);
+        double quote = quotes.reduceLanes(VectorOperators.ADD);
+        double value = values.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            base += baseAmounts[i];
+            quote += quoteAmounts[i];
+            value += baseAmounts[i] * rate + quoteAmounts[i];
+        }
+        totals[0] = base;
+        totals[1] = quote;
+        totals[2] = value;
+    }
+}
@@ -1,5 +1,8 @@
 package com.osttra.fx.blockstream.config;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -9,4 +12,647 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  * See {@link tech.jhipster.config.JHipsterProperties} for a good example.
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
-public class ApplicationProperties {}
+public class ApplicationProperties {
+
+    private final Ingestion ingestion = new Ingestion();
+
+    private final TradeFeed tradeFeed = new TradeFeed();
+
+    private final Idempotency idempotency = new Idempotency();
+
+    private final Transfer transfer = new Transfer();
+
+    private final CustomerCache customerCache = new CustomerCache();
+
+    private final CurrenciesCache currenciesCache = new CurrenciesCache();
+
+    private final Ledger ledger = new Ledger();
+
+    private final HotWallets hotWallets = new HotWallets();
+
+    private final Rates rates = new Rates();
+
+    private final MarkToMarket markToMarket = new MarkToMarket();
+
+    private final TradeSnapshot tradeSnapshot = new TradeSnapshot();
+
+    private final WriteAheadLog writeAheadLog = new WriteAheadLog();
+
+    private final CoalescedWrites coalescedWrites = new CoalescedWrites();
+
+    public Ingestion getIngestion() {
+        return ingestion;
+    }
+
+    public TradeFeed getTradeFeed() {
+        return tradeFeed;
+    }
+
+    public Idempotency getIdempotency() {
+        return idempotency;
+    }
+
+    public Transfer getTransfer() {
+        return transfer;
+    }
+
+    public CustomerCache getCustomerCache() {
+        return customerCache;
+    }
+
+    public CurrenciesCache getCurrenciesCache() {
+        return currenciesCache;
+    }
+
+    public Ledger getLedger() {
+        return ledger;
+    }
+
+    public HotWallets getHotWallets() {
+        return hotWallets;
+    }
+
+    public Rates getRates() {
+        return rates;
+    }
+
+    public MarkToMarket getMarkToMarket() {
+        return markToMarket;
+    }
+
+    public TradeSnapshot getTradeSnapshot() {
+        return tradeSnapshot;
+    }
+
+    public WriteAheadLog getWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+    public CoalescedWrites getCoalescedWrites() {
+        return coalescedWrites;
+    }
+
+    /**
+     * Settings of the bulk SmartTrade ingestion endpoint.
+     */
+    public static class Ingestion {
+
+        /**
+         * Number of trades written to MongoDB by a single insert command.
+         */
+        private int batchSize = 500;
+
+        /**
+         * Number of batches that may be in flight at the same time, which bounds
+         * the number of pooled MongoDB connections used by one ingestion stream.
+         */
+        private int maxConcurrentBatches = 4;
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getMaxConcurrentBatches() {
+            return maxConcurrentBatches;
+        }
+
+        public void setMaxConcurrentBatches(int maxConcurrentBatches) {
+            this.maxConcurrentBatches = maxConcurrentBatches;
+        }
+    }
+
+    /**
+     * Settings of the live SmartTrade event feed.
+     */
+    public static class TradeFeed {
+
+        /**
+         * Number of events buffered for each subscriber before its overflow strategy applies.
+         */
+        private int bufferSize = 256;
+
+        /**
+         * Whether to feed events from MongoDB change streams when the database is a replica set,
+         * so that subscribers also see the writes of the other instances.
+         */
+        private boolean changeStreams = true;
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public boolean isChangeStreams() {
+            return changeStreams;
+        }
+
+        public void setChangeStreams(boolean changeStreams) {
+            this.changeStreams = changeStreams;
+        }
+    }
+
+    /**
+     * Settings of the in-memory front of the idempotent SmartTrade creation.
+     */
+    public static class Idempotency {
+
+        /**
+         * Number of distinct transaction ids the Bloom filter is sized for.
+         */
+        private long expectedTransactions = 1_000_000;
+
+        /**
+         * Rate at which the Bloom filter reports an unknown transaction id as possibly known,
+         * which costs one lookup by transaction id before the insert.
+         */
+        private double falsePositiveRate = 0.01;
+
+        /**
+         * Number of recently seen smartTrades kept to answer resent trades without reading MongoDB.
+         */
+        private int cacheSize = 10_000;
+
+        public long getExpectedTransactions() {
+            return expectedTransactions;
+        }
+
+        public void setExpectedTransactions(long expectedTransactions) {
+            this.expectedTransactions = expectedTransactions;
+        }
+
+        public double getFalsePositiveRate() {
+            return falsePositiveRate;
+        }
+
+        public void setFalsePositiveRate(double falsePositiveRate) {
+            this.falsePositiveRate = falsePositiveRate;
+        }
+
+        public int getCacheSize() {
+            return cacheSize;
+        }
+
+        public void setCacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+        }
+    }
+
+    /**
+     * Settings of the wallet-to-wallet transfers.
+     */
+    public static class Transfer {
+
+        /**
+         * Number of transfers applied together, in one transaction or one round of the saga.
+         */
+        private int groupSize = 500;
+
+        /**
+         * Whether to apply the transfers in multi-document transactions when MongoDB is a replica set
+         * or a sharded cluster; otherwise they are applied by a saga recorded in the transfer journal.
+         */
+        private boolean transactions = true;
+
+        /**
+         * Age after which a saga left unfinished, for example by a crash, is completed at startup.
+         */
+        private Duration recoveryDelay = Duration.ofMinutes(1);
+
+        public int getGroupSize() {
+            return groupSize;
+        }
+
+        public void setGroupSize(int groupSize) {
+            this.groupSize = groupSize;
+        }
+
+        public boolean isTransactions() {
+            return transactions;
+        }
+
+        public void setTransactions(boolean transactions) {
+            this.transactions = transactions;
+        }
+
+        public Duration getRecoveryDelay() {
+            return recoveryDelay;
+        }
+
+        public void setRecoveryDelay(Duration recoveryDelay) {
+            this.recoveryDelay = recoveryDelay;
+        }
+    }
+
+    /**
+     * Settings of the cache of the customers loaded with their wallets.
+     */
+    public static class CustomerCache {
+
+        /**
+         * Maximum number of customers kept; 0 disables the cache.
+         */
+        private int size = 1000;
+
+        /**
+         * Time after which a cached customer is read again, bounding how long the edits made through another
+         * instance go unseen.
+         */
+        private Duration timeToLive = Duration.ofSeconds(30);
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public Duration getTimeToLive() {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+    }
+
+    /**
+     * Settings of the in-memory copy of the currencies.
+     */
+    public static class CurrenciesCache {
+
+        /**
+         * Maximum number of currencies kept; beyond it, or at 0, the currencies are read from the database.
+         */
+        private int size = 1000;
+
+        /**
+         * Time after which the currencies are read again, bounding how long the edits made through another instance
+         * go unseen; only used when no change stream reports those edits.
+         */
+        private Duration timeToLive = Duration.ofMinutes(5);
+
+        /**
+         * Whether to follow the change stream of the currencies, when MongoDB is a replica set, so that the edits
+         * made through any instance are seen at once.
+         */
+        private boolean changeStreams = true;
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public Duration getTimeToLive() {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        public boolean isChangeStreams() {
+            return changeStreams;
+        }
+
+        public void setChangeStreams(boolean changeStreams) {
+            this.changeStreams = changeStreams;
+        }
+    }
+
+    /**
+     * Settings of the wallet ledger.
+     */
+    public static class Ledger {
+
+        /**
+         * Time between two snapshots of the balances, which bounds the movements read after a snapshot; 0 disables
+         * the snapshots.
+         */
+        private Duration snapshotInterval = Duration.ofMinutes(1);
+
+        /**
+         * Time between two drains of the movements pending on the wallets into the ledger; 0 leaves them to the
+         * snapshots.
+         */
+        private Duration drainInterval = Duration.ofSeconds(1);
+
+        /**
+         * Age of the last movements folded into a snapshot, larger than the time it takes to record a movement.
+         */
+        private Duration settleDelay = Duration.ofSeconds(5);
+
+        public Duration getSnapshotInterval() {
+            return snapshotInterval;
+        }
+
+        public void setSnapshotInterval(Duration snapshotInterval) {
+            this.snapshotInterval = snapshotInterval;
+        }
+
+        public Duration getDrainInterval() {
+            return drainInterval;
+        }
+
+        public void setDrainInterval(Duration drainInterval) {
+            this.drainInterval = drainInterval;
+        }
+
+        public Duration getSettleDelay() {
+            return settleDelay;
+        }
+
+        public void setSettleDelay(Duration settleDelay) {
+            this.settleDelay = settleDelay;
+        }
+    }
+
+    /**
+     * Settings of the wallets whose balance is kept in memory and written behind to MongoDB.
+     */
+    public static class HotWallets {
+
+        /**
+         * Ids of the hot wallets; none by default. A hot wallet must only be credited and debited by one instance.
+         */
+        private List<String> walletIds = new ArrayList<>();
+
+        /**
+         * Time between two writes of the balance changes of a hot wallet.
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        /**
+         * Number of balance changes of a hot wallet that triggers a write before the interval.
+         */
+        private int flushThreshold = 1000;
+
+        /**
+         * Directory of the journals keeping the balance changes not written yet, one file per hot wallet.
+         */
+        private String journalDirectory = "hot-wallets";
+
+        public List<String> getWalletIds() {
+            return walletIds;
+        }
+
+        public void setWalletIds(List<String> walletIds) {
+            this.walletIds = walletIds;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getFlushThreshold() {
+            return flushThreshold;
+        }
+
+        public void setFlushThreshold(int flushThreshold) {
+            this.flushThreshold = flushThreshold;
+        }
+
+        public String getJournalDirectory() {
+            return journalDirectory;
+        }
+
+        public void setJournalDirectory(String journalDirectory) {
+            this.journalDirectory = journalDirectory;
+        }
+    }
+
+    /**
+     * Settings of the in-memory exchange rates.
+     */
+    public static class Rates {
+
+        /**
+         * Currency through which the cross rates are derived, when a pair is not quoted directly.
+         */
+        private String pivotCurrency = "USD";
+
+        public String getPivotCurrency() {
+            return pivotCurrency;
+        }
+
+        public void setPivotCurrency(String pivotCurrency) {
+            this.pivotCurrency = pivotCurrency;
+        }
+    }
+
+    /**
+     * Settings of the revaluation of the open trades.
+     */
+    public static class MarkToMarket {
+
+        /**
+         * Number of threads of the full revaluations; 0 for one per processor.
+         */
+        private int parallelism = 0;
+
+        /**
+         * Cron expression of the end-of-day revaluation, which also settles the trades whose value date is the current
+         * day; empty to disable it.
+         */
+        private String endOfDayCron = "0 0 22 * * *";
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public String getEndOfDayCron() {
+            return endOfDayCron;
+        }
+
+        public void setEndOfDayCron(String endOfDayCron) {
+            this.endOfDayCron = endOfDayCron;
+        }
+    }
+
+    public static class TradeSnapshot {
+
+        /**
+         * File of the snapshot of the smartTrades restoring the positions when the application starts; empty to load
+         * them from MongoDB. Only used when MongoDB is a replica set, whose change stream brings the snapshot up to date.
+         */
+        private String file = "";
+
+        /**
+         * Time between two snapshots.
+         */
+        private Duration interval = Duration.ofHours(1);
+
+        /**
+         * Time without changes after which the changes following the snapshot are deemed replayed.
+         */
+        private Duration catchUpIdleTimeout = Duration.ofSeconds(5);
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public Duration getCatchUpIdleTimeout() {
+            return catchUpIdleTimeout;
+        }
+
+        public void setCatchUpIdleTimeout(Duration catchUpIdleTimeout) {
+            this.catchUpIdleTimeout = catchUpIdleTimeout;
+        }
+    }
+
+    public static class WriteAheadLog {
+
+        /**
+         * Whether new smartTrades are acknowledged once in the local write-ahead log, and written to MongoDB afterwards.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of the write-ahead log.
+         */
+        private String directory = "trade-wal";
+
+        /**
+         * Size beyond which a new segment of the log is started.
+         */
+        private long segmentSize = 64 << 20;
+
+        /**
+         * Largest number of smartTrades forced to the disk together.
+         */
+        private int maxGroupSize = 1000;
+
+        /**
+         * Largest number of smartTrades written to MongoDB in one batch.
+         */
+        private int drainBatchSize = 500;
+
+        /**
+         * Longest time a smartTrade waits for its batch to fill before being written to MongoDB.
+         */
+        private Duration drainDelay = Duration.ofMillis(50);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public long getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(long segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public int getMaxGroupSize() {
+            return maxGroupSize;
+        }
+
+        public void setMaxGroupSize(int maxGroupSize) {
+            this.maxGroupSize = maxGroupSize;
+        }
+
+        public int getDrainBatchSize() {
+            return drainBatchSize;
+        }
+
+        public void setDrainBatchSize(int drainBatchSize) {
+            this.drainBatchSize = drainBatchSize;
+        }
+
+        public Duration getDrainDelay() {
+            return drainDelay;
+        }
+
+        public void setDrainDelay(Duration drainDelay) {
+            this.drainDelay = drainDelay;
+        }
+    }
+
+    /**
+     * Settings of the saves of new documents coalesced into bulk writes, per collection.
+     */
+    public static class CoalescedWrites {
+
+        /**
+         * Whether concurrent saves of new smartTrades, wallets and customers are written together.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Longest time a save waits for others before its batch is written.
+         */
+        private Duration window = Duration.ofMillis(2);
+
+        /**
+         * Largest number of documents written in one batch.
+         */
+        private int maxBatchSize = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package com.osttra.fx.blockstream.config;
 
+import com.osttra.fx.blockstream.repository.convert.Decimals;
+import com.osttra.fx.blockstream.repository.convert.InternPool;
+import com.osttra.fx.blockstream.repository.convert.SmartTradeReadConverter;
+import com.osttra.fx.blockstream.repository.convert.SmartTradeWriteConverter;
+import com.osttra.fx.blockstream.repository.convert.WalletReadConverter;
+import com.osttra.fx.blockstream.repository.convert.WalletWriteConverter;
 import io.mongock.runner.springboot.EnableMongock;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import org.bson.types.Decimal128;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoReactiveAutoConfiguration;
 import org.springframework.context.annotation.Bean;
@@ -10,6 +18,8 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
 import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
 import org.springframework.data.mongodb.core.mapping.event.ValidatingMongoEventListener;
 import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
@@ -25,6 +35,11 @@ import tech.jhipster.domain.util.JSR310DateConverters.ZonedDateTimeToDateConvert
 @Import(value = { MongoAutoConfiguration.class, MongoReactiveAutoConfiguration.class })
 public class DatabaseConfiguration {
 
+    /**
+     * Slots of the pool of strings shared by the entities read from MongoDB.
+     */
+    private static final int INTERN_POOL_SIZE = 4096;
+
     @Bean
     public ValidatingMongoEventListener validatingMongoEventListener() {
         return new ValidatingMongoEventListener(validator());
@@ -40,6 +55,37 @@ public class DatabaseConfiguration {
         List<Converter<?, ?>> converters = new ArrayList<>();
         converters.add(DateToZonedDateTimeConverter.INSTANCE);
         converters.add(ZonedDateTimeToDateConverter.INSTANCE);
+        converters.add(BigDecimalToDecimal128Converter.INSTANCE);
+        converters.add(Decimal128ToBigDecimalConverter.INSTANCE);
+        InternPool internPool = new InternPool(INTERN_POOL_SIZE);
+        converters.add(new SmartTradeReadConverter(internPool));
+        converters.add(SmartTradeWriteConverter.INSTANCE);
+        converters.add(new WalletReadConverter(internPool));
+        converters.add(WalletWriteConverter.INSTANCE);
         return new MongoCustomConversions(converters);
     }
+
+    /**
+     * Stores {@link BigDecimal}s as {@code Decimal128} rather than strings, so amounts can be summed, compared and sorted
+     * by MongoDB. Values of more than 34 significant digits are rounded to the 34 that {@code Decimal128} holds.
+     */
+    @WritingConverter
+    enum BigDecimalToDecimal128Converter implements Converter<BigDecimal, Decimal128> {
+        INSTANCE;
+
+        @Override
+        public Decimal128 convert(BigDecimal source) {
+            return Decimals.toDecimal128(source);
+        }
+    }
+
+    @ReadingConverter
+    enum Decimal128ToBigDecimalConverter implements Converter<Decimal128, BigDecimal> {
+        INSTANCE;
+
+        @Override
+        public BigDecimal convert(Decimal128 source) {
+            return source.bigDecimalValue();
+        }
+    }
 }
@@ -0,0 +1,90 @@
+package com.osttra.fx.blockstream.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import com.osttra.fx.blockstream.repository.convert.Decimals;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Decimal128;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Converts the money fields stored as strings to {@code Decimal128}.
+ * <p>
+ * Documents are rewritten in place with unordered bulk writes of {@value #BATCH_SIZE} updates. Only string values
+ * are selected, so the change unit can be interrupted and run again, and it resumes with the remaining documents.
+ */
+@ChangeUnit(id = "decimal128-amounts", order = "004")
+public class Decimal128AmountsMigration {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(Decimal128AmountsMigration.class);
+
+    private final MongoTemplate template;
+
+    public Decimal128AmountsMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        convert("smart_trade", "amount");
+        convert("smart_trade", "contra_amount");
+        convert("wallet", "amount");
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        // Nothing to undo: the application reads amounts stored as strings and as Decimal128 alike.
+    }
+
+    private void convert(String collectionName, String field) {
+        MongoCollection<Document> collection = template.getCollection(collectionName);
+        List<WriteModel<Document>> batch = new ArrayList<>(BATCH_SIZE);
+        long converted = 0;
+        for (Document document : collection
+            .find(Filters.type(field, BsonType.STRING))
+            .projection(Projections.include(field))
+            .batchSize(BATCH_SIZE)) {
+            String value = document.getString(field);
+            Decimal128 decimal;
+            try {
+                decimal = Decimals.toDecimal128(new BigDecimal(value));
+            } catch (NumberFormatException e) {
+                log.warn("Cannot convert {}.{} of document {} to Decimal128 : {}", collectionName, field, document.get("_id"), value);
+                continue;
+            }
+            // Only rewrite the value that was read, in case the application updated it meanwhile.
+            Bson filter = Filters.and(Filters.eq("_id", document.get("_id")), Filters.eq(field, value));
+            batch.add(new UpdateOneModel<>(filter, Updates.set(field, decimal)));
+            if (batch.size() == BATCH_SIZE) {
+                converted += write(collection, batch);
+            }
+        }
+        if (!batch.isEmpty()) {
+            converted += write(collection, batch);
+        }
+        log.info("Converted {} values of {}.{} to Decimal128", converted, collectionName, field);
+    }
+
+    private long write(MongoCollection<Document> collection, List<WriteModel<Document>> batch) {
+        long modified = collection.bulkWrite(batch, new BulkWriteOptions().ordered(false)).getModifiedCount();
+        batch.clear();
+        return modified;
+    }
+}
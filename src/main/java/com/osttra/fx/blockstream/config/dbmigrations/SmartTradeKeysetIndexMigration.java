@@ -0,0 +1,36 @@
+package com.osttra.fx.blockstream.config.dbmigrations;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/**
+ * Creates the index backing keyset pagination of smart trades, ordered by value date then id.
+ */
+@ChangeUnit(id = "smart-trade-keyset-index", order = "002")
+public class SmartTradeKeysetIndexMigration {
+
+    private static final String INDEX_NAME = "value_date_id";
+
+    private final MongoTemplate template;
+
+    public SmartTradeKeysetIndexMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        template
+            .indexOps(SmartTrade.class)
+            .ensureIndex(new Index().on("value_date", Sort.Direction.ASC).on("_id", Sort.Direction.ASC).named(INDEX_NAME));
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        template.indexOps(SmartTrade.class).dropIndex(INDEX_NAME);
+    }
+}
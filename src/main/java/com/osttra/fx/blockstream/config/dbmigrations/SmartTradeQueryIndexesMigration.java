@@ -0,0 +1,56 @@
+package com.osttra.fx.blockstream.config.dbmigrations;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+/**
+ * Creates the compound indexes backing the smart trade criteria queries.
+ * <p>
+ * Each index leads with equality-filtered fields and ends with {@code value_date, _id}, so a value date range
+ * and the result order are served by the same index. Queries on the value date alone use the keyset index.
+ */
+@ChangeUnit(id = "smart-trade-query-indexes", order = "003")
+public class SmartTradeQueryIndexesMigration {
+
+    private static final String COUNTER_PARTY_INDEX = "counter_party_value_date_id";
+
+    private static final String TRADING_PARTY_INDEX = "trading_party_counter_party_value_date_id";
+
+    private static final String CURRENCY_PAIR_INDEX = "currency_buy_currency_sell_value_date_id";
+
+    private final MongoTemplate template;
+
+    public SmartTradeQueryIndexesMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        IndexOperations indexOps = template.indexOps(SmartTrade.class);
+        indexOps.ensureIndex(byValueDate(COUNTER_PARTY_INDEX, "counter_party"));
+        indexOps.ensureIndex(byValueDate(TRADING_PARTY_INDEX, "trading_party", "counter_party"));
+        indexOps.ensureIndex(byValueDate(CURRENCY_PAIR_INDEX, "currency_buy", "currency_sell"));
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        IndexOperations indexOps = template.indexOps(SmartTrade.class);
+        indexOps.dropIndex(COUNTER_PARTY_INDEX);
+        indexOps.dropIndex(TRADING_PARTY_INDEX);
+        indexOps.dropIndex(CURRENCY_PAIR_INDEX);
+    }
+
+    private static Index byValueDate(String name, String... equalityFields) {
+        Index index = new Index().named(name);
+        for (String field : equalityFields) {
+            index.on(field, Sort.Direction.ASC);
+        }
+        return index.on("value_date", Sort.Direction.ASC).on("_id", Sort.Direction.ASC);
+    }
+}
@@ -0,0 +1,101 @@
+package com.osttra.fx.blockstream.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.WriteModel;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/**
+ * Makes {@code transaction_id} unique among the smart trades that have one.
+ * <p>
+ * Trades resent before the index existed would prevent its creation: for each transaction id, the first stored trade
+ * is kept and the later ones are moved to the {@code smart_trade_duplicate} collection, where they can be reviewed.
+ */
+@ChangeUnit(id = "smart-trade-transaction-id-index", order = "005")
+public class SmartTradeTransactionIdIndexMigration {
+
+    private static final String INDEX_NAME = "transaction_id_unique";
+
+    private static final String COLLECTION = "smart_trade";
+
+    private static final String DUPLICATE_COLLECTION = "smart_trade_duplicate";
+
+    private final Logger log = LoggerFactory.getLogger(SmartTradeTransactionIdIndexMigration.class);
+
+    private final MongoTemplate template;
+
+    public SmartTradeTransactionIdIndexMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        moveDuplicates();
+        template
+            .indexOps(SmartTrade.class)
+            .ensureIndex(
+                new Index()
+                    .on("transaction_id", Sort.Direction.ASC)
+                    .unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("transaction_id").type(BsonType.STRING.getValue())))
+                    .named(INDEX_NAME)
+            );
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        template.indexOps(SmartTrade.class).dropIndex(INDEX_NAME);
+    }
+
+    private void moveDuplicates() {
+        MongoCollection<Document> trades = template.getCollection(COLLECTION);
+        MongoCollection<Document> duplicates = template.getCollection(DUPLICATE_COLLECTION);
+        long moved = 0;
+        for (Document group : trades
+            .aggregate(
+                Arrays.asList(
+                    Aggregates.match(Filters.type("transaction_id", BsonType.STRING)),
+                    Aggregates.sort(Sorts.ascending("_id")),
+                    Aggregates.group("$transaction_id", Accumulators.push("ids", "$_id"), Accumulators.sum("count", 1)),
+                    Aggregates.match(Filters.gt("count", 1))
+                )
+            )
+            .allowDiskUse(true)) {
+            List<Object> ids = new ArrayList<>(group.getList("ids", Object.class));
+            List<Object> later = ids.subList(1, ids.size());
+            List<WriteModel<Document>> copies = new ArrayList<>(later.size());
+            for (Document document : trades.find(Filters.in("_id", later))) {
+                // Upserts, so that an interrupted run can be replayed.
+                copies.add(new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document, new ReplaceOptions().upsert(true)));
+            }
+            if (copies.isEmpty()) {
+                continue;
+            }
+            duplicates.bulkWrite(copies);
+            moved += trades.deleteMany(Filters.in("_id", later)).getDeletedCount();
+        }
+        if (moved > 0) {
+            log.warn("Moved {} smart trades with an already used transaction id to {}", moved, DUPLICATE_COLLECTION);
+        }
+    }
+}
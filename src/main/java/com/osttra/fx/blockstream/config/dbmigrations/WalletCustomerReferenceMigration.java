@@ -0,0 +1,103 @@
+package com.osttra.fx.blockstream.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Replaces the customer embedded in each wallet with a {@code customer_id} reference.
+ * <p>
+ * An embedded customer missing from the {@code customer} collection is inserted there first, so that no reference
+ * dangles; a customer already there is left as it is. Wallets are rewritten with unordered bulk writes of
+ * {@value #BATCH_SIZE} updates, and only those still embedding a customer are selected, so the change unit can be
+ * interrupted and run again.
+ */
+@ChangeUnit(id = "wallet-customer-reference", order = "007")
+public class WalletCustomerReferenceMigration {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String EMBEDDED = "customer";
+
+    private final Logger log = LoggerFactory.getLogger(WalletCustomerReferenceMigration.class);
+
+    private final MongoTemplate template;
+
+    public WalletCustomerReferenceMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        MongoCollection<Document> wallets = template.getCollection("wallet");
+        MongoCollection<Document> customers = template.getCollection("customer");
+        List<WriteModel<Document>> walletBatch = new ArrayList<>(BATCH_SIZE);
+        List<WriteModel<Document>> customerBatch = new ArrayList<>(BATCH_SIZE);
+        long migrated = 0;
+        for (Document wallet : wallets
+            .find(Filters.type(EMBEDDED, "object"))
+            .projection(Projections.include(EMBEDDED))
+            .batchSize(BATCH_SIZE)) {
+            Document customer = new Document(wallet.get(EMBEDDED, Document.class));
+            Object customerId = customer.remove("_id");
+            // Only rewrite the customer that was read, in case the application updated the wallet meanwhile.
+            Bson filter = Filters.and(Filters.eq("_id", wallet.get("_id")), Filters.eq(EMBEDDED, wallet.get(EMBEDDED)));
+            if (customerId == null && customer.isEmpty()) {
+                walletBatch.add(new UpdateOneModel<>(filter, Updates.unset(EMBEDDED)));
+            } else {
+                if (customerId == null) {
+                    customerId = new ObjectId();
+                }
+                if (!customer.isEmpty()) {
+                    Bson insert = Updates.setOnInsert(customer);
+                    customerBatch.add(new UpdateOneModel<>(Filters.eq("_id", customerId), insert, new UpdateOptions().upsert(true)));
+                }
+                String reference = customerId instanceof ObjectId ? ((ObjectId) customerId).toHexString() : customerId.toString();
+                Bson update = Updates.combine(Updates.set("customer_id", reference), Updates.unset(EMBEDDED));
+                walletBatch.add(new UpdateOneModel<>(filter, update));
+            }
+            if (walletBatch.size() == BATCH_SIZE) {
+                migrated += write(customers, customerBatch, wallets, walletBatch);
+            }
+        }
+        if (!walletBatch.isEmpty()) {
+            migrated += write(customers, customerBatch, wallets, walletBatch);
+        }
+        log.info("Replaced the embedded customer of {} wallets with a reference", migrated);
+    }
+
+    @RollbackExecution
+    public void rollback() {}
+
+    private long write(
+        MongoCollection<Document> customers,
+        List<WriteModel<Document>> customerBatch,
+        MongoCollection<Document> wallets,
+        List<WriteModel<Document>> walletBatch
+    ) {
+        // The customers first, so that every reference written has its customer.
+        if (!customerBatch.isEmpty()) {
+            customers.bulkWrite(customerBatch, new BulkWriteOptions().ordered(false));
+        }
+        long modified = wallets.bulkWrite(walletBatch, new BulkWriteOptions().ordered(false)).getModifiedCount();
+        customerBatch.clear();
+        walletBatch.clear();
+        return modified;
+    }
+}
@@ -0,0 +1,139 @@
+package com.osttra.fx.blockstream.config.dbmigrations;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/**
+ * Creates the wallet ledger: the indexes of the movements and snapshots, and an opening movement holding the current
+ * balance of every existing wallet.
+ * <p>
+ * The opening movements are upserted on the wallet id and the {@code opening} batch id, so the change unit can be
+ * interrupted and run again.
+ */
+@ChangeUnit(id = "wallet-ledger", order = "008")
+public class WalletLedgerMigration {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String MOVEMENTS = "wallet_movement";
+
+    private static final String SNAPSHOTS = "wallet_snapshot";
+
+    private static final String MOVEMENT_INDEX_NAME = "wallet_id_id";
+
+    private static final String BATCH_INDEX_NAME = "wallet_id_batch_id_unique";
+
+    private static final String SNAPSHOT_INDEX_NAME = "wallet_id_last_movement_id_unique";
+
+    private static final String SNAPSHOT_DATE_INDEX_NAME = "wallet_id_as_of";
+
+    private static final String OPENING_BATCH_ID = "opening";
+
+    private final Logger log = LoggerFactory.getLogger(WalletLedgerMigration.class);
+
+    private final MongoTemplate template;
+
+    public WalletLedgerMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        template
+            .indexOps(MOVEMENTS)
+            .ensureIndex(new Index().on("wallet_id", Sort.Direction.ASC).on("_id", Sort.Direction.ASC).named(MOVEMENT_INDEX_NAME));
+        template
+            .indexOps(MOVEMENTS)
+            .ensureIndex(
+                new Index()
+                    .on("wallet_id", Sort.Direction.ASC)
+                    .on("batch_id", Sort.Direction.ASC)
+                    .unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("batch_id").type(BsonType.STRING.getValue())))
+                    .named(BATCH_INDEX_NAME)
+            );
+        template
+            .indexOps(SNAPSHOTS)
+            .ensureIndex(
+                new Index()
+                    .on("wallet_id", Sort.Direction.ASC)
+                    .on("last_movement_id", Sort.Direction.ASC)
+                    .unique()
+                    .named(SNAPSHOT_INDEX_NAME)
+            );
+        template
+            .indexOps(SNAPSHOTS)
+            .ensureIndex(new Index().on("wallet_id", Sort.Direction.ASC).on("as_of", Sort.Direction.DESC).named(SNAPSHOT_DATE_INDEX_NAME));
+        recordOpeningBalances();
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        template.indexOps(MOVEMENTS).dropIndex(MOVEMENT_INDEX_NAME);
+        template.indexOps(MOVEMENTS).dropIndex(BATCH_INDEX_NAME);
+        template.indexOps(SNAPSHOTS).dropIndex(SNAPSHOT_INDEX_NAME);
+        template.indexOps(SNAPSHOTS).dropIndex(SNAPSHOT_DATE_INDEX_NAME);
+    }
+
+    private void recordOpeningBalances() {
+        MongoCollection<Document> movements = template.getCollection(MOVEMENTS);
+        List<WriteModel<Document>> batch = new ArrayList<>(BATCH_SIZE);
+        long recorded = 0;
+        for (Document wallet : template
+            .getCollection("wallet")
+            .find()
+            .projection(Projections.include("amount"))
+            .batchSize(BATCH_SIZE)) {
+            Object id = wallet.get("_id");
+            String walletId = id instanceof ObjectId ? ((ObjectId) id).toHexString() : id.toString();
+            Object amount = wallet.get("amount");
+            Document opening = new Document("_id", new ObjectId())
+                .append("kind", "BALANCE")
+                .append("amount", amount instanceof Decimal128 ? amount : Decimal128.parse("0"))
+                .append("created_date", new Date());
+            batch.add(
+                new UpdateOneModel<>(
+                    Filters.and(Filters.eq("wallet_id", walletId), Filters.eq("batch_id", OPENING_BATCH_ID)),
+                    Updates.setOnInsert(opening),
+                    new UpdateOptions().upsert(true)
+                )
+            );
+            if (batch.size() == BATCH_SIZE) {
+                recorded += write(movements, batch);
+            }
+        }
+        if (!batch.isEmpty()) {
+            recorded += write(movements, batch);
+        }
+        log.info("Recorded the opening balance of {} wallets in the ledger", recorded);
+    }
+
+    private long write(MongoCollection<Document> collection, List<WriteModel<Document>> batch) {
+        long upserted = collection.bulkWrite(batch, new BulkWriteOptions().ordered(false)).getUpserts().size();
+        batch.clear();
+        return upserted;
+    }
+}
@@ -0,0 +1,47 @@
+package com.osttra.fx.blockstream.config.dbmigrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/**
+ * Creates the index finding the wallets with movements not drained into the ledger yet. It only holds those wallets,
+ * so that the drains do not scan the wallets.
+ */
+@ChangeUnit(id = "wallet-pending-movements-index", order = "009")
+public class WalletPendingMovementsIndexMigration {
+
+    private static final String COLLECTION = "wallet";
+
+    private static final String FIELD = "pending_movements._id";
+
+    private static final String INDEX_NAME = "pending_movements_id";
+
+    private final MongoTemplate template;
+
+    public WalletPendingMovementsIndexMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        template
+            .indexOps(COLLECTION)
+            .ensureIndex(
+                new Index()
+                    .on(FIELD, Sort.Direction.ASC)
+                    .partial(PartialIndexFilter.of(Criteria.where(FIELD).exists(true)))
+                    .named(INDEX_NAME)
+            );
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        template.indexOps(COLLECTION).dropIndex(INDEX_NAME);
+    }
+}
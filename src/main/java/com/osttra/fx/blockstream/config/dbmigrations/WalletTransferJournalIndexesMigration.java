@@ -0,0 +1,44 @@
+package com.osttra.fx.blockstream.config.dbmigrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/**
+ * Creates the indexes of the wallet transfer journal: one finding the unfinished transfers at startup, one updating
+ * the transfers of a group together.
+ */
+@ChangeUnit(id = "wallet-transfer-journal-indexes", order = "006")
+public class WalletTransferJournalIndexesMigration {
+
+    private static final String COLLECTION = "wallet_transfer";
+
+    private static final String STATUS_INDEX_NAME = "status_last_modified_date";
+
+    private static final String GROUP_INDEX_NAME = "group_id";
+
+    private final MongoTemplate template;
+
+    public WalletTransferJournalIndexesMigration(MongoTemplate template) {
+        this.template = template;
+    }
+
+    @Execution
+    public void changeSet() {
+        template
+            .indexOps(COLLECTION)
+            .ensureIndex(
+                new Index().on("status", Sort.Direction.ASC).on("last_modified_date", Sort.Direction.ASC).named(STATUS_INDEX_NAME)
+            );
+        template.indexOps(COLLECTION).ensureIndex(new Index().on("group_id", Sort.Direction.ASC).named(GROUP_INDEX_NAME));
+    }
+
+    @RollbackExecution
+    public void rollback() {
+        template.indexOps(COLLECTION).dropIndex(STATUS_INDEX_NAME);
+        template.indexOps(COLLECTION).dropIndex(GROUP_INDEX_NAME);
+    }
+}
@@ -2,6 +2,7 @@ package com.osttra.fx.blockstream.domain;
 
 import java.io.Serializable;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -16,6 +17,10 @@ public class Currencies implements Serializable {
     @Id
     private String id;
 
+    @Version
+    @Field("version")
+    private Long version;
+
     @Field("currency_name")
     private String currencyName;
 
@@ -37,6 +42,19 @@ public class Currencies implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return this.version;
+    }
+
+    public Currencies version(Long version) {
+        this.setVersion(version);
+        return this;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getCurrencyName() {
         return this.currencyName;
     }
@@ -87,6 +105,7 @@ public class Currencies implements Serializable {
     public String toString() {
         return "Currencies{" +
             "id=" + getId() +
+            ", version=" + getVersion() +
             ", currencyName='" + getCurrencyName() + "'" +
             ", currencyCode='" + getCurrencyCode() + "'" +
             "}";
@@ -2,6 +2,7 @@ package com.osttra.fx.blockstream.domain;
 
 import java.io.Serializable;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -16,6 +17,10 @@ public class Customer implements Serializable {
     @Id
     private String id;
 
+    @Version
+    @Field("version")
+    private Long version;
+
     @Field("customer_name")
     private String customerName;
 
@@ -43,6 +48,19 @@ public class Customer implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return this.version;
+    }
+
+    public Customer version(Long version) {
+        this.setVersion(version);
+        return this;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getCustomerName() {
         return this.customerName;
     }
@@ -119,6 +137,7 @@ public class Customer implements Serializable {
     public String toString() {
         return "Customer{" +
             "id=" + getId() +
+            ", version=" + getVersion() +
             ", customerName='" + getCustomerName() + "'" +
             ", customerLegalEntity='" + getCustomerLegalEntity() + "'" +
             ", customerPassword='" + getCustomerPassword() + "'" +
@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -18,6 +19,10 @@ public class SmartTrade implements Serializable {
     @Id
     private String id;
 
+    @Version
+    @Field("version")
+    private Long version;
+
     @Field("counter_party")
     private String counterParty;
 
@@ -63,6 +68,19 @@ public class SmartTrade implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return this.version;
+    }
+
+    public SmartTrade version(Long version) {
+        this.setVersion(version);
+        return this;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getCounterParty() {
         return this.counterParty;
     }
@@ -217,6 +235,7 @@ public class SmartTrade implements Serializable {
     public String toString() {
         return "SmartTrade{" +
             "id=" + getId() +
+            ", version=" + getVersion() +
             ", counterParty='" + getCounterParty() + "'" +
             ", tradingParty='" + getTradingParty() + "'" +
             ", currencyBuy='" + getCurrencyBuy() + "'" +
@@ -1,8 +1,11 @@
 package com.osttra.fx.blockstream.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -17,13 +20,24 @@ public class Wallet implements Serializable {
     @Id
     private String id;
 
+    @Version
+    @Field("version")
+    private Long version;
+
     @Field("currency_code")
     private String currencyCode;
 
     @Field("amount")
     private BigDecimal amount;
 
-    @Field("customer")
+    @Field("customer_id")
+    private String customerId;
+
+    /**
+     * The customer with the id {@link #customerId}, set only when the wallet is read with its relationships.
+     */
+    @Transient
+    @JsonIgnoreProperties(value = { "customerPassword", "customerHashCode" }, allowSetters = true)
     private Customer customer;
 
     // jhipster-needle-entity-add-field - JHipster will add fields here
@@ -41,6 +55,19 @@ public class Wallet implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return this.version;
+    }
+
+    public Wallet version(Long version) {
+        this.setVersion(version);
+        return this;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getCurrencyCode() {
         return this.currencyCode;
     }
@@ -67,12 +94,32 @@ public class Wallet implements Serializable {
         this.amount = amount;
     }
 
+    public String getCustomerId() {
+        return this.customerId;
+    }
+
+    public Wallet customerId(String customerId) {
+        this.setCustomerId(customerId);
+        return this;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
     public Customer getCustomer() {
         return this.customer;
     }
 
+    /**
+     * Set the customer, and reference it by its id unless it is {@code null}: a wallet read without its customer keeps
+     * its reference.
+     */
     public void setCustomer(Customer customer) {
         this.customer = customer;
+        if (customer != null) {
+            this.customerId = customer.getId();
+        }
     }
 
     public Wallet customer(Customer customer) {
@@ -104,8 +151,10 @@ public class Wallet implements Serializable {
     public String toString() {
         return "Wallet{" +
             "id=" + getId() +
+            ", version=" + getVersion() +
             ", currencyCode='" + getCurrencyCode() + "'" +
             ", amount=" + getAmount() +
+            ", customerId='" + getCustomerId() + "'" +
             "}";
     }
 }
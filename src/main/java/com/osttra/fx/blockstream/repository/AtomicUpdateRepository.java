@@ -0,0 +1,35 @@
+package com.osttra.fx.blockstream.repository;
+
+import java.util.List;
+import reactor.core.publisher.Mono;
+
+/**
+ * Repository fragment applying updates in a single atomic round trip.
+ * <p>
+ * Both operations are one {@code findAndModify} that increments the entity version. When expected versions are
+ * given, they are part of the filter, which makes the write conditional without reading the document first.
+ *
+ * @param <T> the entity type.
+ */
+public interface AtomicUpdateRepository<T> {
+    /**
+     * Replace every field of the document with the id of {@code entity}, and return the updated document.
+     *
+     * @param entity the new state of the entity; its null fields are removed from the document.
+     * @param expectedVersions the versions the document may currently have, or {@code null} to update unconditionally.
+     * @return the updated entity, or an empty {@link Mono} if there is no document with that id and version.
+     */
+    Mono<T> update(T entity, List<Long> expectedVersions);
+
+    /**
+     * Set every non-null field of {@code patch} on the document with the given id, and return the updated document.
+     * <p>
+     * Concurrent patches of different fields cannot overwrite each other.
+     *
+     * @param id the id of the entity to update.
+     * @param patch the entity holding the fields to set; its id, version and null fields are ignored.
+     * @param expectedVersions the versions the document may currently have, or {@code null} to update unconditionally.
+     * @return the updated entity, or an empty {@link Mono} if there is no document with that id and version.
+     */
+    Mono<T> partialUpdate(String id, T patch, List<Long> expectedVersions);
+}
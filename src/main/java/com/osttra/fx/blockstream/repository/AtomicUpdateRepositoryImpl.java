@@ -0,0 +1,80 @@
+package com.osttra.fx.blockstream.repository;
+
+import java.util.List;
+import org.bson.Document;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link AtomicUpdateRepository} implementation shared by the entity repositories.
+ */
+public class AtomicUpdateRepositoryImpl<T> implements AtomicUpdateRepository<T> {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public AtomicUpdateRepositoryImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<T> update(T entity, List<Long> expectedVersions) {
+        MongoPersistentEntity<?> persistentEntity = persistentEntity(entity);
+        PersistentPropertyAccessor<T> accessor = persistentEntity.getPropertyAccessor(entity);
+        String id = (String) accessor.getProperty(persistentEntity.getRequiredIdProperty());
+
+        Document fields = fieldsToSet(entity, persistentEntity);
+        Update update = new Update();
+        fields.forEach(update::set);
+        persistentEntity.doWithProperties((MongoPersistentProperty property) -> {
+            if (!property.isIdProperty() && !property.isVersionProperty() && !fields.containsKey(property.getFieldName())) {
+                update.unset(property.getFieldName());
+            }
+        });
+        return findAndModify(id, expectedVersions, update, entity);
+    }
+
+    @Override
+    public Mono<T> partialUpdate(String id, T patch, List<Long> expectedVersions) {
+        // The converter skips null properties, which leaves exactly the fields to set.
+        Document fields = fieldsToSet(patch, persistentEntity(patch));
+        Update update = new Update();
+        fields.forEach(update::set);
+        return findAndModify(id, expectedVersions, update, patch);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<T> findAndModify(String id, List<Long> expectedVersions, Update update, T entity) {
+        Class<T> entityClass = (Class<T>) entity.getClass();
+        MongoPersistentEntity<?> persistentEntity = persistentEntity(entity);
+        Query query = Query.query(Criteria.where(persistentEntity.getRequiredIdProperty().getFieldName()).is(id));
+        if (expectedVersions != null) {
+            query.addCriteria(Criteria.where(persistentEntity.getRequiredVersionProperty().getFieldName()).in(expectedVersions));
+        }
+        // The template adds the $inc of the version property to the update.
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), entityClass);
+    }
+
+    private Document fieldsToSet(T entity, MongoPersistentEntity<?> persistentEntity) {
+        MongoConverter converter = mongoTemplate.getConverter();
+        Document fields = new Document();
+        converter.write(entity, fields);
+        fields.remove(persistentEntity.getRequiredIdProperty().getFieldName());
+        if (persistentEntity.hasVersionProperty()) {
+            fields.remove(persistentEntity.getRequiredVersionProperty().getFieldName());
+        }
+        fields.keySet().removeIf(converter.getTypeMapper()::isTypeKey);
+        return fields;
+    }
+
+    private MongoPersistentEntity<?> persistentEntity(T entity) {
+        return mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(entity.getClass());
+    }
+}
@@ -0,0 +1,30 @@
+package com.osttra.fx.blockstream.repository;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Repository fragment coalescing the concurrent inserts of single documents into bulk writes.
+ * <p>
+ * Both operations override the ones of the base repository, so that callers need not know about the batching. Saves
+ * of documents that are not new are replacements, which are not coalesced: a bulk write does not tell which of its
+ * replacements matched, and a replacement of an outdated version must fail on its own.
+ *
+ * @param <T> the entity type.
+ */
+public interface CoalescedWriteRepository<T> {
+    /**
+     * Insert the entity if it is new, or replace the document with its id and version otherwise.
+     *
+     * @param entity the entity.
+     * @return the saved entity, with its id and version set.
+     */
+    <S extends T> Mono<S> save(S entity);
+
+    /**
+     * Insert the entity, with the next batch of inserts into its collection.
+     *
+     * @param entity the entity.
+     * @return the inserted entity, with its id and version set.
+     */
+    <S extends T> Mono<S> insert(S entity);
+}
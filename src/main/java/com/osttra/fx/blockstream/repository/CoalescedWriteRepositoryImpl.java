@@ -0,0 +1,139 @@
+package com.osttra.fx.blockstream.repository;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mapping.callback.ReactiveEntityCallbacks;
+import org.springframework.data.mapping.model.ConvertingPropertyAccessor;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveAfterSaveCallback;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveBeforeConvertCallback;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveBeforeSaveCallback;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link CoalescedWriteRepository} implementation shared by the entity repositories, with one {@link WriteCoalescer}
+ * per collection.
+ * <p>
+ * The entity is converted and given its id and initial version here rather than by the template, so the mapping events
+ * and entity callbacks of an insert are published here too, in the same order as the template does: before convert,
+ * before save, which validates the entity, and after save once the batch is written.
+ */
+public class CoalescedWriteRepositoryImpl<T> implements CoalescedWriteRepository<T> {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ReactiveEntityCallbacks entityCallbacks;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ApplicationProperties.CoalescedWrites properties;
+
+    private final MongoExceptionTranslator exceptionTranslator = new MongoExceptionTranslator();
+
+    private final Map<String, WriteCoalescer> coalescers = new ConcurrentHashMap<>();
+
+    public CoalescedWriteRepositoryImpl(
+        ReactiveMongoTemplate mongoTemplate,
+        ApplicationContext applicationContext,
+        MeterRegistry meterRegistry,
+        ApplicationProperties applicationProperties
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = applicationContext;
+        this.entityCallbacks = ReactiveEntityCallbacks.create(applicationContext);
+        this.meterRegistry = meterRegistry;
+        this.properties = applicationProperties.getCoalescedWrites();
+    }
+
+    @Override
+    public <S extends T> Mono<S> save(S entity) {
+        MongoPersistentEntity<?> persistentEntity = persistentEntity(entity);
+        if (!persistentEntity.isNew(entity)) {
+            return mongoTemplate.save(entity, persistentEntity.getCollection());
+        }
+        return insert(entity);
+    }
+
+    @Override
+    public <S extends T> Mono<S> insert(S entity) {
+        MongoPersistentEntity<?> persistentEntity = persistentEntity(entity);
+        if (!properties.isEnabled()) {
+            return mongoTemplate.insert(entity, persistentEntity.getCollection());
+        }
+        String collection = persistentEntity.getCollection();
+        return Mono
+            .defer(() -> {
+                eventPublisher.publishEvent(new BeforeConvertEvent<>(entity, collection));
+                return entityCallbacks.callback(ReactiveBeforeConvertCallback.class, entity, collection);
+            })
+            .flatMap(converted -> {
+                MongoConverter converter = mongoTemplate.getConverter();
+                ConvertingPropertyAccessor<S> accessor = new ConvertingPropertyAccessor<>(
+                    persistentEntity.getPropertyAccessor(converted),
+                    converter.getConversionService()
+                );
+                if (persistentEntity.hasVersionProperty() && accessor.getProperty(persistentEntity.getRequiredVersionProperty()) == null) {
+                    accessor.setProperty(persistentEntity.getRequiredVersionProperty(), 0);
+                }
+                Document document = new Document();
+                converter.write(accessor.getBean(), document);
+                if (document.get("_id") == null) {
+                    // The id MongoDB would have generated.
+                    ObjectId id = new ObjectId();
+                    document.put("_id", id);
+                    accessor.setProperty(persistentEntity.getRequiredIdProperty(), id);
+                }
+                eventPublisher.publishEvent(new BeforeSaveEvent<>(accessor.getBean(), document, collection));
+                return entityCallbacks
+                    .callback(ReactiveBeforeSaveCallback.class, accessor.getBean(), document, collection)
+                    .flatMap(saved ->
+                        coalescer(collection)
+                            .submit(new InsertOneModel<>(document))
+                            .then(
+                                Mono.defer(() -> {
+                                    eventPublisher.publishEvent(new AfterSaveEvent<>(saved, document, collection));
+                                    return entityCallbacks.callback(ReactiveAfterSaveCallback.class, saved, document, collection);
+                                })
+                            )
+                    );
+            });
+    }
+
+    private WriteCoalescer coalescer(String collection) {
+        return coalescers.computeIfAbsent(
+            collection,
+            name ->
+                new WriteCoalescer(
+                    name,
+                    properties.getMaxBatchSize(),
+                    properties.getWindow(),
+                    writes ->
+                        mongoTemplate
+                            .getCollection(name)
+                            .flatMap(documents -> Mono.from(documents.bulkWrite(writes, new BulkWriteOptions().ordered(false)))),
+                    exceptionTranslator,
+                    meterRegistry
+                )
+        );
+    }
+
+    private MongoPersistentEntity<?> persistentEntity(T entity) {
+        return mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(entity.getClass());
+    }
+}
@@ -0,0 +1,244 @@
+package com.osttra.fx.blockstream.repository;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.Currencies;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * In-memory copy of the whole {@code currencies} collection, loaded when the application starts, so that reading the
+ * currencies does not query the database.
+ * <p>
+ * The copy is an immutable snapshot, replaced as a whole: currencies changed through this instance must be
+ * {@linkplain #invalidate invalidated}. When MongoDB is a replica set, the change stream of the collection invalidates
+ * the copy on the changes made through any instance; otherwise the copy is read again once its time to live has
+ * passed. A collection larger than the configured size is not copied, and read from the database. The cached
+ * currencies are shared, and must not be modified.
+ */
+@Component
+public class CurrenciesCache {
+
+    private static final String COLLECTION = "currencies";
+
+    private final Logger log = LoggerFactory.getLogger(CurrenciesCache.class);
+
+    private final CurrenciesRepository currenciesRepository;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final ApplicationProperties.CurrenciesCache properties;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Incremented by every invalidation, so that a load started before an invalidation does not install what it read.
+     */
+    private long invalidations;
+
+    /**
+     * The load in progress, shared by the readers that find no snapshot, and the invalidation count it started at.
+     */
+    private Mono<Snapshot> loading;
+
+    private long loadingGeneration;
+
+    private volatile boolean changeStreamActive;
+
+    private Disposable changeStream;
+
+    public CurrenciesCache(
+        CurrenciesRepository currenciesRepository,
+        ReactiveMongoTemplate mongoTemplate,
+        ApplicationProperties applicationProperties
+    ) {
+        this.currenciesRepository = currenciesRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.properties = applicationProperties.getCurrenciesCache();
+    }
+
+    /**
+     * Load the currencies, and follow the change stream of the {@code currencies} collection if MongoDB is a replica
+     * set.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (properties.getSize() == 0) {
+            return;
+        }
+        load()
+            .subscribe(
+                loaded -> {
+                    if (loaded.all == null) {
+                        log.warn("More than {} currencies, they are read from the database", properties.getSize());
+                    }
+                },
+                e -> log.warn("Could not load the currencies: {}", e.getMessage())
+            );
+        if (!properties.isChangeStreams()) {
+            return;
+        }
+        mongoTemplate
+            .executeCommand(new Document("isMaster", 1))
+            .subscribe(
+                reply -> {
+                    if (reply.getString("setName") == null) {
+                        log.info("MongoDB is not a replica set, the currencies are read again every {}", properties.getTimeToLive());
+                        return;
+                    }
+                    changeStreamActive = true;
+                    changeStream = watch().subscribe();
+                    log.info("The currencies follow the change stream of replica set {}", reply.getString("setName"));
+                },
+                e -> log.warn("Could not check whether MongoDB is a replica set: {}", e.getMessage())
+            );
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (changeStream != null) {
+            changeStream.dispose();
+        }
+    }
+
+    /**
+     * @return all the currencies, in the order of the collection.
+     */
+    public Flux<Currencies> findAll() {
+        return snapshot().flatMapMany(current -> current.all != null ? Flux.fromIterable(current.all) : currenciesRepository.findAll());
+    }
+
+    /**
+     * @param id the id of the currency.
+     * @return the currency, or an empty {@link Mono} if there is none with that id.
+     */
+    public Mono<Currencies> findById(String id) {
+        return snapshot()
+            .flatMap(current -> current.all != null ? Mono.justOrEmpty(current.byId.get(id)) : currenciesRepository.findById(id));
+    }
+
+    /**
+     * @param currencyCode the code of the currency, such as {@code EUR}.
+     * @return the currency, or an empty {@link Mono} if there is none with that code.
+     */
+    public Mono<Currencies> findByCurrencyCode(String currencyCode) {
+        return snapshot()
+            .flatMap(current ->
+                current.all != null
+                    ? Mono.justOrEmpty(current.byCode.get(currencyCode))
+                    : currenciesRepository.findFirstByCurrencyCode(currencyCode)
+            );
+    }
+
+    /**
+     * Forget the currencies after one of them was created, changed or deleted; they are read again on the next use.
+     */
+    public synchronized void invalidate() {
+        invalidations++;
+        snapshot = null;
+    }
+
+    private Mono<Snapshot> snapshot() {
+        if (properties.getSize() == 0) {
+            return Mono.just(Snapshot.UNCACHED);
+        }
+        Snapshot current = snapshot;
+        if (current != null && (changeStreamActive || System.nanoTime() - current.loadedAt < properties.getTimeToLive().toNanos())) {
+            return Mono.just(current);
+        }
+        return load();
+    }
+
+    private synchronized Mono<Snapshot> load() {
+        if (loading != null && loadingGeneration == invalidations) {
+            return loading;
+        }
+        long generation = invalidations;
+        long now = System.nanoTime();
+        int size = properties.getSize();
+        loading =
+            currenciesRepository
+                .findAll()
+                .take(size + 1L)
+                .collectList()
+                .map(currencies -> {
+                    Snapshot loaded = currencies.size() > size ? new Snapshot(null, now) : new Snapshot(currencies, now);
+                    synchronized (this) {
+                        if (generation == invalidations) {
+                            snapshot = loaded;
+                        }
+                    }
+                    return loaded;
+                })
+                .doFinally(signal -> loaded(generation))
+                .cache();
+        loadingGeneration = generation;
+        return loading;
+    }
+
+    private synchronized void loaded(long generation) {
+        if (loadingGeneration == generation) {
+            loading = null;
+        }
+    }
+
+    private Flux<ChangeStreamEvent<Document>> watch() {
+        return Flux
+            .<ChangeStreamEvent<Document>>defer(() -> mongoTemplate.changeStream(Document.class).watchCollection(COLLECTION).listen())
+            // The changes made before the change stream was opened are not reported.
+            .doOnSubscribe(subscription -> invalidate())
+            .doOnNext(event -> invalidate())
+            .retryWhen(
+                Retry
+                    .backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                    .maxBackoff(Duration.ofSeconds(30))
+                    .doBeforeRetry(signal -> log.warn("Currencies change stream failed, resuming: {}", signal.failure().getMessage()))
+            );
+    }
+
+    private static final class Snapshot {
+
+        /**
+         * A snapshot of a collection too large to copy, or of a disabled cache.
+         */
+        private static final Snapshot UNCACHED = new Snapshot(null, 0);
+
+        /**
+         * The currencies, or {@code null} if they are not copied.
+         */
+        private final List<Currencies> all;
+
+        private final Map<String, Currencies> byId = new HashMap<>();
+
+        private final Map<String, Currencies> byCode = new HashMap<>();
+
+        private final long loadedAt;
+
+        private Snapshot(List<Currencies> all, long loadedAt) {
+            this.all = all != null ? List.copyOf(all) : null;
+            this.loadedAt = loadedAt;
+            if (all != null) {
+                for (Currencies currencies : all) {
+                    byId.put(currencies.getId(), currencies);
+                    if (currencies.getCurrencyCode() != null) {
+                        byCode.putIfAbsent(currencies.getCurrencyCode(), currencies);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.osttra.fx.blockstream.repository;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.Customer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Small cache of the {@link Customer}s loaded with their wallets, so that a page of wallets costs at most one
+ * {@code $in} query on the customers, and usually none.
+ * <p>
+ * The least recently used customers are evicted beyond the configured size, and a customer is read again once its
+ * time to live has passed. Customers changed through this instance must be {@linkplain #evict evicted}. The cached
+ * customers are shared, and must not be modified.
+ */
+@Component
+public class CustomerCache {
+
+    private final CustomerRepository customerRepository;
+
+    private final long timeToLiveNanos;
+
+    private final LinkedHashMap<String, CachedCustomer> entries;
+
+    /**
+     * Incremented by every eviction, so that a load started before an eviction does not cache what it read.
+     */
+    private long evictions;
+
+    public CustomerCache(CustomerRepository customerRepository, ApplicationProperties applicationProperties) {
+        this.customerRepository = customerRepository;
+        ApplicationProperties.CustomerCache properties = applicationProperties.getCustomerCache();
+        this.timeToLiveNanos = properties.getTimeToLive().toNanos();
+        int size = properties.getSize();
+        this.entries =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedCustomer> eldest) {
+                    return size() > size;
+                }
+            };
+    }
+
+    /**
+     * Find the customers with the given ids, reading the ones not cached in a single query.
+     *
+     * @param ids the ids of the customers.
+     * @return the customers found, by id.
+     */
+    public Mono<Map<String, Customer>> findAllById(Collection<String> ids) {
+        Map<String, Customer> customers = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.nanoTime();
+        long generation;
+        synchronized (this) {
+            generation = evictions;
+            for (String id : ids) {
+                CachedCustomer cached = entries.get(id);
+                if (cached != null && now - cached.loadedAt < timeToLiveNanos) {
+                    customers.put(id, cached.customer);
+                } else if (!customers.containsKey(id)) {
+                    missing.add(id);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return Mono.just(customers);
+        }
+        return customerRepository
+            .findAllById(missing)
+            .collectList()
+            .map(loaded -> {
+                synchronized (this) {
+                    for (Customer customer : loaded) {
+                        customers.put(customer.getId(), customer);
+                        if (generation == evictions) {
+                            entries.put(customer.getId(), new CachedCustomer(customer, now));
+                        }
+                    }
+                }
+                return customers;
+            });
+    }
+
+    /**
+     * Forget a customer that was changed or deleted.
+     *
+     * @param id the id of the customer.
+     */
+    public synchronized void evict(String id) {
+        evictions++;
+        entries.remove(id);
+    }
+
+    private static final class CachedCustomer {
+
+        private final Customer customer;
+
+        private final long loadedAt;
+
+        private CachedCustomer(Customer customer, long loadedAt) {
+            this.customer = customer;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
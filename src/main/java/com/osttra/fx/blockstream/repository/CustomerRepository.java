@@ -9,4 +9,5 @@ import org.springframework.stereotype.Repository;
  */
 @SuppressWarnings("unused")
 @Repository
-public interface CustomerRepository extends ReactiveMongoRepository<Customer, String> {}
+public interface CustomerRepository
+    extends ReactiveMongoRepository<Customer, String>, AtomicUpdateRepository<Customer>, CoalescedWriteRepository<Customer> {}
@@ -1,12 +1,31 @@
 package com.osttra.fx.blockstream.repository;
 
 import com.osttra.fx.blockstream.domain.SmartTrade;
+import java.util.Collection;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * Spring Data MongoDB reactive repository for the SmartTrade entity.
  */
 @SuppressWarnings("unused")
 @Repository
-public interface SmartTradeRepository extends ReactiveMongoRepository<SmartTrade, String> {}
+public interface SmartTradeRepository
+    extends ReactiveMongoRepository<SmartTrade, String>, AtomicUpdateRepository<SmartTrade>, CoalescedWriteRepository<SmartTrade> {
+    Flux<SmartTrade> findAllByIdNotNull(Pageable pageable);
+
+    Mono<SmartTrade> findOneByTransactionId(String transactionId);
+
+    Flux<SmartTrade> findAllByTransactionIdIn(Collection<String> transactionIds);
+
+    /**
+     * Delete the smartTrade with the given id, unlike {@code deleteById} telling whether there was one.
+     *
+     * @param id the id of the smartTrade.
+     * @return the number of smartTrades deleted, from the {@code DeleteResult} of the remove.
+     */
+    Mono<Long> removeById(String id);
+}
@@ -0,0 +1,87 @@
+package com.osttra.fx.blockstream.repository;
+
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.osttra.fx.blockstream.domain.Wallet;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Repository fragment changing {@link Wallet} balances with a conditional {@code $inc}, so that concurrent changes
+ * cannot overwrite each other and a debit never takes a balance below zero.
+ * <p>
+ * Every balance changed is recorded in the {@link WalletLedger}, by the same write as the balance.
+ */
+public interface WalletBalanceRepository {
+    /**
+     * Add an amount to the balance of a wallet, in a single {@code findAndModify} that also increments its version.
+     *
+     * @param id the id of the wallet.
+     * @param amount the amount to add, negative for a debit.
+     * @return the updated wallet, or an empty {@link Mono} if there is no wallet with that id, or if the amount is a
+     * debit larger than its balance.
+     */
+    Mono<Wallet> addToBalance(String id, BigDecimal amount);
+
+    /**
+     * Add amounts to the balances of many wallets, in a single unordered {@code bulkWrite}.
+     * <p>
+     * Each wallet is marked with the id of the batch, which is how the outcome of every wallet is known, and which
+     * makes resending the same batch harmless: a wallet already marked is not changed again. Only the last
+     * {@value WalletBalanceRepositoryImpl#BATCH_HISTORY} batches are remembered per wallet.
+     *
+     * @param amounts the amount to add to each wallet, by wallet id; negative for a debit.
+     * @param batchId the id of the batch.
+     * @return the state of the wallets that exist after the write, each telling whether the batch applied to it.
+     */
+    Flux<BalanceUpdate> addToBalances(Map<String, BigDecimal> amounts, String batchId);
+
+    /**
+     * Find which of the given wallets a batch of {@link #addToBalances} was applied to, without changing them.
+     *
+     * @param ids the ids of the wallets.
+     * @param batchId the id of the batch.
+     * @return the ids of the wallets the batch was applied to.
+     */
+    Flux<String> findAppliedTo(Collection<String> ids, String batchId);
+
+    /**
+     * Take amounts out of some wallets and add amounts to others, in the transaction of the given session.
+     * <p>
+     * The writes form one ordered {@code bulkWrite}: all the debits, guarded by the balance, then all the credits.
+     *
+     * @param session the session, in a started transaction.
+     * @param debits the positive amount to take out of each wallet, by wallet id.
+     * @param credits the positive amount to add to each wallet, by wallet id.
+     * @return whether every wallet was updated; if not, the transaction must be aborted.
+     */
+    Mono<Boolean> transferBalances(ClientSession session, Map<String, BigDecimal> debits, Map<String, BigDecimal> credits);
+
+    /**
+     * The state of a wallet after a batch of balance changes.
+     */
+    final class BalanceUpdate {
+
+        private final Wallet wallet;
+
+        private final boolean applied;
+
+        public BalanceUpdate(Wallet wallet, boolean applied) {
+            this.wallet = wallet;
+            this.applied = applied;
+        }
+
+        public Wallet getWallet() {
+            return wallet;
+        }
+
+        /**
+         * Whether the amount of the batch was added to the wallet, now or when the batch was first sent.
+         */
+        public boolean isApplied() {
+            return applied;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.osttra.fx.blockstream.repository;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.PushOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.osttra.fx.blockstream.domain.Wallet;
+import com.osttra.fx.blockstream.repository.convert.Decimals;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link WalletBalanceRepository} implementation.
+ */
+public class WalletBalanceRepositoryImpl implements WalletBalanceRepository {
+
+    /**
+     * Number of batch ids kept on each wallet.
+     */
+    static final int BATCH_HISTORY = 64;
+
+    private static final String COLLECTION = "wallet";
+
+    private static final String AMOUNT = "amount";
+
+    private static final String VERSION = "version";
+
+    private static final String APPLIED_BATCHES = "applied_batches";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final WalletLedger walletLedger;
+
+    public WalletBalanceRepositoryImpl(ReactiveMongoTemplate mongoTemplate, WalletLedger walletLedger) {
+        this.mongoTemplate = mongoTemplate;
+        this.walletLedger = walletLedger;
+    }
+
+    @Override
+    public Mono<Wallet> addToBalance(String id, BigDecimal amount) {
+        Query query = Query.query(Criteria.where("_id").is(id));
+        if (amount.signum() < 0) {
+            query.addCriteria(Criteria.where(AMOUNT).gte(Decimals.toDecimal128(amount.negate())));
+        }
+        // The template adds the $inc of the version property to the update.
+        Update update = new Update()
+            .inc(AMOUNT, Decimals.toDecimal128(amount))
+            .push(WalletLedger.PENDING_MOVEMENTS, WalletLedger.pendingChange(id, amount, null));
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Wallet.class);
+    }
+
+    @Override
+    public Flux<BalanceUpdate> addToBalances(Map<String, BigDecimal> amounts, String batchId) {
+        if (amounts.isEmpty()) {
+            return Flux.empty();
+        }
+        List<Object> ids = new ArrayList<>(amounts.size());
+        List<UpdateOneModel<Document>> updates = new ArrayList<>(amounts.size());
+        amounts.forEach((id, amount) -> {
+            Object storedId = storedId(id);
+            ids.add(storedId);
+            Bson filter = Filters.and(balanceFilter(storedId, amount), Filters.ne(APPLIED_BATCHES, batchId));
+            Bson update = Updates.combine(
+                balanceUpdate(amount),
+                Updates.pushEach(APPLIED_BATCHES, List.of(batchId), new PushOptions().slice(-BATCH_HISTORY)),
+                Updates.push(WalletLedger.PENDING_MOVEMENTS, WalletLedger.pendingChange(id, amount, batchId))
+            );
+            updates.add(new UpdateOneModel<>(filter, update));
+        });
+        Query query = Query.query(Criteria.where("_id").in(ids));
+        query.fields().exclude(WalletLedger.PENDING_MOVEMENTS);
+        return mongoTemplate
+            .getCollection(COLLECTION)
+            .flatMap(collection -> Mono.from(collection.bulkWrite(updates, new BulkWriteOptions().ordered(false))))
+            .thenMany(mongoTemplate.find(query, Document.class, COLLECTION))
+            .map(document -> {
+                List<?> appliedBatches = document.get(APPLIED_BATCHES, List.class);
+                boolean applied = appliedBatches != null && appliedBatches.contains(batchId);
+                return new BalanceUpdate(mongoTemplate.getConverter().read(Wallet.class, document), applied);
+            });
+    }
+
+    @Override
+    public Flux<String> findAppliedTo(Collection<String> ids, String batchId) {
+        List<Object> storedIds = new ArrayList<>(ids.size());
+        ids.forEach(id -> storedIds.add(storedId(id)));
+        Query query = Query.query(Criteria.where("_id").in(storedIds).and(APPLIED_BATCHES).is(batchId));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, Document.class, COLLECTION).map(document -> document.get("_id").toString());
+    }
+
+    @Override
+    public Mono<Boolean> transferBalances(ClientSession session, Map<String, BigDecimal> debits, Map<String, BigDecimal> credits) {
+        List<UpdateOneModel<Document>> updates = new ArrayList<>(debits.size() + credits.size());
+        debits.forEach((id, amount) ->
+            updates.add(new UpdateOneModel<>(balanceFilter(storedId(id), amount.negate()), balanceUpdate(amount.negate())))
+        );
+        credits.forEach((id, amount) -> updates.add(new UpdateOneModel<>(balanceFilter(storedId(id), amount), balanceUpdate(amount))));
+        if (updates.isEmpty()) {
+            return Mono.just(true);
+        }
+        return mongoTemplate
+            .getCollection(COLLECTION)
+            .flatMap(collection -> Mono.from(collection.bulkWrite(session, updates, new BulkWriteOptions().ordered(true))))
+            .flatMap(result -> {
+                if (result.getMatchedCount() != updates.size()) {
+                    return Mono.just(false);
+                }
+                Map<String, BigDecimal> changes = new LinkedHashMap<>(credits);
+                debits.forEach((id, amount) -> changes.merge(id, amount.negate(), BigDecimal::add));
+                return walletLedger.recordChanges(session, changes).thenReturn(true);
+            });
+    }
+
+    /**
+     * Match the wallet with the given id, provided its balance covers the amount if it is a debit.
+     */
+    private static Bson balanceFilter(Object storedId, BigDecimal amount) {
+        Bson id = Filters.eq("_id", storedId);
+        return amount.signum() < 0 ? Filters.and(id, Filters.gte(AMOUNT, Decimals.toDecimal128(amount.negate()))) : id;
+    }
+
+    private static Bson balanceUpdate(BigDecimal amount) {
+        return Updates.combine(Updates.inc(AMOUNT, Decimals.toDecimal128(amount)), Updates.inc(VERSION, 1L));
+    }
+
+    private static Object storedId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+}
@@ -0,0 +1,20 @@
+package com.osttra.fx.blockstream.repository;
+
+import com.osttra.fx.blockstream.domain.Wallet;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Repository fragment reading {@link Wallet}s with the customer they reference.
+ * <p>
+ * The customers of each page of wallets are read together, through the {@link CustomerCache}, rather than one query
+ * per wallet. A wallet whose customer no longer exists keeps its customer id, without a customer.
+ */
+public interface WalletCustomerRepository {
+    Flux<Wallet> findAllWithEagerRelationships(Pageable pageable);
+
+    Flux<Wallet> findAllWithEagerRelationships();
+
+    Mono<Wallet> findOneWithEagerRelationships(String id);
+}
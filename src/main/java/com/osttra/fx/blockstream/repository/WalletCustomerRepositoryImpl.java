@@ -0,0 +1,68 @@
+package com.osttra.fx.blockstream.repository;
+
+import com.osttra.fx.blockstream.domain.Wallet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link WalletCustomerRepository} implementation.
+ */
+public class WalletCustomerRepositoryImpl implements WalletCustomerRepository {
+
+    /**
+     * Number of wallets whose customers are read together when the wallets are not paged.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final CustomerCache customerCache;
+
+    public WalletCustomerRepositoryImpl(ReactiveMongoTemplate mongoTemplate, CustomerCache customerCache) {
+        this.mongoTemplate = mongoTemplate;
+        this.customerCache = customerCache;
+    }
+
+    @Override
+    public Flux<Wallet> findAllWithEagerRelationships(Pageable pageable) {
+        return mongoTemplate.find(new Query().with(pageable), Wallet.class).collectList().flatMapMany(this::withCustomers);
+    }
+
+    @Override
+    public Flux<Wallet> findAllWithEagerRelationships() {
+        return mongoTemplate.findAll(Wallet.class).buffer(BATCH_SIZE).concatMap(this::withCustomers);
+    }
+
+    @Override
+    public Mono<Wallet> findOneWithEagerRelationships(String id) {
+        return mongoTemplate.findById(id, Wallet.class).flatMap(wallet -> withCustomers(List.of(wallet)).next());
+    }
+
+    private Flux<Wallet> withCustomers(List<Wallet> wallets) {
+        Set<String> customerIds = new LinkedHashSet<>();
+        for (Wallet wallet : wallets) {
+            if (wallet.getCustomerId() != null) {
+                customerIds.add(wallet.getCustomerId());
+            }
+        }
+        if (customerIds.isEmpty()) {
+            return Flux.fromIterable(wallets);
+        }
+        return customerCache
+            .findAllById(customerIds)
+            .flatMapIterable(customers -> {
+                for (Wallet wallet : wallets) {
+                    if (wallet.getCustomerId() != null && customers.containsKey(wallet.getCustomerId())) {
+                        wallet.setCustomer(customers.get(wallet.getCustomerId()));
+                    }
+                }
+                return wallets;
+            });
+    }
+}
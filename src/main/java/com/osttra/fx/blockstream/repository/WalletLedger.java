@@ -0,0 +1,352 @@
+package com.osttra.fx.blockstream.repository;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.osttra.fx.blockstream.domain.Wallet;
+import com.osttra.fx.blockstream.repository.convert.Decimals;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Append-only ledger of the balance changes of the {@link Wallet}s, with periodic snapshots of the balances.
+ * <p>
+ * Every change of a balance is recorded in the {@code wallet_movement} collection, in the order of the movement ids:
+ * a {@code CHANGE} adds its amount to the balance, a {@code BALANCE} sets it, when a wallet is created or its amount
+ * overwritten. The movements are never updated nor deleted. A {@linkplain #snapshot snapshot} in the
+ * {@code wallet_snapshot} collection folds the movements of a wallet up to a given one, so that the balance at any
+ * point in time is read from the last snapshot taken before then, plus the movements since that snapshot.
+ * <p>
+ * The credits, debits and batches of movements push their movement onto the {@code pending_movements} of the wallet, in
+ * the same update as the balance, and the pending movements are {@linkplain #drain drained} into the ledger in batches;
+ * balances are read from both meanwhile. The transfers record their movements in their transaction, and the balances
+ * set directly are recorded just after being set. The movements of a batch are recorded once per wallet, so a batch
+ * sent again does not record them twice.
+ */
+@Component
+public class WalletLedger {
+
+    private static final String MOVEMENTS = "wallet_movement";
+
+    private static final String SNAPSHOTS = "wallet_snapshot";
+
+    private static final String SNAPSHOT_CURSOR = "wallet_snapshot_cursor";
+
+    private static final String WALLETS = "wallet";
+
+    /**
+     * Field of the wallets holding the movements not drained into the ledger yet.
+     */
+    static final String PENDING_MOVEMENTS = "pending_movements";
+
+    /**
+     * Number of wallets drained at once.
+     */
+    private static final int DRAIN_BATCH_SIZE = 500;
+
+    private static final String CHANGE = "CHANGE";
+
+    private static final String BALANCE = "BALANCE";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public WalletLedger(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Create the movement of an amount added to the balance of a wallet, to push onto its {@value #PENDING_MOVEMENTS}
+     * in the update of the balance.
+     *
+     * @param walletId the id of the wallet.
+     * @param amount the amount added, negative for a debit.
+     * @param batchId the id of the batch, recorded once per wallet; or {@code null}.
+     */
+    static Document pendingChange(String walletId, BigDecimal amount, String batchId) {
+        return movement(walletId, CHANGE, amount, batchId, new Date());
+    }
+
+    /**
+     * Move the movements pending on the wallets into the ledger, {@value #DRAIN_BATCH_SIZE} wallets at a time. A
+     * movement is inserted before being pulled from its wallet, and inserting it again is harmless, so a drain can be
+     * interrupted at any point.
+     */
+    public Mono<Void> drain() {
+        return drainBatch().repeat().takeUntil(drained -> drained < DRAIN_BATCH_SIZE).then();
+    }
+
+    /**
+     * @return the number of wallets drained.
+     */
+    private Mono<Integer> drainBatch() {
+        Query query = Query.query(Criteria.where(PENDING_MOVEMENTS + "._id").exists(true)).limit(DRAIN_BATCH_SIZE);
+        query.fields().include(PENDING_MOVEMENTS);
+        return mongoTemplate
+            .find(query, Document.class, WALLETS)
+            .collectList()
+            .flatMap(wallets -> {
+                if (wallets.isEmpty()) {
+                    return Mono.just(0);
+                }
+                List<Document> movements = new ArrayList<>();
+                List<UpdateOneModel<Document>> pulls = new ArrayList<>(wallets.size());
+                for (Document wallet : wallets) {
+                    List<Object> ids = new ArrayList<>();
+                    for (Document movement : wallet.getList(PENDING_MOVEMENTS, Document.class)) {
+                        movements.add(movement);
+                        ids.add(movement.get("_id"));
+                    }
+                    pulls.add(
+                        new UpdateOneModel<>(Filters.eq("_id", wallet.get("_id")), Updates.pull(PENDING_MOVEMENTS, Filters.in("_id", ids)))
+                    );
+                }
+                return insert(null, movements)
+                    .then(mongoTemplate.getCollection(WALLETS))
+                    .flatMap(collection -> Mono.from(collection.bulkWrite(pulls, new BulkWriteOptions().ordered(false))))
+                    .thenReturn(wallets.size());
+            });
+    }
+
+    /**
+     * Record amounts added to the balances of wallets, in the transaction of the given session.
+     *
+     * @param session the session, in a started transaction.
+     * @param amounts the amount added to each wallet, by wallet id; negative for a debit.
+     */
+    public Mono<Void> recordChanges(ClientSession session, Map<String, BigDecimal> amounts) {
+        return insert(session, movements(amounts, null));
+    }
+
+    /**
+     * Record the balance a wallet was given, rather than changed by an amount.
+     *
+     * @param walletId the id of the wallet.
+     * @param balance the balance.
+     * @param batchId the id of the batch, recorded once per wallet; or {@code null}.
+     */
+    public Mono<Void> recordBalance(String walletId, BigDecimal balance, String batchId) {
+        return insert(null, List.of(movement(walletId, BALANCE, balance, batchId, new Date())));
+    }
+
+    /**
+     * Find the balance of a wallet at a point in time, from the last snapshot taken before then and the movements
+     * since that snapshot.
+     *
+     * @param walletId the id of the wallet.
+     * @param at the point in time.
+     * @return the balance, or an empty {@link Mono} if nothing was recorded for the wallet before then.
+     */
+    public Mono<BigDecimal> findBalanceAt(String walletId, Instant at) {
+        Date date = Date.from(at);
+        Query pendingQuery = Query.query(Criteria.where("_id").is(storedId(walletId)));
+        pendingQuery.fields().include(PENDING_MOVEMENTS);
+        Query snapshotQuery = Query
+            .query(Criteria.where("wallet_id").is(walletId).and("as_of").lte(date))
+            .with(Sort.by(Sort.Direction.DESC, "as_of"))
+            .limit(1);
+        return findSnapshot(snapshotQuery)
+            .flatMap(snapshot -> {
+                Criteria tail = Criteria.where("wallet_id").is(walletId).and("created_date").lte(date);
+                if (snapshot.lastMovementId != null) {
+                    tail.and("_id").gt(snapshot.lastMovementId);
+                }
+                Flux<Document> pending = mongoTemplate
+                    .findOne(pendingQuery, Document.class, WALLETS)
+                    .flatMapIterable(wallet -> wallet.getList(PENDING_MOVEMENTS, Document.class, List.of()))
+                    .filter(movement ->
+                        !movement.getDate("created_date").after(date) &&
+                        (snapshot.lastMovementId == null || objectId(movement.get("_id")).compareTo(snapshot.lastMovementId) > 0)
+                    );
+                // A movement being drained can be in both.
+                Flux<Document> movements = Flux
+                    .merge(mongoTemplate.find(Query.query(tail), Document.class, MOVEMENTS), pending)
+                    .distinct(movement -> movement.get("_id"))
+                    .sort(Comparator.comparing(movement -> objectId(movement.get("_id"))));
+                return fold(snapshot, movements);
+            })
+            .filter(folded -> folded.balance != null)
+            .map(folded -> folded.balance);
+    }
+
+    /**
+     * Drain the pending movements, then fold the movements of every wallet with movements since the last snapshots, up
+     * to the given movement id, into a new snapshot.
+     * <p>
+     * The movement id the snapshots stopped at is stored, so the next snapshots, by this instance or another, start from
+     * there; it only moves forward.
+     *
+     * @param until the movement id to stop at, excluded; movements must no longer be created before it.
+     * @return the number of snapshots taken.
+     */
+    public Mono<Long> snapshot(ObjectId until) {
+        Query cursorQuery = Query.query(Criteria.where("_id").is(SNAPSHOT_CURSOR));
+        return drain()
+            .then(mongoTemplate.findOne(cursorQuery, Document.class, SNAPSHOT_CURSOR))
+            .map(cursor -> Criteria.where("_id").gte(cursor.getObjectId("until")).lt(until))
+            .defaultIfEmpty(Criteria.where("_id").lt(until))
+            .flatMap(recent ->
+                mongoTemplate
+                    .findDistinct(Query.query(recent), "wallet_id", MOVEMENTS, String.class)
+                    .flatMap(walletId -> snapshot(walletId, until), 4)
+                    .count()
+            )
+            .flatMap(count -> mongoTemplate.upsert(cursorQuery, new Update().max("until", until), SNAPSHOT_CURSOR).thenReturn(count));
+    }
+
+    private Mono<Boolean> snapshot(String walletId, ObjectId until) {
+        Query snapshotQuery = Query
+            .query(Criteria.where("wallet_id").is(walletId))
+            .with(Sort.by(Sort.Direction.DESC, "last_movement_id"))
+            .limit(1);
+        return findSnapshot(snapshotQuery)
+            .flatMap(previous -> {
+                Criteria tail = Criteria.where("wallet_id").is(walletId);
+                if (previous.lastMovementId != null) {
+                    tail.and("_id").gt(previous.lastMovementId).lt(until);
+                } else {
+                    tail.and("_id").lt(until);
+                }
+                return fold(previous, mongoTemplate.find(Query.query(tail).with(Sort.by("_id")), Document.class, MOVEMENTS))
+                    .filter(folded -> folded.lastMovementId != null && !folded.lastMovementId.equals(previous.lastMovementId));
+            })
+            .flatMap(folded ->
+                mongoTemplate
+                    .getCollection(SNAPSHOTS)
+                    .flatMap(snapshots ->
+                        Mono.from(
+                            snapshots.insertOne(
+                                new Document("wallet_id", walletId)
+                                    .append("balance", Decimals.toDecimal128(folded.balance))
+                                    .append("last_movement_id", folded.lastMovementId)
+                                    .append("as_of", folded.asOf)
+                                    .append("created_date", new Date())
+                            )
+                        )
+                    )
+                    .map(result -> true)
+                    // Another instance took the same snapshot.
+                    .onErrorResume(WalletLedger::isDuplicateKey, e -> Mono.just(false))
+            )
+            .filter(taken -> taken);
+    }
+
+    /**
+     * @return the snapshot found, or an empty balance folded up to no movement.
+     */
+    private Mono<Folded> findSnapshot(Query query) {
+        return mongoTemplate
+            .findOne(query, Document.class, SNAPSHOTS)
+            .map(snapshot -> new Folded(objectId(snapshot.get("last_movement_id")), decimal(snapshot.get("balance")), null))
+            .defaultIfEmpty(new Folded(null, null, null));
+    }
+
+    private static Mono<Folded> fold(Folded snapshot, Flux<Document> movements) {
+        return movements.reduce(
+            snapshot,
+            (folded, movement) -> {
+                BigDecimal amount = decimal(movement.get("amount"));
+                BigDecimal balance = BALANCE.equals(movement.getString("kind"))
+                    ? amount
+                    : (folded.balance != null ? folded.balance : BigDecimal.ZERO).add(amount);
+                return new Folded(objectId(movement.get("_id")), balance, movement.getDate("created_date"));
+            }
+        );
+    }
+
+    private Mono<Void> insert(ClientSession session, List<Document> movements) {
+        if (movements.isEmpty()) {
+            return Mono.empty();
+        }
+        InsertManyOptions options = new InsertManyOptions().ordered(false);
+        return mongoTemplate
+            .getCollection(MOVEMENTS)
+            .flatMap(collection ->
+                Mono.from(session != null ? collection.insertMany(session, movements, options) : collection.insertMany(movements, options))
+            )
+            .then()
+            // The movements of a batch sent again, already recorded.
+            .onErrorResume(e -> session == null && isDuplicateKey(e), e -> Mono.empty());
+    }
+
+    private static Object storedId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    private static List<Document> movements(Map<String, BigDecimal> amounts, String batchId) {
+        List<Document> movements = new ArrayList<>(amounts.size());
+        Date now = new Date();
+        amounts.forEach((walletId, amount) -> movements.add(movement(walletId, CHANGE, amount, batchId, now)));
+        return movements;
+    }
+
+    private static Document movement(String walletId, String kind, BigDecimal amount, String batchId, Date date) {
+        Document movement = new Document("_id", new ObjectId())
+            .append("wallet_id", walletId)
+            .append("kind", kind)
+            .append("amount", Decimals.toDecimal128(amount));
+        if (batchId != null) {
+            movement.append("batch_id", batchId);
+        }
+        return movement.append("created_date", date);
+    }
+
+    private static BigDecimal decimal(Object value) {
+        return value instanceof Decimal128 ? ((Decimal128) value).bigDecimalValue() : new BigDecimal(value.toString());
+    }
+
+    private static ObjectId objectId(Object value) {
+        return value instanceof ObjectId ? (ObjectId) value : new ObjectId(value.toString());
+    }
+
+    private static boolean isDuplicateKey(Throwable e) {
+        if (e instanceof MongoWriteException) {
+            return ((MongoWriteException) e).getError().getCategory() == ErrorCategory.DUPLICATE_KEY;
+        }
+        if (e instanceof MongoBulkWriteException) {
+            return ((MongoBulkWriteException) e).getWriteErrors()
+                .stream()
+                .allMatch(error -> ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY);
+        }
+        return false;
+    }
+
+    /**
+     * A balance, folded up to a movement.
+     */
+    private static final class Folded {
+
+        private final ObjectId lastMovementId;
+
+        private final BigDecimal balance;
+
+        private final Date asOf;
+
+        private Folded(ObjectId lastMovementId, BigDecimal balance, Date asOf) {
+            this.lastMovementId = lastMovementId;
+            this.balance = balance;
+            this.asOf = asOf;
+        }
+    }
+}
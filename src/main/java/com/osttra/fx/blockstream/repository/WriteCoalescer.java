@@ -0,0 +1,198 @@
+package com.osttra.fx.blockstream.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.WriteModel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.bson.Document;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Coalesces the concurrent writes to one collection into unordered bulk writes.
+ * <p>
+ * A batch is written once it holds the maximum number of writes, or once the window has passed since its first write.
+ * Each write completes on its own: a write error fails only its write, translated as the template would translate it,
+ * while an error of the whole bulk write fails every write of the batch.
+ */
+final class WriteCoalescer {
+
+    static final String BATCH_SIZE_METER_NAME = "repository.coalesced-writes.batch-size";
+
+    static final String LATENCY_METER_NAME = "repository.coalesced-writes.latency";
+
+    static final String COLLECTION_DIMENSION = "collection";
+
+    private final int maxBatchSize;
+
+    private final Duration window;
+
+    private final Function<List<WriteModel<Document>>, Mono<BulkWriteResult>> bulkWriter;
+
+    private final PersistenceExceptionTranslator exceptionTranslator;
+
+    private final DistributionSummary batchSizes;
+
+    private final Timer latency;
+
+    private List<Pending> batch = new ArrayList<>();
+
+    /**
+     * Incremented by every batch written, so that the window of a batch does not write the next one.
+     */
+    private long generation;
+
+    WriteCoalescer(
+        String collection,
+        int maxBatchSize,
+        Duration window,
+        Function<List<WriteModel<Document>>, Mono<BulkWriteResult>> bulkWriter,
+        PersistenceExceptionTranslator exceptionTranslator,
+        MeterRegistry registry
+    ) {
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+        this.bulkWriter = bulkWriter;
+        this.exceptionTranslator = exceptionTranslator;
+        this.batchSizes =
+            DistributionSummary
+                .builder(BATCH_SIZE_METER_NAME)
+                .baseUnit("documents")
+                .description("Number of documents written by a coalesced bulk write.")
+                .tag(COLLECTION_DIMENSION, collection)
+                .register(registry);
+        this.latency =
+            Timer
+                .builder(LATENCY_METER_NAME)
+                .description("Time from the first write of a batch until its bulk write completes.")
+                .tag(COLLECTION_DIMENSION, collection)
+                .register(registry);
+    }
+
+    /**
+     * Write with the next batch.
+     *
+     * @param write the write.
+     * @return empty once written, or the error of the write.
+     */
+    Mono<Void> submit(WriteModel<Document> write) {
+        return Mono.create(sink -> {
+            List<Pending> full = null;
+            long scheduled = -1;
+            synchronized (this) {
+                batch.add(new Pending(write, sink));
+                if (batch.size() >= maxBatchSize) {
+                    full = next();
+                } else if (batch.size() == 1) {
+                    scheduled = generation;
+                }
+            }
+            if (full != null) {
+                write(full);
+            } else if (scheduled >= 0) {
+                long windowGeneration = scheduled;
+                Schedulers.parallel().schedule(() -> expire(windowGeneration), window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    private void expire(long windowGeneration) {
+        List<Pending> expired;
+        synchronized (this) {
+            if (generation != windowGeneration || batch.isEmpty()) {
+                return;
+            }
+            expired = next();
+        }
+        write(expired);
+    }
+
+    /**
+     * @return the current batch, replaced by a new one.
+     */
+    private List<Pending> next() {
+        List<Pending> current = batch;
+        batch = new ArrayList<>(Math.min(maxBatchSize, 16));
+        generation++;
+        return current;
+    }
+
+    private void write(List<Pending> writes) {
+        List<WriteModel<Document>> models = new ArrayList<>(writes.size());
+        for (Pending pending : writes) {
+            models.add(pending.write);
+        }
+        batchSizes.record(writes.size());
+        long start = writes.get(0).submitted;
+        Mono
+            .defer(() -> bulkWriter.apply(models))
+            .doOnTerminate(() -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+            .subscribe(
+                result -> {},
+                e -> failed(writes, e),
+                () -> {
+                    for (Pending pending : writes) {
+                        pending.sink.success();
+                    }
+                }
+            );
+    }
+
+    private void failed(List<Pending> writes, Throwable e) {
+        if (!(e instanceof MongoBulkWriteException)) {
+            Throwable error = translate(e);
+            for (Pending pending : writes) {
+                pending.sink.error(error);
+            }
+            return;
+        }
+        MongoBulkWriteException bulk = (MongoBulkWriteException) e;
+        Throwable[] errors = new Throwable[writes.size()];
+        for (BulkWriteError error : bulk.getWriteErrors()) {
+            errors[error.getIndex()] = translate(new MongoWriteException(error, bulk.getServerAddress()));
+        }
+        // The other writes are applied, but not acknowledged as the write concern asks.
+        Throwable writeConcernError = bulk.getWriteConcernError() == null ? null : translate(bulk);
+        for (int i = 0; i < errors.length; i++) {
+            Throwable error = errors[i] != null ? errors[i] : writeConcernError;
+            if (error == null) {
+                writes.get(i).sink.success();
+            } else {
+                writes.get(i).sink.error(error);
+            }
+        }
+    }
+
+    private Throwable translate(Throwable e) {
+        if (!(e instanceof RuntimeException)) {
+            return e;
+        }
+        RuntimeException translated = exceptionTranslator.translateExceptionIfPossible((RuntimeException) e);
+        return translated == null ? e : translated;
+    }
+
+    private static final class Pending {
+
+        private final WriteModel<Document> write;
+
+        private final MonoSink<Void> sink;
+
+        private final long submitted = System.nanoTime();
+
+        private Pending(WriteModel<Document> write, MonoSink<Void> sink) {
+            this.write = write;
+            this.sink = sink;
+        }
+    }
+}
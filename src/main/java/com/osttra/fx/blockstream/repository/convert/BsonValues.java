@@ -0,0 +1,69 @@
+package com.osttra.fx.blockstream.repository.convert;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+
+/**
+ * Conversions of single values, stored the same way as by the mapping converter.
+ */
+final class BsonValues {
+
+    private BsonValues() {}
+
+    static Object writeId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    static String readId(Object id) {
+        if (id == null) {
+            return null;
+        }
+        return id instanceof ObjectId ? ((ObjectId) id).toHexString() : id.toString();
+    }
+
+    static Long readLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    static Double readDouble(Object value) {
+        return value == null ? null : ((Number) value).doubleValue();
+    }
+
+    static Decimal128 writeDecimal(BigDecimal value) {
+        return Decimals.toDecimal128(value);
+    }
+
+    static BigDecimal readDecimal(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Decimal128) {
+            return ((Decimal128) value).bigDecimalValue();
+        }
+        // Amounts written before the decimal128-amounts change unit.
+        return new BigDecimal(value.toString());
+    }
+
+    /**
+     * Dates are stored as the start of the day in the default time zone, like the Spring Data JSR-310 converters do.
+     */
+    static Date writeDate(LocalDate value) {
+        return Date.from(value.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    static LocalDate readDate(Object value) {
+        return value == null ? null : LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault()).toLocalDate();
+    }
+
+    static void putIfNotNull(Document document, String key, Object value) {
+        if (value != null) {
+            document.put(key, value);
+        }
+    }
+}
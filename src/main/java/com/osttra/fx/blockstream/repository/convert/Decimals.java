@@ -0,0 +1,21 @@
+package com.osttra.fx.blockstream.repository.convert;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import org.bson.types.Decimal128;
+
+/**
+ * Conversion of amounts to {@code Decimal128}, shared by every path that stores them.
+ */
+public final class Decimals {
+
+    private Decimals() {}
+
+    /**
+     * Values of more than 34 significant digits are rounded to the 34 that {@code Decimal128} holds, which it would
+     * refuse otherwise.
+     */
+    public static Decimal128 toDecimal128(BigDecimal value) {
+        return new Decimal128(value.round(MathContext.DECIMAL128));
+    }
+}
@@ -0,0 +1,46 @@
+package com.osttra.fx.blockstream.repository.convert;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded pool of canonical {@link String}s, for low-cardinality values such as currency codes and party names.
+ * <p>
+ * The pool is a direct-mapped table: each slot holds the last string interned with its hash, so a value that is
+ * frequent keeps its slot while a rare one is eventually evicted. The memory held never exceeds the table, unlike
+ * {@link String#intern()}, and lookups take no lock.
+ */
+public final class InternPool {
+
+    private final AtomicReferenceArray<String> table;
+
+    private final int mask;
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two.
+     */
+    public InternPool(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.table = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Get the canonical instance equal to the given string.
+     *
+     * @param value the string, possibly {@code null}.
+     * @return an equal string, shared with the previous callers when it is still in the pool.
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String pooled = table.get(slot);
+        if (value.equals(pooled)) {
+            return pooled;
+        }
+        table.lazySet(slot, value);
+        return value;
+    }
+}
@@ -0,0 +1,46 @@
+package com.osttra.fx.blockstream.repository.convert;
+
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.readDate;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.readDecimal;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.readDouble;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.readId;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.readLong;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+
+/**
+ * Reads a {@link SmartTrade} field by field, without the reflection of the mapping converter.
+ * <p>
+ * Parties, currencies and directions repeat across trades, so they are shared through an {@link InternPool}
+ * instead of each trade holding its own copies.
+ */
+@ReadingConverter
+public class SmartTradeReadConverter implements Converter<Document, SmartTrade> {
+
+    private final InternPool internPool;
+
+    public SmartTradeReadConverter(InternPool internPool) {
+        this.internPool = internPool;
+    }
+
+    @Override
+    public SmartTrade convert(Document source) {
+        SmartTrade smartTrade = new SmartTrade();
+        smartTrade.setId(readId(source.get("_id")));
+        smartTrade.setVersion(readLong(source.get("version")));
+        smartTrade.setCounterParty(internPool.intern(source.getString("counter_party")));
+        smartTrade.setTradingParty(internPool.intern(source.getString("trading_party")));
+        smartTrade.setCurrencyBuy(internPool.intern(source.getString("currency_buy")));
+        smartTrade.setCurrencySell(internPool.intern(source.getString("currency_sell")));
+        smartTrade.setRate(readDouble(source.get("rate")));
+        smartTrade.setAmount(readDecimal(source.get("amount")));
+        smartTrade.setContraAmount(readDecimal(source.get("contra_amount")));
+        smartTrade.setValueDate(readDate(source.get("value_date")));
+        smartTrade.setTransactionId(source.getString("transaction_id"));
+        smartTrade.setDirection(internPool.intern(source.getString("direction")));
+        return smartTrade;
+    }
+}
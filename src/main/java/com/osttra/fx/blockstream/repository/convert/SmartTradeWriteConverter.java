@@ -0,0 +1,45 @@
+package com.osttra.fx.blockstream.repository.convert;
+
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.putIfNotNull;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.writeDate;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.writeDecimal;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.writeId;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.WritingConverter;
+
+/**
+ * Writes a {@link SmartTrade} field by field, producing the same document as the mapping converter.
+ */
+@WritingConverter
+public enum SmartTradeWriteConverter implements Converter<SmartTrade, Document> {
+    INSTANCE;
+
+    @Override
+    public Document convert(SmartTrade source) {
+        Document document = new Document();
+        if (source.getId() != null) {
+            document.put("_id", writeId(source.getId()));
+        }
+        putIfNotNull(document, "version", source.getVersion());
+        putIfNotNull(document, "counter_party", source.getCounterParty());
+        putIfNotNull(document, "trading_party", source.getTradingParty());
+        putIfNotNull(document, "currency_buy", source.getCurrencyBuy());
+        putIfNotNull(document, "currency_sell", source.getCurrencySell());
+        putIfNotNull(document, "rate", source.getRate());
+        if (source.getAmount() != null) {
+            document.put("amount", writeDecimal(source.getAmount()));
+        }
+        if (source.getContraAmount() != null) {
+            document.put("contra_amount", writeDecimal(source.getContraAmount()));
+        }
+        if (source.getValueDate() != null) {
+            document.put("value_date", writeDate(source.getValueDate()));
+        }
+        putIfNotNull(document, "transaction_id", source.getTransactionId());
+        putIfNotNull(document, "direction", source.getDirection());
+        return document;
+    }
+}
@@ -0,0 +1,36 @@
+package com.osttra.fx.blockstream.repository.convert;
+
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.readDecimal;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.readId;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.readLong;
+
+import com.osttra.fx.blockstream.domain.Wallet;
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+
+/**
+ * Reads a {@link Wallet} field by field, without the reflection of the mapping converter.
+ * <p>
+ * Currency codes and customer ids repeat across wallets, so they are shared through an {@link InternPool}.
+ */
+@ReadingConverter
+public class WalletReadConverter implements Converter<Document, Wallet> {
+
+    private final InternPool internPool;
+
+    public WalletReadConverter(InternPool internPool) {
+        this.internPool = internPool;
+    }
+
+    @Override
+    public Wallet convert(Document source) {
+        Wallet wallet = new Wallet();
+        wallet.setId(readId(source.get("_id")));
+        wallet.setVersion(readLong(source.get("version")));
+        wallet.setCurrencyCode(internPool.intern(source.getString("currency_code")));
+        wallet.setAmount(readDecimal(source.get("amount")));
+        wallet.setCustomerId(internPool.intern(source.getString("customer_id")));
+        return wallet;
+    }
+}
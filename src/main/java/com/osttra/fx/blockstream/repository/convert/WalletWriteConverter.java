@@ -0,0 +1,33 @@
+package com.osttra.fx.blockstream.repository.convert;
+
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.putIfNotNull;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.writeDecimal;
+import static com.osttra.fx.blockstream.repository.convert.BsonValues.writeId;
+
+import com.osttra.fx.blockstream.domain.Wallet;
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.WritingConverter;
+
+/**
+ * Writes a {@link Wallet} field by field, producing the same document as the mapping converter.
+ */
+@WritingConverter
+public enum WalletWriteConverter implements Converter<Wallet, Document> {
+    INSTANCE;
+
+    @Override
+    public Document convert(Wallet source) {
+        Document document = new Document();
+        if (source.getId() != null) {
+            document.put("_id", writeId(source.getId()));
+        }
+        putIfNotNull(document, "version", source.getVersion());
+        putIfNotNull(document, "currency_code", source.getCurrencyCode());
+        if (source.getAmount() != null) {
+            document.put("amount", writeDecimal(source.getAmount()));
+        }
+        putIfNotNull(document, "customer_id", source.getCustomerId());
+        return document;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Hand-written MongoDB converters for the entities read and written in bulk.
+ */
+package com.osttra.fx.blockstream.repository.convert;
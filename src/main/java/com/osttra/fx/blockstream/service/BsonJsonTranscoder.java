@@ -0,0 +1,642 @@
+package com.osttra.fx.blockstream.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.mongodb.MongoClientSettings;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+
+/**
+ * Writes the JSON of an entity straight from the bytes of its stored {@link RawBsonDocument}, without reading the entity.
+ * <p>
+ * The JSON properties, their order and their names are those Jackson uses for the entity; each is read from the field
+ * the mapping context stores it in, and written the way Jackson writes the entity's property type. {@link Transient}
+ * properties, never stored, are written as null. Before it is used, the transcoding is checked against the entity path
+ * on sample entities: when they differ, for example because the {@link ObjectMapper} has custom serializers for one
+ * of the types, every document is read as an entity instead.
+ * A document with a field of an unexpected BSON type is also read as an entity, so the output is always the same as
+ * serializing the entity.
+ */
+final class BsonJsonTranscoder {
+
+    private static final byte ABSENT = 0x00;
+    private static final byte DOUBLE = 0x01;
+    private static final byte STRING = 0x02;
+    private static final byte DOCUMENT = 0x03;
+    private static final byte ARRAY = 0x04;
+    private static final byte BINARY = 0x05;
+    private static final byte UNDEFINED = 0x06;
+    private static final byte OBJECT_ID = 0x07;
+    private static final byte BOOLEAN = 0x08;
+    private static final byte DATE_TIME = 0x09;
+    private static final byte NULL = 0x0A;
+    private static final byte REGULAR_EXPRESSION = 0x0B;
+    private static final byte DB_POINTER = 0x0C;
+    private static final byte JAVASCRIPT = 0x0D;
+    private static final byte SYMBOL = 0x0E;
+    private static final byte JAVASCRIPT_WITH_SCOPE = 0x0F;
+    private static final byte INT32 = 0x10;
+    private static final byte TIMESTAMP = 0x11;
+    private static final byte INT64 = 0x12;
+    private static final byte DECIMAL128 = 0x13;
+    private static final byte MAX_KEY = 0x7F;
+    private static final byte MIN_KEY = (byte) 0xFF;
+
+    private static final long DECIMAL128_INFINITY_MASK = 0x7800000000000000L;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Codec<Document> DOCUMENT_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    private final Logger log = LoggerFactory.getLogger(BsonJsonTranscoder.class);
+
+    private final Class<?> entityClass;
+
+    private final ObjectMapper objectMapper;
+
+    private final MongoConverter mongoConverter;
+
+    private final int schemaCount;
+
+    /**
+     * The properties of the entity, or {@code null} when every document is read as an entity.
+     */
+    private final Schema schema;
+
+    BsonJsonTranscoder(Class<?> entityClass, ObjectMapper objectMapper, MongoConverter mongoConverter) {
+        this.entityClass = entityClass;
+        this.objectMapper = objectMapper;
+        this.mongoConverter = mongoConverter;
+        List<Schema> schemas = new ArrayList<>();
+        Schema candidate = schema(entityClass, schemas);
+        this.schemaCount = schemas.size();
+        this.schema = candidate != null && matchesEntityPath(candidate) ? candidate : null;
+        if (schema == null) {
+            log.warn("The JSON of {} is written from entities: it cannot be written from the stored documents", entityClass.getSimpleName());
+        }
+    }
+
+    /**
+     * Whether documents are written without reading entities, unless they hold unexpected types.
+     */
+    boolean isRaw() {
+        return schema != null;
+    }
+
+    /**
+     * Create a writer; a writer is used by one thread at a time.
+     */
+    Writer newWriter() {
+        return new Writer(schema);
+    }
+
+    private Schema schema(Class<?> type, List<Schema> schemas) {
+        MongoPersistentEntity<?> entity = mongoConverter.getMappingContext().getPersistentEntity(type);
+        if (entity == null) {
+            return null;
+        }
+        JsonInclude.Include inclusion = objectMapper.getSerializationConfig().getDefaultPropertyInclusion(type).getValueInclusion();
+        boolean writesNulls;
+        if (inclusion == JsonInclude.Include.ALWAYS || inclusion == JsonInclude.Include.USE_DEFAULTS) {
+            writesNulls = true;
+        } else if (inclusion == JsonInclude.Include.NON_NULL || inclusion == JsonInclude.Include.NON_ABSENT) {
+            writesNulls = false;
+        } else {
+            return null;
+        }
+        BeanDescription description = objectMapper.getSerializationConfig().introspect(objectMapper.constructType(type));
+        List<Property> properties = new ArrayList<>();
+        for (BeanPropertyDefinition definition : description.findProperties()) {
+            if (!definition.couldSerialize()) {
+                continue;
+            }
+            MongoPersistentProperty persistentProperty = entity.getPersistentProperty(definition.getInternalName());
+            if (persistentProperty == null) {
+                if (definition.getField() == null || !definition.getField().hasAnnotation(Transient.class)) {
+                    return null;
+                }
+                properties.add(new Property(definition.getName(), null, Kind.TRANSIENT, null));
+                continue;
+            }
+            Kind kind = Kind.of(persistentProperty);
+            if (kind == null) {
+                return null;
+            }
+            Schema nested = null;
+            if (kind == Kind.OBJECT) {
+                nested = schema(persistentProperty.getType(), schemas);
+                if (nested == null) {
+                    return null;
+                }
+            }
+            properties.add(new Property(definition.getName(), persistentProperty, kind, nested));
+        }
+        Schema schema = new Schema(schemas.size(), entity, properties, writesNulls);
+        schemas.add(schema);
+        return schema;
+    }
+
+    /**
+     * Compare the transcoding with the entity path, on an entity with every property set and on an empty one.
+     */
+    private boolean matchesEntityPath(Schema schema) {
+        Writer writer = new Writer(schema);
+        try {
+            for (boolean populated : new boolean[] { true, false }) {
+                Object sample = sample(schema, populated);
+                Document document = new Document();
+                mongoConverter.write(sample, document);
+                RawBsonDocument rawDocument = new RawBsonDocument(document, DOCUMENT_CODEC);
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                if (!writer.writeRaw(rawDocument, output) || !Arrays.equals(output.toByteArray(), objectMapper.writeValueAsBytes(sample))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not compare the JSON of {} with the entity path", entityClass.getSimpleName(), e);
+            return false;
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static Object sample(Schema schema, boolean populated) {
+        Object sample = BeanUtils.instantiateClass(schema.entity.getType());
+        if (!populated) {
+            return sample;
+        }
+        PersistentPropertyAccessor<Object> accessor = schema.entity.getPropertyAccessor(sample);
+        for (Property property : schema.properties) {
+            if (property.kind != Kind.TRANSIENT) {
+                accessor.setProperty(property.persistentProperty, property.kind.sample(property));
+            }
+        }
+        return accessor.getBean();
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return (readInt(bytes, offset) & 0xFFFFFFFFL) | (long) readInt(bytes, offset + 4) << 32;
+    }
+
+    /**
+     * @return the offset following the value, or -1 for an unknown type.
+     */
+    private static int skip(byte[] bytes, byte type, int offset) {
+        switch (type) {
+            case DOUBLE:
+            case DATE_TIME:
+            case TIMESTAMP:
+            case INT64:
+                return offset + 8;
+            case STRING:
+            case JAVASCRIPT:
+            case SYMBOL:
+                return offset + 4 + readInt(bytes, offset);
+            case DOCUMENT:
+            case ARRAY:
+            case JAVASCRIPT_WITH_SCOPE:
+                return offset + readInt(bytes, offset);
+            case BINARY:
+                return offset + 5 + readInt(bytes, offset);
+            case UNDEFINED:
+            case NULL:
+            case MAX_KEY:
+            case MIN_KEY:
+                return offset;
+            case OBJECT_ID:
+                return offset + 12;
+            case BOOLEAN:
+                return offset + 1;
+            case REGULAR_EXPRESSION:
+                while (bytes[offset++] != 0) {}
+                while (bytes[offset++] != 0) {}
+                return offset;
+            case DB_POINTER:
+                return offset + 4 + readInt(bytes, offset) + 12;
+            case INT32:
+                return offset + 4;
+            case DECIMAL128:
+                return offset + 16;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * How the value of a property is stored and written.
+     */
+    private enum Kind {
+        ID,
+        STRING,
+        INTEGER,
+        FLOAT,
+        DECIMAL,
+        DATE,
+        OBJECT,
+        /**
+         * Not stored, so always null in the entities read.
+         */
+        TRANSIENT;
+
+        static Kind of(MongoPersistentProperty property) {
+            Class<?> type = property.getType();
+            if (type == String.class) {
+                return property.isIdProperty() ? ID : STRING;
+            }
+            if (type == Long.class || type == Integer.class) {
+                return INTEGER;
+            }
+            if (type == Double.class) {
+                return FLOAT;
+            }
+            if (type == BigDecimal.class) {
+                return DECIMAL;
+            }
+            if (type == LocalDate.class) {
+                return DATE;
+            }
+            if (property.isEntity() && !property.isCollectionLike() && !property.isMap() && !property.isAssociation()) {
+                return OBJECT;
+            }
+            return null;
+        }
+
+        Object sample(Property property) {
+            switch (this) {
+                case ID:
+                    return new ObjectId().toHexString();
+                case STRING:
+                    return "\"sample\"\té€";
+                case INTEGER:
+                    return property.persistentProperty.getType() == Integer.class ? (Object) 42 : (Object) 42L;
+                case FLOAT:
+                    return 1.0875;
+                case DECIMAL:
+                    return new BigDecimal("1087500.50");
+                case DATE:
+                    return LocalDate.of(2022, 6, 15);
+                default:
+                    return BsonJsonTranscoder.sample(property.nested, true);
+            }
+        }
+    }
+
+    private static final class Property {
+
+        private final SerializedString name;
+
+        private final byte[] fieldName;
+
+        private final MongoPersistentProperty persistentProperty;
+
+        private final Kind kind;
+
+        private final Schema nested;
+
+        private Property(String name, MongoPersistentProperty persistentProperty, Kind kind, Schema nested) {
+            this.name = new SerializedString(name);
+            this.fieldName = persistentProperty != null ? persistentProperty.getFieldName().getBytes(UTF_8) : null;
+            this.persistentProperty = persistentProperty;
+            this.kind = kind;
+            this.nested = nested;
+        }
+
+        boolean isNamed(byte[] bytes, int offset, int length) {
+            return fieldName != null && fieldName.length == length && Arrays.equals(fieldName, 0, length, bytes, offset, offset + length);
+        }
+
+        boolean accepts(byte type) {
+            switch (kind) {
+                case ID:
+                    return type == OBJECT_ID || type == STRING;
+                case STRING:
+                    return type == STRING;
+                case INTEGER:
+                case FLOAT:
+                    return type == INT32 || type == INT64 || type == DOUBLE;
+                case DECIMAL:
+                    return type == DECIMAL128 || type == STRING;
+                case DATE:
+                    return type == DATE_TIME;
+                case TRANSIENT:
+                    return false;
+                default:
+                    return type == DOCUMENT;
+            }
+        }
+    }
+
+    /**
+     * The JSON properties of an entity, in the order Jackson writes them.
+     */
+    private static final class Schema {
+
+        private final int index;
+
+        private final MongoPersistentEntity<?> entity;
+
+        private final Property[] properties;
+
+        private final boolean writesNulls;
+
+        private Schema(int index, MongoPersistentEntity<?> entity, List<Property> properties, boolean writesNulls) {
+            this.index = index;
+            this.entity = entity;
+            this.properties = properties.toArray(new Property[0]);
+            this.writesNulls = writesNulls;
+        }
+
+        /**
+         * Find the property stored in the given field, trying first the one following the previous field.
+         */
+        int find(byte[] bytes, int offset, int length, int expected) {
+            if (expected < properties.length && properties[expected].isNamed(bytes, offset, length)) {
+                return expected;
+            }
+            for (int i = 0; i < properties.length; i++) {
+                if (properties[i].isNamed(bytes, offset, length)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Writes documents with a single {@link JsonGenerator}, into the output given for each document.
+     */
+    final class Writer implements Closeable {
+
+        private final Schema schema;
+
+        private final int[][] offsets = new int[schemaCount][];
+
+        private final byte[][] types = new byte[schemaCount][];
+
+        private final char[] hex = new char[24];
+
+        private final Target target = new Target();
+
+        private final JsonGenerator generator;
+
+        private Writer(Schema schema) {
+            this.schema = schema;
+            try {
+                this.generator = objectMapper.createGenerator(target, JsonEncoding.UTF8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            generator.setRootValueSeparator(null);
+        }
+
+        /**
+         * Write the JSON of the given document, followed by a new line.
+         *
+         * @param document the stored document.
+         * @param bufferFactory the factory of the buffer returned.
+         * @return a buffer holding the JSON line.
+         */
+        DataBuffer write(RawBsonDocument document, DataBufferFactory bufferFactory) {
+            DataBuffer buffer = bufferFactory.allocateBuffer(document.getByteBuffer().remaining() * 2);
+            boolean written = false;
+            try {
+                OutputStream output = buffer.asOutputStream();
+                if (schema == null || !writeRaw(document, output)) {
+                    writeEntity(document, output);
+                }
+                buffer.write((byte) '\n');
+                written = true;
+                return buffer;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (!written) {
+                    DataBufferUtils.release(buffer);
+                }
+            }
+        }
+
+        /**
+         * @return {@code false}, writing nothing, when a field has a BSON type the entity path handles differently.
+         */
+        private boolean writeRaw(RawBsonDocument document, OutputStream output) throws IOException {
+            ByteBuffer byteBuffer = document.getByteBuffer().asNIO();
+            byte[] bytes = byteBuffer.array();
+            int offset = byteBuffer.arrayOffset() + byteBuffer.position();
+            if (!scan(schema, bytes, offset)) {
+                return false;
+            }
+            target.output = output;
+            write(schema, bytes);
+            generator.flush();
+            return true;
+        }
+
+        private void writeEntity(RawBsonDocument document, OutputStream output) throws IOException {
+            Object entity = mongoConverter.read(entityClass, document.decode(DOCUMENT_CODEC));
+            target.output = output;
+            objectMapper.writeValue(generator, entity);
+            generator.flush();
+        }
+
+        /**
+         * Record where the value of each property starts, checking that the entity path would read them all the same.
+         */
+        private boolean scan(Schema schema, byte[] bytes, int start) {
+            int[] valueOffsets = offsets[schema.index];
+            byte[] valueTypes = types[schema.index];
+            if (valueOffsets == null) {
+                valueOffsets = offsets[schema.index] = new int[schema.properties.length];
+                valueTypes = types[schema.index] = new byte[schema.properties.length];
+            }
+            Arrays.fill(valueTypes, ABSENT);
+            int end = start + readInt(bytes, start) - 1;
+            int offset = start + 4;
+            int expected = 0;
+            while (offset < end) {
+                byte type = bytes[offset++];
+                int nameStart = offset;
+                while (bytes[offset] != 0) {
+                    offset++;
+                }
+                int index = schema.find(bytes, nameStart, offset - nameStart, expected);
+                offset++;
+                if (index >= 0) {
+                    if (type != NULL && !accepts(schema.properties[index], type, bytes, offset)) {
+                        return false;
+                    }
+                    valueOffsets[index] = offset;
+                    valueTypes[index] = type;
+                    expected = index + 1;
+                }
+                offset = skip(bytes, type, offset);
+                if (offset < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean accepts(Property property, byte type, byte[] bytes, int offset) {
+            if (!property.accepts(type)) {
+                return false;
+            }
+            if (type == DECIMAL128) {
+                return (readLong(bytes, offset + 8) & DECIMAL128_INFINITY_MASK) != DECIMAL128_INFINITY_MASK;
+            }
+            if (type == DOCUMENT) {
+                return scan(property.nested, bytes, offset);
+            }
+            return true;
+        }
+
+        private void write(Schema schema, byte[] bytes) throws IOException {
+            int[] valueOffsets = offsets[schema.index];
+            byte[] valueTypes = types[schema.index];
+            generator.writeStartObject();
+            for (int i = 0; i < schema.properties.length; i++) {
+                Property property = schema.properties[i];
+                byte type = valueTypes[i];
+                if (type == ABSENT || type == NULL) {
+                    if (schema.writesNulls) {
+                        generator.writeFieldName(property.name);
+                        generator.writeNull();
+                    }
+                    continue;
+                }
+                generator.writeFieldName(property.name);
+                int offset = valueOffsets[i];
+                switch (type) {
+                    case OBJECT_ID:
+                        writeObjectId(bytes, offset);
+                        break;
+                    case STRING:
+                        if (property.kind == Kind.DECIMAL) {
+                            // Amounts written before the decimal128-amounts change unit.
+                            generator.writeNumber(new BigDecimal(new String(bytes, offset + 4, readInt(bytes, offset) - 1, UTF_8)));
+                        } else {
+                            generator.writeUTF8String(bytes, offset + 4, readInt(bytes, offset) - 1);
+                        }
+                        break;
+                    case INT32:
+                        writeNumber(property, readInt(bytes, offset));
+                        break;
+                    case INT64:
+                        writeNumber(property, readLong(bytes, offset));
+                        break;
+                    case DOUBLE:
+                        double value = Double.longBitsToDouble(readLong(bytes, offset));
+                        if (property.kind == Kind.FLOAT) {
+                            generator.writeNumber(value);
+                        } else {
+                            writeNumber(property, (long) value);
+                        }
+                        break;
+                    case DECIMAL128:
+                        Decimal128 decimal = Decimal128.fromIEEE754BIDEncoding(readLong(bytes, offset + 8), readLong(bytes, offset));
+                        generator.writeNumber(decimal.bigDecimalValue());
+                        break;
+                    case DATE_TIME:
+                        LocalDate date = Instant.ofEpochMilli(readLong(bytes, offset)).atZone(ZoneId.systemDefault()).toLocalDate();
+                        generator.writeString(date.toString());
+                        break;
+                    default:
+                        write(property.nested, bytes);
+                }
+            }
+            generator.writeEndObject();
+        }
+
+        private void writeNumber(Property property, long value) throws IOException {
+            if (property.kind == Kind.FLOAT) {
+                generator.writeNumber((double) value);
+            } else if (property.persistentProperty.getType() == Integer.class) {
+                generator.writeNumber((int) value);
+            } else {
+                generator.writeNumber(value);
+            }
+        }
+
+        private void writeObjectId(byte[] bytes, int offset) throws IOException {
+            for (int i = 0; i < 12; i++) {
+                int value = bytes[offset + i] & 0xFF;
+                hex[2 * i] = HEX[value >>> 4];
+                hex[2 * i + 1] = HEX[value & 0x0F];
+            }
+            generator.writeString(hex, 0, hex.length);
+        }
+
+        @Override
+        public void close() {
+            try {
+                generator.close();
+            } catch (IOException e) {
+                log.debug("Could not close the JSON generator", e);
+            }
+        }
+    }
+
+    /**
+     * The output of the current document.
+     */
+    private static final class Target extends OutputStream {
+
+        private OutputStream output;
+
+        @Override
+        public void write(int b) throws IOException {
+            output.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            output.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (output != null) {
+                output.flush();
+            }
+        }
+    }
+}
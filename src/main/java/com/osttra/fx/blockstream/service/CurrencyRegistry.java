@@ -0,0 +1,221 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.domain.Currencies;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Registry assigning each currency code a dense small {@code int} id, so that in-memory structures can key on
+ * currencies and currency pairs with primitive arrays and maps instead of maps of strings.
+ * <p>
+ * Ids start at 0 and are never reassigned, so arrays sized by {@link #size()} can be grown but never need to be
+ * rebuilt. The currencies of the {@link Currencies} collection are registered in the order of their codes when the
+ * application starts; any other code gets the next id the first time it is seen, up to {@value #CAPACITY} codes.
+ * <p>
+ * Looking up a three-letter upper-case code, such as an ISO 4217 code, reads a single slot of a table indexed by its
+ * letters, without hashing the string; other codes fall back to a hash map. A {@linkplain #pair pair} of ids packs into
+ * one {@code int} of {@code 2 * }{@value #ID_BITS} bits.
+ */
+@Service
+public class CurrencyRegistry {
+
+    /**
+     * Number of bits of an id.
+     */
+    public static final int ID_BITS = 10;
+
+    /**
+     * Maximum number of currencies.
+     */
+    public static final int CAPACITY = 1 << ID_BITS;
+
+    private static final int ID_MASK = CAPACITY - 1;
+
+    private static final int LETTERS = 26;
+
+    private final Logger log = LoggerFactory.getLogger(CurrencyRegistry.class);
+
+    private final CurrenciesCache currenciesCache;
+
+    /**
+     * Id + 1 of each three-letter upper-case code, indexed by its letters; 0 if not registered.
+     */
+    private final AtomicIntegerArray isoIds = new AtomicIntegerArray(LETTERS * LETTERS * LETTERS);
+
+    private final ConcurrentHashMap<String, Integer> otherIds = new ConcurrentHashMap<>();
+
+    /**
+     * The codes by id; replaced, never changed, when a code is registered.
+     */
+    private volatile String[] codes = new String[0];
+
+    public CurrencyRegistry(CurrenciesCache currenciesCache) {
+        this.currenciesCache = currenciesCache;
+    }
+
+    /**
+     * Register the currencies of the {@link Currencies} collection.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        preload()
+            .subscribe(
+                count -> log.info("Registered {} currencies", count),
+                e -> log.warn("Could not register the currencies: {}", e.getMessage())
+            );
+    }
+
+    /**
+     * Register the currencies of the {@link Currencies} collection not registered yet, in the order of their codes.
+     *
+     * @return the number of currencies registered.
+     */
+    public Mono<Integer> preload() {
+        return currenciesCache
+            .findAll()
+            .mapNotNull(Currencies::getCurrencyCode)
+            .sort()
+            .distinct()
+            .doOnNext(this::idOf)
+            .then(Mono.fromCallable(this::size));
+    }
+
+    /**
+     * Find the currency codes that are not in the {@link Currencies} collection, before registering any of them.
+     *
+     * @param codes the currency codes.
+     * @return the distinct codes not in the collection, in the order given.
+     */
+    public Mono<List<String>> findUnknown(Collection<String> codes) {
+        return Flux
+            .fromIterable(new LinkedHashSet<>(codes))
+            .filterWhen(code -> currenciesCache.findByCurrencyCode(code).hasElement().map(found -> !found))
+            .collectList();
+    }
+
+    /**
+     * Get the id of a currency code, registering the code if needed.
+     *
+     * @param code the currency code.
+     * @return the id of the code.
+     * @throws IllegalStateException if {@value #CAPACITY} codes are already registered.
+     */
+    public int idOf(String code) {
+        int id = find(code);
+        return id >= 0 ? id : register(code);
+    }
+
+    /**
+     * Get the id of a registered currency code.
+     *
+     * @param code the currency code.
+     * @return the id of the code, or -1 if it is not registered.
+     */
+    public int find(String code) {
+        int slot = isoSlot(code);
+        if (slot >= 0) {
+            return isoIds.get(slot) - 1;
+        }
+        Integer id = otherIds.get(code);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id the id of a currency code.
+     * @return the code, or {@code null} if no code has this id.
+     */
+    public String codeOf(int id) {
+        String[] current = codes;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    /**
+     * @return the number of registered codes, which is also the smallest id not assigned.
+     */
+    public int size() {
+        return codes.length;
+    }
+
+    /**
+     * Get the key of a currency pair, registering the codes if needed.
+     *
+     * @param base the base currency code.
+     * @param quote the quote currency code.
+     * @return the key of the pair.
+     */
+    public int pairOf(String base, String quote) {
+        return pair(idOf(base), idOf(quote));
+    }
+
+    /**
+     * Pack the ids of a currency pair into a key, lower than {@code CAPACITY * CAPACITY}.
+     *
+     * @param baseId the id of the base currency.
+     * @param quoteId the id of the quote currency.
+     * @return the key of the pair.
+     */
+    public static int pair(int baseId, int quoteId) {
+        return (baseId << ID_BITS) | quoteId;
+    }
+
+    public static int baseOf(int pair) {
+        return pair >>> ID_BITS;
+    }
+
+    public static int quoteOf(int pair) {
+        return pair & ID_MASK;
+    }
+
+    private synchronized int register(String code) {
+        int id = find(code);
+        if (id >= 0) {
+            return id;
+        }
+        String[] current = codes;
+        if (current.length == CAPACITY) {
+            throw new IllegalStateException("More than " + CAPACITY + " currencies");
+        }
+        id = current.length;
+        String[] next = Arrays.copyOf(current, id + 1);
+        next[id] = code;
+        // The code is published before its id, so that codeOf finds every id that find returns.
+        codes = next;
+        int slot = isoSlot(code);
+        if (slot >= 0) {
+            isoIds.set(slot, id + 1);
+        } else {
+            otherIds.put(code, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return the slot of a three-letter upper-case code, or -1 for any other code.
+     */
+    private static int isoSlot(String code) {
+        if (code.length() != 3) {
+            return -1;
+        }
+        int slot = 0;
+        for (int i = 0; i < 3; i++) {
+            int letter = code.charAt(i) - 'A';
+            if (letter < 0 || letter >= LETTERS) {
+                return -1;
+            }
+            slot = slot * LETTERS + letter;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,13 @@
+package com.osttra.fx.blockstream.service;
+
+/**
+ * Thrown when the balance of a hot wallet would be changed otherwise than by a credit or a debit.
+ */
+public class HotWalletException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public HotWalletException(String walletId) {
+        super("Wallet " + walletId + " is hot, only credits and debits can change its balance");
+    }
+}
@@ -0,0 +1,218 @@
+package com.osttra.fx.blockstream.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only journal of the balance changes of one hot wallet, which keeps the changes not written to the database
+ * yet across a crash.
+ * <p>
+ * Each record is a line: {@code D <sequence> <amount>} for a change, {@code P <sequence> <amount>} when the changes up
+ * to a sequence start being written as a single amount, {@code F <sequence>} once they are written, and
+ * {@code R <sequence>} if the database rejected them. Every record is forced to the disk before it returns. Opening the
+ * journal drops a last line cut short by a crash, and replays the records into the state they left.
+ * <p>
+ * Not thread-safe: the owner of the wallet serializes the calls.
+ */
+final class HotWalletJournal implements Closeable {
+
+    /**
+     * Size beyond which the journal is rewritten, once the changes it holds are written to the database.
+     */
+    private static final long COMPACTION_SIZE = 1 << 20;
+
+    private final Path file;
+
+    private FileChannel channel;
+
+    private long sequence;
+
+    private long flushedSequence;
+
+    private long inFlightSequence;
+
+    private BigDecimal inFlightAmount;
+
+    private BigDecimal pending = BigDecimal.ZERO;
+
+    private HotWalletJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Open the journal of a wallet, creating it if needed, and replay its records.
+     *
+     * @param file the journal file.
+     * @return the journal, ready to append to.
+     */
+    static HotWalletJournal open(Path file) throws IOException {
+        HotWalletJournal journal = new HotWalletJournal(file);
+        long length = Files.exists(file) ? journal.replay(Files.readAllBytes(file)) : 0;
+        journal.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        journal.channel.truncate(length);
+        journal.channel.position(length);
+        return journal;
+    }
+
+    /**
+     * @return the length of the complete records.
+     */
+    private long replay(byte[] content) {
+        int length = content.length;
+        while (length > 0 && content[length - 1] != '\n') {
+            length--;
+        }
+        List<Long> changeSequences = new ArrayList<>();
+        List<BigDecimal> changes = new ArrayList<>();
+        for (String line : new String(content, 0, length, StandardCharsets.US_ASCII).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] record = line.split(" ");
+            long recordSequence = Long.parseLong(record[1]);
+            switch (record[0]) {
+                case "D":
+                    changeSequences.add(recordSequence);
+                    changes.add(new BigDecimal(record[2]));
+                    sequence = Math.max(sequence, recordSequence);
+                    break;
+                case "P":
+                    inFlightSequence = recordSequence;
+                    inFlightAmount = new BigDecimal(record[2]);
+                    sequence = Math.max(sequence, recordSequence);
+                    break;
+                case "F":
+                    flushedSequence = recordSequence;
+                    inFlightSequence = 0;
+                    break;
+                case "R":
+                    inFlightSequence = 0;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown record in " + file + ": " + line);
+            }
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            if (changeSequences.get(i) > flushedSequence) {
+                pending = pending.add(changes.get(i));
+            }
+        }
+        if (inFlightSequence > flushedSequence) {
+            pending = pending.subtract(inFlightAmount);
+        } else {
+            inFlightSequence = 0;
+            inFlightAmount = null;
+        }
+        return length;
+    }
+
+    /**
+     * @return the sequence of the last change recorded, 0 if none.
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the sequence of the last change written to the database, 0 if none.
+     */
+    long getFlushedSequence() {
+        return flushedSequence;
+    }
+
+    /**
+     * @return the sequence of the last change being written to the database when the journal was opened, 0 if none.
+     */
+    long getInFlightSequence() {
+        return inFlightSequence;
+    }
+
+    /**
+     * @return the amount being written to the database when the journal was opened, {@code null} if none.
+     */
+    BigDecimal getInFlightAmount() {
+        return inFlightAmount;
+    }
+
+    /**
+     * @return the sum of the changes not written nor being written to the database when the journal was opened.
+     */
+    BigDecimal getPending() {
+        return pending;
+    }
+
+    void appendChange(long sequence, BigDecimal amount) throws IOException {
+        append("D " + sequence + " " + amount.toPlainString() + "\n");
+    }
+
+    void appendFlushStarted(long sequence, BigDecimal amount) throws IOException {
+        append("P " + sequence + " " + amount.toPlainString() + "\n");
+    }
+
+    void appendFlushed(long sequence) throws IOException {
+        append("F " + sequence + "\n");
+    }
+
+    void appendFlushRejected(long sequence) throws IOException {
+        append("R " + sequence + "\n");
+    }
+
+    /**
+     * Rewrite the journal as the given state if it grew too large; must not be called while changes are being
+     * written to the database.
+     *
+     * @param sequence the sequence of the last change recorded.
+     * @param flushedSequence the sequence of the last change written to the database.
+     * @param pending the sum of the changes not written to the database.
+     */
+    void compact(long sequence, long flushedSequence, BigDecimal pending) throws IOException {
+        if (channel.size() < COMPACTION_SIZE) {
+            return;
+        }
+        StringBuilder state = new StringBuilder().append("F ").append(flushedSequence).append('\n');
+        if (sequence > flushedSequence) {
+            state.append("D ").append(sequence).append(' ').append(pending.toPlainString()).append('\n');
+        }
+        Path compacted = file.resolveSibling(file.getFileName() + ".compacted");
+        try (
+            FileChannel out = FileChannel.open(
+                compacted,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+            )
+        ) {
+            write(out, state.toString());
+        }
+        channel.close();
+        Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void append(String record) throws IOException {
+        write(channel, record);
+    }
+
+    private static void write(FileChannel channel, String record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+}
@@ -0,0 +1,353 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.Wallet;
+import com.osttra.fx.blockstream.repository.WalletRepository;
+import com.osttra.fx.blockstream.service.dto.WalletBalanceDTO;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Service keeping the balance of a few heavily used {@link Wallet}s in memory, and writing their changes behind to
+ * MongoDB, so that they do not all queue on the lock of the same document.
+ * <p>
+ * The changes of a hot wallet are applied one at a time to its balance in memory, which guards the debits, and
+ * appended to its {@link HotWalletJournal} before they are acknowledged. They are netted, and written as one
+ * {@linkplain com.osttra.fx.blockstream.repository.WalletBalanceRepository#addToBalances batch} every flush interval,
+ * or as soon as a wallet has the threshold number of changes. The id of the batch is made of the wallet id and of the
+ * sequence of its last change, so a batch written again after a crash is not applied twice, and the journal replays
+ * the changes not written yet when the wallet is loaded again.
+ * <p>
+ * The balance of a hot wallet in the database lags by up to one flush interval, so this service must be the only writer
+ * of that balance: transfers, batches of movements and updates of the wallet refuse hot wallets with a
+ * {@link HotWalletException}, and a hot wallet must only be credited and debited by one instance of the application.
+ */
+@Service
+public class HotWalletService {
+
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final Duration FOREVER = Duration.ofMillis(Long.MAX_VALUE);
+
+    private final Logger log = LoggerFactory.getLogger(HotWalletService.class);
+
+    private final WalletRepository walletRepository;
+
+    private final ApplicationProperties.HotWallets properties;
+
+    private final Map<String, Mono<HotWallet>> wallets = new HashMap<>();
+
+    private final Map<String, HotWallet> loaded = new ConcurrentHashMap<>();
+
+    private Disposable flushes;
+
+    public HotWalletService(WalletRepository walletRepository, ApplicationProperties applicationProperties) {
+        this.walletRepository = walletRepository;
+        this.properties = applicationProperties.getHotWallets();
+        for (String id : properties.getWalletIds()) {
+            // Cache the loaded wallet, but load again a wallet that does not exist or failed to load.
+            wallets.put(id, Mono.defer(() -> load(id)).cache(wallet -> FOREVER, e -> Duration.ZERO, () -> Duration.ZERO));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (wallets.isEmpty()) {
+            return;
+        }
+        flushes =
+            Flux
+                .interval(Duration.ZERO, properties.getFlushInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> flush(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flushes != null) {
+            flushes.dispose();
+        }
+        try {
+            Flux.fromIterable(loaded.values()).concatMap(this::flush).then().block(STOP_TIMEOUT);
+        } catch (RuntimeException e) {
+            log.warn("Could not write the last changes of the hot wallets, they are kept in their journal: {}", e.getMessage());
+        }
+        for (HotWallet wallet : loaded.values()) {
+            synchronized (wallet) {
+                try {
+                    wallet.journal.close();
+                } catch (IOException e) {
+                    log.warn("Could not close the journal of hot wallet {}: {}", wallet.id, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param id the id of a wallet.
+     * @return whether the balance of the wallet is kept in memory by this service.
+     */
+    public boolean isHot(String id) {
+        return wallets.containsKey(id);
+    }
+
+    /**
+     * Add an amount to the balance of a hot wallet, unless it is a debit larger than the balance.
+     *
+     * @param id the id of the hot wallet.
+     * @param amount the amount to add, negative for a debit.
+     * @return the new balance, or the status telling why it was not changed; the balance is recorded in the journal,
+     * and written to the database later.
+     */
+    public Mono<WalletBalanceDTO> addToBalance(String id, BigDecimal amount) {
+        return wallets
+            .get(id)
+            .publishOn(Schedulers.boundedElastic())
+            .map(wallet -> {
+                WalletBalanceDTO balance = wallet.add(amount);
+                if (wallet.hasPendingChanges(properties.getFlushThreshold())) {
+                    flush(wallet).subscribe();
+                }
+                return balance;
+            })
+            .defaultIfEmpty(new WalletBalanceDTO(id, WalletBalanceDTO.Status.NOT_FOUND, null, null));
+    }
+
+    /**
+     * Write the changes of every hot wallet to the database.
+     *
+     * @return a {@link Mono} completing once written; the changes that could not be written are logged, and kept for
+     * the next time.
+     */
+    public Mono<Void> flush() {
+        return Flux
+            .fromIterable(wallets.values())
+            .concatMap(wallet -> wallet.onErrorResume(e -> Mono.empty()).flatMap(this::flush))
+            .then();
+    }
+
+    private Mono<Void> flush(HotWallet wallet) {
+        if (!wallet.flushing.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        return Mono
+            .fromCallable(wallet::startFlush)
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(flush ->
+                walletRepository
+                    .addToBalances(Map.of(wallet.id, flush.amount), batchId(wallet.id, flush.sequence))
+                    .next()
+                    .publishOn(Schedulers.boundedElastic())
+                    .doOnNext(update -> {
+                        BigDecimal stored = update.getWallet().getAmount() != null ? update.getWallet().getAmount() : BigDecimal.ZERO;
+                        if (update.isApplied()) {
+                            wallet.endFlush(flush, stored);
+                        } else {
+                            log.error("Hot wallet {} has {} in the database, {} could not be added", wallet.id, stored, flush.amount);
+                            wallet.rejectFlush(flush, stored);
+                        }
+                    })
+                    .switchIfEmpty(Mono.fromRunnable(() -> log.error("Hot wallet {} no longer exists, its changes are kept", wallet.id)))
+            )
+            .onErrorResume(e -> {
+                log.warn("Could not write the changes of hot wallet {}: {}", wallet.id, e.getMessage());
+                return Mono.empty();
+            })
+            // Before the completion reaches the subscriber, which may flush again at once.
+            .doOnTerminate(() -> wallet.flushing.set(false))
+            .doOnCancel(() -> wallet.flushing.set(false))
+            .then();
+    }
+
+    private Mono<HotWallet> load(String id) {
+        return Mono
+            .fromCallable(() -> {
+                Path directory = Paths.get(properties.getJournalDirectory());
+                Files.createDirectories(directory);
+                return HotWalletJournal.open(directory.resolve(id + ".journal"));
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(journal -> {
+                Mono<Boolean> inFlightApplied = journal.getInFlightSequence() == 0
+                    ? Mono.just(false)
+                    : walletRepository.findAppliedTo(List.of(id), batchId(id, journal.getInFlightSequence())).hasElements();
+                return walletRepository
+                    .findById(id)
+                    .zipWith(inFlightApplied)
+                    .map(found -> new HotWallet(id, journal, found.getT1().getAmount(), found.getT2()))
+                    .doOnNext(wallet -> {
+                        loaded.put(id, wallet);
+                        log.info("Loaded hot wallet {} with a balance of {}", id, wallet.balance);
+                    })
+                    .switchIfEmpty(
+                        Mono.fromRunnable(() -> {
+                            log.warn("Hot wallet {} does not exist", id);
+                            close(journal);
+                        })
+                    )
+                    .doOnError(e -> close(journal));
+            });
+    }
+
+    private void close(HotWalletJournal journal) {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Could not close the journal of a hot wallet: {}", e.getMessage());
+        }
+    }
+
+    private static String batchId(String walletId, long sequence) {
+        return "hot:" + walletId + ":" + sequence;
+    }
+
+    /**
+     * The changes of a hot wallet being written to the database.
+     */
+    private static final class Flush {
+
+        private final long sequence;
+
+        private final BigDecimal amount;
+
+        private Flush(long sequence, BigDecimal amount) {
+            this.sequence = sequence;
+            this.amount = amount;
+        }
+    }
+
+    /**
+     * The state of a hot wallet, only changed while holding its monitor.
+     */
+    private static final class HotWallet {
+
+        private final String id;
+
+        private final HotWalletJournal journal;
+
+        private final AtomicBoolean flushing = new AtomicBoolean();
+
+        /**
+         * The balance, including the changes not written to the database yet.
+         */
+        private BigDecimal balance;
+
+        /**
+         * The sum of the changes not written to the database, nor being written.
+         */
+        private BigDecimal pending;
+
+        private int pendingChanges;
+
+        private long sequence;
+
+        private long flushedSequence;
+
+        private Flush inFlight;
+
+        private HotWallet(String id, HotWalletJournal journal, BigDecimal storedBalance, boolean inFlightApplied) {
+            this.id = id;
+            this.journal = journal;
+            this.sequence = journal.getSequence();
+            this.flushedSequence = journal.getFlushedSequence();
+            this.pending = journal.getPending();
+            BigDecimal balance = (storedBalance != null ? storedBalance : BigDecimal.ZERO).add(pending);
+            if (journal.getInFlightSequence() != 0) {
+                if (inFlightApplied) {
+                    try {
+                        journal.appendFlushed(journal.getInFlightSequence());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    flushedSequence = journal.getInFlightSequence();
+                } else {
+                    inFlight = new Flush(journal.getInFlightSequence(), journal.getInFlightAmount());
+                    balance = balance.add(inFlight.amount);
+                }
+            }
+            this.balance = balance;
+        }
+
+        private synchronized WalletBalanceDTO add(BigDecimal amount) {
+            BigDecimal next = balance.add(amount);
+            if (amount.signum() < 0 && next.signum() < 0) {
+                return new WalletBalanceDTO(id, WalletBalanceDTO.Status.INSUFFICIENT_FUNDS, null, null);
+            }
+            try {
+                journal.appendChange(sequence + 1, amount);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            sequence++;
+            balance = next;
+            pending = pending.add(amount);
+            pendingChanges++;
+            return new WalletBalanceDTO(id, WalletBalanceDTO.Status.APPLIED, next, null);
+        }
+
+        private synchronized boolean hasPendingChanges(int threshold) {
+            return pendingChanges >= threshold;
+        }
+
+        /**
+         * @return the changes to write, the same ones until they are written; or {@code null} if there are none.
+         */
+        private synchronized Flush startFlush() throws IOException {
+            if (inFlight == null && sequence > flushedSequence) {
+                journal.appendFlushStarted(sequence, pending);
+                inFlight = new Flush(sequence, pending);
+                pending = BigDecimal.ZERO;
+                pendingChanges = 0;
+            }
+            return inFlight;
+        }
+
+        private synchronized void endFlush(Flush flush, BigDecimal storedBalance) {
+            try {
+                journal.appendFlushed(flush.sequence);
+                flushedSequence = flush.sequence;
+                inFlight = null;
+                balance = storedBalance.add(pending);
+                journal.compact(sequence, flushedSequence, pending);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Give the changes back to the next write, as the database did not apply them, and take its balance into
+         * account so that the balance in memory stops accepting debits.
+         */
+        private synchronized void rejectFlush(Flush flush, BigDecimal storedBalance) {
+            try {
+                journal.appendFlushRejected(flush.sequence);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            inFlight = null;
+            pending = pending.add(flush.amount);
+            balance = storedBalance.add(pending);
+        }
+    }
+}
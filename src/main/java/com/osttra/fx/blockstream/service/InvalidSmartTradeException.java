@@ -0,0 +1,13 @@
+package com.osttra.fx.blockstream.service;
+
+/**
+ * Thrown when a smartTrade cannot be accepted as it is, whatever the state of the application.
+ */
+public class InvalidSmartTradeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidSmartTradeException(String message) {
+        super(message);
+    }
+}
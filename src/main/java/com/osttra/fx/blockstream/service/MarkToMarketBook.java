@@ -0,0 +1,539 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.service.dto.MarkToMarketDTO;
+import com.osttra.fx.blockstream.service.dto.RevaluationDTO;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory unrealized profit and loss of the open trades, by trading party and currency pair.
+ * <p>
+ * A trade is open until its value date: trades whose value date is before the business date are settled, and no
+ * longer counted. The profit and loss of a trade is the value of what it bought less the value of what it sold, at the
+ * spot rate of the {@link RateMatrixService}, undiscounted; amounts missing from a trade are derived from its rate.
+ * <p>
+ * Being linear in the amounts, the profit and loss of a bucket of trades sharing a trading party and a currency pair is
+ * that of the sum of their amounts. A bucket is revalued in constant time whenever one of its trades changes, and when
+ * the rate of one of its currencies changes, through an index of the buckets by currency: a rate tick never rescans the
+ * trades. The contribution of every trade is remembered, with its version, as in {@link PositionBook}.
+ * <p>
+ * A {@linkplain #revalueAll full revaluation} values every open trade again from scratch, in parallel on a
+ * {@link ForkJoinPool}, all at the same rates. Each task lays the amounts of its trades out in primitive columns,
+ * grouped by bucket, and sums them with a {@link RevaluationKernel}.
+ */
+public final class MarkToMarketBook {
+
+    /**
+     * Number of trades valued by one fork-join task without splitting.
+     */
+    private static final int LEAF_SIZE = 16_384;
+
+    private final RateMatrixService rateMatrixService;
+
+    private final CurrencyRegistry currencies;
+
+    private final int reportingCurrencyId;
+
+    private final RevaluationKernel kernel = RevaluationKernel.create();
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Integer, Queue<Bucket>> bucketsByCurrency = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Contribution> contributions = new ConcurrentHashMap<>();
+
+    /**
+     * The business date, as an epoch day; only moves forward.
+     */
+    private final AtomicLong businessDay;
+
+    private volatile boolean keepTombstones;
+
+    public MarkToMarketBook(CurrencyRegistry currencies, RateMatrixService rateMatrixService, LocalDate businessDate) {
+        this.currencies = currencies;
+        this.rateMatrixService = rateMatrixService;
+        this.reportingCurrencyId = currencies.idOf(rateMatrixService.getPivotCurrency());
+        this.businessDay = new AtomicLong(businessDate.toEpochDay());
+    }
+
+    /**
+     * Add the trade to the profit and loss if it is open, replacing any earlier version of it.
+     *
+     * @param smartTrade the trade, as stored.
+     * @throws IllegalStateException if the trade has a currency not registered, and no more currencies can be.
+     */
+    public void apply(SmartTrade smartTrade) {
+        Contribution trade = contributionOf(smartTrade);
+        long day = businessDay.get();
+        Contribution applied = contributions.compute(
+            smartTrade.getId(),
+            (id, previous) -> {
+                if (previous != null && previous.version > trade.version) {
+                    return previous;
+                }
+                Contribution next = trade.counted(trade.valueDay >= businessDay.get());
+                subtract(previous);
+                add(next);
+                return next;
+            }
+        );
+        // A trade counted while the business date moved past its value date may have been missed by the settlement.
+        if (applied.counted && businessDay.get() != day) {
+            settle(smartTrade.getId());
+        }
+    }
+
+    /**
+     * Remove the trade from the profit and loss.
+     *
+     * @param id the id of the trade.
+     */
+    public void remove(String id) {
+        contributions.compute(
+            id,
+            (key, previous) -> {
+                subtract(previous);
+                return keepTombstones ? Contribution.TOMBSTONE : null;
+            }
+        );
+    }
+
+    /**
+     * Remember removed trades until {@link #stopKeepingTombstones()}, so that a concurrent full load of the trades
+     * cannot bring back a trade removed after it was read.
+     */
+    public void keepTombstones() {
+        keepTombstones = true;
+    }
+
+    public void stopKeepingTombstones() {
+        keepTombstones = false;
+        contributions.values().removeIf(contribution -> contribution == Contribution.TOMBSTONE);
+    }
+
+    /**
+     * Revalue the buckets involving the given currencies at the current rates.
+     *
+     * @param currencyIds the ids of the currencies whose rates changed.
+     * @return the number of buckets revalued.
+     */
+    public int revalue(int[] currencyIds) {
+        RateMatrix matrix = rateMatrixService.getMatrix();
+        int revalued = 0;
+        for (int currencyId : currencyIds) {
+            Queue<Bucket> affected = bucketsByCurrency.get(currencyId);
+            if (affected == null) {
+                continue;
+            }
+            for (Bucket bucket : affected) {
+                synchronized (bucket) {
+                    // Buckets of both currencies of a pair, or revalued by a trade since, are already up to date.
+                    if (bucket.ratesVersion < matrix.getVersion()) {
+                        bucket.revalue(matrix);
+                        revalued++;
+                    }
+                }
+            }
+        }
+        return revalued;
+    }
+
+    /**
+     * Get the profit and loss, optionally restricted to a trading party.
+     *
+     * @param tradingParty the trading party, or {@code null} for all.
+     * @return the profit and loss of the matching buckets holding open trades.
+     */
+    public List<MarkToMarketDTO> find(String tradingParty) {
+        RateMatrix matrix = rateMatrixService.getMatrix();
+        List<MarkToMarketDTO> result = new ArrayList<>();
+        for (Bucket bucket : buckets.values()) {
+            if (tradingParty == null || tradingParty.equals(bucket.tradingParty)) {
+                synchronized (bucket) {
+                    if (bucket.tradeCount > 0) {
+                        result.add(
+                            toDTO(bucket, bucket.baseAmount, bucket.quoteAmount, bucket.rate, bucket.pnl, bucket.tradeCount, matrix)
+                        );
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Value every trade open on the given business date from scratch, all at the current rates, then settle the trades
+     * whose value date is before it.
+     * <p>
+     * The business date only moves forward: a revaluation for an earlier date leaves the open trades unchanged.
+     *
+     * @param businessDate the business date.
+     * @param pool the pool to value the trades on.
+     * @return the profit and loss of every bucket holding trades open on the business date.
+     */
+    public RevaluationDTO revalueAll(LocalDate businessDate, ForkJoinPool pool) {
+        long day = businessDate.toEpochDay();
+        businessDay.accumulateAndGet(day, Math::max);
+        RateMatrix matrix = rateMatrixService.getMatrix();
+        Contribution[] trades = contributions.values().toArray(new Contribution[0]);
+        Revaluation revaluation = pool.invoke(new RevaluationTask(trades, 0, trades.length, day, matrix));
+
+        for (String id : revaluation.settled) {
+            settle(id);
+        }
+        List<MarkToMarketDTO> positions = new ArrayList<>(revaluation.totals.size());
+        long tradeCount = 0;
+        for (Map.Entry<Bucket, Totals> entry : revaluation.totals.entrySet()) {
+            Totals totals = entry.getValue();
+            Bucket bucket = entry.getKey();
+            positions.add(toDTO(bucket, totals.baseAmount, totals.quoteAmount, totals.rate, totals.pnl, totals.tradeCount, matrix));
+            tradeCount += totals.tradeCount;
+        }
+        return new RevaluationDTO(businessDate, matrix.getAsOf(), matrix.getVersion(), tradeCount, positions);
+    }
+
+    private void settle(String id) {
+        contributions.computeIfPresent(
+            id,
+            (key, previous) -> {
+                if (!previous.counted || previous.valueDay >= businessDay.get()) {
+                    return previous;
+                }
+                subtract(previous);
+                return previous.counted(false);
+            }
+        );
+    }
+
+    private Contribution contributionOf(SmartTrade smartTrade) {
+        long version = smartTrade.getVersion() == null ? -1 : smartTrade.getVersion();
+        String buyCurrency = smartTrade.getCurrencyBuy();
+        String sellCurrency = smartTrade.getCurrencySell();
+        if (smartTrade.getTradingParty() == null || buyCurrency == null || sellCurrency == null || buyCurrency.equals(sellCurrency)) {
+            return new Contribution(smartTrade.getId(), version, null, 0, 0, Long.MAX_VALUE, false);
+        }
+        double rate = smartTrade.getRate() == null ? Double.NaN : smartTrade.getRate();
+        double bought = smartTrade.getAmount() != null
+            ? smartTrade.getAmount().doubleValue()
+            : smartTrade.getContraAmount() != null ? smartTrade.getContraAmount().doubleValue() / rate : 0;
+        double sold = smartTrade.getContraAmount() != null
+            ? smartTrade.getContraAmount().doubleValue()
+            : smartTrade.getAmount() != null ? smartTrade.getAmount().doubleValue() * rate : 0;
+        if (Double.isNaN(bought) || Double.isNaN(sold)) {
+            bought = 0;
+            sold = 0;
+        }
+        long valueDay = smartTrade.getValueDate() == null ? Long.MAX_VALUE : smartTrade.getValueDate().toEpochDay();
+        int buyId = currencies.idOf(buyCurrency);
+        int sellId = currencies.idOf(sellCurrency);
+        if (buyCurrency.compareTo(sellCurrency) < 0) {
+            Bucket bucket = bucketOf(smartTrade.getTradingParty(), buyId, sellId);
+            return new Contribution(smartTrade.getId(), version, bucket, bought, -sold, valueDay, false);
+        }
+        Bucket bucket = bucketOf(smartTrade.getTradingParty(), sellId, buyId);
+        return new Contribution(smartTrade.getId(), version, bucket, -sold, bought, valueDay, false);
+    }
+
+    private Bucket bucketOf(String tradingParty, int baseId, int quoteId) {
+        return buckets.computeIfAbsent(
+            tradingParty + '\u0000' + CurrencyRegistry.pair(baseId, quoteId),
+            key -> {
+                Bucket bucket = new Bucket(tradingParty, baseId, quoteId);
+                bucketsByCurrency.computeIfAbsent(baseId, id -> new ConcurrentLinkedQueue<>()).add(bucket);
+                bucketsByCurrency.computeIfAbsent(quoteId, id -> new ConcurrentLinkedQueue<>()).add(bucket);
+                return bucket;
+            }
+        );
+    }
+
+    private void add(Contribution contribution) {
+        if (!contribution.counted) {
+            return;
+        }
+        Bucket bucket = contribution.bucket;
+        synchronized (bucket) {
+            bucket.baseAmount += contribution.baseAmount;
+            bucket.quoteAmount += contribution.quoteAmount;
+            bucket.tradeCount++;
+            bucket.revalue(rateMatrixService.getMatrix());
+        }
+    }
+
+    private void subtract(Contribution contribution) {
+        if (contribution == null || !contribution.counted) {
+            return;
+        }
+        Bucket bucket = contribution.bucket;
+        synchronized (bucket) {
+            if (--bucket.tradeCount == 0) {
+                // Start again from exact zeros rather than from the rounding errors of the additions.
+                bucket.baseAmount = 0;
+                bucket.quoteAmount = 0;
+            } else {
+                bucket.baseAmount -= contribution.baseAmount;
+                bucket.quoteAmount -= contribution.quoteAmount;
+            }
+            bucket.revalue(rateMatrixService.getMatrix());
+        }
+    }
+
+    /**
+     * @param matrix the rates converting the profit and loss into the reporting currency.
+     */
+    private MarkToMarketDTO toDTO(
+        Bucket bucket,
+        double baseAmount,
+        double quoteAmount,
+        double rate,
+        double pnl,
+        int tradeCount,
+        RateMatrix matrix
+    ) {
+        double reportingRate = matrix.rate(bucket.quoteId, reportingCurrencyId);
+        return new MarkToMarketDTO(
+            bucket.tradingParty,
+            currencies.codeOf(bucket.baseId),
+            currencies.codeOf(bucket.quoteId),
+            decimal(baseAmount),
+            decimal(quoteAmount),
+            decimal(rate),
+            decimal(pnl),
+            currencies.codeOf(reportingCurrencyId),
+            decimal(pnl * reportingRate),
+            tradeCount
+        );
+    }
+
+    private static BigDecimal decimal(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? null : BigDecimal.valueOf(value);
+    }
+
+    private static final class Bucket {
+
+        private final String tradingParty;
+
+        private final int baseId;
+
+        private final int quoteId;
+
+        private double baseAmount;
+
+        private double quoteAmount;
+
+        private int tradeCount;
+
+        private double rate = Double.NaN;
+
+        private double pnl = Double.NaN;
+
+        private long ratesVersion = -1;
+
+        private Bucket(String tradingParty, int baseId, int quoteId) {
+            this.tradingParty = tradingParty;
+            this.baseId = baseId;
+            this.quoteId = quoteId;
+        }
+
+        private void revalue(RateMatrix matrix) {
+            rate = matrix.rate(baseId, quoteId);
+            pnl = baseAmount * rate + quoteAmount;
+            ratesVersion = matrix.getVersion();
+        }
+    }
+
+    private static final class Contribution {
+
+        private static final Contribution TOMBSTONE = new Contribution(null, Long.MAX_VALUE, null, 0, 0, Long.MAX_VALUE, false);
+
+        private final String id;
+
+        private final long version;
+
+        private final Bucket bucket;
+
+        private final double baseAmount;
+
+        private final double quoteAmount;
+
+        private final long valueDay;
+
+        private final boolean counted;
+
+        private Contribution(
+            String id,
+            long version,
+            Bucket bucket,
+            double baseAmount,
+            double quoteAmount,
+            long valueDay,
+            boolean counted
+        ) {
+            this.id = id;
+            this.version = version;
+            this.bucket = bucket;
+            this.baseAmount = baseAmount;
+            this.quoteAmount = quoteAmount;
+            this.valueDay = valueDay;
+            this.counted = counted;
+        }
+
+        private Contribution counted(boolean open) {
+            return new Contribution(id, version, bucket, baseAmount, quoteAmount, valueDay, bucket != null && open);
+        }
+    }
+
+    /**
+     * Sums of the open trades of a bucket.
+     */
+    private static final class Totals {
+
+        private final double rate;
+
+        private double baseAmount;
+
+        private double quoteAmount;
+
+        private double pnl;
+
+        private int tradeCount;
+
+        private Totals(double rate) {
+            this.rate = rate;
+        }
+
+        private void add(Totals other) {
+            baseAmount += other.baseAmount;
+            quoteAmount += other.quoteAmount;
+            pnl += other.pnl;
+            tradeCount += other.tradeCount;
+        }
+    }
+
+    private static final class Revaluation {
+
+        private final Map<Bucket, Totals> totals = new IdentityHashMap<>();
+
+        private final List<String> settled = new ArrayList<>();
+    }
+
+    /**
+     * Values a range of the trades, splitting it in halves down to {@value #LEAF_SIZE} trades.
+     */
+    private final class RevaluationTask extends RecursiveTask<Revaluation> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Contribution[] trades;
+
+        private final int from;
+
+        private final int to;
+
+        private final long day;
+
+        private final RateMatrix matrix;
+
+        private RevaluationTask(Contribution[] trades, int from, int to, long day, RateMatrix matrix) {
+            this.trades = trades;
+            this.from = from;
+            this.to = to;
+            this.day = day;
+            this.matrix = matrix;
+        }
+
+        @Override
+        protected Revaluation compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                RevaluationTask right = new RevaluationTask(trades, middle, to, day, matrix);
+                right.fork();
+                Revaluation result = new RevaluationTask(trades, from, middle, day, matrix).compute();
+                return merge(result, right.join());
+            }
+            Revaluation result = new Revaluation();
+            long settlementDay = businessDay.get();
+            // Lay the amounts of the open trades out in columns, grouped by bucket, in two passes: count the trades of
+            // each bucket, then place each trade after the trades of the buckets before.
+            Map<Bucket, Integer> groups = new IdentityHashMap<>();
+            List<Bucket> groupBuckets = new ArrayList<>();
+            int[] groupOf = new int[to - from];
+            int[] starts = new int[16];
+            for (int i = from; i < to; i++) {
+                Contribution trade = trades[i];
+                groupOf[i - from] = -1;
+                if (trade.bucket == null) {
+                    continue;
+                }
+                if (trade.valueDay >= day) {
+                    Integer group = groups.get(trade.bucket);
+                    if (group == null) {
+                        group = groupBuckets.size();
+                        groups.put(trade.bucket, group);
+                        groupBuckets.add(trade.bucket);
+                        if (group + 2 > starts.length) {
+                            starts = Arrays.copyOf(starts, 2 * starts.length);
+                        }
+                    }
+                    groupOf[i - from] = group;
+                    starts[group + 1]++;
+                }
+                if (trade.counted && trade.valueDay < settlementDay) {
+                    result.settled.add(trade.id);
+                }
+            }
+            int groupCount = groupBuckets.size();
+            for (int group = 0; group < groupCount; group++) {
+                starts[group + 1] += starts[group];
+            }
+            double[] baseAmounts = new double[starts[groupCount]];
+            double[] quoteAmounts = new double[starts[groupCount]];
+            int[] next = Arrays.copyOf(starts, groupCount);
+            for (int i = from; i < to; i++) {
+                int group = groupOf[i - from];
+                if (group >= 0) {
+                    int position = next[group]++;
+                    baseAmounts[position] = trades[i].baseAmount;
+                    quoteAmounts[position] = trades[i].quoteAmount;
+                }
+            }
+
+            double[] sums = new double[3];
+            for (int group = 0; group < groupCount; group++) {
+                Bucket bucket = groupBuckets.get(group);
+                Totals totals = new Totals(matrix.rate(bucket.baseId, bucket.quoteId));
+                kernel.accumulate(baseAmounts, quoteAmounts, totals.rate, starts[group], starts[group + 1], sums);
+                totals.baseAmount = sums[0];
+                totals.quoteAmount = sums[1];
+                totals.pnl = sums[2];
+                totals.tradeCount = starts[group + 1] - starts[group];
+                result.totals.put(bucket, totals);
+            }
+            return result;
+        }
+
+        private Revaluation merge(Revaluation left, Revaluation right) {
+            for (Map.Entry<Bucket, Totals> entry : right.totals.entrySet()) {
+                Totals totals = left.totals.get(entry.getKey());
+                if (totals == null) {
+                    left.totals.put(entry.getKey(), entry.getValue());
+                } else {
+                    totals.add(entry.getValue());
+                }
+            }
+            left.settled.addAll(right.settled);
+            return left;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.service.dto.MarkToMarketDTO;
+import com.osttra.fx.blockstream.service.dto.RevaluationDTO;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Service for the unrealized profit and loss of the open {@link SmartTrade}s, at the rates of the
+ * {@link RateMatrixService}.
+ * <p>
+ * The {@link MarkToMarketBook} is loaded and kept up to date along with the positions by the {@link PositionService}.
+ * Rate updates mark their currencies as changed and schedule a revaluation of the buckets involving them; updates
+ * arriving faster than the buckets are revalued are coalesced, and never wait for it. Every day, the end-of-day
+ * revaluation values all the open trades again, in parallel, and settles the trades reaching their value date.
+ */
+@Service
+public class MarkToMarketService {
+
+    private final Logger log = LoggerFactory.getLogger(MarkToMarketService.class);
+
+    private final CurrencyRegistry currencyRegistry;
+
+    private final ApplicationProperties.MarkToMarket properties;
+
+    private final RateMatrixService rateMatrixService;
+
+    private volatile MarkToMarketBook markToMarketBook;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * 1 for the ids of the currencies whose rates changed since the buckets involving them were last revalued.
+     */
+    private final AtomicIntegerArray changedCurrencies = new AtomicIntegerArray(CurrencyRegistry.CAPACITY);
+
+    private final AtomicBoolean revaluationScheduled = new AtomicBoolean();
+
+    private volatile boolean ready;
+
+    private volatile RevaluationDTO lastRevaluation;
+
+    private Disposable endOfDay;
+
+    public MarkToMarketService(
+        CurrencyRegistry currencyRegistry,
+        RateMatrixService rateMatrixService,
+        ApplicationProperties applicationProperties
+    ) {
+        this.currencyRegistry = currencyRegistry;
+        this.rateMatrixService = rateMatrixService;
+        this.properties = applicationProperties.getMarkToMarket();
+        this.markToMarketBook = new MarkToMarketBook(currencyRegistry, rateMatrixService, LocalDate.now());
+        this.pool = properties.getParallelism() > 0 ? new ForkJoinPool(properties.getParallelism()) : new ForkJoinPool();
+        rateMatrixService.addListener(this::ratesUpdated);
+    }
+
+    /**
+     * Schedule the end-of-day revaluation.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (properties.getEndOfDayCron().isEmpty()) {
+            return;
+        }
+        CronExpression cron = CronExpression.parse(properties.getEndOfDayCron());
+        endOfDay =
+            Mono
+                .defer(() -> {
+                    ZonedDateTime now = ZonedDateTime.now();
+                    return Mono.delay(Duration.between(now, cron.next(now)));
+                })
+                // The trades whose value date is the current day settle at the end of it.
+                .then(Mono.defer(() -> revalueAll(LocalDate.now().plusDays(1))))
+                .onErrorResume(e -> {
+                    log.error("Could not revalue the open trades", e);
+                    return Mono.empty();
+                })
+                .repeat()
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (endOfDay != null) {
+            endOfDay.dispose();
+        }
+        pool.shutdownNow();
+    }
+
+    /**
+     * Drop the profit and loss, before the trades are loaded again.
+     */
+    public void reset() {
+        ready = false;
+        markToMarketBook = new MarkToMarketBook(currencyRegistry, rateMatrixService, LocalDate.now());
+    }
+
+    /**
+     * Remember removed trades until the trades are loaded.
+     */
+    public void loading() {
+        markToMarketBook.keepTombstones();
+    }
+
+    /**
+     * Mark the trades as ready while the last changes are replayed, still remembering removed trades.
+     */
+    public void restored() {
+        ready = true;
+    }
+
+    /**
+     * Mark the trades as loaded.
+     */
+    public void loaded() {
+        markToMarketBook.stopKeepingTombstones();
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Add the given smartTrade to the profit and loss, replacing its previous version.
+     *
+     * @param smartTrade the smartTrade, as stored.
+     */
+    public void apply(SmartTrade smartTrade) {
+        try {
+            markToMarketBook.apply(smartTrade);
+        } catch (IllegalStateException e) {
+            log.warn("Cannot count the smartTrade {} in the profit and loss: {}", smartTrade.getId(), e.getMessage());
+            markToMarketBook.remove(smartTrade.getId());
+        }
+    }
+
+    /**
+     * Remove a deleted smartTrade from the profit and loss.
+     *
+     * @param id the id of the smartTrade.
+     */
+    public void remove(String id) {
+        markToMarketBook.remove(id);
+    }
+
+    /**
+     * Get the live profit and loss, optionally restricted to a trading party.
+     *
+     * @param tradingParty the trading party, or {@code null} for all.
+     * @return the profit and loss by trading party and currency pair.
+     */
+    public List<MarkToMarketDTO> find(String tradingParty) {
+        return markToMarketBook.find(tradingParty);
+    }
+
+    /**
+     * @return the last full revaluation, or {@code null} if none was made since the application started.
+     */
+    public RevaluationDTO getLastRevaluation() {
+        return lastRevaluation;
+    }
+
+    /**
+     * Value all the trades open on a business date, and settle the trades whose value date is before it.
+     *
+     * @param businessDate the business date.
+     * @return the profit and loss by trading party and currency pair.
+     */
+    public Mono<RevaluationDTO> revalueAll(LocalDate businessDate) {
+        return Mono
+            .fromCallable(() -> {
+                long start = System.nanoTime();
+                RevaluationDTO revaluation = markToMarketBook.revalueAll(businessDate, pool);
+                log.info(
+                    "Revalued {} trades open on {} in {} ms",
+                    revaluation.getTradeCount(),
+                    businessDate,
+                    (System.nanoTime() - start) / 1_000_000
+                );
+                lastRevaluation = revaluation;
+                return revaluation;
+            })
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private void ratesUpdated(RateMatrix matrix) {
+        for (int currencyId : matrix.changedCurrencies()) {
+            changedCurrencies.set(currencyId, 1);
+        }
+        if (revaluationScheduled.compareAndSet(false, true)) {
+            Schedulers.parallel().schedule(this::revalueChanged);
+        }
+    }
+
+    private void revalueChanged() {
+        // Cleared first, so that currencies changed from now on schedule another revaluation.
+        revaluationScheduled.set(false);
+        int size = currencyRegistry.size();
+        int[] changed = new int[size];
+        int count = 0;
+        for (int currencyId = 0; currencyId < size; currencyId++) {
+            if (changedCurrencies.getAndSet(currencyId, 0) == 1) {
+                changed[count++] = currencyId;
+            }
+        }
+        if (count > 0) {
+            int revalued = markToMarketBook.revalue(Arrays.copyOf(changed, count));
+            log.trace("Revalued {} buckets after the rates of {} currencies changed", revalued, count);
+        }
+    }
+}
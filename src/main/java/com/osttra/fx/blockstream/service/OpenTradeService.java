@@ -0,0 +1,231 @@
+package com.osttra.fx.blockstream.service;
+
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.service.dto.MarkToMarketDTO;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service for the open {@link SmartTrade}s, kept off-heap in an {@link OpenTradeStore}.
+ * <p>
+ * The store is loaded and kept up to date along with the positions by the {@link PositionService}. Trades whose value
+ * date has passed are not stored, and are purged every night. Summaries scan the store without allocating per trade,
+ * summing the exact scaled amounts by trading party and currency pair before valuing them at the rates of the
+ * {@link RateMatrixService}.
+ */
+@Service
+public class OpenTradeService {
+
+    private final Logger log = LoggerFactory.getLogger(OpenTradeService.class);
+
+    private final CurrencyRegistry currencyRegistry;
+
+    private final RateMatrixService rateMatrixService;
+
+    private volatile OpenTradeStore openTradeStore;
+
+    private volatile boolean ready;
+
+    public OpenTradeService(CurrencyRegistry currencyRegistry, RateMatrixService rateMatrixService) {
+        this.currencyRegistry = currencyRegistry;
+        this.rateMatrixService = rateMatrixService;
+        this.openTradeStore = new OpenTradeStore(currencyRegistry);
+    }
+
+    /**
+     * Drop the open trades, before the trades are loaded again.
+     */
+    public void reset() {
+        ready = false;
+        openTradeStore = new OpenTradeStore(currencyRegistry);
+    }
+
+    /**
+     * Remember removed trades until the trades are loaded.
+     */
+    public void loading() {
+        openTradeStore.keepTombstones();
+    }
+
+    /**
+     * Mark the trades as ready while the last changes are replayed, still remembering removed trades.
+     */
+    public void restored() {
+        ready = true;
+    }
+
+    /**
+     * Mark the trades as loaded.
+     */
+    public void loaded() {
+        openTradeStore.stopKeepingTombstones();
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Store the given smartTrade if it is open, replacing its previous version.
+     *
+     * @param smartTrade the smartTrade, as stored.
+     */
+    public void apply(SmartTrade smartTrade) {
+        if (smartTrade.getValueDate() != null && smartTrade.getValueDate().isBefore(LocalDate.now())) {
+            openTradeStore.remove(smartTrade.getId());
+            return;
+        }
+        try {
+            openTradeStore.put(smartTrade);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            log.warn("Cannot store the open smartTrade {}: {}", smartTrade.getId(), e.getMessage());
+            openTradeStore.remove(smartTrade.getId());
+        }
+    }
+
+    /**
+     * Remove a deleted smartTrade.
+     *
+     * @param id the id of the smartTrade.
+     */
+    public void remove(String id) {
+        openTradeStore.remove(id);
+    }
+
+    /**
+     * Remove the trades whose value date has passed.
+     */
+    @Scheduled(cron = "0 0 1 * * ?")
+    public void removeSettledTrades() {
+        int removed = openTradeStore.removeSettled(LocalDate.now().toEpochDay());
+        log.info("Removed {} settled trades, {} open trades left", removed, openTradeStore.size());
+    }
+
+    /**
+     * Sum the open trades by trading party and currency pair, and value them at the current rates.
+     *
+     * @param tradingParty the trading party, or {@code null} for all.
+     * @return the positions and profit and loss by trading party and currency pair.
+     */
+    public List<MarkToMarketDTO> summarize(String tradingParty) {
+        OpenTradeStore store = openTradeStore;
+        int tradingPartyId = tradingParty == null ? -1 : store.partyId(tradingParty);
+        if (tradingParty != null && tradingPartyId < 0) {
+            return List.of();
+        }
+        Summary summary = new Summary(tradingPartyId, LocalDate.now().toEpochDay(), currencyRegistry);
+        store.scan(summary);
+
+        RateMatrix matrix = rateMatrixService.getMatrix();
+        int reportingCurrencyId = currencyRegistry.idOf(rateMatrixService.getPivotCurrency());
+        List<MarkToMarketDTO> result = new ArrayList<>(summary.size);
+        for (int group = 0; group < summary.size; group++) {
+            int baseId = CurrencyRegistry.baseOf(summary.pairs[group]);
+            int quoteId = CurrencyRegistry.quoteOf(summary.pairs[group]);
+            BigDecimal baseAmount = BigDecimal.valueOf(summary.baseAmounts[group], OpenTradeStore.SCALE);
+            BigDecimal quoteAmount = BigDecimal.valueOf(summary.quoteAmounts[group], OpenTradeStore.SCALE);
+            double rate = matrix.rate(baseId, quoteId);
+            double pnl = baseAmount.doubleValue() * rate + quoteAmount.doubleValue();
+            result.add(
+                new MarkToMarketDTO(
+                    store.partyName(summary.tradingPartyIds[group]),
+                    currencyRegistry.codeOf(baseId),
+                    currencyRegistry.codeOf(quoteId),
+                    baseAmount,
+                    quoteAmount,
+                    decimal(rate),
+                    decimal(pnl),
+                    currencyRegistry.codeOf(reportingCurrencyId),
+                    decimal(pnl * matrix.rate(quoteId, reportingCurrencyId)),
+                    summary.tradeCounts[group]
+                )
+            );
+        }
+        return result;
+    }
+
+    private static BigDecimal decimal(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? null : BigDecimal.valueOf(value);
+    }
+
+    /**
+     * Sums of the scaled amounts of the open trades, in columns indexed by group of trading party and currency pair,
+     * the pair ordered by currency code as in {@link MarkToMarketBook}.
+     */
+    private static final class Summary implements OpenTradeStore.TradeVisitor {
+
+        private final int tradingPartyId;
+
+        private final long day;
+
+        private final CurrencyRegistry currencies;
+
+        private final LongIntHashMap groups = new LongIntHashMap();
+
+        private int size;
+
+        private int[] tradingPartyIds = new int[16];
+
+        private int[] pairs = new int[16];
+
+        private long[] baseAmounts = new long[16];
+
+        private long[] quoteAmounts = new long[16];
+
+        private int[] tradeCounts = new int[16];
+
+        private Summary(int tradingPartyId, long day, CurrencyRegistry currencies) {
+            this.tradingPartyId = tradingPartyId;
+            this.day = day;
+            this.currencies = currencies;
+        }
+
+        @Override
+        public void visit(int pair, int tradingPartyId, byte direction, long amount, long contraAmount, double rate, int valueDay) {
+            if ((this.tradingPartyId >= 0 && tradingPartyId != this.tradingPartyId) || valueDay < day) {
+                return;
+            }
+            int buyId = CurrencyRegistry.baseOf(pair);
+            int sellId = CurrencyRegistry.quoteOf(pair);
+            boolean buyIsBase = currencies.codeOf(buyId).compareTo(currencies.codeOf(sellId)) < 0;
+            int ordered = buyIsBase ? pair : CurrencyRegistry.pair(sellId, buyId);
+            int group = groupOf(tradingPartyId, ordered);
+            if (buyIsBase) {
+                baseAmounts[group] += amount;
+                quoteAmounts[group] -= contraAmount;
+            } else {
+                baseAmounts[group] -= contraAmount;
+                quoteAmounts[group] += amount;
+            }
+            tradeCounts[group]++;
+        }
+
+        private int groupOf(int tradingPartyId, int pair) {
+            long key = ((long) tradingPartyId << 32) | (pair & 0xFFFFFFFFL);
+            int index = groups.indexOf(key);
+            if (groups.indexExists(index)) {
+                return groups.indexGet(index);
+            }
+            if (size == pairs.length) {
+                tradingPartyIds = Arrays.copyOf(tradingPartyIds, 2 * size);
+                pairs = Arrays.copyOf(pairs, 2 * size);
+                baseAmounts = Arrays.copyOf(baseAmounts, 2 * size);
+                quoteAmounts = Arrays.copyOf(quoteAmounts, 2 * size);
+                tradeCounts = Arrays.copyOf(tradeCounts, 2 * size);
+            }
+            tradingPartyIds[size] = tradingPartyId;
+            pairs[size] = pair;
+            groups.indexInsert(index, key, size);
+            return size++;
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package com.osttra.fx.blockstream.service;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Off-heap store of trades as fixed-width records, so that millions of open trades cost the garbage collector nothing.
+ * <p>
+ * Records of 128 bytes live in direct buffers of 65536 records, allocated as the
+ * store grows; the slots of removed records are reused. A record holds the packed {@link CurrencyRegistry#pair pair}
+ * of the bought and sold currencies, the trading party, the direction, the amounts as longs scaled by
+ * 10<sup>{@value #SCALE}</sup> and derived from the rate when missing, the rate, the epoch day of the value date and
+ * the version of the trade, followed by its id and transactionId. Two open-addressing hash tables, themselves
+ * off-heap, index the slots by id and by transactionId, comparing the keys with the bytes of the records; only the rare
+ * keys longer than their field are kept on the heap.
+ * <p>
+ * {@link #scan Scans} read the records in place and hand their fields to a {@link TradeVisitor} as primitives, without
+ * allocating. Writers take an exclusive lock, and scans a shared one.
+ */
+public final class OpenTradeStore {
+
+    /**
+     * Number of decimals of the scaled amounts.
+     */
+    public static final int SCALE = 4;
+
+    public static final byte UNKNOWN = 0;
+
+    public static final byte BUY = 1;
+
+    public static final byte SELL = 2;
+
+    private static final int RECORD_SIZE = 128;
+
+    private static final int CHUNK_BITS = 16;
+
+    private static final int CHUNK_RECORDS = 1 << CHUNK_BITS;
+
+    // Record layout: offsets of the fields.
+
+    private static final int PAIR = 0;
+
+    private static final int TRADING_PARTY = 4;
+
+    private static final int AMOUNT = 8;
+
+    private static final int CONTRA_AMOUNT = 16;
+
+    private static final int RATE = 24;
+
+    private static final int VERSION = 32;
+
+    private static final int VALUE_DAY = 40;
+
+    private static final int DIRECTION = 44;
+
+    private static final int STATE = 45;
+
+    private static final int ID_LENGTH = 46;
+
+    private static final int TRANSACTION_ID_LENGTH = 47;
+
+    private static final int ID = 48;
+
+    private static final int ID_CAPACITY = 24;
+
+    private static final int TRANSACTION_ID = ID + ID_CAPACITY;
+
+    private static final int TRANSACTION_ID_CAPACITY = RECORD_SIZE - TRANSACTION_ID;
+
+    // States of a slot.
+
+    private static final byte FREE = 0;
+
+    private static final byte LIVE = 1;
+
+    private static final byte TOMBSTONE = 2;
+
+    /**
+     * Length of a key too long for its field, kept on the heap.
+     */
+    private static final byte OVERFLOW = -1;
+
+    /**
+     * Value date of the trades without one, which never settle.
+     */
+    private static final int NO_VALUE_DAY = Integer.MAX_VALUE;
+
+    /**
+     * Receives the fields of the records of a scan.
+     */
+    @FunctionalInterface
+    public interface TradeVisitor {
+        /**
+         * @param pair the {@linkplain CurrencyRegistry#pair pair} of the bought and sold currencies.
+         * @param tradingPartyId the {@linkplain #partyId id} of the trading party.
+         * @param direction {@link #BUY}, {@link #SELL} or {@link #UNKNOWN}.
+         * @param amount the amount bought, scaled.
+         * @param contraAmount the amount sold, scaled.
+         * @param rate the rate of the trade, or {@code NaN}.
+         * @param valueDay the epoch day of the value date, or {@link Integer#MAX_VALUE}.
+         */
+        void visit(int pair, int tradingPartyId, byte direction, long amount, long contraAmount, double rate, int valueDay);
+    }
+
+    private final CurrencyRegistry currencies;
+
+    private final StampedLock lock = new StampedLock();
+
+    private final Map<String, Integer> partyIds = new HashMap<>();
+
+    private final List<String> partyNames = new ArrayList<>();
+
+    private final KeyIndex ids = new KeyIndex(ID_LENGTH, ID, ID_CAPACITY);
+
+    private final KeyIndex transactionIds = new KeyIndex(TRANSACTION_ID_LENGTH, TRANSACTION_ID, TRANSACTION_ID_CAPACITY);
+
+    private final IntArrayList freeSlots = new IntArrayList();
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+
+    /**
+     * Number of slots ever used, free or not.
+     */
+    private int slotCount;
+
+    private int size;
+
+    private boolean keepTombstones;
+
+    public OpenTradeStore(CurrencyRegistry currencies) {
+        this.currencies = currencies;
+    }
+
+    /**
+     * Store the trade, replacing any earlier version of it.
+     *
+     * @param smartTrade the trade, as stored.
+     * @return whether the trade was stored; {@code false} if a later version of it is stored already.
+     * @throws IllegalArgumentException if the trade has no id, no distinct currencies or no trading party, or if an amount
+     * does not fit a scaled long.
+     */
+    public boolean put(SmartTrade smartTrade) {
+        if (
+            smartTrade.getId() == null ||
+            smartTrade.getTradingParty() == null ||
+            smartTrade.getCurrencyBuy() == null ||
+            smartTrade.getCurrencySell() == null ||
+            smartTrade.getCurrencyBuy().equals(smartTrade.getCurrencySell())
+        ) {
+            throw new IllegalArgumentException("Cannot store a trade without an id, a trading party and two currencies");
+        }
+        int pair = CurrencyRegistry.pair(currencies.idOf(smartTrade.getCurrencyBuy()), currencies.idOf(smartTrade.getCurrencySell()));
+        double rate = smartTrade.getRate() == null ? Double.NaN : smartTrade.getRate();
+        BigDecimal bought = smartTrade.getAmount();
+        BigDecimal sold = smartTrade.getContraAmount();
+        if (bought == null && sold != null && rate > 0) {
+            bought = sold.divide(BigDecimal.valueOf(rate), MathContext.DECIMAL64);
+        } else if (sold == null && bought != null && !Double.isNaN(rate)) {
+            sold = bought.multiply(BigDecimal.valueOf(rate));
+        }
+        long amount = scaled(bought);
+        long contraAmount = scaled(sold);
+        long version = smartTrade.getVersion() == null ? -1 : smartTrade.getVersion();
+        int valueDay = smartTrade.getValueDate() == null ? NO_VALUE_DAY : Math.toIntExact(smartTrade.getValueDate().toEpochDay());
+        byte direction = "BUY".equals(smartTrade.getDirection()) ? BUY : "SELL".equals(smartTrade.getDirection()) ? SELL : UNKNOWN;
+        byte[] id = smartTrade.getId().getBytes(StandardCharsets.UTF_8);
+        String transactionIdValue = smartTrade.getTransactionId();
+        byte[] transactionId = transactionIdValue == null ? null : transactionIdValue.getBytes(StandardCharsets.UTF_8);
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = ids.find(id, smartTrade.getId());
+            if (slot >= 0) {
+                // Tombstones have the greatest version, and are never replaced.
+                if (chunk(slot).getLong(offset(slot) + VERSION) > version) {
+                    return false;
+                }
+                transactionIds.remove(slot);
+            } else {
+                slot = allocate();
+                ids.add(slot, id, smartTrade.getId());
+                size++;
+            }
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            chunk.putInt(offset + PAIR, pair);
+            chunk.putInt(offset + TRADING_PARTY, partyIdOf(smartTrade.getTradingParty()));
+            chunk.putLong(offset + AMOUNT, amount);
+            chunk.putLong(offset + CONTRA_AMOUNT, contraAmount);
+            chunk.putDouble(offset + RATE, rate);
+            chunk.putLong(offset + VERSION, version);
+            chunk.putInt(offset + VALUE_DAY, valueDay);
+            chunk.put(offset + DIRECTION, direction);
+            chunk.put(offset + STATE, LIVE);
+            if (transactionId != null && transactionId.length > 0) {
+                transactionIds.add(slot, transactionId, transactionIdValue);
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove a trade.
+     *
+     * @param id the id of the trade.
+     * @return whether the trade was stored.
+     */
+    public boolean remove(String id) {
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        long stamp = lock.writeLock();
+        try {
+            int slot = ids.find(key, id);
+            if (keepTombstones) {
+                if (slot < 0) {
+                    slot = allocate();
+                    ids.add(slot, key, id);
+                } else if (chunk(slot).get(offset(slot) + STATE) == LIVE) {
+                    size--;
+                }
+                transactionIds.remove(slot);
+                chunk(slot).putLong(offset(slot) + VERSION, Long.MAX_VALUE);
+                chunk(slot).put(offset(slot) + STATE, TOMBSTONE);
+                return true;
+            }
+            if (slot < 0) {
+                return false;
+            }
+            free(slot);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove the trades whose value date is before a day.
+     *
+     * @param epochDay the epoch day of the first value date to keep.
+     * @return the number of trades removed.
+     */
+    public int removeSettled(long epochDay) {
+        long stamp = lock.writeLock();
+        try {
+            int removed = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                ByteBuffer chunk = chunk(slot);
+                int offset = offset(slot);
+                if (chunk.get(offset + STATE) == LIVE && chunk.getInt(offset + VALUE_DAY) < epochDay) {
+                    free(slot);
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remember removed trades until {@link #stopKeepingTombstones()}, so that a concurrent full load of the trades
+     * cannot bring back a trade removed after it was read.
+     */
+    public void keepTombstones() {
+        long stamp = lock.writeLock();
+        keepTombstones = true;
+        lock.unlockWrite(stamp);
+    }
+
+    public void stopKeepingTombstones() {
+        long stamp = lock.writeLock();
+        try {
+            keepTombstones = false;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (chunk(slot).get(offset(slot) + STATE) == TOMBSTONE) {
+                    ids.remove(slot);
+                    chunk(slot).put(offset(slot) + STATE, FREE);
+                    freeSlots.add(slot);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Hand the fields of every stored trade to a visitor, in no particular order.
+     * <p>
+     * Writers wait until the scan completes, so the visitor should not block.
+     *
+     * @param visitor the visitor.
+     */
+    public void scan(TradeVisitor visitor) {
+        long stamp = lock.readLock();
+        try {
+            for (int slot = 0; slot < slotCount; slot++) {
+                ByteBuffer chunk = chunk(slot);
+                int offset = offset(slot);
+                if (chunk.get(offset + STATE) == LIVE) {
+                    visit(chunk, offset, visitor);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Hand the fields of the trade with the given transactionId to a visitor.
+     *
+     * @param transactionId the transactionId.
+     * @param visitor the visitor.
+     * @return whether a trade has this transactionId.
+     */
+    public boolean findByTransactionId(String transactionId, TradeVisitor visitor) {
+        byte[] key = transactionId.getBytes(StandardCharsets.UTF_8);
+        long stamp = lock.readLock();
+        try {
+            int slot = transactionIds.find(key, transactionId);
+            if (slot < 0) {
+                return false;
+            }
+            visit(chunk(slot), offset(slot), visitor);
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the number of stored trades.
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @param tradingParty a trading party.
+     * @return the id of the trading party in the records, or -1 if no trade of the party was ever stored.
+     */
+    public int partyId(String tradingParty) {
+        long stamp = lock.readLock();
+        try {
+            Integer id = partyIds.get(tradingParty);
+            return id == null ? -1 : id;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @param tradingPartyId the id of a trading party in the records.
+     * @return the trading party.
+     */
+    public String partyName(int tradingPartyId) {
+        long stamp = lock.readLock();
+        try {
+            return partyNames.get(tradingPartyId);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void visit(ByteBuffer chunk, int offset, TradeVisitor visitor) {
+        visitor.visit(
+            chunk.getInt(offset + PAIR),
+            chunk.getInt(offset + TRADING_PARTY),
+            chunk.get(offset + DIRECTION),
+            chunk.getLong(offset + AMOUNT),
+            chunk.getLong(offset + CONTRA_AMOUNT),
+            chunk.getDouble(offset + RATE),
+            chunk.getInt(offset + VALUE_DAY)
+        );
+    }
+
+    private int partyIdOf(String tradingParty) {
+        Integer id = partyIds.get(tradingParty);
+        if (id == null) {
+            id = partyNames.size();
+            partyIds.put(tradingParty, id);
+            partyNames.add(tradingParty);
+        }
+        return id;
+    }
+
+    private int allocate() {
+        if (!freeSlots.isEmpty()) {
+            return freeSlots.remove(freeSlots.size() - 1);
+        }
+        int slot = slotCount++;
+        if (slot >>> CHUNK_BITS == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD_SIZE).order(ByteOrder.nativeOrder());
+        }
+        return slot;
+    }
+
+    private void free(int slot) {
+        ids.remove(slot);
+        transactionIds.remove(slot);
+        if (chunk(slot).get(offset(slot) + STATE) == LIVE) {
+            size--;
+        }
+        chunk(slot).put(offset(slot) + STATE, FREE);
+        freeSlots.add(slot);
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> CHUNK_BITS];
+    }
+
+    private static int offset(int slot) {
+        return (slot & (CHUNK_RECORDS - 1)) * RECORD_SIZE;
+    }
+
+    private static long scaled(BigDecimal amount) {
+        if (amount == null) {
+            return 0;
+        }
+        try {
+            return amount.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount too large to store: " + amount, e);
+        }
+    }
+
+    private static int hash(byte[] key) {
+        int hash = 0x811C9DC5;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xFF)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(ByteBuffer chunk, int offset, int length) {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (chunk.get(offset + i) & 0xFF)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Index of the slots by a key stored in the records, with linear probing. Entries are slot + 1, 0 being empty.
+     * Only accessed under the write lock, or the read lock for {@link #find}.
+     */
+    private final class KeyIndex {
+
+        private final int lengthField;
+
+        private final int keyField;
+
+        private final int keyCapacity;
+
+        private final Map<String, Integer> overflowSlots = new HashMap<>();
+
+        private final IntObjectHashMap<String> overflowKeys = new IntObjectHashMap<>();
+
+        private ByteBuffer table = newTable(1024);
+
+        private int mask = 1023;
+
+        private int size;
+
+        private KeyIndex(int lengthField, int keyField, int keyCapacity) {
+            this.lengthField = lengthField;
+            this.keyField = keyField;
+            this.keyCapacity = keyCapacity;
+        }
+
+        private int find(byte[] key, String value) {
+            if (key.length > keyCapacity) {
+                Integer slot = overflowSlots.get(value);
+                return slot == null ? -1 : slot;
+            }
+            for (int position = hash(key) & mask;; position = (position + 1) & mask) {
+                int entry = table.getInt(position * Integer.BYTES);
+                if (entry == 0) {
+                    return -1;
+                }
+                if (matches(entry - 1, key)) {
+                    return entry - 1;
+                }
+            }
+        }
+
+        private void add(int slot, byte[] key, String value) {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            if (key.length > keyCapacity) {
+                chunk.put(offset + lengthField, OVERFLOW);
+                overflowSlots.put(value, slot);
+                overflowKeys.put(slot, value);
+                return;
+            }
+            chunk.put(offset + lengthField, (byte) key.length);
+            for (int i = 0; i < key.length; i++) {
+                chunk.put(offset + keyField + i, key[i]);
+            }
+            if (2 * (size + 1) > mask + 1) {
+                resize(2 * (mask + 1));
+            }
+            insert(slot, hash(key));
+            size++;
+        }
+
+        private void remove(int slot) {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            byte length = chunk.get(offset + lengthField);
+            chunk.put(offset + lengthField, (byte) 0);
+            if (length == OVERFLOW) {
+                overflowSlots.remove(overflowKeys.remove(slot));
+                return;
+            }
+            if (length == 0) {
+                return;
+            }
+            int position = hash(chunk, offset + keyField, length) & mask;
+            while (table.getInt(position * Integer.BYTES) != slot + 1) {
+                position = (position + 1) & mask;
+            }
+            // Shift back the entries of the cluster that would no longer be found past the hole.
+            int hole = position;
+            for (int next = (hole + 1) & mask;; next = (next + 1) & mask) {
+                int entry = table.getInt(next * Integer.BYTES);
+                if (entry == 0) {
+                    break;
+                }
+                int home = homeOf(entry - 1);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    table.putInt(hole * Integer.BYTES, entry);
+                    hole = next;
+                }
+            }
+            table.putInt(hole * Integer.BYTES, 0);
+            size--;
+        }
+
+        private boolean matches(int slot, byte[] key) {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            if (chunk.get(offset + lengthField) != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (chunk.get(offset + keyField + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int homeOf(int slot) {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            return hash(chunk, offset + keyField, chunk.get(offset + lengthField)) & mask;
+        }
+
+        private void insert(int slot, int hash) {
+            int position = hash & mask;
+            while (table.getInt(position * Integer.BYTES) != 0) {
+                position = (position + 1) & mask;
+            }
+            table.putInt(position * Integer.BYTES, slot + 1);
+        }
+
+        private void resize(int capacity) {
+            ByteBuffer previous = table;
+            int previousCapacity = mask + 1;
+            table = newTable(capacity);
+            mask = capacity - 1;
+            for (int position = 0; position < previousCapacity; position++) {
+                int entry = previous.getInt(position * Integer.BYTES);
+                if (entry != 0) {
+                    insert(entry - 1, homeOf(entry - 1));
+                }
+            }
+        }
+
+        private ByteBuffer newTable(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.osttra.fx.blockstream.service;
+
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.cursors.LongObjectCursor;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.service.dto.PositionDTO;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory net positions by trading party, counter party and currency pair.
+ * <p>
+ * Positions live in lock-striped primitive maps keyed by a {@code long} that packs the dictionary ids of the two
+ * parties and the {@link CurrencyRegistry} ids of the two currencies. The contribution of every trade is remembered,
+ * so a trade can be applied again after an update, or removed, without reading its previous state from the database.
+ * Contributions carry the trade version, which keeps an older copy of a trade from replacing a newer one.
+ * <p>
+ * Amounts are summed as {@link BigDecimal}s, so applying changes incrementally yields exactly the positions of a book
+ * built from scratch from the same trades; see {@link #differencesFrom(PositionBook)}.
+ */
+public final class PositionBook {
+
+    private static final int PARTY_BITS = 22;
+
+    private static final int CURRENCY_BITS = CurrencyRegistry.ID_BITS;
+
+    private static final int STRIPES = 64;
+
+    private final Dictionary parties = new Dictionary(PARTY_BITS);
+
+    private final CurrencyRegistry currencies;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final ConcurrentHashMap<String, Contribution> contributions = new ConcurrentHashMap<>();
+
+    private volatile boolean keepTombstones;
+
+    public PositionBook(CurrencyRegistry currencies) {
+        this.currencies = currencies;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Add the trade to the positions, replacing any earlier version of it.
+     *
+     * @param smartTrade the trade, as stored.
+     * @throws IllegalStateException if the trade has a currency not registered, and no more currencies can be.
+     */
+    public void apply(SmartTrade smartTrade) {
+        Contribution next = contributionOf(smartTrade);
+        contributions.compute(
+            smartTrade.getId(),
+            (id, previous) -> {
+                if (previous != null && previous.version > next.version) {
+                    return previous;
+                }
+                subtract(previous);
+                add(next);
+                return next;
+            }
+        );
+    }
+
+    /**
+     * Remove the trade from the positions.
+     *
+     * @param id the id of the trade.
+     */
+    public void remove(String id) {
+        contributions.compute(
+            id,
+            (key, previous) -> {
+                subtract(previous);
+                return keepTombstones ? Contribution.TOMBSTONE : null;
+            }
+        );
+    }
+
+    /**
+     * Remember removed trades until {@link #stopKeepingTombstones()}, so that a concurrent full load of the trades
+     * cannot bring back a trade removed after it was read.
+     */
+    public void keepTombstones() {
+        keepTombstones = true;
+    }
+
+    public void stopKeepingTombstones() {
+        keepTombstones = false;
+        contributions.values().removeIf(contribution -> contribution == Contribution.TOMBSTONE);
+    }
+
+    /**
+     * Get the positions, optionally restricted to a trading party and a counter party.
+     *
+     * @param tradingParty the trading party, or {@code null} for all.
+     * @param counterParty the counter party, or {@code null} for all.
+     * @return the matching positions.
+     */
+    public List<PositionDTO> find(String tradingParty, String counterParty) {
+        int tradingPartyId = tradingParty == null ? -1 : parties.find(tradingParty);
+        int counterPartyId = counterParty == null ? -1 : parties.find(counterParty);
+        List<PositionDTO> result = new ArrayList<>();
+        if ((tradingParty != null && tradingPartyId < 0) || (counterParty != null && counterPartyId < 0)) {
+            return result;
+        }
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (LongObjectCursor<Position> cursor : stripe.positions) {
+                    long key = cursor.key;
+                    if (
+                        (tradingPartyId < 0 || tradingPartyId(key) == tradingPartyId) &&
+                        (counterPartyId < 0 || counterPartyId(key) == counterPartyId)
+                    ) {
+                        result.add(toDTO(key, cursor.value));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the position of one trading party against one counter party in one currency pair.
+     *
+     * @return the position, or {@code null} if there is none.
+     */
+    public PositionDTO find(String tradingParty, String counterParty, String currency, String otherCurrency) {
+        int tradingPartyId = parties.find(tradingParty);
+        int counterPartyId = parties.find(counterParty);
+        int currencyId = currencies.find(currency);
+        int otherCurrencyId = currencies.find(otherCurrency);
+        if (tradingPartyId < 0 || counterPartyId < 0 || currencyId < 0 || otherCurrencyId < 0) {
+            return null;
+        }
+        boolean inverted = currency.compareTo(otherCurrency) > 0;
+        long key = inverted
+            ? key(tradingPartyId, counterPartyId, otherCurrencyId, currencyId)
+            : key(tradingPartyId, counterPartyId, currencyId, otherCurrencyId);
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            Position position = stripe.positions.get(key);
+            return position == null ? null : toDTO(key, position);
+        }
+    }
+
+    /**
+     * Compare with another book, typically one rebuilt from scratch.
+     *
+     * @param expected the book holding the expected positions.
+     * @return the positions of this book that differ from, or are missing in, the expected book, followed by the
+     * positions of the expected book missing in this one; empty if both books hold the same positions.
+     */
+    public List<PositionDTO> differencesFrom(PositionBook expected) {
+        Map<String, PositionDTO> expectedPositions = new HashMap<>();
+        for (PositionDTO position : expected.find(null, null)) {
+            expectedPositions.put(identity(position), position);
+        }
+        List<PositionDTO> differences = new ArrayList<>();
+        for (PositionDTO position : find(null, null)) {
+            PositionDTO expectedPosition = expectedPositions.remove(identity(position));
+            if (expectedPosition == null || !position.isSameAs(expectedPosition)) {
+                differences.add(position);
+            }
+        }
+        differences.addAll(expectedPositions.values());
+        return differences;
+    }
+
+    private Contribution contributionOf(SmartTrade smartTrade) {
+        long version = smartTrade.getVersion() == null ? -1 : smartTrade.getVersion();
+        if (
+            smartTrade.getTradingParty() == null ||
+            smartTrade.getCounterParty() == null ||
+            smartTrade.getCurrencyBuy() == null ||
+            smartTrade.getCurrencySell() == null ||
+            smartTrade.getCurrencyBuy().equals(smartTrade.getCurrencySell())
+        ) {
+            return new Contribution(version, 0L, null, null);
+        }
+        BigDecimal bought = smartTrade.getAmount() == null ? BigDecimal.ZERO : smartTrade.getAmount();
+        BigDecimal sold = smartTrade.getContraAmount() == null ? BigDecimal.ZERO : smartTrade.getContraAmount().negate();
+        int tradingPartyId = parties.idOf(smartTrade.getTradingParty());
+        int counterPartyId = parties.idOf(smartTrade.getCounterParty());
+        int buyId = currencies.idOf(smartTrade.getCurrencyBuy());
+        int sellId = currencies.idOf(smartTrade.getCurrencySell());
+        if (smartTrade.getCurrencyBuy().compareTo(smartTrade.getCurrencySell()) < 0) {
+            return new Contribution(version, key(tradingPartyId, counterPartyId, buyId, sellId), bought, sold);
+        }
+        return new Contribution(version, key(tradingPartyId, counterPartyId, sellId, buyId), sold, bought);
+    }
+
+    private void add(Contribution contribution) {
+        if (!contribution.counted()) {
+            return;
+        }
+        Stripe stripe = stripeOf(contribution.key);
+        synchronized (stripe) {
+            Position position = stripe.positions.get(contribution.key);
+            if (position == null) {
+                position = new Position();
+                stripe.positions.put(contribution.key, position);
+            }
+            position.baseAmount = position.baseAmount.add(contribution.baseAmount);
+            position.quoteAmount = position.quoteAmount.add(contribution.quoteAmount);
+            position.tradeCount++;
+        }
+    }
+
+    private void subtract(Contribution contribution) {
+        if (contribution == null || !contribution.counted()) {
+            return;
+        }
+        Stripe stripe = stripeOf(contribution.key);
+        synchronized (stripe) {
+            Position position = stripe.positions.get(contribution.key);
+            if (--position.tradeCount == 0) {
+                stripe.positions.remove(contribution.key);
+            } else {
+                position.baseAmount = position.baseAmount.subtract(contribution.baseAmount);
+                position.quoteAmount = position.quoteAmount.subtract(contribution.quoteAmount);
+            }
+        }
+    }
+
+    private PositionDTO toDTO(long key, Position position) {
+        return new PositionDTO(
+            parties.nameOf(tradingPartyId(key)),
+            parties.nameOf(counterPartyId(key)),
+            currencies.codeOf(baseCurrencyId(key)),
+            currencies.codeOf(quoteCurrencyId(key)),
+            position.baseAmount,
+            position.quoteAmount,
+            position.tradeCount
+        );
+    }
+
+    private Stripe stripeOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (hash >>> 58) & (STRIPES - 1)];
+    }
+
+    private static String identity(PositionDTO position) {
+        return position.getTradingParty() + '\u0000' + position.getCounterParty() + '\u0000' + position.getBaseCurrency() + '/' +
+        position.getQuoteCurrency();
+    }
+
+    // Key layout, from the most significant bits: trading party, counter party, base currency, quote currency.
+
+    private static long key(int tradingPartyId, int counterPartyId, int baseCurrencyId, int quoteCurrencyId) {
+        return (
+            ((long) tradingPartyId << (PARTY_BITS + 2 * CURRENCY_BITS)) |
+            ((long) counterPartyId << (2 * CURRENCY_BITS)) |
+            ((long) baseCurrencyId << CURRENCY_BITS) |
+            quoteCurrencyId
+        );
+    }
+
+    private static int tradingPartyId(long key) {
+        return (int) (key >>> (PARTY_BITS + 2 * CURRENCY_BITS));
+    }
+
+    private static int counterPartyId(long key) {
+        return (int) (key >>> (2 * CURRENCY_BITS)) & ((1 << PARTY_BITS) - 1);
+    }
+
+    private static int baseCurrencyId(long key) {
+        return (int) (key >>> CURRENCY_BITS) & ((1 << CURRENCY_BITS) - 1);
+    }
+
+    private static int quoteCurrencyId(long key) {
+        return (int) key & ((1 << CURRENCY_BITS) - 1);
+    }
+
+    private static final class Stripe {
+
+        private final LongObjectHashMap<Position> positions = new LongObjectHashMap<>();
+    }
+
+    private static final class Position {
+
+        private BigDecimal baseAmount = BigDecimal.ZERO;
+
+        private BigDecimal quoteAmount = BigDecimal.ZERO;
+
+        private int tradeCount;
+    }
+
+    private static final class Contribution {
+
+        private static final Contribution TOMBSTONE = new Contribution(Long.MAX_VALUE, 0L, null, null);
+
+        private final long version;
+
+        private final long key;
+
+        private final BigDecimal baseAmount;
+
+        private final BigDecimal quoteAmount;
+
+        private Contribution(long version, long key, BigDecimal baseAmount, BigDecimal quoteAmount) {
+            this.version = version;
+            this.key = key;
+            this.baseAmount = baseAmount;
+            this.quoteAmount = quoteAmount;
+        }
+
+        private boolean counted() {
+            return baseAmount != null;
+        }
+    }
+
+    /**
+     * Assigns dense ids to names, bounded by the number of bits they take in a key.
+     */
+    private static final class Dictionary {
+
+        private final int capacity;
+
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+        private final ConcurrentHashMap<Integer, String> names = new ConcurrentHashMap<>();
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Dictionary(int bits) {
+            this.capacity = 1 << bits;
+        }
+
+        private int idOf(String name) {
+            return ids.computeIfAbsent(
+                name,
+                key -> {
+                    int id = next.getAndIncrement();
+                    if (id >= capacity) {
+                        throw new IllegalStateException("More than " + capacity + " distinct values in a position key");
+                    }
+                    names.put(id, key);
+                    return id;
+                }
+            );
+        }
+
+        private int find(String name) {
+            Integer id = ids.get(name);
+            return id == null ? -1 : id;
+        }
+
+        private String nameOf(int id) {
+            return names.get(id);
+        }
+    }
+}
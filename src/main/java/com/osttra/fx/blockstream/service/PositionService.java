@@ -0,0 +1,204 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import com.osttra.fx.blockstream.service.dto.PositionDTO;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service for the live net positions of the {@link SmartTrade}s.
+ * <p>
+ * The {@link PositionBook} is loaded once when the application starts, from the {@link TradeSnapshotService} or from
+ * MongoDB, then kept up to date by the write paths of the smartTrades, so queries never read the collection. The
+ * profit and loss of the {@link MarkToMarketService} and the open trades of the {@link OpenTradeService} are loaded and
+ * kept up to date along with it.
+ */
+@Service
+public class PositionService {
+
+    /**
+     * High-water mark standing for the absence of a trade snapshot.
+     */
+    private static final long NO_SNAPSHOT = -1;
+
+    private final Logger log = LoggerFactory.getLogger(PositionService.class);
+
+    private final SmartTradeRepository smartTradeRepository;
+
+    private final CurrencyRegistry currencyRegistry;
+
+    private final MarkToMarketService markToMarketService;
+
+    private final OpenTradeService openTradeService;
+
+    private final TradeSnapshotService tradeSnapshotService;
+
+    private volatile PositionBook positionBook;
+
+    private volatile boolean ready;
+
+    public PositionService(
+        SmartTradeRepository smartTradeRepository,
+        CurrencyRegistry currencyRegistry,
+        MarkToMarketService markToMarketService,
+        OpenTradeService openTradeService,
+        TradeSnapshotService tradeSnapshotService
+    ) {
+        this.smartTradeRepository = smartTradeRepository;
+        this.currencyRegistry = currencyRegistry;
+        this.markToMarketService = markToMarketService;
+        this.openTradeService = openTradeService;
+        this.tradeSnapshotService = tradeSnapshotService;
+        this.positionBook = new PositionBook(currencyRegistry);
+    }
+
+    /**
+     * Restore the positions from the last trade snapshot, if any, or else load those of all the stored smartTrades.
+     * <p>
+     * Writes received meanwhile are applied as usual; trade versions and tombstones keep the load from undoing them.
+     * A restored snapshot makes the positions ready at once, while the changes made since it was written are replayed;
+     * tombstones are kept until then, since a replayed change may be older than a deletion made meanwhile. Should the
+     * snapshot or its changes fail to apply, the positions are loaded from scratch.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        loading();
+        long start = System.nanoTime();
+        tradeSnapshotService
+            .restore(this::apply)
+            .defaultIfEmpty(NO_SNAPSHOT)
+            .subscribe(
+                highWaterMark -> {
+                    if (highWaterMark == NO_SNAPSHOT) {
+                        load();
+                        return;
+                    }
+                    restored();
+                    log.info("Restored the positions from the trade snapshot in {} ms", (System.nanoTime() - start) / 1_000_000);
+                    tradeSnapshotService
+                        .catchUp(highWaterMark, this::apply, this::remove)
+                        .subscribe(
+                            count -> {
+                                loaded();
+                                log.info("Replayed {} smartTrade changes following the trade snapshot", count);
+                            },
+                            e -> {
+                                log.error("Could not replay the smartTrade changes following the trade snapshot, loading the positions", e);
+                                reload();
+                            }
+                        );
+                },
+                e -> {
+                    log.error("Could not restore the trade snapshot, loading the positions", e);
+                    reload();
+                }
+            );
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Add the given smartTrade to the positions, replacing its previous version.
+     *
+     * @param smartTrade the smartTrade, as stored.
+     */
+    public void apply(SmartTrade smartTrade) {
+        try {
+            positionBook.apply(smartTrade);
+        } catch (IllegalStateException e) {
+            log.warn("Cannot count the smartTrade {} in the positions: {}", smartTrade.getId(), e.getMessage());
+            positionBook.remove(smartTrade.getId());
+        }
+        markToMarketService.apply(smartTrade);
+        openTradeService.apply(smartTrade);
+    }
+
+    /**
+     * Remove a deleted smartTrade from the positions.
+     *
+     * @param id the id of the smartTrade.
+     */
+    public void remove(String id) {
+        positionBook.remove(id);
+        markToMarketService.remove(id);
+        openTradeService.remove(id);
+    }
+
+    /**
+     * Get the positions, optionally restricted to a trading party and a counter party.
+     *
+     * @param tradingParty the trading party, or {@code null} for all.
+     * @param counterParty the counter party, or {@code null} for all.
+     * @return the matching positions.
+     */
+    public List<PositionDTO> find(String tradingParty, String counterParty) {
+        return positionBook.find(tradingParty, counterParty);
+    }
+
+    private void loading() {
+        positionBook.keepTombstones();
+        markToMarketService.loading();
+        openTradeService.loading();
+    }
+
+    private void restored() {
+        markToMarketService.restored();
+        openTradeService.restored();
+        ready = true;
+    }
+
+    private void loaded() {
+        positionBook.stopKeepingTombstones();
+        markToMarketService.loaded();
+        openTradeService.loaded();
+        ready = true;
+    }
+
+    private void load() {
+        long start = System.nanoTime();
+        smartTradeRepository
+            .findAll()
+            .doOnNext(this::apply)
+            .count()
+            .subscribe(
+                count -> {
+                    loaded();
+                    log.info("Loaded the positions of {} smartTrades in {} ms", count, (System.nanoTime() - start) / 1_000_000);
+                },
+                e -> log.error("Could not load the positions of the smartTrades", e)
+            );
+    }
+
+    /**
+     * Drop the positions and load them from scratch.
+     */
+    private void reload() {
+        ready = false;
+        positionBook = new PositionBook(currencyRegistry);
+        markToMarketService.reset();
+        openTradeService.reset();
+        loading();
+        load();
+    }
+
+    /**
+     * Rebuild the positions from scratch and compare them with the live ones.
+     * <p>
+     * Trades written while the collection is read may show up as transient differences.
+     *
+     * @return the live positions that differ from the rebuilt ones, followed by the rebuilt positions missing from the
+     * live ones.
+     */
+    public Mono<List<PositionDTO>> findDiscrepancies() {
+        PositionBook rebuilt = new PositionBook(currencyRegistry);
+        return smartTradeRepository.findAll().doOnNext(rebuilt::apply).then(Mono.fromCallable(() -> positionBook.differencesFrom(rebuilt)));
+    }
+}
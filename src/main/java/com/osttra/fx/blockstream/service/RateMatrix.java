@@ -0,0 +1,139 @@
+package com.osttra.fx.blockstream.service;
+
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the exchange rates between the currencies of the {@link CurrencyRegistry}.
+ * <p>
+ * The rate of a pair is the amount of the quote currency worth one unit of the base currency. A pair quoted directly,
+ * or whose inverse is quoted directly, has that rate. Any other pair is triangulated through the pivot currency, from
+ * the value of each currency in the pivot currency, so quoting the pairs against the pivot is enough to convert between
+ * any two currencies. Lookups read primitive arrays and maps, and never allocate.
+ */
+public final class RateMatrix {
+
+    static final RateMatrix EMPTY = new RateMatrix(new double[0], new IntDoubleHashMap(), new int[0], 0, null);
+
+    /**
+     * The value of one unit of each currency in the pivot currency, by currency id; {@code NaN} if not quoted.
+     */
+    private final double[] pivotValues;
+
+    /**
+     * The rates of the pairs quoted directly that do not involve the pivot currency, by pair key.
+     */
+    private final IntDoubleHashMap directRates;
+
+    /**
+     * The ids of the currencies quoted by the update that made this snapshot.
+     */
+    private final int[] changedCurrencies;
+
+    private final long version;
+
+    private final Instant asOf;
+
+    private RateMatrix(double[] pivotValues, IntDoubleHashMap directRates, int[] changedCurrencies, long version, Instant asOf) {
+        this.pivotValues = pivotValues;
+        this.directRates = directRates;
+        this.changedCurrencies = changedCurrencies;
+        this.version = version;
+        this.asOf = asOf;
+    }
+
+    /**
+     * Get the rate of a currency pair.
+     *
+     * @param baseId the id of the base currency.
+     * @param quoteId the id of the quote currency.
+     * @return the rate, or {@code NaN} if it cannot be derived.
+     */
+    public double rate(int baseId, int quoteId) {
+        if (baseId == quoteId) {
+            return baseId >= 0 ? 1.0 : Double.NaN;
+        }
+        if (baseId < 0 || quoteId < 0) {
+            return Double.NaN;
+        }
+        if (!directRates.isEmpty()) {
+            double direct = directRates.getOrDefault(CurrencyRegistry.pair(baseId, quoteId), Double.NaN);
+            if (!Double.isNaN(direct)) {
+                return direct;
+            }
+            double inverse = directRates.getOrDefault(CurrencyRegistry.pair(quoteId, baseId), Double.NaN);
+            if (!Double.isNaN(inverse)) {
+                return 1.0 / inverse;
+            }
+        }
+        return pivotValue(baseId) / pivotValue(quoteId);
+    }
+
+    /**
+     * @return the number of updates this snapshot reflects.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return when this snapshot was made, or {@code null} if no rate was ever quoted.
+     */
+    public Instant getAsOf() {
+        return asOf;
+    }
+
+    /**
+     * @return the ids of the currencies whose rates may differ from the previous snapshot: those quoted by the update
+     * that made this one, except the pivot currency when quoted against it; the array must not be modified.
+     */
+    int[] changedCurrencies() {
+        return changedCurrencies;
+    }
+
+    /**
+     * Make a new snapshot with the given quotes replacing the current rates of their pairs.
+     *
+     * @param pivotId the id of the pivot currency.
+     * @param baseIds the ids of the base currencies of the quotes.
+     * @param quoteIds the ids of the quote currencies of the quotes.
+     * @param rates the positive rates of the quotes.
+     * @param asOf when the quotes are received.
+     * @return the new snapshot; this one is left unchanged.
+     */
+    RateMatrix with(int pivotId, int[] baseIds, int[] quoteIds, double[] rates, Instant asOf) {
+        int size = Math.max(pivotValues.length, pivotId + 1);
+        for (int i = 0; i < rates.length; i++) {
+            size = Math.max(size, Math.max(baseIds[i], quoteIds[i]) + 1);
+        }
+        double[] values = Arrays.copyOf(pivotValues, size);
+        Arrays.fill(values, pivotValues.length, size, Double.NaN);
+        values[pivotId] = 1.0;
+        IntDoubleHashMap direct = directRates;
+        int[] changed = new int[2 * rates.length];
+        int changedCount = 0;
+        for (int i = 0; i < rates.length; i++) {
+            if (quoteIds[i] == pivotId) {
+                values[baseIds[i]] = rates[i];
+                changed[changedCount++] = baseIds[i];
+            } else if (baseIds[i] == pivotId) {
+                values[quoteIds[i]] = 1.0 / rates[i];
+                changed[changedCount++] = quoteIds[i];
+            } else {
+                changed[changedCount++] = baseIds[i];
+                changed[changedCount++] = quoteIds[i];
+                if (direct == directRates) {
+                    direct = directRates.clone();
+                }
+                direct.put(CurrencyRegistry.pair(baseIds[i], quoteIds[i]), rates[i]);
+                direct.remove(CurrencyRegistry.pair(quoteIds[i], baseIds[i]));
+            }
+        }
+        return new RateMatrix(values, direct, Arrays.stream(changed, 0, changedCount).distinct().toArray(), version + 1, asOf);
+    }
+
+    private double pivotValue(int id) {
+        return id < pivotValues.length ? pivotValues[id] : Double.NaN;
+    }
+}
@@ -0,0 +1,164 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.service.dto.CurrencyConversionDTO;
+import com.osttra.fx.blockstream.service.dto.RateDTO;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service keeping the exchange rates between currencies in memory, and converting amounts with them.
+ * <p>
+ * The rates are held in an immutable {@link RateMatrix}: an update builds a new matrix from the current one and
+ * publishes it with a single volatile write. Readers take the current matrix with a volatile read and never wait, even
+ * while rates are being updated; a batch of lookups made on one {@link #getMatrix() matrix} is consistent. Updates are
+ * serialized, and cost a copy of one rate per currency. Listeners are told of each new matrix once it is published.
+ */
+@Service
+public class RateMatrixService {
+
+    private final Logger log = LoggerFactory.getLogger(RateMatrixService.class);
+
+    private final CurrencyRegistry currencyRegistry;
+
+    private final String pivotCurrency;
+
+    private final List<Consumer<RateMatrix>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile RateMatrix matrix = RateMatrix.EMPTY;
+
+    public RateMatrixService(CurrencyRegistry currencyRegistry, ApplicationProperties applicationProperties) {
+        this.currencyRegistry = currencyRegistry;
+        this.pivotCurrency = applicationProperties.getRates().getPivotCurrency();
+    }
+
+    /**
+     * @return the current rates.
+     */
+    public RateMatrix getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * @return the currency through which the cross rates are derived.
+     */
+    public String getPivotCurrency() {
+        return pivotCurrency;
+    }
+
+    /**
+     * Register a listener called with every new matrix, on the thread that updated the rates and after the matrix is
+     * published. Listeners of concurrent updates may be called out of order, so they should only take from the matrix
+     * they are given the currencies it changed, and read the rates from {@link #getMatrix()}.
+     *
+     * @param listener the listener, which must not block.
+     */
+    public void addListener(Consumer<RateMatrix> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Replace the rates of the given currency pairs, provided all their currencies are in the
+     * {@link com.osttra.fx.blockstream.domain.Currencies} collection.
+     *
+     * @param rates the quoted rates, each with distinct currencies and a positive rate.
+     * @return the version of the rates including the update, or an {@link UnknownCurrencyException} naming the
+     * currencies not in the collection, in which case no rate is updated and no currency registered.
+     */
+    public Mono<Long> updateKnown(List<RateDTO> rates) {
+        List<String> codes = new ArrayList<>(2 * rates.size());
+        for (RateDTO rate : rates) {
+            codes.add(rate.getBaseCurrency());
+            codes.add(rate.getQuoteCurrency());
+        }
+        return currencyRegistry
+            .findUnknown(codes)
+            .map(unknown -> {
+                if (!unknown.isEmpty()) {
+                    throw new UnknownCurrencyException(unknown);
+                }
+                return update(rates);
+            });
+    }
+
+    /**
+     * Replace the rates of the given currency pairs.
+     *
+     * @param rates the quoted rates, each with distinct currencies and a positive rate.
+     * @return the version of the rates including the update.
+     */
+    public long update(List<RateDTO> rates) {
+        int[] baseIds = new int[rates.size()];
+        int[] quoteIds = new int[rates.size()];
+        double[] values = new double[rates.size()];
+        for (int i = 0; i < rates.size(); i++) {
+            RateDTO rate = rates.get(i);
+            baseIds[i] = currencyRegistry.idOf(rate.getBaseCurrency());
+            quoteIds[i] = currencyRegistry.idOf(rate.getQuoteCurrency());
+            values[i] = rate.getRate().doubleValue();
+        }
+        int pivotId = currencyRegistry.idOf(pivotCurrency);
+        RateMatrix updated;
+        synchronized (this) {
+            updated = matrix.with(pivotId, baseIds, quoteIds, values, Instant.now());
+            matrix = updated;
+        }
+        log.debug("Updated {} rates, now at version {}", rates.size(), updated.getVersion());
+        for (Consumer<RateMatrix> listener : listeners) {
+            listener.accept(updated);
+        }
+        return updated.getVersion();
+    }
+
+    /**
+     * Get the rate of a currency pair, quoted or triangulated.
+     *
+     * @param baseCurrency the base currency code.
+     * @param quoteCurrency the quote currency code.
+     * @return the rate, or {@code null} if there is no rate between the currencies.
+     */
+    public RateDTO findRate(String baseCurrency, String quoteCurrency) {
+        RateMatrix current = matrix;
+        double rate = current.rate(currencyRegistry.find(baseCurrency), currencyRegistry.find(quoteCurrency));
+        return Double.isNaN(rate) ? null : new RateDTO(baseCurrency, quoteCurrency, BigDecimal.valueOf(rate), current.getAsOf());
+    }
+
+    /**
+     * Convert amounts between currencies, all with the same rates.
+     *
+     * @param conversions the currencies and amounts to convert.
+     * @return the conversions, in the same order, with their rate and converted amount, or without them if there is no
+     * rate between the currencies.
+     */
+    public List<CurrencyConversionDTO> convert(List<CurrencyConversionDTO> conversions) {
+        RateMatrix current = matrix;
+        List<CurrencyConversionDTO> converted = new ArrayList<>(conversions.size());
+        for (CurrencyConversionDTO conversion : conversions) {
+            CurrencyConversionDTO result = new CurrencyConversionDTO(
+                conversion.getFromCurrency(),
+                conversion.getToCurrency(),
+                conversion.getAmount()
+            );
+            double rate = current.rate(
+                currencyRegistry.find(conversion.getFromCurrency()),
+                currencyRegistry.find(conversion.getToCurrency())
+            );
+            if (!Double.isNaN(rate)) {
+                BigDecimal decimalRate = BigDecimal.valueOf(rate);
+                result.setRate(decimalRate);
+                result.setConvertedAmount(conversion.getAmount().multiply(decimalRate, MathContext.DECIMAL64));
+            }
+            converted.add(result);
+        }
+        return converted;
+    }
+}
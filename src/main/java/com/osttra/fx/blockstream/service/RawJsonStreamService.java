@@ -0,0 +1,59 @@
+package com.osttra.fx.blockstream.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bson.RawBsonDocument;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+/**
+ * Service streaming whole collections as newline-delimited JSON, written from the stored BSON bytes.
+ * <p>
+ * The lines are the same as the JSON of the entities, but the documents are neither decoded into {@link org.bson.Document}s
+ * nor read into entities: see {@link BsonJsonTranscoder}.
+ */
+@Service
+public class RawJsonStreamService {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<Class<?>, BsonJsonTranscoder> transcoders = new ConcurrentHashMap<>();
+
+    public RawJsonStreamService(ReactiveMongoTemplate mongoTemplate, ObjectMapper objectMapper) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Get the JSON lines of all the entities of the given class.
+     *
+     * @param entityClass the class of the entities.
+     * @param bufferFactory the factory of the buffers, usually the one of the response.
+     * @return the {@link Flux} of buffers, each holding one JSON line.
+     */
+    public Flux<DataBuffer> findAll(Class<?> entityClass, DataBufferFactory bufferFactory) {
+        BsonJsonTranscoder transcoder = transcoders.computeIfAbsent(
+            entityClass,
+            type -> new BsonJsonTranscoder(type, objectMapper, mongoTemplate.getConverter())
+        );
+        String collectionName = mongoTemplate.getCollectionName(entityClass);
+        return Flux
+            .using(
+                transcoder::newWriter,
+                writer ->
+                    mongoTemplate
+                        .getCollection(collectionName)
+                        .flatMapMany(collection -> collection.withDocumentClass(RawBsonDocument.class).find())
+                        .map(document -> writer.write(document, bufferFactory)),
+                BsonJsonTranscoder.Writer::close
+            )
+            .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+}
@@ -0,0 +1,41 @@
+package com.osttra.fx.blockstream.service;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Kernel of the full revaluation, summing the amounts and values of trades laid out in columns.
+ * <p>
+ * The default kernel is a scalar loop. When the application runs with {@code --add-modules jdk.incubator.vector} and
+ * was built with the {@code vector} Maven profile, a kernel using the Vector API is used instead.
+ */
+interface RevaluationKernel {
+    /**
+     * Sum, over a range of trades valued at the same rate, the base amounts, the quote amounts, and the values of the
+     * trades in the quote currency, {@code baseAmount * rate + quoteAmount}.
+     *
+     * @param baseAmounts the base amounts of the trades.
+     * @param quoteAmounts the quote amounts of the trades.
+     * @param rate the rate of the base currency in the quote currency.
+     * @param from the index of the first trade.
+     * @param to the index after the last trade.
+     * @param totals the array receiving the sums of the base amounts, quote amounts and values, in this order.
+     */
+    void accumulate(double[] baseAmounts, double[] quoteAmounts, double rate, int from, int to, double[] totals);
+
+    /**
+     * @return the vector kernel if it is available, otherwise the scalar kernel.
+     */
+    static RevaluationKernel create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (RevaluationKernel) Class
+                    .forName("com.osttra.fx.blockstream.service.VectorRevaluationKernel")
+                    .getDeclaredConstructor()
+                    .newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                LoggerFactory.getLogger(RevaluationKernel.class).info("The vector revaluation kernel is not available: {}", e.toString());
+            }
+        }
+        return new ScalarRevaluationKernel();
+    }
+}
@@ -0,0 +1,22 @@
+package com.osttra.fx.blockstream.service;
+
+/**
+ * {@link RevaluationKernel} summing one trade at a time.
+ */
+final class ScalarRevaluationKernel implements RevaluationKernel {
+
+    @Override
+    public void accumulate(double[] baseAmounts, double[] quoteAmounts, double rate, int from, int to, double[] totals) {
+        double base = 0;
+        double quote = 0;
+        double value = 0;
+        for (int i = from; i < to; i++) {
+            base += baseAmounts[i];
+            quote += quoteAmounts[i];
+            value += baseAmounts[i] * rate + quoteAmounts[i];
+        }
+        totals[0] = base;
+        totals[1] = quote;
+        totals[2] = value;
+    }
+}
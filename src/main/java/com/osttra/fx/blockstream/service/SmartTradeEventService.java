@@ -0,0 +1,216 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.service.dto.SmartTradeEventDTO;
+import com.osttra.fx.blockstream.service.dto.SmartTradeEventDTO.Type;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.PreDestroy;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+/**
+ * Service publishing the changes made to {@link SmartTrade}s to live subscribers.
+ * <p>
+ * Events are multicast from a single sink that never waits for its subscribers: each subscriber drains its own bounded
+ * buffer, and what happens when that buffer is full is chosen per subscriber, so a slow consumer only loses its own
+ * events and never stalls the writers.
+ * <p>
+ * When MongoDB is a replica set, the sink is fed from a change stream on the {@code smart_trade} collection, which also
+ * carries the writes of the other instances. Otherwise it is fed by the write paths of this instance.
+ */
+@Service
+public class SmartTradeEventService {
+
+    private static final String COLLECTION = "smart_trade";
+
+    /**
+     * What a subscriber loses when it does not keep up with the feed.
+     */
+    public enum OverflowStrategy {
+        /**
+         * Keep the buffered events and drop the new ones.
+         */
+        DROP,
+        /**
+         * Keep the new events and drop the oldest buffered ones.
+         */
+        LATEST,
+    }
+
+    private final Logger log = LoggerFactory.getLogger(SmartTradeEventService.class);
+
+    private final Sinks.Many<SmartTradeEventDTO> sink = Sinks.many().multicast().directBestEffort();
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final ApplicationProperties applicationProperties;
+
+    private volatile boolean changeStreamActive;
+
+    private volatile BsonValue resumeToken;
+
+    private Disposable changeStream;
+
+    public SmartTradeEventService(ReactiveMongoTemplate mongoTemplate, ApplicationProperties applicationProperties) {
+        this.mongoTemplate = mongoTemplate;
+        this.applicationProperties = applicationProperties;
+    }
+
+    /**
+     * Switch to the change stream of the {@code smart_trade} collection if MongoDB is a replica set.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!applicationProperties.getTradeFeed().isChangeStreams()) {
+            return;
+        }
+        mongoTemplate
+            .executeCommand(new Document("isMaster", 1))
+            .subscribe(
+                reply -> {
+                    if (reply.getString("setName") == null) {
+                        log.info("MongoDB is not a replica set, the trade feed only carries the writes of this instance");
+                        return;
+                    }
+                    changeStreamActive = true;
+                    changeStream = watch().subscribe();
+                    log.info("The trade feed follows the change stream of replica set {}", reply.getString("setName"));
+                },
+                e -> log.warn("Could not check whether MongoDB is a replica set: {}", e.getMessage())
+            );
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (changeStream != null) {
+            changeStream.dispose();
+        }
+    }
+
+    /**
+     * Subscribe to the feed.
+     *
+     * @param strategy what to drop when the subscriber does not keep up.
+     * @return the events following the subscription.
+     */
+    public Flux<SmartTradeEventDTO> subscribe(OverflowStrategy strategy) {
+        int bufferSize = applicationProperties.getTradeFeed().getBufferSize();
+        BufferOverflowStrategy overflow = strategy == OverflowStrategy.DROP
+            ? BufferOverflowStrategy.DROP_LATEST
+            : BufferOverflowStrategy.DROP_OLDEST;
+        return sink
+            .asFlux()
+            .onBackpressureBuffer(bufferSize, dropped -> log.debug("Slow trade feed subscriber, dropped {}", dropped), overflow);
+    }
+
+    /**
+     * Replay the changes made to the smartTrades since a cluster time, from the change stream of the collection.
+     * <p>
+     * Completes with the first change made at or after {@code until}, or once no change came for {@code idleTimeout}:
+     * past changes come back to back.
+     *
+     * @param from the cluster time of the first change to replay.
+     * @param until the cluster time of the changes not to replay.
+     * @param idleTimeout the time without changes after which all the past changes are deemed replayed.
+     * @return the changes, in the order they were made.
+     */
+    public Flux<SmartTradeEventDTO> replay(BsonTimestamp from, BsonTimestamp until, Duration idleTimeout) {
+        return mongoTemplate
+            .changeStream(SmartTrade.class)
+            .withOptions(options -> {
+                options.returnFullDocumentOnUpdate();
+                options.resumeAt(from);
+            })
+            .watchCollection(COLLECTION)
+            .listen()
+            .timeout(idleTimeout)
+            .onErrorResume(TimeoutException.class, e -> Flux.empty())
+            .takeUntil(event -> event.getBsonTimestamp() != null && event.getBsonTimestamp().compareTo(until) >= 0)
+            .mapNotNull(this::toEvent);
+    }
+
+    public void created(SmartTrade smartTrade) {
+        publishLocal(new SmartTradeEventDTO(Type.CREATED, smartTrade.getId(), smartTrade, Instant.now()));
+    }
+
+    public void updated(SmartTrade smartTrade) {
+        publishLocal(new SmartTradeEventDTO(Type.UPDATED, smartTrade.getId(), smartTrade, Instant.now()));
+    }
+
+    public void deleted(String id) {
+        publishLocal(new SmartTradeEventDTO(Type.DELETED, id, null, Instant.now()));
+    }
+
+    private void publishLocal(SmartTradeEventDTO event) {
+        // The change stream reports the writes of this instance as well.
+        if (!changeStreamActive) {
+            publish(event);
+        }
+    }
+
+    private void publish(SmartTradeEventDTO event) {
+        // Writers may publish concurrently; emission is short, so contended emissions just retry.
+        sink.emitNext(event, (signal, result) -> result == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+    }
+
+    private Flux<SmartTradeEventDTO> watch() {
+        return Flux
+            .<ChangeStreamEvent<SmartTrade>>defer(() ->
+                mongoTemplate
+                    .changeStream(SmartTrade.class)
+                    .withOptions(options -> {
+                        options.returnFullDocumentOnUpdate();
+                        if (resumeToken != null) {
+                            options.resumeAfter(resumeToken);
+                        }
+                    })
+                    .watchCollection(COLLECTION)
+                    .listen()
+            )
+            .doOnNext(event -> resumeToken = event.getResumeToken())
+            .mapNotNull(this::toEvent)
+            .doOnNext(this::publish)
+            .retryWhen(
+                Retry
+                    .backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                    .maxBackoff(Duration.ofSeconds(30))
+                    .doBeforeRetry(signal -> log.warn("Trade feed change stream failed, resuming: {}", signal.failure().getMessage()))
+            );
+    }
+
+    private SmartTradeEventDTO toEvent(ChangeStreamEvent<SmartTrade> event) {
+        if (event.getOperationType() == null || event.getRaw() == null || event.getRaw().getDocumentKey() == null) {
+            return null;
+        }
+        BsonValue key = event.getRaw().getDocumentKey().get("_id");
+        String id = key.isObjectId() ? key.asObjectId().getValue().toHexString() : key.asString().getValue();
+        Instant timestamp = event.getTimestamp() != null ? event.getTimestamp() : Instant.now();
+        switch (event.getOperationType()) {
+            case INSERT:
+                return new SmartTradeEventDTO(Type.CREATED, id, event.getBody(), timestamp);
+            case UPDATE:
+            case REPLACE:
+                return new SmartTradeEventDTO(Type.UPDATED, id, event.getBody(), timestamp);
+            case DELETE:
+                return new SmartTradeEventDTO(Type.DELETED, id, null, timestamp);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import com.osttra.fx.blockstream.service.SmartTradeEventService.OverflowStrategy;
+import com.osttra.fx.blockstream.service.dto.SmartTradeEventDTO;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service creating {@link SmartTrade}s at most once per transaction id.
+ * <p>
+ * The unique {@code transaction_id} index created by the {@code smart-trade-transaction-id-index} change unit is what
+ * guarantees uniqueness; when an insert breaks it, the trade already stored is returned instead. In front of it:
+ * <ul>
+ *     <li>recently seen trades are kept by transaction id, so resent trades are answered without reading MongoDB;</li>
+ *     <li>a Bloom filter of all the known transaction ids lets new trades be inserted without looking them up first.</li>
+ * </ul>
+ * The recent trades follow the live trade feed, so they reflect updates and deletions.
+ * <p>
+ * When the {@link WriteAheadLogService write-ahead log} is enabled, new trades are created once logged, and the logged
+ * trades not in MongoDB yet are found there by transaction id.
+ */
+@Service
+public class SmartTradeIdempotencyService {
+
+    private static final String COLLECTION = "smart_trade";
+
+    private final Logger log = LoggerFactory.getLogger(SmartTradeIdempotencyService.class);
+
+    private final SmartTradeRepository smartTradeRepository;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final SmartTradeEventService smartTradeEventService;
+
+    private final TransactionIdFilter knownTransactionIds;
+
+    private final RecentTrades recentTrades;
+
+    private final WriteAheadLogService writeAheadLogService;
+
+    public SmartTradeIdempotencyService(
+        SmartTradeRepository smartTradeRepository,
+        ReactiveMongoTemplate mongoTemplate,
+        SmartTradeEventService smartTradeEventService,
+        WriteAheadLogService writeAheadLogService,
+        ApplicationProperties applicationProperties
+    ) {
+        this.smartTradeRepository = smartTradeRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.smartTradeEventService = smartTradeEventService;
+        this.writeAheadLogService = writeAheadLogService;
+        ApplicationProperties.Idempotency idempotency = applicationProperties.getIdempotency();
+        this.knownTransactionIds = new TransactionIdFilter(idempotency.getExpectedTransactions(), idempotency.getFalsePositiveRate());
+        this.recentTrades = new RecentTrades(idempotency.getCacheSize());
+    }
+
+    /**
+     * Follow the trade feed and load the transaction ids already stored into the Bloom filter.
+     * <p>
+     * Until the load completes, resent trades are caught by the unique index rather than by the filter.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        smartTradeEventService.subscribe(OverflowStrategy.LATEST).subscribe(this::onEvent);
+        Query query = new Query(Criteria.where("transaction_id").type(BsonType.STRING.getValue()));
+        query.fields().include("transaction_id");
+        mongoTemplate
+            .find(query, Document.class, COLLECTION)
+            .doOnNext(document -> knownTransactionIds.put(document.getString("transaction_id")))
+            .count()
+            .subscribe(
+                count -> log.info("Loaded {} transaction ids", count),
+                e -> log.error("Could not load the transaction ids", e)
+            );
+    }
+
+    /**
+     * Insert the given smartTrade, unless a smartTrade with the same transaction id already exists.
+     *
+     * @param smartTrade the smartTrade to create, without an ID.
+     * @return the created smartTrade, or the one already stored.
+     */
+    public Mono<Outcome> create(SmartTrade smartTrade) {
+        String transactionId = smartTrade.getTransactionId();
+        if (transactionId == null) {
+            return insert(smartTrade).map(Outcome::created);
+        }
+        SmartTrade recent = recentTrades.get(transactionId);
+        if (recent != null) {
+            return Mono.just(Outcome.existing(recent));
+        }
+        if (writeAheadLogService.isEnabled()) {
+            return logged(smartTrade);
+        }
+        Mono<Outcome> insert = smartTradeRepository
+            .insert(smartTrade)
+            .doOnNext(this::remember)
+            .map(Outcome::created)
+            .onErrorResume(
+                DuplicateKeyException.class,
+                e -> findByTransactionId(transactionId).map(Outcome::existing).switchIfEmpty(Mono.error(e))
+            );
+        if (!knownTransactionIds.mightContain(transactionId)) {
+            return insert;
+        }
+        return smartTradeRepository
+            .findOneByTransactionId(transactionId)
+            .doOnNext(this::remember)
+            .map(Outcome::existing)
+            .switchIfEmpty(insert);
+    }
+
+    /**
+     * Find the smartTrades already stored for the given transaction ids.
+     *
+     * @param transactionIds the transaction ids.
+     * @return the stored smartTrades, by transaction id; MongoDB is only read for the ids the Bloom filter may know.
+     */
+    public Mono<Map<String, SmartTrade>> findExisting(Collection<String> transactionIds) {
+        Map<String, SmartTrade> existing = new HashMap<>();
+        List<String> unknown = new ArrayList<>();
+        for (String transactionId : transactionIds) {
+            SmartTrade recent = recentTrades.get(transactionId);
+            if (recent == null && writeAheadLogService.isEnabled()) {
+                recent = writeAheadLogService.findPending(transactionId);
+            }
+            if (recent != null) {
+                existing.put(transactionId, recent);
+            } else if (knownTransactionIds.mightContain(transactionId)) {
+                unknown.add(transactionId);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return Mono.just(existing);
+        }
+        return smartTradeRepository
+            .findAllByTransactionIdIn(unknown)
+            .doOnNext(this::remember)
+            .collectMap(SmartTrade::getTransactionId, smartTrade -> smartTrade, () -> existing);
+    }
+
+    /**
+     * Find the smartTrade stored for the given transaction id.
+     */
+    public Mono<SmartTrade> findByTransactionId(String transactionId) {
+        SmartTrade recent = recentTrades.get(transactionId);
+        if (recent == null && writeAheadLogService.isEnabled()) {
+            recent = writeAheadLogService.findPending(transactionId);
+        }
+        if (recent != null) {
+            return Mono.just(recent);
+        }
+        return smartTradeRepository.findOneByTransactionId(transactionId).doOnNext(this::remember);
+    }
+
+    /**
+     * Record a smartTrade that was just stored.
+     */
+    public void remember(SmartTrade smartTrade) {
+        if (smartTrade.getTransactionId() != null) {
+            knownTransactionIds.put(smartTrade.getTransactionId());
+        }
+        recentTrades.put(smartTrade);
+    }
+
+    private Mono<SmartTrade> insert(SmartTrade smartTrade) {
+        return writeAheadLogService.isEnabled() ? writeAheadLogService.append(smartTrade) : smartTradeRepository.insert(smartTrade);
+    }
+
+    /**
+     * Log the given smartTrade, unless a smartTrade with the same transaction id is stored or logged already.
+     */
+    private Mono<Outcome> logged(SmartTrade smartTrade) {
+        Mono<Outcome> append = writeAheadLogService
+            .append(smartTrade)
+            .doOnNext(this::remember)
+            .map(logged -> logged == smartTrade ? Outcome.created(logged) : Outcome.existing(logged));
+        if (!knownTransactionIds.mightContain(smartTrade.getTransactionId())) {
+            return append;
+        }
+        return smartTradeRepository
+            .findOneByTransactionId(smartTrade.getTransactionId())
+            .doOnNext(this::remember)
+            .map(Outcome::existing)
+            .switchIfEmpty(append);
+    }
+
+    private void onEvent(SmartTradeEventDTO event) {
+        if (event.getType() == SmartTradeEventDTO.Type.DELETED) {
+            recentTrades.remove(event.getId());
+        } else if (event.getSmartTrade() != null) {
+            remember(event.getSmartTrade());
+        }
+    }
+
+    /**
+     * The result of an idempotent creation.
+     */
+    public static final class Outcome {
+
+        private final SmartTrade smartTrade;
+
+        private final boolean created;
+
+        private Outcome(SmartTrade smartTrade, boolean created) {
+            this.smartTrade = smartTrade;
+            this.created = created;
+        }
+
+        static Outcome created(SmartTrade smartTrade) {
+            return new Outcome(smartTrade, true);
+        }
+
+        static Outcome existing(SmartTrade smartTrade) {
+            return new Outcome(smartTrade, false);
+        }
+
+        public SmartTrade getSmartTrade() {
+            return smartTrade;
+        }
+
+        /**
+         * Whether the smartTrade was inserted, rather than found already stored.
+         */
+        public boolean isCreated() {
+            return created;
+        }
+    }
+
+    /**
+     * Least recently used smartTrades, by transaction id.
+     */
+    private static final class RecentTrades {
+
+        private final Map<String, String> transactionIdsById = new HashMap<>();
+
+        private final LinkedHashMap<String, SmartTrade> tradesByTransactionId;
+
+        private RecentTrades(int capacity) {
+            this.tradesByTransactionId =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, SmartTrade> eldest) {
+                        if (size() <= capacity) {
+                            return false;
+                        }
+                        transactionIdsById.remove(eldest.getValue().getId());
+                        return true;
+                    }
+                };
+        }
+
+        synchronized SmartTrade get(String transactionId) {
+            return tradesByTransactionId.get(transactionId);
+        }
+
+        synchronized void put(SmartTrade smartTrade) {
+            String previous = smartTrade.getTransactionId() == null
+                ? transactionIdsById.remove(smartTrade.getId())
+                : transactionIdsById.put(smartTrade.getId(), smartTrade.getTransactionId());
+            if (previous != null && !previous.equals(smartTrade.getTransactionId())) {
+                tradesByTransactionId.remove(previous);
+            }
+            if (smartTrade.getTransactionId() != null) {
+                tradesByTransactionId.put(smartTrade.getTransactionId(), smartTrade);
+            }
+        }
+
+        synchronized void remove(String id) {
+            String transactionId = transactionIdsById.remove(id);
+            if (transactionId != null) {
+                tradesByTransactionId.remove(transactionId);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import com.osttra.fx.blockstream.service.dto.SmartTradeIngestionResultDTO;
+import com.osttra.fx.blockstream.service.dto.SmartTradeIngestionResultDTO.Status;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+/**
+ * Service for ingesting large streams of {@link SmartTrade}s.
+ * <p>
+ * Incoming trades are grouped into micro-batches, each written with a single {@code insertMany} command.
+ * The number of batches in flight is bounded, so demand on the request body (and therefore on the client)
+ * only follows what MongoDB can absorb.
+ * <p>
+ * Trades whose transaction id is already stored, or repeated within the stream, are reported as duplicates of the
+ * stored trade rather than inserted again.
+ * <p>
+ * When the {@link WriteAheadLogService write-ahead log} is enabled, the trades are appended to it instead, like single
+ * trades, so that they are written to MongoDB by its drain only; the appends of a batch join the same groups.
+ */
+@Service
+public class SmartTradeIngestionService {
+
+    private final Logger log = LoggerFactory.getLogger(SmartTradeIngestionService.class);
+
+    private final SmartTradeRepository smartTradeRepository;
+
+    private final ApplicationProperties applicationProperties;
+
+    private final PositionService positionService;
+
+    private final SmartTradeEventService smartTradeEventService;
+
+    private final SmartTradeIdempotencyService smartTradeIdempotencyService;
+
+    private final WriteAheadLogService writeAheadLogService;
+
+    public SmartTradeIngestionService(
+        SmartTradeRepository smartTradeRepository,
+        ApplicationProperties applicationProperties,
+        PositionService positionService,
+        SmartTradeEventService smartTradeEventService,
+        SmartTradeIdempotencyService smartTradeIdempotencyService,
+        WriteAheadLogService writeAheadLogService
+    ) {
+        this.smartTradeRepository = smartTradeRepository;
+        this.applicationProperties = applicationProperties;
+        this.positionService = positionService;
+        this.smartTradeEventService = smartTradeEventService;
+        this.smartTradeIdempotencyService = smartTradeIdempotencyService;
+        this.writeAheadLogService = writeAheadLogService;
+    }
+
+    /**
+     * Insert the given trades in micro-batches.
+     *
+     * @param smartTrades the trades to insert, none of which may have an ID.
+     * @return one result per input trade, in input order.
+     */
+    public Flux<SmartTradeIngestionResultDTO> ingest(Flux<SmartTrade> smartTrades) {
+        ApplicationProperties.Ingestion ingestion = applicationProperties.getIngestion();
+        return smartTrades
+            .index()
+            .buffer(ingestion.getBatchSize())
+            .flatMapSequential(this::insertBatch, ingestion.getMaxConcurrentBatches(), 1);
+    }
+
+    private Flux<SmartTradeIngestionResultDTO> insertBatch(List<Tuple2<Long, SmartTrade>> batch) {
+        SmartTradeIngestionResultDTO[] results = new SmartTradeIngestionResultDTO[batch.size()];
+        List<Tuple2<Long, SmartTrade>> candidates = new ArrayList<>(batch.size());
+        Set<String> transactionIds = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Tuple2<Long, SmartTrade> item = batch.get(i);
+            if (item.getT2().getId() != null) {
+                results[i] = result(item, Status.REJECTED, "A new smartTrade cannot already have an ID");
+            } else {
+                candidates.add(item);
+                if (item.getT2().getTransactionId() != null) {
+                    transactionIds.add(item.getT2().getTransactionId());
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Flux.fromArray(results);
+        }
+        return smartTradeIdempotencyService
+            .findExisting(transactionIds)
+            .flatMapMany(existing ->
+                writeAheadLogService.isEnabled()
+                    ? appendNew(batch, results, candidates, existing)
+                    : insertNew(batch, results, candidates, existing)
+            );
+    }
+
+    private Flux<SmartTradeIngestionResultDTO> appendNew(
+        List<Tuple2<Long, SmartTrade>> batch,
+        SmartTradeIngestionResultDTO[] results,
+        List<Tuple2<Long, SmartTrade>> candidates,
+        Map<String, SmartTrade> existing
+    ) {
+        // The log finds the transaction ids repeated within the stream, as they are appended in order.
+        return Flux
+            .fromIterable(candidates)
+            .flatMapSequential(item -> appendOne(item, existing), candidates.size())
+            .doOnNext(result -> completed(batch, results, result))
+            .thenMany(Flux.defer(() -> Flux.fromArray(results)));
+    }
+
+    private Mono<SmartTradeIngestionResultDTO> appendOne(Tuple2<Long, SmartTrade> item, Map<String, SmartTrade> existing) {
+        SmartTrade smartTrade = item.getT2();
+        SmartTrade stored = smartTrade.getTransactionId() != null ? existing.get(smartTrade.getTransactionId()) : null;
+        if (stored != null) {
+            return Mono.just(duplicate(item, stored.getId()));
+        }
+        return writeAheadLogService
+            .append(smartTrade)
+            .map(logged -> logged == smartTrade ? result(item, Status.CREATED, null) : duplicate(item, logged.getId()))
+            .onErrorResume(e -> Mono.just(failed(item, e)));
+    }
+
+    private Flux<SmartTradeIngestionResultDTO> insertNew(
+        List<Tuple2<Long, SmartTrade>> batch,
+        SmartTradeIngestionResultDTO[] results,
+        List<Tuple2<Long, SmartTrade>> candidates,
+        Map<String, SmartTrade> existing
+    ) {
+        long firstIndex = batch.get(0).getT1();
+        Map<String, String> idsInBatch = new HashMap<>();
+        List<Tuple2<Long, SmartTrade>> accepted = new ArrayList<>(candidates.size());
+        for (Tuple2<Long, SmartTrade> item : candidates) {
+            String transactionId = item.getT2().getTransactionId();
+            if (transactionId != null) {
+                SmartTrade stored = existing.get(transactionId);
+                String duplicateOf = stored != null ? stored.getId() : idsInBatch.get(transactionId);
+                if (duplicateOf != null) {
+                    results[(int) (item.getT1() - firstIndex)] = duplicate(item, duplicateOf);
+                    continue;
+                }
+            }
+            // Assigning the IDs up front makes the one-by-one fallback below safe to replay.
+            item.getT2().setId(new ObjectId().toHexString());
+            if (transactionId != null) {
+                idsInBatch.put(transactionId, item.getT2().getId());
+            }
+            accepted.add(item);
+        }
+        if (accepted.isEmpty()) {
+            return Flux.fromArray(results);
+        }
+        List<SmartTrade> smartTrades = accepted.stream().map(Tuple2::getT2).collect(Collectors.toList());
+        return smartTradeRepository
+            .insert(smartTrades)
+            .thenMany(Flux.fromIterable(accepted).map(item -> result(item, Status.CREATED, null)))
+            .onErrorResume(e -> {
+                log.warn("Bulk insert of {} smartTrades failed, retrying one by one: {}", smartTrades.size(), e.getMessage());
+                return Flux.fromIterable(accepted).concatMap(this::insertOne);
+            })
+            .doOnNext(result -> completed(batch, results, result))
+            .thenMany(Flux.defer(() -> Flux.fromArray(results)));
+    }
+
+    private void completed(
+        List<Tuple2<Long, SmartTrade>> batch,
+        SmartTradeIngestionResultDTO[] results,
+        SmartTradeIngestionResultDTO result
+    ) {
+        int i = (int) (result.getIndex() - batch.get(0).getT1());
+        results[i] = result;
+        if (result.getStatus() == Status.CREATED) {
+            SmartTrade smartTrade = batch.get(i).getT2();
+            smartTradeIdempotencyService.remember(smartTrade);
+            positionService.apply(smartTrade);
+            smartTradeEventService.created(smartTrade);
+        }
+    }
+
+    private Mono<SmartTradeIngestionResultDTO> insertOne(Tuple2<Long, SmartTrade> item) {
+        String id = item.getT2().getId();
+        String transactionId = item.getT2().getTransactionId();
+        return smartTradeRepository
+            .insert(item.getT2())
+            .map(saved -> result(item, Status.CREATED, null))
+            .onErrorResume(e ->
+                // The failed batch may have written this document before stopping.
+                smartTradeRepository
+                    .existsById(id)
+                    .flatMap(exists -> {
+                        if (exists) {
+                            return Mono.just(result(item, Status.CREATED, null));
+                        }
+                        if (e instanceof DuplicateKeyException && transactionId != null) {
+                            return smartTradeIdempotencyService
+                                .findByTransactionId(transactionId)
+                                .map(stored -> duplicate(item, stored.getId()))
+                                .switchIfEmpty(Mono.fromSupplier(() -> failed(item, e)));
+                        }
+                        return Mono.just(failed(item, e));
+                    })
+            );
+    }
+
+    private static SmartTradeIngestionResultDTO duplicate(Tuple2<Long, SmartTrade> item, String existingId) {
+        item.getT2().setId(null);
+        return new SmartTradeIngestionResultDTO(
+            item.getT1(),
+            existingId,
+            item.getT2().getTransactionId(),
+            Status.DUPLICATE,
+            "A smartTrade with this transactionId already exists"
+        );
+    }
+
+    private static SmartTradeIngestionResultDTO failed(Tuple2<Long, SmartTrade> item, Throwable e) {
+        item.getT2().setId(null);
+        return result(item, Status.FAILED, e.getMessage());
+    }
+
+    private static SmartTradeIngestionResultDTO result(Tuple2<Long, SmartTrade> item, Status status, String message) {
+        SmartTrade smartTrade = item.getT2();
+        return new SmartTradeIngestionResultDTO(item.getT1(), smartTrade.getId(), smartTrade.getTransactionId(), status, message);
+    }
+}
@@ -0,0 +1,178 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import com.osttra.fx.blockstream.service.criteria.SmartTradeCriteria;
+import com.osttra.fx.blockstream.service.dto.SmartTradePageDTO;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.List;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service for reading {@link SmartTrade}s without loading the whole collection.
+ * <p>
+ * Pages are read in {@code (valueDate, id)} order and continue from the last trade of the previous page
+ * rather than skipping over it, so every page is a single bounded index range scan.
+ */
+@Service
+public class SmartTradeQueryService {
+
+    private static final Sort KEYSET_SORT = Sort.by("valueDate", "id");
+
+    private final Logger log = LoggerFactory.getLogger(SmartTradeQueryService.class);
+
+    private final SmartTradeRepository smartTradeRepository;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public SmartTradeQueryService(SmartTradeRepository smartTradeRepository, ReactiveMongoTemplate mongoTemplate) {
+        this.smartTradeRepository = smartTradeRepository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Stream the smartTrades matching the given criteria, in {@code (valueDate, id)} order.
+     * <p>
+     * The equality filters lead the compound indexes created by the {@code smart-trade-query-indexes} change unit,
+     * so the value date range and the sort are served from the same index.
+     *
+     * @param criteria the filters to apply.
+     * @return the matching smartTrades, read from a MongoDB cursor as they are consumed.
+     */
+    public Flux<SmartTrade> findByCriteria(SmartTradeCriteria criteria) {
+        log.debug("Request to find SmartTrades by criteria : {}", criteria);
+        Query query = new Query().with(KEYSET_SORT);
+        if (criteria.getCounterParty() != null) {
+            query.addCriteria(Criteria.where("counterParty").is(criteria.getCounterParty()));
+        }
+        if (criteria.getTradingParty() != null) {
+            query.addCriteria(Criteria.where("tradingParty").is(criteria.getTradingParty()));
+        }
+        if (criteria.getCurrencyBuy() != null) {
+            query.addCriteria(Criteria.where("currencyBuy").is(criteria.getCurrencyBuy()));
+        }
+        if (criteria.getCurrencySell() != null) {
+            query.addCriteria(Criteria.where("currencySell").is(criteria.getCurrencySell()));
+        }
+        if (criteria.getDirection() != null) {
+            query.addCriteria(Criteria.where("direction").is(criteria.getDirection()));
+        }
+        if (criteria.getValueDateFrom() != null || criteria.getValueDateTo() != null) {
+            Criteria valueDate = Criteria.where("valueDate");
+            if (criteria.getValueDateFrom() != null) {
+                valueDate.gte(criteria.getValueDateFrom());
+            }
+            if (criteria.getValueDateTo() != null) {
+                valueDate.lte(criteria.getValueDateTo());
+            }
+            query.addCriteria(valueDate);
+        }
+        return mongoTemplate.find(query, SmartTrade.class);
+    }
+
+    /**
+     * Get one page of smartTrades.
+     *
+     * @param cursor the continuation token returned with the previous page, or {@code null} for the first page.
+     * @param size the maximum number of smartTrades in the page.
+     * @return the page.
+     * @throws IllegalArgumentException if the cursor is not a valid continuation token.
+     */
+    public Mono<SmartTradePageDTO> findPage(String cursor, int size) {
+        log.debug("Request to get a page of {} SmartTrades after cursor {}", size, cursor);
+        // One extra trade tells whether another page follows, without a count query.
+        Pageable pageable = PageRequest.of(0, size + 1, KEYSET_SORT);
+        Flux<SmartTrade> smartTrades;
+        if (cursor == null) {
+            smartTrades = smartTradeRepository.findAllByIdNotNull(pageable);
+        } else {
+            smartTrades = mongoTemplate.find(new Query(after(Cursor.decode(cursor))).with(pageable), SmartTrade.class);
+        }
+        return smartTrades
+            .collectList()
+            .map(list -> {
+                if (list.size() <= size) {
+                    return new SmartTradePageDTO(list, null);
+                }
+                List<SmartTrade> content = list.subList(0, size);
+                return new SmartTradePageDTO(content, Cursor.encode(content.get(size - 1)));
+            });
+    }
+
+    /**
+     * Select the trades following the given position in {@code (valueDate, id)} order, trades without a value date first.
+     */
+    static Criteria after(Cursor position) {
+        // The id must be compared as it is stored: the query mapper converts ids compared for equality only, and MongoDB
+        // orders values of different types by type.
+        Object id = ObjectId.isValid(position.id) ? new ObjectId(position.id) : position.id;
+        if (position.valueDate == null) {
+            return new Criteria()
+                .orOperator(Criteria.where("valueDate").ne(null), Criteria.where("valueDate").is(null).and("id").gt(id));
+        }
+        return new Criteria()
+            .orOperator(
+                Criteria.where("valueDate").gt(position.valueDate),
+                Criteria.where("valueDate").is(position.valueDate).and("id").gt(id)
+            );
+    }
+
+    /**
+     * Position of a trade in the keyset order, exchanged with clients as an opaque URL-safe token.
+     */
+    static final class Cursor {
+
+        private static final String NO_VALUE_DATE = "-";
+
+        final LocalDate valueDate;
+
+        final String id;
+
+        private Cursor(LocalDate valueDate, String id) {
+            this.valueDate = valueDate;
+            this.id = id;
+        }
+
+        static String encode(SmartTrade last) {
+            String valueDate = last.getValueDate() == null ? NO_VALUE_DATE : Long.toString(last.getValueDate().toEpochDay());
+            String token = valueDate + ":" + last.getId();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            String token;
+            try {
+                token = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+            int separator = token.indexOf(':');
+            if (separator <= 0 || separator == token.length() - 1) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            String valueDate = token.substring(0, separator);
+            String id = token.substring(separator + 1);
+            if (NO_VALUE_DATE.equals(valueDate)) {
+                return new Cursor(null, id);
+            }
+            try {
+                return new Cursor(LocalDate.ofEpochDay(Long.parseLong(valueDate)), id);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary snapshot of the smartTrades, with the high-water mark of the changes it holds.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes: a magic number, the format, the size of the regions, the
+ * high-water mark and the number of trades. Records follow, each a length then the fields of a trade, in regions of the
+ * file that are memory-mapped in turn to write and read them; a record never straddles two regions, a length of 0
+ * ending a region early.
+ * <p>
+ * A snapshot is written to a temporary file, which is forced to the disk then moved over the previous snapshot once
+ * complete, so a crash never leaves a partial snapshot behind.
+ */
+final class TradeSnapshotFile {
+
+    static final int HEADER_SIZE = 32;
+
+    static final int DEFAULT_REGION_SIZE = 1 << 26;
+
+    private static final long MAGIC = 0x5452414445534E50L;
+
+    private static final int FORMAT = 1;
+
+    // Presence of the fields of a record that are not strings or decimals.
+
+    private static final int HAS_VERSION = 1;
+
+    private static final int HAS_RATE = 2;
+
+    private static final int HAS_VALUE_DATE = 4;
+
+    private static final int NULL_STRING = 0xFFFF;
+
+    private TradeSnapshotFile() {}
+
+    /**
+     * Start writing a snapshot.
+     *
+     * @param file the snapshot file, replaced once the new snapshot is {@linkplain Writer#commit committed}.
+     * @param regionSize the size of the mapped regions.
+     * @return the writer.
+     */
+    static Writer create(Path file, int regionSize) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        return new Writer(file, temporary, regionSize);
+    }
+
+    /**
+     * Read a snapshot.
+     *
+     * @param file the snapshot file.
+     * @param consumer receives the trades of the snapshot, in the order they were written.
+     * @return the high-water mark of the snapshot.
+     * @throws IOException if the file is not a complete snapshot.
+     */
+    static long read(Path file, Consumer<SmartTrade> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a trade snapshot: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            int regionSize = header.getInt(12);
+            if (header.getLong(0) != MAGIC || header.getInt(8) != FORMAT || regionSize <= HEADER_SIZE) {
+                throw new IOException("Not a trade snapshot: " + file);
+            }
+            long highWaterMark = header.getLong(16);
+            long count = header.getLong(24);
+
+            long regionStart = 0;
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, regionSize));
+            region.position(HEADER_SIZE);
+            try {
+                for (long i = 0; i < count; i++) {
+                    if (region.remaining() < Integer.BYTES || region.getInt(region.position()) == 0) {
+                        regionStart += regionSize;
+                        if (regionStart >= size) {
+                            throw new IOException("Truncated trade snapshot: " + file);
+                        }
+                        region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(size - regionStart, regionSize));
+                    }
+                    int length = region.getInt();
+                    if (length <= 0 || length > region.remaining()) {
+                        throw new IOException("Corrupt trade snapshot: " + file);
+                    }
+                    int end = region.position() + length;
+                    consumer.accept(decode(region));
+                    if (region.position() != end) {
+                        throw new IOException("Corrupt trade snapshot: " + file);
+                    }
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt trade snapshot: " + file, e);
+            }
+            return highWaterMark;
+        }
+    }
+
+    /**
+     * Writes a snapshot into a temporary file. Not thread-safe.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path file;
+
+        private final Path temporary;
+
+        private final int regionSize;
+
+        private final FileChannel channel;
+
+        private ByteBuffer record = ByteBuffer.allocate(1024);
+
+        private MappedByteBuffer region;
+
+        private long regionStart;
+
+        private long count;
+
+        private boolean committed;
+
+        private Writer(Path file, Path temporary, int regionSize) throws IOException {
+            this.file = file;
+            this.temporary = temporary;
+            this.regionSize = regionSize;
+            this.channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0, regionSize);
+            region.position(HEADER_SIZE);
+        }
+
+        /**
+         * Append a trade to the snapshot.
+         *
+         * @param smartTrade the trade.
+         */
+        void append(SmartTrade smartTrade) throws IOException {
+            record.clear();
+            try {
+                while (!encode(smartTrade, record)) {
+                    record = ByteBuffer.allocate(2 * record.capacity());
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Cannot write trade " + smartTrade.getId() + " to a snapshot: " + e.getMessage(), e);
+            }
+            record.flip();
+            int length = Integer.BYTES + record.remaining();
+            if (length > regionSize - HEADER_SIZE) {
+                throw new IOException("Trade " + smartTrade.getId() + " is too large for a snapshot");
+            }
+            if (length > region.remaining()) {
+                if (region.remaining() >= Integer.BYTES) {
+                    region.putInt(0);
+                }
+                region.force();
+                regionStart += regionSize;
+                region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+            }
+            region.putInt(record.remaining());
+            region.put(record);
+            count++;
+        }
+
+        /**
+         * Complete the snapshot, and move it over the previous one.
+         *
+         * @param highWaterMark the high-water mark of the changes the snapshot holds.
+         * @return the number of trades in the snapshot.
+         */
+        long commit(long highWaterMark) throws IOException {
+            region.force();
+            long length = regionStart + region.position();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(MAGIC).putInt(FORMAT).putInt(regionSize).putLong(highWaterMark).putLong(count).flip();
+            channel.write(header, 0);
+            channel.truncate(length);
+            channel.force(true);
+            channel.close();
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+            return count;
+        }
+
+        /**
+         * Drop the snapshot if it was not committed.
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            if (!committed) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    /**
+     * Write the fields of a trade, as in a snapshot record.
+     *
+     * @return whether the trade fits the buffer.
+     * @throws IllegalArgumentException if a field is too large for a record.
+     */
+    static boolean encode(SmartTrade smartTrade, ByteBuffer buffer) {
+        try {
+            int flags =
+                (smartTrade.getVersion() != null ? HAS_VERSION : 0) |
+                (smartTrade.getRate() != null ? HAS_RATE : 0) |
+                (smartTrade.getValueDate() != null ? HAS_VALUE_DATE : 0);
+            buffer.put((byte) flags);
+            if (smartTrade.getVersion() != null) {
+                buffer.putLong(smartTrade.getVersion());
+            }
+            if (smartTrade.getRate() != null) {
+                buffer.putDouble(smartTrade.getRate());
+            }
+            if (smartTrade.getValueDate() != null) {
+                buffer.putLong(smartTrade.getValueDate().toEpochDay());
+            }
+            putString(buffer, smartTrade.getId());
+            putString(buffer, smartTrade.getTransactionId());
+            putString(buffer, smartTrade.getTradingParty());
+            putString(buffer, smartTrade.getCounterParty());
+            putString(buffer, smartTrade.getCurrencyBuy());
+            putString(buffer, smartTrade.getCurrencySell());
+            putString(buffer, smartTrade.getDirection());
+            putDecimal(buffer, smartTrade.getAmount());
+            putDecimal(buffer, smartTrade.getContraAmount());
+            return true;
+        } catch (BufferOverflowException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check that the fields of a trade fit a record, whatever the size of the buffer.
+     *
+     * @throws IllegalArgumentException if a field is too large for a record.
+     */
+    static void checkFields(SmartTrade smartTrade) {
+        for (String value : new String[] {
+            smartTrade.getId(),
+            smartTrade.getTransactionId(),
+            smartTrade.getTradingParty(),
+            smartTrade.getCounterParty(),
+            smartTrade.getCurrencyBuy(),
+            smartTrade.getCurrencySell(),
+            smartTrade.getDirection(),
+        }) {
+            if (value != null) {
+                stringBytes(value);
+            }
+        }
+        for (BigDecimal value : new BigDecimal[] { smartTrade.getAmount(), smartTrade.getContraAmount() }) {
+            if (value != null) {
+                unscaledBytes(value);
+            }
+        }
+    }
+
+    /**
+     * Read the fields of a trade written by {@link #encode}.
+     */
+    static SmartTrade decode(ByteBuffer buffer) {
+        int flags = buffer.get();
+        SmartTrade smartTrade = new SmartTrade();
+        smartTrade.setVersion((flags & HAS_VERSION) != 0 ? buffer.getLong() : null);
+        smartTrade.setRate((flags & HAS_RATE) != 0 ? buffer.getDouble() : null);
+        smartTrade.setValueDate((flags & HAS_VALUE_DATE) != 0 ? LocalDate.ofEpochDay(buffer.getLong()) : null);
+        smartTrade.setId(getString(buffer));
+        smartTrade.setTransactionId(getString(buffer));
+        smartTrade.setTradingParty(getString(buffer));
+        smartTrade.setCounterParty(getString(buffer));
+        smartTrade.setCurrencyBuy(getString(buffer));
+        smartTrade.setCurrencySell(getString(buffer));
+        smartTrade.setDirection(getString(buffer));
+        smartTrade.setAmount(getDecimal(buffer));
+        smartTrade.setContraAmount(getDecimal(buffer));
+        return smartTrade;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) NULL_STRING);
+            return;
+        }
+        byte[] bytes = stringBytes(value);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] stringBytes(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_STRING) {
+            throw new IllegalArgumentException("String too long for a snapshot: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+        if (value == null) {
+            buffer.put((byte) -1);
+            return;
+        }
+        byte[] unscaled = unscaledBytes(value);
+        buffer.put((byte) unscaled.length);
+        buffer.put(unscaled);
+        buffer.putInt(value.scale());
+    }
+
+    private static byte[] unscaledBytes(BigDecimal value) {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        if (unscaled.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Decimal too large for a snapshot: " + value);
+        }
+        return unscaled;
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer buffer) {
+        int length = buffer.get();
+        if (length < 0) {
+            return null;
+        }
+        byte[] unscaled = new byte[length];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), buffer.getInt());
+    }
+}
@@ -0,0 +1,184 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import com.osttra.fx.blockstream.service.dto.SmartTradeEventDTO;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Service for the snapshots of the {@link SmartTrade}s that restore the in-memory state derived from them when the
+ * application starts, instead of reading the whole collection.
+ * <p>
+ * Every interval, the collection is read in the background into a new {@link TradeSnapshotFile}. Its high-water mark is
+ * the cluster time of MongoDB before the read started, so the snapshot holds every change made up to it. When the
+ * application starts, the snapshot is read back, then the changes made since its high-water mark are replayed from the
+ * change stream; changes held by the snapshot as well are replayed again, which trade versions make harmless.
+ * <p>
+ * Snapshots need the change stream, so they are only written and restored when MongoDB is a replica set.
+ */
+@Service
+public class TradeSnapshotService {
+
+    private final Logger log = LoggerFactory.getLogger(TradeSnapshotService.class);
+
+    private final SmartTradeRepository smartTradeRepository;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final SmartTradeEventService smartTradeEventService;
+
+    private final ApplicationProperties.TradeSnapshot properties;
+
+    private Disposable snapshots;
+
+    public TradeSnapshotService(
+        SmartTradeRepository smartTradeRepository,
+        ReactiveMongoTemplate mongoTemplate,
+        SmartTradeEventService smartTradeEventService,
+        ApplicationProperties applicationProperties
+    ) {
+        this.smartTradeRepository = smartTradeRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.smartTradeEventService = smartTradeEventService;
+        this.properties = applicationProperties.getTradeSnapshot();
+    }
+
+    /**
+     * Schedule the snapshots.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        snapshots =
+            Flux
+                .interval(properties.getInterval())
+                .onBackpressureDrop()
+                .concatMap(tick ->
+                    write()
+                        .onErrorResume(e -> {
+                            log.warn("Could not write the trade snapshot: {}", e.getMessage());
+                            return Mono.empty();
+                        })
+                )
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (snapshots != null) {
+            snapshots.dispose();
+        }
+    }
+
+    public boolean isEnabled() {
+        return !properties.getFile().isEmpty();
+    }
+
+    /**
+     * Read the last snapshot.
+     *
+     * @param consumer receives the trades of the snapshot.
+     * @return the high-water mark of the snapshot, or empty if there is no snapshot or MongoDB is not a replica set; an
+     * error if the snapshot cannot be read, possibly after some trades were received.
+     */
+    public Mono<Long> restore(Consumer<SmartTrade> consumer) {
+        if (!isEnabled()) {
+            return Mono.empty();
+        }
+        Path file = Paths.get(properties.getFile());
+        return operationTime()
+            .filter(now -> Files.exists(file))
+            .flatMap(now -> Mono.fromCallable(() -> TradeSnapshotFile.read(file, consumer)).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * Replay the changes made since a snapshot was written, up to now.
+     *
+     * @param highWaterMark the high-water mark of the snapshot.
+     * @param apply receives the created and updated trades.
+     * @param remove receives the ids of the deleted trades.
+     * @return the number of changes replayed.
+     */
+    public Mono<Long> catchUp(long highWaterMark, Consumer<SmartTrade> apply, Consumer<String> remove) {
+        return operationTime()
+            .switchIfEmpty(Mono.error(new IllegalStateException("MongoDB is no longer a replica set")))
+            .flatMapMany(now -> smartTradeEventService.replay(new BsonTimestamp(highWaterMark), now, properties.getCatchUpIdleTimeout()))
+            .doOnNext(event -> {
+                if (event.getType() == SmartTradeEventDTO.Type.DELETED) {
+                    remove.accept(event.getId());
+                } else if (event.getSmartTrade() != null) {
+                    // The trade may have been deleted since, which a later change tells.
+                    apply.accept(event.getSmartTrade());
+                }
+            })
+            .count();
+    }
+
+    /**
+     * Write a new snapshot of the collection.
+     *
+     * @return the number of trades in the snapshot, or empty if MongoDB is not a replica set.
+     */
+    public Mono<Long> write() {
+        Path file = Paths.get(properties.getFile());
+        return operationTime()
+            .flatMap(highWaterMark ->
+                Mono.using(
+                    () -> TradeSnapshotFile.create(file, TradeSnapshotFile.DEFAULT_REGION_SIZE),
+                    writer -> {
+                        long start = System.nanoTime();
+                        return smartTradeRepository
+                            .findAll()
+                            .publishOn(Schedulers.boundedElastic())
+                            .<SmartTrade>handle((smartTrade, sink) -> {
+                                try {
+                                    writer.append(smartTrade);
+                                } catch (IOException e) {
+                                    sink.error(e);
+                                }
+                            })
+                            .then(Mono.fromCallable(() -> writer.commit(highWaterMark.getValue())))
+                            .doOnNext(count ->
+                                log.info("Wrote a snapshot of {} smartTrades in {} ms", count, (System.nanoTime() - start) / 1_000_000)
+                            );
+                    },
+                    writer -> {
+                        try {
+                            writer.close();
+                        } catch (IOException e) {
+                            log.warn("Could not close the trade snapshot: {}", e.getMessage());
+                        }
+                    }
+                )
+            );
+    }
+
+    /**
+     * @return the cluster time of MongoDB, or empty if it is not a replica set.
+     */
+    private Mono<BsonTimestamp> operationTime() {
+        return mongoTemplate
+            .executeCommand(new Document("isMaster", 1))
+            .mapNotNull(reply -> reply.getString("setName") == null ? null : reply.get("operationTime", BsonTimestamp.class));
+    }
+}
@@ -0,0 +1,15 @@
+package com.osttra.fx.blockstream.service;
+
+import java.util.List;
+
+/**
+ * Thrown when currency codes are not in the {@link com.osttra.fx.blockstream.domain.Currencies} collection.
+ */
+public class UnknownCurrencyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnknownCurrencyException(List<String> codes) {
+        super("Unknown currency: " + String.join(", ", codes));
+    }
+}
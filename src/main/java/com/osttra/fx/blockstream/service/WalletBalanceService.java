@@ -0,0 +1,128 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.domain.Wallet;
+import com.osttra.fx.blockstream.repository.WalletBalanceRepository.BalanceUpdate;
+import com.osttra.fx.blockstream.repository.WalletRepository;
+import com.osttra.fx.blockstream.service.dto.WalletBalanceDTO;
+import com.osttra.fx.blockstream.service.dto.WalletMovementDTO;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service moving amounts into and out of {@link Wallet}s, without reading their balance first.
+ * <p>
+ * The credits and debits of the hot wallets are kept in memory by the {@link HotWalletService}, and written behind;
+ * batches of movements refuse them.
+ */
+@Service
+public class WalletBalanceService {
+
+    private final Logger log = LoggerFactory.getLogger(WalletBalanceService.class);
+
+    private final WalletRepository walletRepository;
+
+    private final HotWalletService hotWalletService;
+
+    public WalletBalanceService(WalletRepository walletRepository, HotWalletService hotWalletService) {
+        this.walletRepository = walletRepository;
+        this.hotWalletService = hotWalletService;
+    }
+
+    /**
+     * Add an amount to the balance of a wallet.
+     *
+     * @param id the id of the wallet.
+     * @param amount the positive amount to add.
+     * @return the new balance, or the status telling why it was not changed.
+     */
+    public Mono<WalletBalanceDTO> credit(String id, BigDecimal amount) {
+        return addToBalance(id, amount);
+    }
+
+    /**
+     * Take an amount out of the balance of a wallet, unless the balance is smaller than the amount.
+     *
+     * @param id the id of the wallet.
+     * @param amount the positive amount to take.
+     * @return the new balance, or the status telling why it was not changed.
+     */
+    public Mono<WalletBalanceDTO> debit(String id, BigDecimal amount) {
+        return addToBalance(id, amount.negate());
+    }
+
+    /**
+     * @param id the id of a wallet.
+     * @return whether the balance of the wallet may only be changed by credits and debits.
+     */
+    public boolean isHot(String id) {
+        return hotWalletService.isHot(id);
+    }
+
+    private Mono<WalletBalanceDTO> addToBalance(String id, BigDecimal amount) {
+        if (hotWalletService.isHot(id)) {
+            return hotWalletService.addToBalance(id, amount);
+        }
+        return walletRepository
+            .addToBalance(id, amount)
+            .map(wallet -> balance(wallet, WalletBalanceDTO.Status.APPLIED))
+            .switchIfEmpty(
+                walletRepository
+                    .existsById(id)
+                    .map(exists -> exists ? WalletBalanceDTO.Status.INSUFFICIENT_FUNDS : WalletBalanceDTO.Status.NOT_FOUND)
+                    .map(status -> new WalletBalanceDTO(id, status, null, null))
+            );
+    }
+
+    /**
+     * Apply a batch of movements, such as a settlement run, in a single write.
+     * <p>
+     * The movements of each wallet are netted, and the net amount is applied to the wallet as a whole: it is rejected
+     * if it is a debit larger than the balance. Sending the same batch again does not change the wallets it was
+     * already applied to.
+     *
+     * @param movements the movements, credits being positive and debits negative.
+     * @param batchId the id of the batch.
+     * @return the balance of each wallet, in the order the wallets first appear in the movements, or a
+     * {@link HotWalletException} if one of them is hot, in which case no movement is applied.
+     */
+    public Flux<WalletBalanceDTO> applyMovements(List<WalletMovementDTO> movements, String batchId) {
+        Map<String, BigDecimal> amounts = new LinkedHashMap<>();
+        for (WalletMovementDTO movement : movements) {
+            if (hotWalletService.isHot(movement.getWalletId())) {
+                return Flux.error(new HotWalletException(movement.getWalletId()));
+            }
+            amounts.merge(movement.getWalletId(), movement.getAmount(), BigDecimal::add);
+        }
+        return walletRepository
+            .addToBalances(amounts, batchId)
+            .collectMap(update -> update.getWallet().getId())
+            .flatMapIterable(updates -> {
+                List<WalletBalanceDTO> balances = new ArrayList<>(amounts.size());
+                for (String id : amounts.keySet()) {
+                    BalanceUpdate update = updates.get(id);
+                    if (update == null) {
+                        balances.add(new WalletBalanceDTO(id, WalletBalanceDTO.Status.NOT_FOUND, null, null));
+                    } else {
+                        WalletBalanceDTO.Status status = update.isApplied()
+                            ? WalletBalanceDTO.Status.APPLIED
+                            : WalletBalanceDTO.Status.INSUFFICIENT_FUNDS;
+                        balances.add(balance(update.getWallet(), status));
+                    }
+                }
+                log.debug("Applied batch {} of {} movements to {} wallets", batchId, movements.size(), amounts.size());
+                return balances;
+            });
+    }
+
+    private static WalletBalanceDTO balance(Wallet wallet, WalletBalanceDTO.Status status) {
+        return new WalletBalanceDTO(wallet.getId(), status, wallet.getAmount(), wallet.getVersion());
+    }
+}
@@ -0,0 +1,139 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.Wallet;
+import com.osttra.fx.blockstream.repository.WalletLedger;
+import com.osttra.fx.blockstream.service.dto.WalletLedgerBalanceDTO;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Service keeping the balance history of the {@link Wallet}s in the {@link WalletLedger}.
+ * <p>
+ * The balance changes made by credits, debits, batches of movements and transfers are recorded by the wallet
+ * repository; the balances set directly, when a wallet is created or updated, are recorded here. In the background,
+ * the movements pending on the wallets are regularly drained into the ledger, and the movements are folded into
+ * snapshots, so that the balance at any point in time is read from one snapshot and the movements of at most one
+ * snapshot interval.
+ */
+@Service
+public class WalletLedgerService {
+
+    /**
+     * Batch id of the first balance of a wallet, so that it is recorded once.
+     */
+    private static final String OPENING_BATCH_ID = "opening";
+
+    private final Logger log = LoggerFactory.getLogger(WalletLedgerService.class);
+
+    private final WalletLedger walletLedger;
+
+    private final ApplicationProperties.Ledger properties;
+
+    private Disposable drains;
+
+    private Disposable snapshots;
+
+    public WalletLedgerService(WalletLedger walletLedger, ApplicationProperties applicationProperties) {
+        this.walletLedger = walletLedger;
+        this.properties = applicationProperties.getLedger();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.getDrainInterval().isZero()) {
+            drains = every(properties.getDrainInterval(), walletLedger::drain, "drain the pending wallet movements");
+        }
+        if (!properties.getSnapshotInterval().isZero()) {
+            snapshots = every(properties.getSnapshotInterval(), this::snapshot, "snapshot the wallet balances");
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (drains != null) {
+            drains.dispose();
+        }
+        if (snapshots != null) {
+            snapshots.dispose();
+        }
+    }
+
+    private Disposable every(Duration interval, Supplier<Mono<?>> task, String description) {
+        return Flux
+            .interval(interval)
+            .onBackpressureDrop()
+            .concatMap(
+                tick ->
+                    task
+                        .get()
+                        .onErrorResume(e -> {
+                            log.warn("Could not {}: {}", description, e.getMessage());
+                            return Mono.empty();
+                        }),
+                1
+            )
+            .subscribe();
+    }
+
+    /**
+     * Record the balance of a wallet just created.
+     *
+     * @param wallet the created wallet.
+     * @return the wallet, once recorded.
+     */
+    public Mono<Wallet> recordOpeningBalance(Wallet wallet) {
+        return recordBalance(wallet, OPENING_BATCH_ID);
+    }
+
+    /**
+     * Record the balance of a wallet whose amount was set directly.
+     *
+     * @param wallet the updated wallet.
+     * @return the wallet, once recorded.
+     */
+    public Mono<Wallet> recordBalance(Wallet wallet) {
+        return recordBalance(wallet, null);
+    }
+
+    private Mono<Wallet> recordBalance(Wallet wallet, String batchId) {
+        BigDecimal balance = wallet.getAmount() != null ? wallet.getAmount() : BigDecimal.ZERO;
+        return walletLedger.recordBalance(wallet.getId(), balance, batchId).thenReturn(wallet);
+    }
+
+    /**
+     * Find the balance of a wallet at a point in time.
+     *
+     * @param walletId the id of the wallet.
+     * @param at the point in time.
+     * @return the balance, or an empty {@link Mono} if the ledger has nothing for the wallet before then.
+     */
+    public Mono<WalletLedgerBalanceDTO> findBalanceAt(String walletId, Instant at) {
+        return walletLedger.findBalanceAt(walletId, at).map(balance -> new WalletLedgerBalanceDTO(walletId, at, balance));
+    }
+
+    /**
+     * Snapshot the balances of the wallets with movements since the last snapshots, up to the movements older than
+     * the settle delay. The pending movements are drained first.
+     *
+     * @return the number of snapshots taken.
+     */
+    public Mono<Long> snapshot() {
+        long seconds = Instant.now().minus(properties.getSettleDelay()).getEpochSecond() + 1;
+        // The smallest id of the next second, so that every movement of the settled second is before it.
+        ObjectId until = new ObjectId(String.format("%08x%016x", seconds, 0));
+        return walletLedger.snapshot(until).doOnNext(count -> log.debug("Took {} wallet balance snapshots", count));
+    }
+}
@@ -0,0 +1,465 @@
+package com.osttra.fx.blockstream.service;
+
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.MongoException;
+import com.mongodb.TransactionOptions;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.Wallet;
+import com.osttra.fx.blockstream.repository.WalletBalanceRepository.BalanceUpdate;
+import com.osttra.fx.blockstream.repository.WalletRepository;
+import com.osttra.fx.blockstream.repository.convert.Decimals;
+import com.osttra.fx.blockstream.service.dto.WalletTransferDTO;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Service transferring funds between {@link Wallet}s.
+ * <p>
+ * Transfers are applied in groups, in a bounded number of round trips per group whatever its size. Within a group, the
+ * debits of each source wallet are netted, as are the credits of each target wallet, and a group is applied only if
+ * the balance of every source wallet covers its debits. When a group cannot be applied, it is split in two and each
+ * half is applied on its own, until the transfers that cannot be applied are isolated.
+ * <p>
+ * When MongoDB supports multi-document transactions, each group is one transaction, which also records the transfers
+ * in the {@code wallet_transfer} journal. Otherwise the group is applied by a saga driven by the journal:
+ * <ol>
+ *     <li>the transfers are recorded as {@code PENDING};</li>
+ *     <li>the source wallets are debited, and the transfers become {@code DEBITED}, or {@code REFUNDING} if a debit
+ *     was not covered, in which case the debits applied are given back before the group is split;</li>
+ *     <li>the target wallets are credited; a transfer whose target wallet disappeared meanwhile is given back to its
+ *     source wallet;</li>
+ *     <li>the outcome of each transfer is recorded.</li>
+ * </ol>
+ * Every step marks the wallets it updates with the group id and the step, so running a step again does not apply it
+ * twice: at startup, the sagas left unfinished are resumed from the status recorded in the journal.
+ */
+@Service
+public class WalletTransferService {
+
+    private static final String JOURNAL = "wallet_transfer";
+
+    /**
+     * Journal status of a transfer whose source wallet may or may not have been debited.
+     */
+    private static final String PENDING = "PENDING";
+
+    /**
+     * Journal status of a transfer whose source wallet was debited, and whose target wallet may not be credited yet.
+     */
+    private static final String DEBITED = "DEBITED";
+
+    /**
+     * Journal status of a transfer whose group could not be debited, and whose debits are being given back.
+     */
+    private static final String REFUNDING = "REFUNDING";
+
+    private static final String TRANSIENT_TRANSACTION_ERROR = "TransientTransactionError";
+
+    private static final String UNKNOWN_TRANSACTION_COMMIT_RESULT = "UnknownTransactionCommitResult";
+
+    private static final int TRANSACTION_RETRIES = 3;
+
+    private final Logger log = LoggerFactory.getLogger(WalletTransferService.class);
+
+    private final WalletRepository walletRepository;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final HotWalletService hotWalletService;
+
+    private final ApplicationProperties.Transfer properties;
+
+    private volatile Boolean transactional;
+
+    public WalletTransferService(
+        WalletRepository walletRepository,
+        ReactiveMongoTemplate mongoTemplate,
+        HotWalletService hotWalletService,
+        ApplicationProperties applicationProperties
+    ) {
+        this.walletRepository = walletRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.hotWalletService = hotWalletService;
+        this.properties = applicationProperties.getTransfer();
+    }
+
+    /**
+     * Resume the sagas left unfinished for longer than the recovery delay.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        Date before = Date.from(Instant.now().minus(properties.getRecoveryDelay()));
+        Query query = Query.query(Criteria.where("status").in(PENDING, DEBITED, REFUNDING).and("last_modified_date").lt(before));
+        mongoTemplate
+            .find(query, Document.class, JOURNAL)
+            .collectMultimap(entry -> entry.getString("group_id"))
+            .flatMapIterable(Map::entrySet)
+            .concatMap(group -> {
+                List<WalletTransferDTO> transfers = group
+                    .getValue()
+                    .stream()
+                    .map(WalletTransferService::transfer)
+                    .collect(Collectors.toList());
+                String status = group.getValue().iterator().next().getString("status");
+                log.info("Resuming the {} transfers of group {} from {}", transfers.size(), group.getKey(), status);
+                return resume(group.getKey(), status, transfers);
+            })
+            .subscribe(null, e -> log.error("Could not resume the unfinished transfers", e));
+    }
+
+    /**
+     * Apply the given transfers.
+     *
+     * @param transfers the transfers, with a positive amount between two distinct wallets.
+     * @return the transfers, in the same order, with their id and status set; or a {@link HotWalletException} if one
+     * of them is from or to a hot wallet, in which case no transfer is applied.
+     */
+    public Flux<WalletTransferDTO> transfer(List<WalletTransferDTO> transfers) {
+        for (WalletTransferDTO transfer : transfers) {
+            for (String id : List.of(transfer.getFromWalletId(), transfer.getToWalletId())) {
+                if (hotWalletService.isHot(id)) {
+                    return Flux.error(new HotWalletException(id));
+                }
+            }
+        }
+        return transactionsSupported()
+            .flatMapMany(inTransactions ->
+                Flux
+                    .fromIterable(transfers)
+                    .buffer(properties.getGroupSize())
+                    .concatMap(group -> validate(group).flatMap(valid -> inTransactions ? applyInTransactions(valid) : applyBySaga(valid)))
+            )
+            .thenMany(Flux.fromIterable(transfers));
+    }
+
+    private Mono<Boolean> transactionsSupported() {
+        if (!properties.isTransactions()) {
+            return Mono.just(false);
+        }
+        Boolean supported = transactional;
+        if (supported != null) {
+            return Mono.just(supported);
+        }
+        return mongoTemplate
+            .executeCommand(new Document("isMaster", 1))
+            .map(reply -> reply.getString("setName") != null || "isdbgrid".equals(reply.getString("msg")))
+            .doOnNext(result -> {
+                transactional = result;
+                log.info("Wallet transfers are applied {}", result ? "in transactions" : "by sagas");
+            });
+    }
+
+    /**
+     * Set the status of the transfers whose wallets are missing or hold different currencies.
+     *
+     * @return the other transfers, with a new transfer id.
+     */
+    private Mono<List<WalletTransferDTO>> validate(List<WalletTransferDTO> transfers) {
+        Set<String> ids = new HashSet<>();
+        for (WalletTransferDTO transfer : transfers) {
+            ids.add(transfer.getFromWalletId());
+            ids.add(transfer.getToWalletId());
+        }
+        return walletRepository
+            .findAllById(ids)
+            .collectMap(Wallet::getId, Wallet::getCurrencyCode, LinkedHashMap::new)
+            .map(currencies -> {
+                List<WalletTransferDTO> valid = new ArrayList<>(transfers.size());
+                for (WalletTransferDTO transfer : transfers) {
+                    transfer.setTransferId(new ObjectId().toHexString());
+                    if (!currencies.containsKey(transfer.getFromWalletId()) || !currencies.containsKey(transfer.getToWalletId())) {
+                        transfer.setStatus(WalletTransferDTO.Status.NOT_FOUND);
+                    } else if (!Objects.equals(currencies.get(transfer.getFromWalletId()), currencies.get(transfer.getToWalletId()))) {
+                        transfer.setStatus(WalletTransferDTO.Status.CURRENCY_MISMATCH);
+                    } else {
+                        valid.add(transfer);
+                    }
+                }
+                return valid;
+            });
+    }
+
+    private Mono<Void> applyInTransactions(List<WalletTransferDTO> transfers) {
+        if (transfers.isEmpty()) {
+            return Mono.empty();
+        }
+        return commitInTransaction(transfers)
+            .flatMap(committed -> {
+                if (committed) {
+                    transfers.forEach(transfer -> transfer.setStatus(WalletTransferDTO.Status.COMMITTED));
+                    return Mono.empty();
+                }
+                if (transfers.size() == 1) {
+                    transfers.get(0).setStatus(WalletTransferDTO.Status.INSUFFICIENT_FUNDS);
+                    return Mono.empty();
+                }
+                int half = transfers.size() / 2;
+                return applyInTransactions(transfers.subList(0, half))
+                    .then(Mono.defer(() -> applyInTransactions(transfers.subList(half, transfers.size()))));
+            });
+    }
+
+    /**
+     * Apply the transfers, and record them in the journal, in one transaction.
+     *
+     * @return whether the transaction was committed, or aborted because a debit was not covered.
+     */
+    private Mono<Boolean> commitInTransaction(List<WalletTransferDTO> transfers) {
+        Map<String, BigDecimal> debits = net(transfers, WalletTransferDTO::getFromWalletId);
+        Map<String, BigDecimal> credits = net(transfers, WalletTransferDTO::getToWalletId);
+        List<Document> entries = new ArrayList<>(transfers.size());
+        String groupId = new ObjectId().toHexString();
+        Date now = new Date();
+        transfers.forEach(transfer -> entries.add(entry(groupId, transfer, WalletTransferDTO.Status.COMMITTED.name(), now)));
+        return Mono
+            .usingWhen(
+                mongoTemplate.getMongoDatabaseFactory().getSession(ClientSessionOptions.builder().build()),
+                session -> {
+                    session.startTransaction(TransactionOptions.builder().writeConcern(WriteConcern.MAJORITY).build());
+                    return walletRepository
+                        .transferBalances(session, debits, credits)
+                        .filter(updated -> updated)
+                        .flatMap(updated -> mongoTemplate.getCollection(JOURNAL))
+                        .flatMap(journal -> Mono.from(journal.insertMany(session, entries)))
+                        .map(result -> true)
+                        .switchIfEmpty(Mono.error(UncoveredDebit::new));
+                },
+                session ->
+                    Mono
+                        .from(session.commitTransaction())
+                        .retryWhen(Retry.max(TRANSACTION_RETRIES).filter(e -> hasErrorLabel(e, UNKNOWN_TRANSACTION_COMMIT_RESULT)))
+                        .doFinally(signal -> session.close()),
+                (session, e) -> abort(session),
+                this::abort
+            )
+            .retryWhen(Retry.max(TRANSACTION_RETRIES).filter(e -> hasErrorLabel(e, TRANSIENT_TRANSACTION_ERROR)))
+            .onErrorResume(UncoveredDebit.class, e -> Mono.just(false));
+    }
+
+    private Mono<Void> abort(ClientSession session) {
+        return Mono.from(session.abortTransaction()).doFinally(signal -> session.close());
+    }
+
+    private static boolean hasErrorLabel(Throwable e, String label) {
+        return e instanceof MongoException && ((MongoException) e).hasErrorLabel(label);
+    }
+
+    private Mono<Void> applyBySaga(List<WalletTransferDTO> transfers) {
+        if (transfers.isEmpty()) {
+            return Mono.empty();
+        }
+        String groupId = new ObjectId().toHexString();
+        Date now = new Date();
+        List<Document> entries = new ArrayList<>(transfers.size());
+        transfers.forEach(transfer -> entries.add(entry(groupId, transfer, PENDING, now)));
+        return mongoTemplate.insert(entries, JOURNAL).then(Mono.defer(() -> debit(groupId, transfers)));
+    }
+
+    private Mono<Void> resume(String groupId, String status, List<WalletTransferDTO> transfers) {
+        switch (status) {
+            case PENDING:
+                return debit(groupId, transfers);
+            case DEBITED:
+                return credit(groupId, transfers);
+            default:
+                return refund(groupId, transfers);
+        }
+    }
+
+    private Mono<Void> debit(String groupId, List<WalletTransferDTO> transfers) {
+        Map<String, BigDecimal> debits = net(transfers, WalletTransferDTO::getFromWalletId);
+        debits.replaceAll((id, amount) -> amount.negate());
+        return walletRepository
+            .addToBalances(debits, groupId + ":debit")
+            .filter(BalanceUpdate::isApplied)
+            .count()
+            .flatMap(debited ->
+                debited == debits.size()
+                    ? setStatus(groupId, DEBITED).then(Mono.defer(() -> credit(groupId, transfers)))
+                    : setStatus(groupId, REFUNDING).then(Mono.defer(() -> refund(groupId, transfers)))
+            );
+    }
+
+    private Mono<Void> credit(String groupId, List<WalletTransferDTO> transfers) {
+        return walletRepository
+            .addToBalances(net(transfers, WalletTransferDTO::getToWalletId), groupId + ":credit")
+            .filter(BalanceUpdate::isApplied)
+            .map(update -> update.getWallet().getId())
+            .collect(Collectors.toSet())
+            .flatMap(credited -> {
+                List<WalletTransferDTO> orphans = new ArrayList<>();
+                for (WalletTransferDTO transfer : transfers) {
+                    if (credited.contains(transfer.getToWalletId())) {
+                        transfer.setStatus(WalletTransferDTO.Status.COMMITTED);
+                    } else {
+                        transfer.setStatus(WalletTransferDTO.Status.COMPENSATED);
+                        orphans.add(transfer);
+                    }
+                }
+                if (orphans.isEmpty()) {
+                    return recordOutcome(transfers);
+                }
+                log.warn("Giving back {} transfers of group {}, whose target wallet disappeared", orphans.size(), groupId);
+                return walletRepository
+                    .addToBalances(net(orphans, WalletTransferDTO::getFromWalletId), groupId + ":compensation")
+                    .then(Mono.defer(() -> recordOutcome(transfers)));
+            });
+    }
+
+    /**
+     * Give back the debits applied to a group that could not be debited as a whole, then apply each half of the group.
+     */
+    private Mono<Void> refund(String groupId, List<WalletTransferDTO> transfers) {
+        Map<String, BigDecimal> debits = net(transfers, WalletTransferDTO::getFromWalletId);
+        Mono<Void> refund = walletRepository
+            .findAppliedTo(debits.keySet(), groupId + ":debit")
+            .collectMap(Function.identity(), debits::get)
+            .flatMap(refunds -> walletRepository.addToBalances(refunds, groupId + ":refund").then());
+        return refund.then(
+            Mono.defer(() -> {
+                if (transfers.size() == 1) {
+                    transfers.get(0).setStatus(WalletTransferDTO.Status.INSUFFICIENT_FUNDS);
+                    return recordOutcome(transfers);
+                }
+                int half = transfers.size() / 2;
+                List<WalletTransferDTO> first = transfers.subList(0, half);
+                List<WalletTransferDTO> second = transfers.subList(half, transfers.size());
+                String firstGroupId = new ObjectId().toHexString();
+                String secondGroupId = new ObjectId().toHexString();
+                return mongoTemplate
+                    .getCollection(JOURNAL)
+                    .flatMap(journal ->
+                        Mono.from(
+                            journal.bulkWrite(
+                                List.of(regroup(first, firstGroupId), regroup(second, secondGroupId)),
+                                new BulkWriteOptions().ordered(false)
+                            )
+                        )
+                    )
+                    .then(Mono.defer(() -> debit(firstGroupId, first)))
+                    .then(Mono.defer(() -> debit(secondGroupId, second)));
+            })
+        );
+    }
+
+    private Mono<Void> setStatus(String groupId, String status) {
+        return mongoTemplate
+            .getCollection(JOURNAL)
+            .flatMap(journal ->
+                Mono.from(
+                    journal.updateMany(
+                        Filters.eq("group_id", groupId),
+                        Updates.combine(Updates.set("status", status), Updates.set("last_modified_date", new Date()))
+                    )
+                )
+            )
+            .then();
+    }
+
+    /**
+     * Record the final status of the transfers in the journal, in one round trip.
+     */
+    private Mono<Void> recordOutcome(List<WalletTransferDTO> transfers) {
+        Map<WalletTransferDTO.Status, List<ObjectId>> ids = new EnumMap<>(WalletTransferDTO.Status.class);
+        for (WalletTransferDTO transfer : transfers) {
+            ids.computeIfAbsent(transfer.getStatus(), status -> new ArrayList<>()).add(new ObjectId(transfer.getTransferId()));
+        }
+        Date now = new Date();
+        List<UpdateManyModel<Document>> updates = new ArrayList<>(ids.size());
+        ids.forEach((status, transferIds) ->
+            updates.add(
+                new UpdateManyModel<>(
+                    Filters.in("_id", transferIds),
+                    Updates.combine(Updates.set("status", status.name()), Updates.set("last_modified_date", now))
+                )
+            )
+        );
+        return mongoTemplate
+            .getCollection(JOURNAL)
+            .flatMap(journal -> Mono.from(journal.bulkWrite(updates, new BulkWriteOptions().ordered(false))))
+            .then();
+    }
+
+    private static UpdateManyModel<Document> regroup(List<WalletTransferDTO> transfers, String groupId) {
+        List<ObjectId> ids = transfers.stream().map(transfer -> new ObjectId(transfer.getTransferId())).collect(Collectors.toList());
+        return new UpdateManyModel<>(
+            Filters.in("_id", ids),
+            Updates.combine(Updates.set("group_id", groupId), Updates.set("status", PENDING), Updates.set("last_modified_date", new Date()))
+        );
+    }
+
+    /**
+     * Sum the amounts of the transfers by wallet.
+     */
+    private static Map<String, BigDecimal> net(List<WalletTransferDTO> transfers, Function<WalletTransferDTO, String> wallet) {
+        Map<String, BigDecimal> amounts = new LinkedHashMap<>();
+        for (WalletTransferDTO transfer : transfers) {
+            amounts.merge(wallet.apply(transfer), transfer.getAmount(), BigDecimal::add);
+        }
+        return amounts;
+    }
+
+    private static Document entry(String groupId, WalletTransferDTO transfer, String status, Date now) {
+        return new Document("_id", new ObjectId(transfer.getTransferId()))
+            .append("group_id", groupId)
+            .append("from_wallet_id", transfer.getFromWalletId())
+            .append("to_wallet_id", transfer.getToWalletId())
+            .append("amount", Decimals.toDecimal128(transfer.getAmount()))
+            .append("status", status)
+            .append("created_date", now)
+            .append("last_modified_date", now);
+    }
+
+    private static WalletTransferDTO transfer(Document entry) {
+        WalletTransferDTO transfer = new WalletTransferDTO(
+            entry.getString("from_wallet_id"),
+            entry.getString("to_wallet_id"),
+            entry.get("amount", Decimal128.class).bigDecimalValue()
+        );
+        transfer.setTransferId(entry.getObjectId("_id").toHexString());
+        return transfer;
+    }
+
+    /**
+     * Aborts a transaction whose debits are not all covered.
+     */
+    private static final class UncoveredDebit extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private UncoveredDebit() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the smartTrades accepted but not written to the database yet, which keeps them across a crash.
+ * <p>
+ * Records are numbered from 1 in the order they are appended, and kept in segment files named after the number of
+ * their first record. Each record is a length, a CRC32 checksum and the fields of a trade, encoded as in a
+ * {@link TradeSnapshotFile}. Appends are forced to the disk before they return, one force per group of records.
+ * Opening the log drops a last record cut short by a crash, and replays the records still there; segments whose
+ * records are all {@linkplain #drained drained} are deleted.
+ * <p>
+ * Not thread-safe: the owner serializes the calls.
+ */
+final class WriteAheadLog implements Closeable {
+
+    private static final String SUFFIX = ".wal";
+
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final Path directory;
+
+    private final long segmentSize;
+
+    /**
+     * Numbers of the first records of the segments, oldest first; the last one is appended to.
+     */
+    private final List<Long> segments = new ArrayList<>();
+
+    private FileChannel channel;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+    private long sequence;
+
+    private WriteAheadLog(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Open the log, creating it if needed, and replay its records.
+     *
+     * @param directory the directory of the segments.
+     * @param segmentSize the size beyond which a new segment is started.
+     * @param replay receives the number and the trade of every record, in order.
+     * @return the log, ready to append to.
+     * @throws IOException if a record other than the last one is corrupt.
+     */
+    static WriteAheadLog open(Path directory, long segmentSize, RecordConsumer replay) throws IOException {
+        Files.createDirectories(directory);
+        WriteAheadLog log = new WriteAheadLog(directory, segmentSize);
+        try (Stream<Path> files = Files.list(directory)) {
+            log.segments.addAll(
+                files
+                    .map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList())
+            );
+        }
+        if (log.segments.isEmpty()) {
+            log.sequence = 0;
+            log.startSegment();
+            return log;
+        }
+        for (int i = 0; i < log.segments.size(); i++) {
+            boolean last = i == log.segments.size() - 1;
+            log.sequence = log.segments.get(i) - 1;
+            long length = log.replay(log.segmentFile(log.segments.get(i)), last, replay);
+            if (last) {
+                log.channel = FileChannel.open(log.segmentFile(log.segments.get(i)), StandardOpenOption.WRITE);
+                log.channel.truncate(length);
+                log.channel.position(length);
+            } else if (i + 1 < log.segments.size() && log.segments.get(i + 1) != log.sequence + 1) {
+                throw new IOException("Missing records in write-ahead log " + directory + " before " + log.segments.get(i + 1));
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Receives the records replayed when the log is opened.
+     */
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(long sequence, SmartTrade smartTrade);
+    }
+
+    /**
+     * @return the number of the last record appended.
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Append trades, and force them to the disk.
+     *
+     * @param smartTrades the trades.
+     * @return the number of the record of the last trade.
+     * @throws IOException if the trades may not be on the disk; some of them may still be replayed later.
+     */
+    long append(List<SmartTrade> smartTrades) throws IOException {
+        buffer.clear();
+        for (SmartTrade smartTrade : smartTrades) {
+            while (!write(smartTrade)) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(2 * buffer.capacity());
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        sequence += smartTrades.size();
+        if (channel.position() >= segmentSize) {
+            channel.close();
+            startSegment();
+        }
+        return sequence;
+    }
+
+    /**
+     * Delete the segments whose records are all written to the database.
+     *
+     * @param drainedSequence the number of the last record written to the database, all the previous ones being written
+     * as well.
+     */
+    void drained(long drainedSequence) throws IOException {
+        while (segments.size() > 1 && segments.get(1) <= drainedSequence + 1) {
+            Files.deleteIfExists(segmentFile(segments.remove(0)));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return whether the record fits the buffer.
+     */
+    private boolean write(SmartTrade smartTrade) {
+        int start = buffer.position();
+        if (buffer.remaining() < RECORD_HEADER_SIZE) {
+            return false;
+        }
+        buffer.position(start + RECORD_HEADER_SIZE);
+        if (!TradeSnapshotFile.encode(smartTrade, buffer)) {
+            buffer.position(start);
+            return false;
+        }
+        int length = buffer.position() - start - RECORD_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start + RECORD_HEADER_SIZE).limit(start + RECORD_HEADER_SIZE + length));
+        buffer.putInt(start, length);
+        buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+        return true;
+    }
+
+    /**
+     * @return the length of the complete records of the segment.
+     */
+    private long replay(Path file, boolean last, RecordConsumer replay) throws IOException {
+        try (FileChannel segment = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer content = segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+            while (content.remaining() >= RECORD_HEADER_SIZE) {
+                int start = content.position();
+                int length = content.getInt();
+                int checksum = content.getInt();
+                if (length <= 0 || length > content.remaining()) {
+                    return corrupt(file, last, start);
+                }
+                ByteBuffer record = content.slice().limit(length);
+                CRC32 crc = new CRC32();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    return corrupt(file, last, start);
+                }
+                SmartTrade smartTrade;
+                try {
+                    smartTrade = TradeSnapshotFile.decode(record);
+                } catch (RuntimeException e) {
+                    throw new IOException("Corrupt record in write-ahead log " + file + " at " + start, e);
+                }
+                replay.accept(++sequence, smartTrade);
+                content.position(start + RECORD_HEADER_SIZE + length);
+            }
+            return corrupt(file, last, content.position());
+        }
+    }
+
+    /**
+     * @return where the last segment is cut, if the records end there.
+     */
+    private static long corrupt(Path file, boolean last, int position) throws IOException {
+        if (!last && position < Files.size(file)) {
+            throw new IOException("Corrupt record in write-ahead log " + file + " at " + position);
+        }
+        return position;
+    }
+
+    private void startSegment() throws IOException {
+        long first = sequence + 1;
+        channel = FileChannel.open(segmentFile(first), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.add(first);
+        // Make the new file itself durable.
+        try (FileChannel parent = FileChannel.open(directory, StandardOpenOption.READ)) {
+            parent.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform.
+        }
+    }
+
+    private Path segmentFile(long first) {
+        return directory.resolve(String.format("%020d%s", first, SUFFIX));
+    }
+}
@@ -0,0 +1,380 @@
+package com.osttra.fx.blockstream.service;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+/**
+ * Service acknowledging new {@link SmartTrade}s once they are in a local {@link WriteAheadLog}, rather than once
+ * MongoDB has them, when the write-ahead log is enabled.
+ * <p>
+ * A single writer thread appends the trades: those queued while it forces a group to the disk make the next group, so
+ * the number of forces follows the disk rather than the number of trades. Logged trades are then written to MongoDB in
+ * order, in batches, retrying until MongoDB takes them; the segments of the log are deleted once written. Until then,
+ * the trades are found here by transaction id.
+ * <p>
+ * Logged trades cannot be updated or deleted until they are written to MongoDB.
+ * <p>
+ * Opening the log replays the trades it still holds, which may have been written to MongoDB already: trades whose
+ * transaction id or id is stored are skipped, so replaying is idempotent.
+ */
+@Service
+public class WriteAheadLogService {
+
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Logger log = LoggerFactory.getLogger(WriteAheadLogService.class);
+
+    private final SmartTradeRepository smartTradeRepository;
+
+    private final ApplicationProperties.WriteAheadLog properties;
+
+    private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+
+    private final Sinks.Many<Logged> logged = Sinks.many().unicast().onBackpressureBuffer();
+
+    /**
+     * The logged trades not written to MongoDB yet, by transaction id.
+     */
+    private final Map<String, SmartTrade> pending = new ConcurrentHashMap<>();
+
+    /**
+     * The ids of the logged trades not written to MongoDB yet.
+     */
+    private final Set<String> pendingIds = ConcurrentHashMap.newKeySet();
+
+    private final WriteAheadLog writeAheadLog;
+
+    private final Thread writer;
+
+    private volatile IOException failure;
+
+    private long replayedCount;
+
+    private Disposable drain;
+
+    public WriteAheadLogService(SmartTradeRepository smartTradeRepository, ApplicationProperties applicationProperties) {
+        this.smartTradeRepository = smartTradeRepository;
+        this.properties = applicationProperties.getWriteAheadLog();
+        if (!properties.isEnabled()) {
+            this.writeAheadLog = null;
+            this.writer = null;
+            return;
+        }
+        try {
+            this.writeAheadLog =
+                WriteAheadLog.open(Paths.get(properties.getDirectory()), properties.getSegmentSize(), this::replayed);
+        } catch (IOException e) {
+            // Better not to start than to acknowledge trades while older ones are stuck in the log.
+            throw new UncheckedIOException("Could not open the write-ahead log of the smartTrades", e);
+        }
+        log.info("Opened the write-ahead log of the smartTrades, replaying {} smartTrades", replayedCount);
+        this.writer = new Thread(this::writeGroups, "trade-wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Write the logged trades to MongoDB.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        drain =
+            logged
+                .asFlux()
+                .bufferTimeout(properties.getDrainBatchSize(), properties.getDrainDelay())
+                .onBackpressureBuffer()
+                .concatMap(
+                    batch ->
+                        write(batch)
+                            .retryWhen(
+                                Retry
+                                    .backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                                    .maxBackoff(Duration.ofSeconds(30))
+                                    .doBeforeRetry(signal ->
+                                        log.warn("Could not write the logged smartTrades, retrying: {}", signal.failure().getMessage())
+                                    )
+                            )
+                            .thenReturn(batch),
+                    1
+                )
+                .subscribe(this::written);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!isEnabled()) {
+            return;
+        }
+        writer.interrupt();
+        try {
+            writer.join(STOP_TIMEOUT.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (drain != null) {
+            drain.dispose();
+        }
+        synchronized (writeAheadLog) {
+            try {
+                writeAheadLog.close();
+            } catch (IOException e) {
+                log.warn("Could not close the write-ahead log of the smartTrades: {}", e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return writeAheadLog != null;
+    }
+
+    /**
+     * Log a new smartTrade, assigning its id, unless a logged smartTrade not written to MongoDB yet has the same
+     * transaction id.
+     *
+     * @param smartTrade the smartTrade, without an id.
+     * @return the given smartTrade once it is on the disk, or the logged smartTrade with the same transaction id; an
+     * {@link InvalidSmartTradeException} if the smartTrade does not fit a record of the log.
+     */
+    public Mono<SmartTrade> append(SmartTrade smartTrade) {
+        return Mono
+            .<SmartTrade>create(sink -> {
+                try {
+                    // Checked before it is queued, so that it cannot fail the group it would join.
+                    TradeSnapshotFile.checkFields(smartTrade);
+                } catch (IllegalArgumentException e) {
+                    sink.error(new InvalidSmartTradeException(e.getMessage()));
+                    return;
+                }
+                if (failure != null) {
+                    sink.error(new IllegalStateException("The write-ahead log of the smartTrades failed", failure));
+                    return;
+                }
+                Long version = smartTrade.getVersion();
+                // Identified before it is visible to the appends of the same transaction id.
+                smartTrade.setId(new ObjectId().toHexString());
+                if (version == null) {
+                    smartTrade.setVersion(0L);
+                }
+                String transactionId = smartTrade.getTransactionId();
+                if (transactionId != null) {
+                    SmartTrade existing = pending.putIfAbsent(transactionId, smartTrade);
+                    if (existing != null) {
+                        smartTrade.setId(null);
+                        smartTrade.setVersion(version);
+                        sink.success(existing);
+                        return;
+                    }
+                }
+                pendingIds.add(smartTrade.getId());
+                appends.add(new Append(smartTrade, sink));
+            })
+            // Keep the writer thread for the writes.
+            .publishOn(Schedulers.parallel());
+    }
+
+    /**
+     * Find a logged smartTrade not written to MongoDB yet.
+     *
+     * @param transactionId the transaction id.
+     * @return the smartTrade, or {@code null}.
+     */
+    public SmartTrade findPending(String transactionId) {
+        return pending.get(transactionId);
+    }
+
+    /**
+     * Whether a smartTrade is logged but not written to MongoDB yet, and so cannot be updated or deleted there.
+     *
+     * @param id the id of the smartTrade.
+     */
+    public boolean isPending(String id) {
+        return pendingIds.contains(id);
+    }
+
+    private void replayed(long sequence, SmartTrade smartTrade) {
+        pendingIds.add(smartTrade.getId());
+        if (smartTrade.getTransactionId() != null) {
+            pending.put(smartTrade.getTransactionId(), smartTrade);
+        }
+        logged.tryEmitNext(new Logged(sequence, smartTrade));
+        replayedCount++;
+    }
+
+    private void writeGroups() {
+        List<Append> group = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                group.add(appends.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            appends.drainTo(group, properties.getMaxGroupSize() - 1);
+            List<SmartTrade> smartTrades = group.stream().map(append -> append.smartTrade).collect(Collectors.toList());
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+                long sequence;
+                synchronized (writeAheadLog) {
+                    sequence = writeAheadLog.append(smartTrades) - group.size();
+                }
+                for (Append append : group) {
+                    logged.tryEmitNext(new Logged(++sequence, append.smartTrade));
+                    append.sink.success(append.smartTrade);
+                }
+            } catch (IOException e) {
+                if (failure == null) {
+                    log.error("Could not write to the write-ahead log, no longer accepting smartTrades", e);
+                    failure = e;
+                }
+                failed(group, e);
+            } catch (RuntimeException e) {
+                // Nothing was written: the records are encoded before the log is.
+                log.error("Could not encode {} smartTrades for the write-ahead log", group.size(), e);
+                failed(group, e);
+            }
+            group.clear();
+        }
+        Append append;
+        while ((append = appends.poll()) != null) {
+            forget(append.smartTrade);
+            append.sink.error(new IllegalStateException("The write-ahead log of the smartTrades is closed"));
+        }
+    }
+
+    private void failed(List<Append> group, Exception e) {
+        for (Append append : group) {
+            forget(append.smartTrade);
+            append.sink.error(new IllegalStateException("The write-ahead log of the smartTrades failed", e));
+        }
+    }
+
+    private Mono<Void> write(List<Logged> batch) {
+        List<SmartTrade> smartTrades = batch.stream().map(item -> item.smartTrade).collect(Collectors.toList());
+        List<String> transactionIds = smartTrades
+            .stream()
+            .map(SmartTrade::getTransactionId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        Mono<Map<String, String>> stored = transactionIds.isEmpty()
+            ? Mono.just(Map.of())
+            : smartTradeRepository.findAllByTransactionIdIn(transactionIds).collectMap(SmartTrade::getTransactionId, SmartTrade::getId);
+        return stored.flatMap(storedIds -> {
+            List<SmartTrade> missing = new ArrayList<>(smartTrades.size());
+            for (SmartTrade smartTrade : smartTrades) {
+                String storedId = smartTrade.getTransactionId() == null ? null : storedIds.get(smartTrade.getTransactionId());
+                if (storedId == null) {
+                    missing.add(smartTrade);
+                } else if (!storedId.equals(smartTrade.getId())) {
+                    log.warn(
+                        "SmartTrade {} was acknowledged from the write-ahead log, but transactionId {} is stored as {}",
+                        smartTrade.getId(),
+                        smartTrade.getTransactionId(),
+                        storedId
+                    );
+                }
+            }
+            if (missing.isEmpty()) {
+                return Mono.empty();
+            }
+            return smartTradeRepository
+                .insert(missing)
+                .then()
+                .onErrorResume(e -> {
+                    log.debug("Bulk insert of {} logged smartTrades failed, retrying one by one: {}", missing.size(), e.getMessage());
+                    return Flux.fromIterable(missing).concatMap(this::insertOne).then();
+                });
+        });
+    }
+
+    private Mono<Void> insertOne(SmartTrade smartTrade) {
+        return smartTradeRepository
+            .insert(smartTrade)
+            .then()
+            .onErrorResume(
+                DuplicateKeyException.class,
+                e -> {
+                    // Written before a crash, or the transaction id was taken meanwhile.
+                    log.debug("Logged smartTrade {} is already stored: {}", smartTrade.getId(), e.getMessage());
+                    return Mono.empty();
+                }
+            );
+    }
+
+    private void written(List<Logged> batch) {
+        for (Logged item : batch) {
+            forget(item.smartTrade);
+        }
+        long sequence = batch.get(batch.size() - 1).sequence;
+        synchronized (writeAheadLog) {
+            try {
+                writeAheadLog.drained(sequence);
+            } catch (IOException e) {
+                log.warn("Could not delete the written segments of the write-ahead log: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void forget(SmartTrade smartTrade) {
+        pendingIds.remove(smartTrade.getId());
+        if (smartTrade.getTransactionId() != null) {
+            pending.remove(smartTrade.getTransactionId(), smartTrade);
+        }
+    }
+
+    private static final class Append {
+
+        private final SmartTrade smartTrade;
+
+        private final MonoSink<SmartTrade> sink;
+
+        private Append(SmartTrade smartTrade, MonoSink<SmartTrade> sink) {
+            this.smartTrade = smartTrade;
+            this.sink = sink;
+        }
+    }
+
+    private static final class Logged {
+
+        private final long sequence;
+
+        private final SmartTrade smartTrade;
+
+        private Logged(long sequence, SmartTrade smartTrade) {
+            this.sequence = sequence;
+            this.smartTrade = smartTrade;
+        }
+    }
+}
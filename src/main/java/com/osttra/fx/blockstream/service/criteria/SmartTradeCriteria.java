@@ -0,0 +1,125 @@
+package com.osttra.fx.blockstream.service.criteria;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Criteria class for filtering {@link com.osttra.fx.blockstream.domain.SmartTrade}s.
+ * <p>
+ * Every field is optional; the filters that are set are combined with AND. The value date range is inclusive.
+ * It can be bound from request parameters such as {@code ?counterParty=ACME&valueDateFrom=2022-01-01}.
+ */
+public class SmartTradeCriteria implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String counterParty;
+
+    private String tradingParty;
+
+    private String currencyBuy;
+
+    private String currencySell;
+
+    private String direction;
+
+    private LocalDate valueDateFrom;
+
+    private LocalDate valueDateTo;
+
+    public String getCounterParty() {
+        return counterParty;
+    }
+
+    public void setCounterParty(String counterParty) {
+        this.counterParty = counterParty;
+    }
+
+    public String getTradingParty() {
+        return tradingParty;
+    }
+
+    public void setTradingParty(String tradingParty) {
+        this.tradingParty = tradingParty;
+    }
+
+    public String getCurrencyBuy() {
+        return currencyBuy;
+    }
+
+    public void setCurrencyBuy(String currencyBuy) {
+        this.currencyBuy = currencyBuy;
+    }
+
+    public String getCurrencySell() {
+        return currencySell;
+    }
+
+    public void setCurrencySell(String currencySell) {
+        this.currencySell = currencySell;
+    }
+
+    public String getDirection() {
+        return direction;
+    }
+
+    public void setDirection(String direction) {
+        this.direction = direction;
+    }
+
+    public LocalDate getValueDateFrom() {
+        return valueDateFrom;
+    }
+
+    public void setValueDateFrom(LocalDate valueDateFrom) {
+        this.valueDateFrom = valueDateFrom;
+    }
+
+    public LocalDate getValueDateTo() {
+        return valueDateTo;
+    }
+
+    public void setValueDateTo(LocalDate valueDateTo) {
+        this.valueDateTo = valueDateTo;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final SmartTradeCriteria that = (SmartTradeCriteria) o;
+        return (
+            Objects.equals(counterParty, that.counterParty) &&
+            Objects.equals(tradingParty, that.tradingParty) &&
+            Objects.equals(currencyBuy, that.currencyBuy) &&
+            Objects.equals(currencySell, that.currencySell) &&
+            Objects.equals(direction, that.direction) &&
+            Objects.equals(valueDateFrom, that.valueDateFrom) &&
+            Objects.equals(valueDateTo, that.valueDateTo)
+        );
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(counterParty, tradingParty, currencyBuy, currencySell, direction, valueDateFrom, valueDateTo);
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "SmartTradeCriteria{" +
+            (counterParty != null ? "counterParty=" + counterParty + ", " : "") +
+            (tradingParty != null ? "tradingParty=" + tradingParty + ", " : "") +
+            (currencyBuy != null ? "currencyBuy=" + currencyBuy + ", " : "") +
+            (currencySell != null ? "currencySell=" + currencySell + ", " : "") +
+            (direction != null ? "direction=" + direction + ", " : "") +
+            (valueDateFrom != null ? "valueDateFrom=" + valueDateFrom + ", " : "") +
+            (valueDateTo != null ? "valueDateTo=" + valueDateTo + ", " : "") +
+            "}";
+    }
+}
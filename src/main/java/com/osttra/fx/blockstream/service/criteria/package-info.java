@@ -0,0 +1,4 @@
+/**
+ * Filtering criteria of the query services.
+ */
+package com.osttra.fx.blockstream.service.criteria;
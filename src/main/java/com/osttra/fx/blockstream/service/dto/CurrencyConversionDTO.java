@@ -0,0 +1,84 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * A DTO representing an amount converted from one currency to another.
+ * <p>
+ * In a request, only the currencies and the amount are set; the response adds the rate used and the converted amount,
+ * both {@code null} if there is no rate between the currencies.
+ */
+public class CurrencyConversionDTO {
+
+    private String fromCurrency;
+
+    private String toCurrency;
+
+    private BigDecimal amount;
+
+    private BigDecimal rate;
+
+    private BigDecimal convertedAmount;
+
+    public CurrencyConversionDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public CurrencyConversionDTO(String fromCurrency, String toCurrency, BigDecimal amount) {
+        this.fromCurrency = fromCurrency;
+        this.toCurrency = toCurrency;
+        this.amount = amount;
+    }
+
+    public String getFromCurrency() {
+        return fromCurrency;
+    }
+
+    public void setFromCurrency(String fromCurrency) {
+        this.fromCurrency = fromCurrency;
+    }
+
+    public String getToCurrency() {
+        return toCurrency;
+    }
+
+    public void setToCurrency(String toCurrency) {
+        this.toCurrency = toCurrency;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public BigDecimal getRate() {
+        return rate;
+    }
+
+    public void setRate(BigDecimal rate) {
+        this.rate = rate;
+    }
+
+    public BigDecimal getConvertedAmount() {
+        return convertedAmount;
+    }
+
+    public void setConvertedAmount(BigDecimal convertedAmount) {
+        this.convertedAmount = convertedAmount;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "CurrencyConversionDTO{" +
+            "fromCurrency='" + fromCurrency + '\'' +
+            ", toCurrency='" + toCurrency + '\'' +
+            ", amount=" + amount +
+            ", rate=" + rate +
+            ", convertedAmount=" + convertedAmount +
+            "}";
+    }
+}
@@ -0,0 +1,159 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * A DTO representing the unrealized profit and loss of the open trades of a trading party in one currency pair.
+ * <p>
+ * The pair is ordered alphabetically, whatever the direction of the trades. Bought amounts count positively and
+ * sold amounts negatively, in the currency of each leg. The profit and loss is the value of both amounts at the market
+ * rate, in the quote currency, and in the reporting currency; the rate and profit and loss are missing when there is no
+ * rate for the currencies.
+ */
+public class MarkToMarketDTO {
+
+    private String tradingParty;
+
+    private String baseCurrency;
+
+    private String quoteCurrency;
+
+    private BigDecimal baseAmount;
+
+    private BigDecimal quoteAmount;
+
+    private BigDecimal rate;
+
+    private BigDecimal pnl;
+
+    private String reportingCurrency;
+
+    private BigDecimal reportingPnl;
+
+    private int tradeCount;
+
+    public MarkToMarketDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public MarkToMarketDTO(
+        String tradingParty,
+        String baseCurrency,
+        String quoteCurrency,
+        BigDecimal baseAmount,
+        BigDecimal quoteAmount,
+        BigDecimal rate,
+        BigDecimal pnl,
+        String reportingCurrency,
+        BigDecimal reportingPnl,
+        int tradeCount
+    ) {
+        this.tradingParty = tradingParty;
+        this.baseCurrency = baseCurrency;
+        this.quoteCurrency = quoteCurrency;
+        this.baseAmount = baseAmount;
+        this.quoteAmount = quoteAmount;
+        this.rate = rate;
+        this.pnl = pnl;
+        this.reportingCurrency = reportingCurrency;
+        this.reportingPnl = reportingPnl;
+        this.tradeCount = tradeCount;
+    }
+
+    public String getTradingParty() {
+        return tradingParty;
+    }
+
+    public void setTradingParty(String tradingParty) {
+        this.tradingParty = tradingParty;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public void setBaseCurrency(String baseCurrency) {
+        this.baseCurrency = baseCurrency;
+    }
+
+    public String getQuoteCurrency() {
+        return quoteCurrency;
+    }
+
+    public void setQuoteCurrency(String quoteCurrency) {
+        this.quoteCurrency = quoteCurrency;
+    }
+
+    public BigDecimal getBaseAmount() {
+        return baseAmount;
+    }
+
+    public void setBaseAmount(BigDecimal baseAmount) {
+        this.baseAmount = baseAmount;
+    }
+
+    public BigDecimal getQuoteAmount() {
+        return quoteAmount;
+    }
+
+    public void setQuoteAmount(BigDecimal quoteAmount) {
+        this.quoteAmount = quoteAmount;
+    }
+
+    public BigDecimal getRate() {
+        return rate;
+    }
+
+    public void setRate(BigDecimal rate) {
+        this.rate = rate;
+    }
+
+    public BigDecimal getPnl() {
+        return pnl;
+    }
+
+    public void setPnl(BigDecimal pnl) {
+        this.pnl = pnl;
+    }
+
+    public String getReportingCurrency() {
+        return reportingCurrency;
+    }
+
+    public void setReportingCurrency(String reportingCurrency) {
+        this.reportingCurrency = reportingCurrency;
+    }
+
+    public BigDecimal getReportingPnl() {
+        return reportingPnl;
+    }
+
+    public void setReportingPnl(BigDecimal reportingPnl) {
+        this.reportingPnl = reportingPnl;
+    }
+
+    public int getTradeCount() {
+        return tradeCount;
+    }
+
+    public void setTradeCount(int tradeCount) {
+        this.tradeCount = tradeCount;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "MarkToMarketDTO{" +
+            "tradingParty='" + tradingParty + '\'' +
+            ", baseCurrency='" + baseCurrency + '\'' +
+            ", quoteCurrency='" + quoteCurrency + '\'' +
+            ", baseAmount=" + baseAmount +
+            ", quoteAmount=" + quoteAmount +
+            ", rate=" + rate +
+            ", pnl=" + pnl +
+            ", reportingCurrency='" + reportingCurrency + '\'' +
+            ", reportingPnl=" + reportingPnl +
+            ", tradeCount=" + tradeCount +
+            "}";
+    }
+}
@@ -0,0 +1,134 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * A DTO representing the net position of a trading party against a counter party in one currency pair.
+ * <p>
+ * The pair is ordered alphabetically, whatever the direction of the trades. Bought amounts count positively and
+ * sold amounts negatively, in the currency of each leg.
+ */
+public class PositionDTO {
+
+    private String tradingParty;
+
+    private String counterParty;
+
+    private String baseCurrency;
+
+    private String quoteCurrency;
+
+    private BigDecimal baseAmount;
+
+    private BigDecimal quoteAmount;
+
+    private int tradeCount;
+
+    public PositionDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public PositionDTO(
+        String tradingParty,
+        String counterParty,
+        String baseCurrency,
+        String quoteCurrency,
+        BigDecimal baseAmount,
+        BigDecimal quoteAmount,
+        int tradeCount
+    ) {
+        this.tradingParty = tradingParty;
+        this.counterParty = counterParty;
+        this.baseCurrency = baseCurrency;
+        this.quoteCurrency = quoteCurrency;
+        this.baseAmount = baseAmount;
+        this.quoteAmount = quoteAmount;
+        this.tradeCount = tradeCount;
+    }
+
+    public String getTradingParty() {
+        return tradingParty;
+    }
+
+    public void setTradingParty(String tradingParty) {
+        this.tradingParty = tradingParty;
+    }
+
+    public String getCounterParty() {
+        return counterParty;
+    }
+
+    public void setCounterParty(String counterParty) {
+        this.counterParty = counterParty;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public void setBaseCurrency(String baseCurrency) {
+        this.baseCurrency = baseCurrency;
+    }
+
+    public String getQuoteCurrency() {
+        return quoteCurrency;
+    }
+
+    public void setQuoteCurrency(String quoteCurrency) {
+        this.quoteCurrency = quoteCurrency;
+    }
+
+    public BigDecimal getBaseAmount() {
+        return baseAmount;
+    }
+
+    public void setBaseAmount(BigDecimal baseAmount) {
+        this.baseAmount = baseAmount;
+    }
+
+    public BigDecimal getQuoteAmount() {
+        return quoteAmount;
+    }
+
+    public void setQuoteAmount(BigDecimal quoteAmount) {
+        this.quoteAmount = quoteAmount;
+    }
+
+    public int getTradeCount() {
+        return tradeCount;
+    }
+
+    public void setTradeCount(int tradeCount) {
+        this.tradeCount = tradeCount;
+    }
+
+    /**
+     * Whether both positions hold the same key and amounts, regardless of the scale of the amounts.
+     */
+    public boolean isSameAs(PositionDTO other) {
+        return (
+            Objects.equals(tradingParty, other.tradingParty) &&
+            Objects.equals(counterParty, other.counterParty) &&
+            Objects.equals(baseCurrency, other.baseCurrency) &&
+            Objects.equals(quoteCurrency, other.quoteCurrency) &&
+            baseAmount.compareTo(other.baseAmount) == 0 &&
+            quoteAmount.compareTo(other.quoteAmount) == 0 &&
+            tradeCount == other.tradeCount
+        );
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "PositionDTO{" +
+            "tradingParty='" + tradingParty + '\'' +
+            ", counterParty='" + counterParty + '\'' +
+            ", baseCurrency='" + baseCurrency + '\'' +
+            ", quoteCurrency='" + quoteCurrency + '\'' +
+            ", baseAmount=" + baseAmount +
+            ", quoteAmount=" + quoteAmount +
+            ", tradeCount=" + tradeCount +
+            "}";
+    }
+}
@@ -0,0 +1,73 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A DTO representing the exchange rate of a currency pair: the amount of the quote currency worth one unit of the base
+ * currency.
+ */
+public class RateDTO {
+
+    private String baseCurrency;
+
+    private String quoteCurrency;
+
+    private BigDecimal rate;
+
+    private Instant asOf;
+
+    public RateDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public RateDTO(String baseCurrency, String quoteCurrency, BigDecimal rate, Instant asOf) {
+        this.baseCurrency = baseCurrency;
+        this.quoteCurrency = quoteCurrency;
+        this.rate = rate;
+        this.asOf = asOf;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public void setBaseCurrency(String baseCurrency) {
+        this.baseCurrency = baseCurrency;
+    }
+
+    public String getQuoteCurrency() {
+        return quoteCurrency;
+    }
+
+    public void setQuoteCurrency(String quoteCurrency) {
+        this.quoteCurrency = quoteCurrency;
+    }
+
+    public BigDecimal getRate() {
+        return rate;
+    }
+
+    public void setRate(BigDecimal rate) {
+        this.rate = rate;
+    }
+
+    public Instant getAsOf() {
+        return asOf;
+    }
+
+    public void setAsOf(Instant asOf) {
+        this.asOf = asOf;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "RateDTO{" +
+            "baseCurrency='" + baseCurrency + '\'' +
+            ", quoteCurrency='" + quoteCurrency + '\'' +
+            ", rate=" + rate +
+            ", asOf=" + asOf +
+            "}";
+    }
+}
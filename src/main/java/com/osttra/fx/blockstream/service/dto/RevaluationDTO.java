@@ -0,0 +1,85 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * A DTO representing a full revaluation of the trades open on a business date, all at the same rates.
+ */
+public class RevaluationDTO {
+
+    private LocalDate businessDate;
+
+    private Instant ratesAsOf;
+
+    private long ratesVersion;
+
+    private long tradeCount;
+
+    private List<MarkToMarketDTO> positions;
+
+    public RevaluationDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public RevaluationDTO(LocalDate businessDate, Instant ratesAsOf, long ratesVersion, long tradeCount, List<MarkToMarketDTO> positions) {
+        this.businessDate = businessDate;
+        this.ratesAsOf = ratesAsOf;
+        this.ratesVersion = ratesVersion;
+        this.tradeCount = tradeCount;
+        this.positions = positions;
+    }
+
+    public LocalDate getBusinessDate() {
+        return businessDate;
+    }
+
+    public void setBusinessDate(LocalDate businessDate) {
+        this.businessDate = businessDate;
+    }
+
+    public Instant getRatesAsOf() {
+        return ratesAsOf;
+    }
+
+    public void setRatesAsOf(Instant ratesAsOf) {
+        this.ratesAsOf = ratesAsOf;
+    }
+
+    public long getRatesVersion() {
+        return ratesVersion;
+    }
+
+    public void setRatesVersion(long ratesVersion) {
+        this.ratesVersion = ratesVersion;
+    }
+
+    public long getTradeCount() {
+        return tradeCount;
+    }
+
+    public void setTradeCount(long tradeCount) {
+        this.tradeCount = tradeCount;
+    }
+
+    public List<MarkToMarketDTO> getPositions() {
+        return positions;
+    }
+
+    public void setPositions(List<MarkToMarketDTO> positions) {
+        this.positions = positions;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "RevaluationDTO{" +
+            "businessDate=" + businessDate +
+            ", ratesAsOf=" + ratesAsOf +
+            ", ratesVersion=" + ratesVersion +
+            ", tradeCount=" + tradeCount +
+            ", positions=" + (positions == null ? null : positions.size()) +
+            "}";
+    }
+}
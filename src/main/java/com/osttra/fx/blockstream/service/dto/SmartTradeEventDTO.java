@@ -0,0 +1,81 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import java.time.Instant;
+
+/**
+ * A DTO representing a change to a SmartTrade, as pushed to the live trade feed.
+ */
+public class SmartTradeEventDTO {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+    }
+
+    private Type type;
+
+    private String id;
+
+    private SmartTrade smartTrade;
+
+    private Instant timestamp;
+
+    public SmartTradeEventDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public SmartTradeEventDTO(Type type, String id, SmartTrade smartTrade, Instant timestamp) {
+        this.type = type;
+        this.id = id;
+        this.smartTrade = smartTrade;
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * The state of the trade after the change, or {@code null} for a deletion.
+     */
+    public SmartTrade getSmartTrade() {
+        return smartTrade;
+    }
+
+    public void setSmartTrade(SmartTrade smartTrade) {
+        this.smartTrade = smartTrade;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "SmartTradeEventDTO{" +
+            "type=" + type +
+            ", id='" + id + '\'' +
+            ", smartTrade=" + smartTrade +
+            ", timestamp=" + timestamp +
+            "}";
+    }
+}
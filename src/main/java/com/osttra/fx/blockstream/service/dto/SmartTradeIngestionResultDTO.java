@@ -0,0 +1,88 @@
+package com.osttra.fx.blockstream.service.dto;
+
+/**
+ * A DTO representing the outcome of one item of a bulk SmartTrade ingestion.
+ */
+public class SmartTradeIngestionResultDTO {
+
+    public enum Status {
+        CREATED,
+        DUPLICATE,
+        REJECTED,
+        FAILED,
+    }
+
+    private long index;
+
+    private String id;
+
+    private String transactionId;
+
+    private Status status;
+
+    private String message;
+
+    public SmartTradeIngestionResultDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public SmartTradeIngestionResultDTO(long index, String id, String transactionId, Status status, String message) {
+        this.index = index;
+        this.id = id;
+        this.transactionId = transactionId;
+        this.status = status;
+        this.message = message;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public void setIndex(long index) {
+        this.index = index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(String transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "SmartTradeIngestionResultDTO{" +
+            "index=" + index +
+            ", id='" + id + '\'' +
+            ", transactionId='" + transactionId + '\'' +
+            ", status=" + status +
+            ", message='" + message + '\'' +
+            "}";
+    }
+}
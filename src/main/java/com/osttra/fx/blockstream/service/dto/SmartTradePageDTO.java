@@ -0,0 +1,34 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import java.util.List;
+
+/**
+ * A DTO representing one keyset page of {@link SmartTrade}s.
+ */
+public class SmartTradePageDTO {
+
+    private final List<SmartTrade> content;
+
+    private final String nextCursor;
+
+    public SmartTradePageDTO(List<SmartTrade> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<SmartTrade> getContent() {
+        return content;
+    }
+
+    /**
+     * @return the opaque token of the following page, or {@code null} if this is the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,77 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * A DTO representing the balance of a wallet after movements.
+ */
+public class WalletBalanceDTO {
+
+    public enum Status {
+        APPLIED,
+        INSUFFICIENT_FUNDS,
+        NOT_FOUND,
+    }
+
+    private String walletId;
+
+    private Status status;
+
+    private BigDecimal balance;
+
+    private Long version;
+
+    public WalletBalanceDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public WalletBalanceDTO(String walletId, Status status, BigDecimal balance, Long version) {
+        this.walletId = walletId;
+        this.status = status;
+        this.balance = balance;
+        this.version = version;
+    }
+
+    public String getWalletId() {
+        return walletId;
+    }
+
+    public void setWalletId(String walletId) {
+        this.walletId = walletId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "WalletBalanceDTO{" +
+            "walletId='" + walletId + '\'' +
+            ", status=" + status +
+            ", balance=" + balance +
+            ", version=" + version +
+            "}";
+    }
+}
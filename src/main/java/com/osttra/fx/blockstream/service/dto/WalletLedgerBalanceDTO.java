@@ -0,0 +1,60 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A DTO representing the balance of a wallet at a point in time, as recorded in the wallet ledger.
+ */
+public class WalletLedgerBalanceDTO {
+
+    private String walletId;
+
+    private Instant at;
+
+    private BigDecimal balance;
+
+    public WalletLedgerBalanceDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public WalletLedgerBalanceDTO(String walletId, Instant at, BigDecimal balance) {
+        this.walletId = walletId;
+        this.at = at;
+        this.balance = balance;
+    }
+
+    public String getWalletId() {
+        return walletId;
+    }
+
+    public void setWalletId(String walletId) {
+        this.walletId = walletId;
+    }
+
+    public Instant getAt() {
+        return at;
+    }
+
+    public void setAt(Instant at) {
+        this.at = at;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "WalletLedgerBalanceDTO{" +
+            "walletId='" + walletId + '\'' +
+            ", at=" + at +
+            ", balance=" + balance +
+            "}";
+    }
+}
@@ -0,0 +1,50 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * A DTO representing an amount moved into or out of a wallet.
+ * <p>
+ * For the debit and credit endpoints, the amount is positive and the wallet is the one of the path. In a batch of
+ * movements, credits are positive and debits negative.
+ */
+public class WalletMovementDTO {
+
+    private String walletId;
+
+    private BigDecimal amount;
+
+    public WalletMovementDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public WalletMovementDTO(String walletId, BigDecimal amount) {
+        this.walletId = walletId;
+        this.amount = amount;
+    }
+
+    public String getWalletId() {
+        return walletId;
+    }
+
+    public void setWalletId(String walletId) {
+        this.walletId = walletId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "WalletMovementDTO{" +
+            "walletId='" + walletId + '\'' +
+            ", amount=" + amount +
+            "}";
+    }
+}
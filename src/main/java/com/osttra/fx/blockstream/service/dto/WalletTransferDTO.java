@@ -0,0 +1,104 @@
+package com.osttra.fx.blockstream.service.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * A DTO representing a transfer of funds from one wallet to another, and its outcome.
+ */
+public class WalletTransferDTO {
+
+    public enum Status {
+        /**
+         * The amount was taken from the source wallet and added to the target wallet.
+         */
+        COMMITTED,
+        /**
+         * The balance of the source wallet was smaller than the amount.
+         */
+        INSUFFICIENT_FUNDS,
+        /**
+         * One of the wallets does not exist.
+         */
+        NOT_FOUND,
+        /**
+         * The wallets hold different currencies.
+         */
+        CURRENCY_MISMATCH,
+        /**
+         * The target wallet disappeared after the amount was taken, and the amount was given back to the source wallet.
+         */
+        COMPENSATED,
+    }
+
+    private String transferId;
+
+    private String fromWalletId;
+
+    private String toWalletId;
+
+    private BigDecimal amount;
+
+    private Status status;
+
+    public WalletTransferDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public WalletTransferDTO(String fromWalletId, String toWalletId, BigDecimal amount) {
+        this.fromWalletId = fromWalletId;
+        this.toWalletId = toWalletId;
+        this.amount = amount;
+    }
+
+    public String getTransferId() {
+        return transferId;
+    }
+
+    public void setTransferId(String transferId) {
+        this.transferId = transferId;
+    }
+
+    public String getFromWalletId() {
+        return fromWalletId;
+    }
+
+    public void setFromWalletId(String fromWalletId) {
+        this.fromWalletId = fromWalletId;
+    }
+
+    public String getToWalletId() {
+        return toWalletId;
+    }
+
+    public void setToWalletId(String toWalletId) {
+        this.toWalletId = toWalletId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "WalletTransferDTO{" +
+            "transferId='" + transferId + '\'' +
+            ", fromWalletId='" + fromWalletId + '\'' +
+            ", toWalletId='" + toWalletId + '\'' +
+            ", amount=" + amount +
+            ", status=" + status +
+            "}";
+    }
+}
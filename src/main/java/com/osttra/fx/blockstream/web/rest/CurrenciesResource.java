@@ -1,8 +1,10 @@
 package com.osttra.fx.blockstream.web.rest;
 
 import com.osttra.fx.blockstream.domain.Currencies;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
 import com.osttra.fx.blockstream.repository.CurrenciesRepository;
 import com.osttra.fx.blockstream.web.rest.errors.BadRequestAlertException;
+import com.osttra.fx.blockstream.web.rest.util.ETagUtil;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
@@ -11,6 +13,7 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -19,7 +22,6 @@ import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import tech.jhipster.web.util.HeaderUtil;
-import tech.jhipster.web.util.reactive.ResponseUtil;
 
 /**
  * REST controller for managing {@link com.osttra.fx.blockstream.domain.Currencies}.
@@ -37,8 +39,11 @@ public class CurrenciesResource {
 
     private final CurrenciesRepository currenciesRepository;
 
-    public CurrenciesResource(CurrenciesRepository currenciesRepository) {
+    private final CurrenciesCache currenciesCache;
+
+    public CurrenciesResource(CurrenciesRepository currenciesRepository, CurrenciesCache currenciesCache) {
         this.currenciesRepository = currenciesRepository;
+        this.currenciesCache = currenciesCache;
     }
 
     /**
@@ -56,11 +61,13 @@ public class CurrenciesResource {
         }
         return currenciesRepository
             .save(currencies)
+            .doOnNext(result -> currenciesCache.invalidate())
             .map(result -> {
                 try {
                     return ResponseEntity
                         .created(new URI("/api/currencies/" + result.getId()))
                         .headers(HeaderUtil.createEntityCreationAlert(applicationName, true, ENTITY_NAME, result.getId()))
+                        .headers(ETagUtil.createETagHeaders(result.getVersion()))
                         .body(result);
                 } catch (URISyntaxException e) {
                     throw new RuntimeException(e);
@@ -73,15 +80,18 @@ public class CurrenciesResource {
      *
      * @param id the id of the currencies to save.
      * @param currencies the currencies to update.
+     * @param ifMatch the entity tag the currencies must currently have, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated currencies,
      * or with status {@code 400 (Bad Request)} if the currencies is not valid,
+     * or with status {@code 412 (Precondition Failed)} if the currencies does not have the expected version,
      * or with status {@code 500 (Internal Server Error)} if the currencies couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/currencies/{id}")
     public Mono<ResponseEntity<Currencies>> updateCurrencies(
         @PathVariable(value = "id", required = false) final String id,
-        @RequestBody Currencies currencies
+        @RequestBody Currencies currencies,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) throws URISyntaxException {
         log.debug("REST request to update Currencies : {}, {}", id, currencies);
         if (currencies.getId() == null) {
@@ -91,23 +101,18 @@ public class CurrenciesResource {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
 
+        List<Long> expectedVersions = ETagUtil.expectedVersions(ifMatch, currencies.getVersion());
         return currenciesRepository
-            .existsById(id)
-            .flatMap(exists -> {
-                if (!exists) {
-                    return Mono.error(new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound"));
-                }
-
-                return currenciesRepository
-                    .save(currencies)
-                    .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)))
-                    .map(result ->
-                        ResponseEntity
-                            .ok()
-                            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, result.getId()))
-                            .body(result)
-                    );
-            });
+            .update(currencies, expectedVersions)
+            .switchIfEmpty(ETagUtil.updateFailed(currenciesRepository.existsById(id), expectedVersions, ENTITY_NAME))
+            .doOnNext(result -> currenciesCache.invalidate())
+            .map(result ->
+                ResponseEntity
+                    .ok()
+                    .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, result.getId()))
+                    .headers(ETagUtil.createETagHeaders(result.getVersion()))
+                    .body(result)
+            );
     }
 
     /**
@@ -115,16 +120,19 @@ public class CurrenciesResource {
      *
      * @param id the id of the currencies to save.
      * @param currencies the currencies to update.
+     * @param ifMatch the entity tag the currencies must currently have, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated currencies,
      * or with status {@code 400 (Bad Request)} if the currencies is not valid,
      * or with status {@code 404 (Not Found)} if the currencies is not found,
+     * or with status {@code 412 (Precondition Failed)} if the currencies does not have the expected version,
      * or with status {@code 500 (Internal Server Error)} if the currencies couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PatchMapping(value = "/currencies/{id}", consumes = { "application/json", "application/merge-patch+json" })
     public Mono<ResponseEntity<Currencies>> partialUpdateCurrencies(
         @PathVariable(value = "id", required = false) final String id,
-        @RequestBody Currencies currencies
+        @RequestBody Currencies currencies,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) throws URISyntaxException {
         log.debug("REST request to partial update Currencies partially : {}, {}", id, currencies);
         if (currencies.getId() == null) {
@@ -134,36 +142,18 @@ public class CurrenciesResource {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
 
+        List<Long> expectedVersions = ETagUtil.expectedVersions(ifMatch, currencies.getVersion());
         return currenciesRepository
-            .existsById(id)
-            .flatMap(exists -> {
-                if (!exists) {
-                    return Mono.error(new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound"));
-                }
-
-                Mono<Currencies> result = currenciesRepository
-                    .findById(currencies.getId())
-                    .map(existingCurrencies -> {
-                        if (currencies.getCurrencyName() != null) {
-                            existingCurrencies.setCurrencyName(currencies.getCurrencyName());
-                        }
-                        if (currencies.getCurrencyCode() != null) {
-                            existingCurrencies.setCurrencyCode(currencies.getCurrencyCode());
-                        }
-
-                        return existingCurrencies;
-                    })
-                    .flatMap(currenciesRepository::save);
-
-                return result
-                    .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)))
-                    .map(res ->
-                        ResponseEntity
-                            .ok()
-                            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, res.getId()))
-                            .body(res)
-                    );
-            });
+            .partialUpdate(id, currencies, expectedVersions)
+            .switchIfEmpty(ETagUtil.updateFailed(currenciesRepository.existsById(id), expectedVersions, ENTITY_NAME))
+            .doOnNext(result -> currenciesCache.invalidate())
+            .map(res ->
+                ResponseEntity
+                    .ok()
+                    .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, res.getId()))
+                    .headers(ETagUtil.createETagHeaders(res.getVersion()))
+                    .body(res)
+            );
     }
 
     /**
@@ -174,7 +164,7 @@ public class CurrenciesResource {
     @GetMapping("/currencies")
     public Mono<List<Currencies>> getAllCurrencies() {
         log.debug("REST request to get all Currencies");
-        return currenciesRepository.findAll().collectList();
+        return currenciesCache.findAll().collectList();
     }
 
     /**
@@ -184,20 +174,22 @@ public class CurrenciesResource {
     @GetMapping(value = "/currencies", produces = MediaType.APPLICATION_NDJSON_VALUE)
     public Flux<Currencies> getAllCurrenciesAsStream() {
         log.debug("REST request to get all Currencies as a stream");
-        return currenciesRepository.findAll();
+        return currenciesCache.findAll();
     }
 
     /**
      * {@code GET  /currencies/:id} : get the "id" currencies.
      *
      * @param id the id of the currencies to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the currencies, or with status {@code 404 (Not Found)}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)}, the {@code ETag} header and with body the currencies, or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/currencies/{id}")
     public Mono<ResponseEntity<Currencies>> getCurrencies(@PathVariable String id) {
         log.debug("REST request to get Currencies : {}", id);
-        Mono<Currencies> currencies = currenciesRepository.findById(id);
-        return ResponseUtil.wrapOrNotFound(currencies);
+        return currenciesCache
+            .findById(id)
+            .map(result -> ResponseEntity.ok().headers(ETagUtil.createETagHeaders(result.getVersion())).body(result))
+            .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)));
     }
 
     /**
@@ -212,6 +204,7 @@ public class CurrenciesResource {
         log.debug("REST request to delete Currencies : {}", id);
         return currenciesRepository
             .deleteById(id)
+            .doOnSuccess(result -> currenciesCache.invalidate())
             .map(result ->
                 ResponseEntity.noContent().headers(HeaderUtil.createEntityDeletionAlert(applicationName, true, ENTITY_NAME, id)).build()
             );
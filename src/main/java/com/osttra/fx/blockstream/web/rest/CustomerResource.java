@@ -1,8 +1,10 @@
 package com.osttra.fx.blockstream.web.rest;
 
 import com.osttra.fx.blockstream.domain.Customer;
+import com.osttra.fx.blockstream.repository.CustomerCache;
 import com.osttra.fx.blockstream.repository.CustomerRepository;
 import com.osttra.fx.blockstream.web.rest.errors.BadRequestAlertException;
+import com.osttra.fx.blockstream.web.rest.util.ETagUtil;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
@@ -11,6 +13,7 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -19,7 +22,6 @@ import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import tech.jhipster.web.util.HeaderUtil;
-import tech.jhipster.web.util.reactive.ResponseUtil;
 
 /**
  * REST controller for managing {@link com.osttra.fx.blockstream.domain.Customer}.
@@ -37,8 +39,11 @@ public class CustomerResource {
 
     private final CustomerRepository customerRepository;
 
-    public CustomerResource(CustomerRepository customerRepository) {
+    private final CustomerCache customerCache;
+
+    public CustomerResource(CustomerRepository customerRepository, CustomerCache customerCache) {
         this.customerRepository = customerRepository;
+        this.customerCache = customerCache;
     }
 
     /**
@@ -61,6 +66,7 @@ public class CustomerResource {
                     return ResponseEntity
                         .created(new URI("/api/customers/" + result.getId()))
                         .headers(HeaderUtil.createEntityCreationAlert(applicationName, true, ENTITY_NAME, result.getId()))
+                        .headers(ETagUtil.createETagHeaders(result.getVersion()))
                         .body(result);
                 } catch (URISyntaxException e) {
                     throw new RuntimeException(e);
@@ -73,15 +79,18 @@ public class CustomerResource {
      *
      * @param id the id of the customer to save.
      * @param customer the customer to update.
+     * @param ifMatch the entity tag the customer must currently have, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated customer,
      * or with status {@code 400 (Bad Request)} if the customer is not valid,
+     * or with status {@code 412 (Precondition Failed)} if the customer does not have the expected version,
      * or with status {@code 500 (Internal Server Error)} if the customer couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/customers/{id}")
     public Mono<ResponseEntity<Customer>> updateCustomer(
         @PathVariable(value = "id", required = false) final String id,
-        @RequestBody Customer customer
+        @RequestBody Customer customer,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) throws URISyntaxException {
         log.debug("REST request to update Customer : {}, {}", id, customer);
         if (customer.getId() == null) {
@@ -91,23 +100,18 @@ public class CustomerResource {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
 
+        List<Long> expectedVersions = ETagUtil.expectedVersions(ifMatch, customer.getVersion());
         return customerRepository
-            .existsById(id)
-            .flatMap(exists -> {
-                if (!exists) {
-                    return Mono.error(new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound"));
-                }
-
-                return customerRepository
-                    .save(customer)
-                    .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)))
-                    .map(result ->
-                        ResponseEntity
-                            .ok()
-                            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, result.getId()))
-                            .body(result)
-                    );
-            });
+            .update(customer, expectedVersions)
+            .doOnNext(result -> customerCache.evict(id))
+            .switchIfEmpty(ETagUtil.updateFailed(customerRepository.existsById(id), expectedVersions, ENTITY_NAME))
+            .map(result ->
+                ResponseEntity
+                    .ok()
+                    .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, result.getId()))
+                    .headers(ETagUtil.createETagHeaders(result.getVersion()))
+                    .body(result)
+            );
     }
 
     /**
@@ -115,16 +119,19 @@ public class CustomerResource {
      *
      * @param id the id of the customer to save.
      * @param customer the customer to update.
+     * @param ifMatch the entity tag the customer must currently have, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated customer,
      * or with status {@code 400 (Bad Request)} if the customer is not valid,
      * or with status {@code 404 (Not Found)} if the customer is not found,
+     * or with status {@code 412 (Precondition Failed)} if the customer does not have the expected version,
      * or with status {@code 500 (Internal Server Error)} if the customer couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PatchMapping(value = "/customers/{id}", consumes = { "application/json", "application/merge-patch+json" })
     public Mono<ResponseEntity<Customer>> partialUpdateCustomer(
         @PathVariable(value = "id", required = false) final String id,
-        @RequestBody Customer customer
+        @RequestBody Customer customer,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) throws URISyntaxException {
         log.debug("REST request to partial update Customer partially : {}, {}", id, customer);
         if (customer.getId() == null) {
@@ -134,42 +141,18 @@ public class CustomerResource {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
 
+        List<Long> expectedVersions = ETagUtil.expectedVersions(ifMatch, customer.getVersion());
         return customerRepository
-            .existsById(id)
-            .flatMap(exists -> {
-                if (!exists) {
-                    return Mono.error(new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound"));
-                }
-
-                Mono<Customer> result = customerRepository
-                    .findById(customer.getId())
-                    .map(existingCustomer -> {
-                        if (customer.getCustomerName() != null) {
-                            existingCustomer.setCustomerName(customer.getCustomerName());
-                        }
-                        if (customer.getCustomerLegalEntity() != null) {
-                            existingCustomer.setCustomerLegalEntity(customer.getCustomerLegalEntity());
-                        }
-                        if (customer.getCustomerPassword() != null) {
-                            existingCustomer.setCustomerPassword(customer.getCustomerPassword());
-                        }
-                        if (customer.getCustomerHashCode() != null) {
-                            existingCustomer.setCustomerHashCode(customer.getCustomerHashCode());
-                        }
-
-                        return existingCustomer;
-                    })
-                    .flatMap(customerRepository::save);
-
-                return result
-                    .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)))
-                    .map(res ->
-                        ResponseEntity
-                            .ok()
-                            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, res.getId()))
-                            .body(res)
-                    );
-            });
+            .partialUpdate(id, customer, expectedVersions)
+            .doOnNext(result -> customerCache.evict(id))
+            .switchIfEmpty(ETagUtil.updateFailed(customerRepository.existsById(id), expectedVersions, ENTITY_NAME))
+            .map(res ->
+                ResponseEntity
+                    .ok()
+                    .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, res.getId()))
+                    .headers(ETagUtil.createETagHeaders(res.getVersion()))
+                    .body(res)
+            );
     }
 
     /**
@@ -197,13 +180,15 @@ public class CustomerResource {
      * {@code GET  /customers/:id} : get the "id" customer.
      *
      * @param id the id of the customer to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the customer, or with status {@code 404 (Not Found)}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)}, the {@code ETag} header and with body the customer, or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/customers/{id}")
     public Mono<ResponseEntity<Customer>> getCustomer(@PathVariable String id) {
         log.debug("REST request to get Customer : {}", id);
-        Mono<Customer> customer = customerRepository.findById(id);
-        return ResponseUtil.wrapOrNotFound(customer);
+        return customerRepository
+            .findById(id)
+            .map(result -> ResponseEntity.ok().headers(ETagUtil.createETagHeaders(result.getVersion())).body(result))
+            .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)));
     }
 
     /**
@@ -218,6 +203,7 @@ public class CustomerResource {
         log.debug("REST request to delete Customer : {}", id);
         return customerRepository
             .deleteById(id)
+            .doOnSuccess(result -> customerCache.evict(id))
             .map(result ->
                 ResponseEntity.noContent().headers(HeaderUtil.createEntityDeletionAlert(applicationName, true, ENTITY_NAME, id)).build()
             );
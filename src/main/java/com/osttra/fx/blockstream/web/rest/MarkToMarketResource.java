@@ -0,0 +1,83 @@
+package com.osttra.fx.blockstream.web.rest;
+
+import com.osttra.fx.blockstream.service.MarkToMarketService;
+import com.osttra.fx.blockstream.service.dto.MarkToMarketDTO;
+import com.osttra.fx.blockstream.service.dto.RevaluationDTO;
+import java.time.LocalDate;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * REST controller for the unrealized profit and loss of the open {@link com.osttra.fx.blockstream.domain.SmartTrade}s.
+ */
+@RestController
+@RequestMapping("/api")
+public class MarkToMarketResource {
+
+    private final Logger log = LoggerFactory.getLogger(MarkToMarketResource.class);
+
+    private final MarkToMarketService markToMarketService;
+
+    public MarkToMarketResource(MarkToMarketService markToMarketService) {
+        this.markToMarketService = markToMarketService;
+    }
+
+    /**
+     * {@code GET  /mark-to-market} : get the live profit and loss, served from memory.
+     *
+     * @param tradingParty the trading party to restrict the profit and loss to, if any.
+     * @return the profit and loss by trading party and currency pair, or status {@code 503 (Service Unavailable)} while
+     * the trades are being loaded.
+     */
+    @GetMapping("/mark-to-market")
+    public List<MarkToMarketDTO> getMarkToMarket(@RequestParam(required = false) String tradingParty) {
+        log.debug("REST request to get the MarkToMarket : {}", tradingParty);
+        if (!markToMarketService.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Trades are being loaded");
+        }
+        return markToMarketService.find(tradingParty);
+    }
+
+    /**
+     * {@code GET  /mark-to-market/revaluations/last} : get the last full revaluation.
+     *
+     * @return the revaluation, or status {@code 404 (Not Found)} if none was made since the application started.
+     */
+    @GetMapping("/mark-to-market/revaluations/last")
+    public Mono<RevaluationDTO> getLastRevaluation() {
+        log.debug("REST request to get the last Revaluation");
+        RevaluationDTO revaluation = markToMarketService.getLastRevaluation();
+        if (revaluation == null) {
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND));
+        }
+        return Mono.just(revaluation);
+    }
+
+    /**
+     * {@code POST  /mark-to-market/revaluations} : value all the open trades again, and settle the trades whose value
+     * date is before the business date.
+     *
+     * @param businessDate the business date; today if missing.
+     * @return the revaluation, or status {@code 503 (Service Unavailable)} while the trades are being loaded.
+     */
+    @PostMapping("/mark-to-market/revaluations")
+    public Mono<RevaluationDTO> revalueAll(
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate businessDate
+    ) {
+        log.debug("REST request to revalue the open trades : {}", businessDate);
+        if (!markToMarketService.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Trades are being loaded");
+        }
+        return markToMarketService.revalueAll(businessDate != null ? businessDate : LocalDate.now());
+    }
+}
@@ -0,0 +1,46 @@
+package com.osttra.fx.blockstream.web.rest;
+
+import com.osttra.fx.blockstream.service.OpenTradeService;
+import com.osttra.fx.blockstream.service.dto.MarkToMarketDTO;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * REST controller for the open {@link com.osttra.fx.blockstream.domain.SmartTrade}s.
+ */
+@RestController
+@RequestMapping("/api")
+public class OpenTradeResource {
+
+    private final Logger log = LoggerFactory.getLogger(OpenTradeResource.class);
+
+    private final OpenTradeService openTradeService;
+
+    public OpenTradeResource(OpenTradeService openTradeService) {
+        this.openTradeService = openTradeService;
+    }
+
+    /**
+     * {@code GET  /open-trades/summary} : sum the open trades and value them at the current rates, from the off-heap
+     * store.
+     *
+     * @param tradingParty the trading party to restrict the summary to, if any.
+     * @return the positions and profit and loss by trading party and currency pair, or status
+     * {@code 503 (Service Unavailable)} while the trades are being loaded.
+     */
+    @GetMapping("/open-trades/summary")
+    public List<MarkToMarketDTO> getOpenTradeSummary(@RequestParam(required = false) String tradingParty) {
+        log.debug("REST request to summarize the open trades : {}", tradingParty);
+        if (!openTradeService.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Trades are being loaded");
+        }
+        return openTradeService.summarize(tradingParty);
+    }
+}
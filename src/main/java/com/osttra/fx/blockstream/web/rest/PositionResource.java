@@ -0,0 +1,64 @@
+package com.osttra.fx.blockstream.web.rest;
+
+import com.osttra.fx.blockstream.service.PositionService;
+import com.osttra.fx.blockstream.service.dto.PositionDTO;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * REST controller for querying the net positions of the {@link com.osttra.fx.blockstream.domain.SmartTrade}s.
+ */
+@RestController
+@RequestMapping("/api")
+public class PositionResource {
+
+    private final Logger log = LoggerFactory.getLogger(PositionResource.class);
+
+    private final PositionService positionService;
+
+    public PositionResource(PositionService positionService) {
+        this.positionService = positionService;
+    }
+
+    /**
+     * {@code GET  /positions} : get the net positions, served from memory.
+     *
+     * @param tradingParty the trading party to restrict the positions to, if any.
+     * @param counterParty the counter party to restrict the positions to, if any.
+     * @return the list of positions, or status {@code 503 (Service Unavailable)} while the positions are being loaded.
+     */
+    @GetMapping("/positions")
+    public List<PositionDTO> getPositions(
+        @RequestParam(required = false) String tradingParty,
+        @RequestParam(required = false) String counterParty
+    ) {
+        log.debug("REST request to get Positions : {}, {}", tradingParty, counterParty);
+        if (!positionService.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Positions are being loaded");
+        }
+        return positionService.find(tradingParty, counterParty);
+    }
+
+    /**
+     * {@code GET  /positions/discrepancies} : rebuild the net positions from the database and compare them with the live ones.
+     *
+     * @return the list of live positions that differ from the rebuilt ones, followed by the rebuilt positions missing from the live ones;
+     * empty if they are identical.
+     */
+    @GetMapping("/positions/discrepancies")
+    public Mono<List<PositionDTO>> getPositionDiscrepancies() {
+        log.debug("REST request to verify Positions");
+        if (!positionService.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Positions are being loaded");
+        }
+        return positionService.findDiscrepancies();
+    }
+}
@@ -0,0 +1,106 @@
+package com.osttra.fx.blockstream.web.rest;
+
+import com.osttra.fx.blockstream.service.RateMatrixService;
+import com.osttra.fx.blockstream.service.UnknownCurrencyException;
+import com.osttra.fx.blockstream.service.dto.CurrencyConversionDTO;
+import com.osttra.fx.blockstream.service.dto.RateDTO;
+import com.osttra.fx.blockstream.web.rest.errors.BadRequestAlertException;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * REST controller for the exchange rates between {@link com.osttra.fx.blockstream.domain.Currencies}.
+ */
+@RestController
+@RequestMapping("/api")
+public class RateResource {
+
+    private final Logger log = LoggerFactory.getLogger(RateResource.class);
+
+    private static final String ENTITY_NAME = "rate";
+
+    private final RateMatrixService rateMatrixService;
+
+    public RateResource(RateMatrixService rateMatrixService) {
+        this.rateMatrixService = rateMatrixService;
+    }
+
+    /**
+     * {@code PUT  /rates} : Replace the rates of currency pairs.
+     *
+     * @param rates the quoted rates.
+     * @return the {@link Mono} completing with status {@code 204 (No Content)}, or with status {@code 400 (Bad Request)}
+     * if a rate has no currency, the same currency twice, a currency not in the {@code currencies} collection, or no
+     * positive rate.
+     */
+    @PutMapping("/rates")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> updateRates(@RequestBody List<RateDTO> rates) {
+        log.debug("REST request to update {} Rates", rates.size());
+        for (RateDTO rate : rates) {
+            if (rate.getBaseCurrency() == null || rate.getQuoteCurrency() == null) {
+                throw new BadRequestAlertException("Invalid currency", ENTITY_NAME, "currencynull");
+            }
+            if (rate.getBaseCurrency().equals(rate.getQuoteCurrency())) {
+                throw new BadRequestAlertException("Invalid currency", ENTITY_NAME, "currencyinvalid");
+            }
+            if (rate.getRate() == null || rate.getRate().signum() <= 0) {
+                throw new BadRequestAlertException("Invalid rate", ENTITY_NAME, "rateinvalid");
+            }
+        }
+        return rateMatrixService
+            .updateKnown(rates)
+            .onErrorMap(UnknownCurrencyException.class, e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "currencyunknown"))
+            .then();
+    }
+
+    /**
+     * {@code GET  /rates/:baseCurrency/:quoteCurrency} : get the rate of a currency pair, quoted or triangulated.
+     *
+     * @param baseCurrency the base currency code.
+     * @param quoteCurrency the quote currency code.
+     * @return the rate, or status {@code 404 (Not Found)} if there is no rate between the currencies.
+     */
+    @GetMapping("/rates/{baseCurrency}/{quoteCurrency}")
+    public Mono<RateDTO> getRate(@PathVariable String baseCurrency, @PathVariable String quoteCurrency) {
+        log.debug("REST request to get Rate : {}/{}", baseCurrency, quoteCurrency);
+        RateDTO rate = rateMatrixService.findRate(baseCurrency, quoteCurrency);
+        if (rate == null) {
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND));
+        }
+        return Mono.just(rate);
+    }
+
+    /**
+     * {@code POST  /rates/conversions} : Convert amounts between currencies, all with the same rates.
+     *
+     * @param conversions the currencies and amounts to convert.
+     * @return the conversions, in the same order, with their rate and converted amount, both missing if there is no
+     * rate between the currencies; or status {@code 400 (Bad Request)} if a conversion has no currency or no amount.
+     */
+    @PostMapping("/rates/conversions")
+    public Mono<List<CurrencyConversionDTO>> convert(@RequestBody List<CurrencyConversionDTO> conversions) {
+        log.debug("REST request to convert {} amounts", conversions.size());
+        for (CurrencyConversionDTO conversion : conversions) {
+            if (conversion.getFromCurrency() == null || conversion.getToCurrency() == null) {
+                throw new BadRequestAlertException("Invalid currency", ENTITY_NAME, "currencynull");
+            }
+            if (conversion.getAmount() == null) {
+                throw new BadRequestAlertException("Invalid amount", ENTITY_NAME, "amountnull");
+            }
+        }
+        return Mono.just(rateMatrixService.convert(conversions));
+    }
+}
@@ -2,7 +2,21 @@ package com.osttra.fx.blockstream.web.rest;
 
 import com.osttra.fx.blockstream.domain.SmartTrade;
 import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import com.osttra.fx.blockstream.service.InvalidSmartTradeException;
+import com.osttra.fx.blockstream.service.PositionService;
+import com.osttra.fx.blockstream.service.RawJsonStreamService;
+import com.osttra.fx.blockstream.service.SmartTradeEventService;
+import com.osttra.fx.blockstream.service.SmartTradeEventService.OverflowStrategy;
+import com.osttra.fx.blockstream.service.SmartTradeIdempotencyService;
+import com.osttra.fx.blockstream.service.SmartTradeIngestionService;
+import com.osttra.fx.blockstream.service.SmartTradeQueryService;
+import com.osttra.fx.blockstream.service.WriteAheadLogService;
+import com.osttra.fx.blockstream.service.criteria.SmartTradeCriteria;
+import com.osttra.fx.blockstream.service.dto.SmartTradeEventDTO;
+import com.osttra.fx.blockstream.service.dto.SmartTradeIngestionResultDTO;
+import com.osttra.fx.blockstream.service.dto.SmartTradePageDTO;
 import com.osttra.fx.blockstream.web.rest.errors.BadRequestAlertException;
+import com.osttra.fx.blockstream.web.rest.util.ETagUtil;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
@@ -11,15 +25,20 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import tech.jhipster.web.util.HeaderUtil;
-import tech.jhipster.web.util.reactive.ResponseUtil;
 
 /**
  * REST controller for managing {@link com.osttra.fx.blockstream.domain.SmartTrade}.
@@ -32,20 +51,58 @@ public class SmartTradeResource {
 
     private static final String ENTITY_NAME = "smartTrade";
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final String DEFAULT_PAGE_SIZE = "100";
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
     private final SmartTradeRepository smartTradeRepository;
 
-    public SmartTradeResource(SmartTradeRepository smartTradeRepository) {
+    private final SmartTradeIngestionService smartTradeIngestionService;
+
+    private final SmartTradeQueryService smartTradeQueryService;
+
+    private final PositionService positionService;
+
+    private final SmartTradeEventService smartTradeEventService;
+
+    private final SmartTradeIdempotencyService smartTradeIdempotencyService;
+
+    private final RawJsonStreamService rawJsonStreamService;
+
+    private final WriteAheadLogService writeAheadLogService;
+
+    public SmartTradeResource(
+        SmartTradeRepository smartTradeRepository,
+        SmartTradeIngestionService smartTradeIngestionService,
+        SmartTradeQueryService smartTradeQueryService,
+        PositionService positionService,
+        SmartTradeEventService smartTradeEventService,
+        SmartTradeIdempotencyService smartTradeIdempotencyService,
+        RawJsonStreamService rawJsonStreamService,
+        WriteAheadLogService writeAheadLogService
+    ) {
         this.smartTradeRepository = smartTradeRepository;
+        this.smartTradeIngestionService = smartTradeIngestionService;
+        this.smartTradeQueryService = smartTradeQueryService;
+        this.positionService = positionService;
+        this.smartTradeEventService = smartTradeEventService;
+        this.smartTradeIdempotencyService = smartTradeIdempotencyService;
+        this.rawJsonStreamService = rawJsonStreamService;
+        this.writeAheadLogService = writeAheadLogService;
     }
 
     /**
-     * {@code POST  /smart-trades} : Create a new smartTrade.
+     * {@code POST  /smart-trades} : Create a new smartTrade, unless one with the same transactionId already exists.
      *
      * @param smartTrade the smartTrade to create.
-     * @return the {@link ResponseEntity} with status {@code 201 (Created)} and with body the new smartTrade, or with status {@code 400 (Bad Request)} if the smartTrade has already an ID.
+     * @return the {@link ResponseEntity} with status {@code 201 (Created)} and with body the new smartTrade,
+     * or with status {@code 200 (OK)} and with body the existing smartTrade if its transactionId is already used,
+     * or with status {@code 400 (Bad Request)} if the smartTrade has already an ID.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PostMapping("/smart-trades")
@@ -54,13 +111,25 @@ public class SmartTradeResource {
         if (smartTrade.getId() != null) {
             throw new BadRequestAlertException("A new smartTrade cannot already have an ID", ENTITY_NAME, "idexists");
         }
-        return smartTradeRepository
-            .save(smartTrade)
-            .map(result -> {
+        return smartTradeIdempotencyService
+            .create(smartTrade)
+            .onErrorMap(
+                InvalidSmartTradeException.class,
+                e -> new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "smarttradeinvalid")
+            )
+            .map(outcome -> {
+                SmartTrade result = outcome.getSmartTrade();
+                if (!outcome.isCreated()) {
+                    log.debug("SmartTrade with transactionId {} already exists : {}", result.getTransactionId(), result.getId());
+                    return ResponseEntity.ok().headers(ETagUtil.createETagHeaders(result.getVersion())).body(result);
+                }
+                positionService.apply(result);
+                smartTradeEventService.created(result);
                 try {
                     return ResponseEntity
                         .created(new URI("/api/smart-trades/" + result.getId()))
                         .headers(HeaderUtil.createEntityCreationAlert(applicationName, true, ENTITY_NAME, result.getId()))
+                        .headers(ETagUtil.createETagHeaders(result.getVersion()))
                         .body(result);
                 } catch (URISyntaxException e) {
                     throw new RuntimeException(e);
@@ -68,20 +137,36 @@ public class SmartTradeResource {
             });
     }
 
+    /**
+     * {@code POST  /smart-trades/bulk} : Create a stream of new smartTrades in micro-batches.
+     *
+     * @param smartTrades the NDJSON stream of smartTrades to create.
+     * @return the {@link Flux} of per-item results, in input order.
+     */
+    @PostMapping(value = "/smart-trades/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<SmartTradeIngestionResultDTO> createSmartTradesInBulk(@RequestBody Flux<SmartTrade> smartTrades) {
+        log.debug("REST request to save SmartTrades in bulk");
+        return smartTradeIngestionService.ingest(smartTrades);
+    }
+
     /**
      * {@code PUT  /smart-trades/:id} : Updates an existing smartTrade.
      *
      * @param id the id of the smartTrade to save.
      * @param smartTrade the smartTrade to update.
+     * @param ifMatch the entity tag the smartTrade must currently have, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated smartTrade,
-     * or with status {@code 400 (Bad Request)} if the smartTrade is not valid,
+     * or with status {@code 400 (Bad Request)} if the smartTrade is not valid or its transactionId is used by another one,
+     * or with status {@code 409 (Conflict)} if the smartTrade is not written to the database yet,
+     * or with status {@code 412 (Precondition Failed)} if the smartTrade does not have the expected version,
      * or with status {@code 500 (Internal Server Error)} if the smartTrade couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/smart-trades/{id}")
     public Mono<ResponseEntity<SmartTrade>> updateSmartTrade(
         @PathVariable(value = "id", required = false) final String id,
-        @RequestBody SmartTrade smartTrade
+        @RequestBody SmartTrade smartTrade,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) throws URISyntaxException {
         log.debug("REST request to update SmartTrade : {}, {}", id, smartTrade);
         if (smartTrade.getId() == null) {
@@ -91,23 +176,25 @@ public class SmartTradeResource {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
 
-        return smartTradeRepository
-            .existsById(id)
-            .flatMap(exists -> {
-                if (!exists) {
-                    return Mono.error(new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound"));
-                }
+        checkWritten(id);
 
-                return smartTradeRepository
-                    .save(smartTrade)
-                    .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)))
-                    .map(result ->
-                        ResponseEntity
-                            .ok()
-                            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, result.getId()))
-                            .body(result)
-                    );
-            });
+        List<Long> expectedVersions = ETagUtil.expectedVersions(ifMatch, smartTrade.getVersion());
+        return smartTradeRepository
+            .update(smartTrade, expectedVersions)
+            .onErrorMap(
+                DuplicateKeyException.class,
+                e -> new BadRequestAlertException("TransactionId already used", ENTITY_NAME, "transactionidexists")
+            )
+            .switchIfEmpty(ETagUtil.updateFailed(smartTradeRepository.existsById(id), expectedVersions, ENTITY_NAME))
+            .doOnNext(positionService::apply)
+            .doOnNext(smartTradeEventService::updated)
+            .map(result ->
+                ResponseEntity
+                    .ok()
+                    .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, result.getId()))
+                    .headers(ETagUtil.createETagHeaders(result.getVersion()))
+                    .body(result)
+            );
     }
 
     /**
@@ -115,16 +202,20 @@ public class SmartTradeResource {
      *
      * @param id the id of the smartTrade to save.
      * @param smartTrade the smartTrade to update.
+     * @param ifMatch the entity tag the smartTrade must currently have, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated smartTrade,
-     * or with status {@code 400 (Bad Request)} if the smartTrade is not valid,
+     * or with status {@code 400 (Bad Request)} if the smartTrade is not valid or its transactionId is used by another one,
      * or with status {@code 404 (Not Found)} if the smartTrade is not found,
+     * or with status {@code 409 (Conflict)} if the smartTrade is not written to the database yet,
+     * or with status {@code 412 (Precondition Failed)} if the smartTrade does not have the expected version,
      * or with status {@code 500 (Internal Server Error)} if the smartTrade couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PatchMapping(value = "/smart-trades/{id}", consumes = { "application/json", "application/merge-patch+json" })
     public Mono<ResponseEntity<SmartTrade>> partialUpdateSmartTrade(
         @PathVariable(value = "id", required = false) final String id,
-        @RequestBody SmartTrade smartTrade
+        @RequestBody SmartTrade smartTrade,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) throws URISyntaxException {
         log.debug("REST request to partial update SmartTrade partially : {}, {}", id, smartTrade);
         if (smartTrade.getId() == null) {
@@ -134,110 +225,158 @@ public class SmartTradeResource {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
 
-        return smartTradeRepository
-            .existsById(id)
-            .flatMap(exists -> {
-                if (!exists) {
-                    return Mono.error(new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound"));
-                }
+        checkWritten(id);
 
-                Mono<SmartTrade> result = smartTradeRepository
-                    .findById(smartTrade.getId())
-                    .map(existingSmartTrade -> {
-                        if (smartTrade.getCounterParty() != null) {
-                            existingSmartTrade.setCounterParty(smartTrade.getCounterParty());
-                        }
-                        if (smartTrade.getTradingParty() != null) {
-                            existingSmartTrade.setTradingParty(smartTrade.getTradingParty());
-                        }
-                        if (smartTrade.getCurrencyBuy() != null) {
-                            existingSmartTrade.setCurrencyBuy(smartTrade.getCurrencyBuy());
-                        }
-                        if (smartTrade.getCurrencySell() != null) {
-                            existingSmartTrade.setCurrencySell(smartTrade.getCurrencySell());
-                        }
-                        if (smartTrade.getRate() != null) {
-                            existingSmartTrade.setRate(smartTrade.getRate());
-                        }
-                        if (smartTrade.getAmount() != null) {
-                            existingSmartTrade.setAmount(smartTrade.getAmount());
-                        }
-                        if (smartTrade.getContraAmount() != null) {
-                            existingSmartTrade.setContraAmount(smartTrade.getContraAmount());
-                        }
-                        if (smartTrade.getValueDate() != null) {
-                            existingSmartTrade.setValueDate(smartTrade.getValueDate());
-                        }
-                        if (smartTrade.getTransactionId() != null) {
-                            existingSmartTrade.setTransactionId(smartTrade.getTransactionId());
-                        }
-                        if (smartTrade.getDirection() != null) {
-                            existingSmartTrade.setDirection(smartTrade.getDirection());
-                        }
-
-                        return existingSmartTrade;
-                    })
-                    .flatMap(smartTradeRepository::save);
-
-                return result
-                    .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)))
-                    .map(res ->
-                        ResponseEntity
-                            .ok()
-                            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, res.getId()))
-                            .body(res)
-                    );
-            });
+        List<Long> expectedVersions = ETagUtil.expectedVersions(ifMatch, smartTrade.getVersion());
+        return smartTradeRepository
+            .partialUpdate(id, smartTrade, expectedVersions)
+            .onErrorMap(
+                DuplicateKeyException.class,
+                e -> new BadRequestAlertException("TransactionId already used", ENTITY_NAME, "transactionidexists")
+            )
+            .switchIfEmpty(ETagUtil.updateFailed(smartTradeRepository.existsById(id), expectedVersions, ENTITY_NAME))
+            .doOnNext(positionService::apply)
+            .doOnNext(smartTradeEventService::updated)
+            .map(res ->
+                ResponseEntity
+                    .ok()
+                    .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, res.getId()))
+                    .headers(ETagUtil.createETagHeaders(res.getVersion()))
+                    .body(res)
+            );
     }
 
     /**
-     * {@code GET  /smart-trades} : get all the smartTrades.
+     * {@code GET  /smart-trades} : get a page of the smartTrades.
+     * <p>
+     * Pages are ordered by value date then id. When more smartTrades follow, the response carries the
+     * continuation token in the {@code X-Next-Cursor} header and a {@code Link} header to the next page.
      *
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of smartTrades in body.
+     * @param request a {@link ServerHttpRequest} request.
+     * @param cursor the continuation token of the previous page, absent for the first page.
+     * @param size the maximum number of smartTrades to return, capped at {@value #MAX_PAGE_SIZE}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of smartTrades in body,
+     * or with status {@code 400 (Bad Request)} if the cursor is invalid.
      */
     @GetMapping("/smart-trades")
-    public Mono<List<SmartTrade>> getAllSmartTrades() {
-        log.debug("REST request to get all SmartTrades");
-        return smartTradeRepository.findAll().collectList();
+    public Mono<ResponseEntity<List<SmartTrade>>> getAllSmartTrades(
+        ServerHttpRequest request,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false, defaultValue = DEFAULT_PAGE_SIZE) int size
+    ) {
+        log.debug("REST request to get a page of SmartTrades");
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Mono<SmartTradePageDTO> page;
+        try {
+            page = smartTradeQueryService.findPage(cursor, pageSize);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException("Invalid cursor", ENTITY_NAME, "cursorinvalid");
+        }
+        return page.map(result -> {
+            HttpHeaders headers = new HttpHeaders();
+            if (result.hasNext()) {
+                String next = UriComponentsBuilder
+                    .fromHttpRequest(request)
+                    .replaceQueryParam("cursor", result.getNextCursor())
+                    .replaceQueryParam("size", pageSize)
+                    .toUriString();
+                headers.add(NEXT_CURSOR_HEADER, result.getNextCursor());
+                headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+            }
+            return ResponseEntity.ok().headers(headers).body(result.getContent());
+        });
     }
 
     /**
      * {@code GET  /smart-trades} : get all the smartTrades as a stream.
-     * @return the {@link Flux} of smartTrades.
+     * <p>
+     * The smartTrades are written from the stored documents, without reading them into entities.
+     *
+     * @param response the response, whose buffers hold the smartTrades.
+     * @return the {@link Flux} of smartTrades, one JSON line per buffer.
      */
     @GetMapping(value = "/smart-trades", produces = MediaType.APPLICATION_NDJSON_VALUE)
-    public Flux<SmartTrade> getAllSmartTradesAsStream() {
+    public Flux<DataBuffer> getAllSmartTradesAsStream(ServerHttpResponse response) {
         log.debug("REST request to get all SmartTrades as a stream");
-        return smartTradeRepository.findAll();
+        return rawJsonStreamService.findAll(SmartTrade.class, response.bufferFactory());
+    }
+
+    /**
+     * {@code GET  /smart-trades/query} : get the smartTrades matching the given criteria as a stream.
+     *
+     * @param criteria the criteria which the requested smartTrades should match.
+     * @return the {@link Flux} of matching smartTrades, ordered by value date then id.
+     */
+    @GetMapping(value = "/smart-trades/query", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<SmartTrade> getSmartTradesByCriteria(SmartTradeCriteria criteria) {
+        log.debug("REST request to get SmartTrades by criteria : {}", criteria);
+        return smartTradeQueryService.findByCriteria(criteria);
+    }
+
+    /**
+     * {@code GET  /smart-trades/events} : follow the changes made to the smartTrades, as Server-Sent Events or NDJSON.
+     *
+     * @param overflow what to drop when the client does not keep up: the new events ({@code DROP})
+     * or the oldest buffered ones ({@code LATEST}).
+     * @return the {@link Flux} of events following the subscription.
+     */
+    @GetMapping(value = "/smart-trades/events", produces = { MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public Flux<SmartTradeEventDTO> getSmartTradeEvents(
+        @RequestParam(required = false, defaultValue = "LATEST") OverflowStrategy overflow
+    ) {
+        log.debug("REST request to follow SmartTrade events : {}", overflow);
+        return smartTradeEventService.subscribe(overflow);
     }
 
     /**
      * {@code GET  /smart-trades/:id} : get the "id" smartTrade.
      *
      * @param id the id of the smartTrade to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the smartTrade, or with status {@code 404 (Not Found)}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)}, the {@code ETag} header and with body the smartTrade, or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/smart-trades/{id}")
     public Mono<ResponseEntity<SmartTrade>> getSmartTrade(@PathVariable String id) {
         log.debug("REST request to get SmartTrade : {}", id);
-        Mono<SmartTrade> smartTrade = smartTradeRepository.findById(id);
-        return ResponseUtil.wrapOrNotFound(smartTrade);
+        return smartTradeRepository
+            .findById(id)
+            .map(result -> ResponseEntity.ok().headers(ETagUtil.createETagHeaders(result.getVersion())).body(result))
+            .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)));
     }
 
     /**
      * {@code DELETE  /smart-trades/:id} : delete the "id" smartTrade.
      *
      * @param id the id of the smartTrade to delete.
-     * @return the {@link ResponseEntity} with status {@code 204 (NO_CONTENT)}.
+     * @return the {@link ResponseEntity} with status {@code 204 (NO_CONTENT)},
+     * or with status {@code 409 (Conflict)} if the smartTrade is not written to the database yet.
      */
     @DeleteMapping("/smart-trades/{id}")
     @ResponseStatus(code = HttpStatus.NO_CONTENT)
     public Mono<ResponseEntity<Void>> deleteSmartTrade(@PathVariable String id) {
         log.debug("REST request to delete SmartTrade : {}", id);
+        checkWritten(id);
         return smartTradeRepository
-            .deleteById(id)
-            .map(result ->
-                ResponseEntity.noContent().headers(HeaderUtil.createEntityDeletionAlert(applicationName, true, ENTITY_NAME, id)).build()
-            );
+            .removeById(id)
+            .map(deletedCount -> {
+                // Deleting an unknown id, or one deleted meanwhile, changes nothing to publish.
+                if (deletedCount > 0) {
+                    positionService.remove(id);
+                    smartTradeEventService.deleted(id);
+                }
+                return ResponseEntity
+                    .noContent()
+                    .headers(HeaderUtil.createEntityDeletionAlert(applicationName, true, ENTITY_NAME, id))
+                    .build();
+            });
+    }
+
+    /**
+     * Fail if the smartTrade is only in the write-ahead log, where it cannot be changed: the write to the database would
+     * undo the change.
+     */
+    private void checkWritten(String id) {
+        if (writeAheadLogService.isPending(id)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "SmartTrade is not written to the database yet, retry later");
+        }
     }
 }
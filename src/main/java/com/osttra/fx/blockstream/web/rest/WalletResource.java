@@ -2,24 +2,37 @@ package com.osttra.fx.blockstream.web.rest;
 
 import com.osttra.fx.blockstream.domain.Wallet;
 import com.osttra.fx.blockstream.repository.WalletRepository;
+import com.osttra.fx.blockstream.service.HotWalletException;
+import com.osttra.fx.blockstream.service.RawJsonStreamService;
+import com.osttra.fx.blockstream.service.WalletBalanceService;
+import com.osttra.fx.blockstream.service.WalletLedgerService;
+import com.osttra.fx.blockstream.service.dto.WalletBalanceDTO;
+import com.osttra.fx.blockstream.service.dto.WalletLedgerBalanceDTO;
+import com.osttra.fx.blockstream.service.dto.WalletMovementDTO;
 import com.osttra.fx.blockstream.web.rest.errors.BadRequestAlertException;
+import com.osttra.fx.blockstream.web.rest.util.ETagUtil;
+import java.math.BigDecimal;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import tech.jhipster.web.util.HeaderUtil;
-import tech.jhipster.web.util.reactive.ResponseUtil;
 
 /**
  * REST controller for managing {@link com.osttra.fx.blockstream.domain.Wallet}.
@@ -32,13 +45,29 @@ public class WalletResource {
 
     private static final String ENTITY_NAME = "wallet";
 
+    private static final String BATCH_ID_HEADER = "X-Batch-Id";
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
     private final WalletRepository walletRepository;
 
-    public WalletResource(WalletRepository walletRepository) {
+    private final RawJsonStreamService rawJsonStreamService;
+
+    private final WalletBalanceService walletBalanceService;
+
+    private final WalletLedgerService walletLedgerService;
+
+    public WalletResource(
+        WalletRepository walletRepository,
+        RawJsonStreamService rawJsonStreamService,
+        WalletBalanceService walletBalanceService,
+        WalletLedgerService walletLedgerService
+    ) {
         this.walletRepository = walletRepository;
+        this.rawJsonStreamService = rawJsonStreamService;
+        this.walletBalanceService = walletBalanceService;
+        this.walletLedgerService = walletLedgerService;
     }
 
     /**
@@ -56,11 +85,13 @@ public class WalletResource {
         }
         return walletRepository
             .save(wallet)
+            .flatMap(walletLedgerService::recordOpeningBalance)
             .map(result -> {
                 try {
                     return ResponseEntity
                         .created(new URI("/api/wallets/" + result.getId()))
                         .headers(HeaderUtil.createEntityCreationAlert(applicationName, true, ENTITY_NAME, result.getId()))
+                        .headers(ETagUtil.createETagHeaders(result.getVersion()))
                         .body(result);
                 } catch (URISyntaxException e) {
                     throw new RuntimeException(e);
@@ -73,15 +104,19 @@ public class WalletResource {
      *
      * @param id the id of the wallet to save.
      * @param wallet the wallet to update.
+     * @param ifMatch the entity tag the wallet must currently have, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated wallet,
      * or with status {@code 400 (Bad Request)} if the wallet is not valid,
+     * or with status {@code 409 (Conflict)} if the wallet is hot,
+     * or with status {@code 412 (Precondition Failed)} if the wallet does not have the expected version,
      * or with status {@code 500 (Internal Server Error)} if the wallet couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/wallets/{id}")
     public Mono<ResponseEntity<Wallet>> updateWallet(
         @PathVariable(value = "id", required = false) final String id,
-        @RequestBody Wallet wallet
+        @RequestBody Wallet wallet,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) throws URISyntaxException {
         log.debug("REST request to update Wallet : {}, {}", id, wallet);
         if (wallet.getId() == null) {
@@ -90,24 +125,20 @@ public class WalletResource {
         if (!Objects.equals(id, wallet.getId())) {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
+        checkNotHot(id);
 
+        List<Long> expectedVersions = ETagUtil.expectedVersions(ifMatch, wallet.getVersion());
         return walletRepository
-            .existsById(id)
-            .flatMap(exists -> {
-                if (!exists) {
-                    return Mono.error(new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound"));
-                }
-
-                return walletRepository
-                    .save(wallet)
-                    .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)))
-                    .map(result ->
-                        ResponseEntity
-                            .ok()
-                            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, result.getId()))
-                            .body(result)
-                    );
-            });
+            .update(wallet, expectedVersions)
+            .switchIfEmpty(ETagUtil.updateFailed(walletRepository.existsById(id), expectedVersions, ENTITY_NAME))
+            .flatMap(walletLedgerService::recordBalance)
+            .map(result ->
+                ResponseEntity
+                    .ok()
+                    .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, result.getId()))
+                    .headers(ETagUtil.createETagHeaders(result.getVersion()))
+                    .body(result)
+            );
     }
 
     /**
@@ -115,16 +146,20 @@ public class WalletResource {
      *
      * @param id the id of the wallet to save.
      * @param wallet the wallet to update.
+     * @param ifMatch the entity tag the wallet must currently have, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated wallet,
      * or with status {@code 400 (Bad Request)} if the wallet is not valid,
      * or with status {@code 404 (Not Found)} if the wallet is not found,
+     * or with status {@code 409 (Conflict)} if the amount of a hot wallet is changed,
+     * or with status {@code 412 (Precondition Failed)} if the wallet does not have the expected version,
      * or with status {@code 500 (Internal Server Error)} if the wallet couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PatchMapping(value = "/wallets/{id}", consumes = { "application/json", "application/merge-patch+json" })
     public Mono<ResponseEntity<Wallet>> partialUpdateWallet(
         @PathVariable(value = "id", required = false) final String id,
-        @RequestBody Wallet wallet
+        @RequestBody Wallet wallet,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) throws URISyntaxException {
         log.debug("REST request to partial update Wallet partially : {}, {}", id, wallet);
         if (wallet.getId() == null) {
@@ -133,37 +168,116 @@ public class WalletResource {
         if (!Objects.equals(id, wallet.getId())) {
             throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
         }
+        if (wallet.getAmount() != null) {
+            checkNotHot(id);
+        }
 
+        List<Long> expectedVersions = ETagUtil.expectedVersions(ifMatch, wallet.getVersion());
         return walletRepository
-            .existsById(id)
-            .flatMap(exists -> {
-                if (!exists) {
-                    return Mono.error(new BadRequestAlertException("Entity not found", ENTITY_NAME, "idnotfound"));
-                }
+            .partialUpdate(id, wallet, expectedVersions)
+            .switchIfEmpty(ETagUtil.updateFailed(walletRepository.existsById(id), expectedVersions, ENTITY_NAME))
+            .flatMap(result -> wallet.getAmount() != null ? walletLedgerService.recordBalance(result) : Mono.just(result))
+            .map(res ->
+                ResponseEntity
+                    .ok()
+                    .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, res.getId()))
+                    .headers(ETagUtil.createETagHeaders(res.getVersion()))
+                    .body(res)
+            );
+    }
 
-                Mono<Wallet> result = walletRepository
-                    .findById(wallet.getId())
-                    .map(existingWallet -> {
-                        if (wallet.getCurrencyCode() != null) {
-                            existingWallet.setCurrencyCode(wallet.getCurrencyCode());
-                        }
-                        if (wallet.getAmount() != null) {
-                            existingWallet.setAmount(wallet.getAmount());
-                        }
-
-                        return existingWallet;
-                    })
-                    .flatMap(walletRepository::save);
-
-                return result
-                    .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)))
-                    .map(res ->
-                        ResponseEntity
-                            .ok()
-                            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, res.getId()))
-                            .body(res)
-                    );
-            });
+    /**
+     * {@code POST  /wallets/:id/credit} : Add an amount to the balance of the "id" wallet.
+     *
+     * @param id the id of the wallet to credit.
+     * @param movement the movement holding the positive amount to add.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the new balance,
+     * or with status {@code 400 (Bad Request)} if the amount is not positive,
+     * or with status {@code 404 (Not Found)} if the wallet is not found.
+     */
+    @PostMapping("/wallets/{id}/credit")
+    public Mono<ResponseEntity<WalletBalanceDTO>> creditWallet(@PathVariable String id, @RequestBody WalletMovementDTO movement) {
+        log.debug("REST request to credit Wallet : {}, {}", id, movement);
+        return balanceResponse(walletBalanceService.credit(id, validAmount(id, movement)));
+    }
+
+    /**
+     * {@code POST  /wallets/:id/debit} : Take an amount out of the balance of the "id" wallet.
+     *
+     * @param id the id of the wallet to debit.
+     * @param movement the movement holding the positive amount to take.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the new balance,
+     * or with status {@code 400 (Bad Request)} if the amount is not positive,
+     * or with status {@code 404 (Not Found)} if the wallet is not found,
+     * or with status {@code 409 (Conflict)} if the balance is smaller than the amount.
+     */
+    @PostMapping("/wallets/{id}/debit")
+    public Mono<ResponseEntity<WalletBalanceDTO>> debitWallet(@PathVariable String id, @RequestBody WalletMovementDTO movement) {
+        log.debug("REST request to debit Wallet : {}, {}", id, movement);
+        return balanceResponse(walletBalanceService.debit(id, validAmount(id, movement)));
+    }
+
+    /**
+     * {@code POST  /wallets/movements} : Apply a batch of movements to the wallets, in a single write.
+     * <p>
+     * The movements of each wallet are netted and applied together. Resending a batch with the same id does not apply
+     * it again to the wallets it was applied to.
+     *
+     * @param movements the movements, credits being positive and debits negative.
+     * @param batchId the id of the batch; a new one is generated if absent, and returned in the {@code X-Batch-Id} header.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the balance and status of each wallet,
+     * or with status {@code 400 (Bad Request)} if a movement has no wallet id or no amount,
+     * or with status {@code 409 (Conflict)} if a movement is for a hot wallet.
+     */
+    @PostMapping("/wallets/movements")
+    public Mono<ResponseEntity<List<WalletBalanceDTO>>> applyWalletMovements(
+        @RequestBody List<WalletMovementDTO> movements,
+        @RequestParam(required = false) String batchId
+    ) {
+        log.debug("REST request to apply {} Wallet movements : {}", movements.size(), batchId);
+        for (WalletMovementDTO movement : movements) {
+            if (movement.getWalletId() == null || movement.getAmount() == null) {
+                throw new BadRequestAlertException("Invalid movement", ENTITY_NAME, "movementinvalid");
+            }
+        }
+        String id = batchId != null ? batchId : UUID.randomUUID().toString();
+        return walletBalanceService
+            .applyMovements(movements, id)
+            .collectList()
+            .map(balances -> ResponseEntity.ok().header(BATCH_ID_HEADER, id).body(balances))
+            .onErrorMap(HotWalletException.class, e -> new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()));
+    }
+
+    /**
+     * The balance of a hot wallet is only changed by its credits and debits, as it is kept in memory.
+     */
+    private void checkNotHot(String id) {
+        if (walletBalanceService.isHot(id)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, new HotWalletException(id).getMessage());
+        }
+    }
+
+    private static BigDecimal validAmount(String id, WalletMovementDTO movement) {
+        if (movement.getWalletId() != null && !Objects.equals(id, movement.getWalletId())) {
+            throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
+        }
+        if (movement.getAmount() == null || movement.getAmount().signum() <= 0) {
+            throw new BadRequestAlertException("Invalid amount", ENTITY_NAME, "amountinvalid");
+        }
+        return movement.getAmount();
+    }
+
+    private static Mono<ResponseEntity<WalletBalanceDTO>> balanceResponse(Mono<WalletBalanceDTO> result) {
+        return result.map(balance -> {
+            switch (balance.getStatus()) {
+                case APPLIED:
+                    return ResponseEntity.ok().headers(ETagUtil.createETagHeaders(balance.getVersion())).body(balance);
+                case INSUFFICIENT_FUNDS:
+                    throw new ResponseStatusException(HttpStatus.CONFLICT, "Insufficient funds");
+                default:
+                    throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+            }
+        });
     }
 
     /**
@@ -180,25 +294,47 @@ public class WalletResource {
 
     /**
      * {@code GET  /wallets} : get all the wallets as a stream.
-     * @return the {@link Flux} of wallets.
+     * <p>
+     * The wallets are written from the stored documents, without reading them into entities.
+     *
+     * @param response the response, whose buffers hold the wallets.
+     * @return the {@link Flux} of wallets, one JSON line per buffer.
      */
     @GetMapping(value = "/wallets", produces = MediaType.APPLICATION_NDJSON_VALUE)
-    public Flux<Wallet> getAllWalletsAsStream() {
+    public Flux<DataBuffer> getAllWalletsAsStream(ServerHttpResponse response) {
         log.debug("REST request to get all Wallets as a stream");
-        return walletRepository.findAll();
+        return rawJsonStreamService.findAll(Wallet.class, response.bufferFactory());
     }
 
     /**
      * {@code GET  /wallets/:id} : get the "id" wallet.
      *
      * @param id the id of the wallet to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the wallet, or with status {@code 404 (Not Found)}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)}, the {@code ETag} header and with body the wallet, or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/wallets/{id}")
     public Mono<ResponseEntity<Wallet>> getWallet(@PathVariable String id) {
         log.debug("REST request to get Wallet : {}", id);
-        Mono<Wallet> wallet = walletRepository.findOneWithEagerRelationships(id);
-        return ResponseUtil.wrapOrNotFound(wallet);
+        return walletRepository
+            .findOneWithEagerRelationships(id)
+            .map(result -> ResponseEntity.ok().headers(ETagUtil.createETagHeaders(result.getVersion())).body(result))
+            .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)));
+    }
+
+    /**
+     * {@code GET  /wallets/:id/balance} : get the balance of the "id" wallet at a point in time, from the wallet ledger.
+     *
+     * @param id the id of the wallet.
+     * @param at the point in time; now if absent.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the balance, or with status
+     * {@code 404 (Not Found)} if the ledger has nothing for the wallet before then.
+     */
+    @GetMapping("/wallets/{id}/balance")
+    public Mono<WalletLedgerBalanceDTO> getWalletBalance(@PathVariable String id, @RequestParam(required = false) Instant at) {
+        log.debug("REST request to get the balance of Wallet : {} at {}", id, at);
+        return walletLedgerService
+            .findBalanceAt(id, at != null ? at : Instant.now())
+            .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)));
     }
 
     /**
@@ -0,0 +1,64 @@
+package com.osttra.fx.blockstream.web.rest;
+
+import com.osttra.fx.blockstream.service.HotWalletException;
+import com.osttra.fx.blockstream.service.WalletTransferService;
+import com.osttra.fx.blockstream.service.dto.WalletTransferDTO;
+import com.osttra.fx.blockstream.web.rest.errors.BadRequestAlertException;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * REST controller transferring funds between {@link com.osttra.fx.blockstream.domain.Wallet}s.
+ */
+@RestController
+@RequestMapping("/api")
+public class WalletTransferResource {
+
+    private final Logger log = LoggerFactory.getLogger(WalletTransferResource.class);
+
+    private static final String ENTITY_NAME = "walletTransfer";
+
+    private final WalletTransferService walletTransferService;
+
+    public WalletTransferResource(WalletTransferService walletTransferService) {
+        this.walletTransferService = walletTransferService;
+    }
+
+    /**
+     * {@code POST  /wallet-transfers} : Transfer funds between wallets.
+     * <p>
+     * Each transfer is applied entirely or not at all; the status of each transfer tells its outcome.
+     *
+     * @param transfers the transfers.
+     * @return the transfers, in the same order, with their id and status, or with status {@code 400 (Bad Request)} if
+     * a transfer has no wallet id, has the same source and target wallet, or has no positive amount, or with status
+     * {@code 409 (Conflict)} if a transfer is from or to a hot wallet.
+     */
+    @PostMapping("/wallet-transfers")
+    public Mono<List<WalletTransferDTO>> transfer(@RequestBody List<WalletTransferDTO> transfers) {
+        log.debug("REST request to apply {} Wallet transfers", transfers.size());
+        for (WalletTransferDTO transfer : transfers) {
+            if (transfer.getFromWalletId() == null || transfer.getToWalletId() == null) {
+                throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idnull");
+            }
+            if (transfer.getFromWalletId().equals(transfer.getToWalletId())) {
+                throw new BadRequestAlertException("Invalid ID", ENTITY_NAME, "idinvalid");
+            }
+            if (transfer.getAmount() == null || transfer.getAmount().signum() <= 0) {
+                throw new BadRequestAlertException("Invalid amount", ENTITY_NAME, "amountinvalid");
+            }
+        }
+        return walletTransferService
+            .transfer(transfers)
+            .collectList()
+            .onErrorMap(HotWalletException.class, e -> new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()));
+    }
+}
@@ -0,0 +1,104 @@
+package com.osttra.fx.blockstream.web.rest.util;
+
+import com.osttra.fx.blockstream.web.rest.errors.BadRequestAlertException;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Utility class for entity tags derived from the entity version, and for {@code If-Match} conditional updates.
+ */
+public final class ETagUtil {
+
+    private static final String WEAK_PREFIX = "W/";
+
+    private ETagUtil() {}
+
+    /**
+     * Create the headers carrying the entity tag of the given entity version.
+     *
+     * @param version the entity version, may be {@code null} for documents written before versioning.
+     * @return the {@code ETag} header, or no header if the entity has no version.
+     */
+    public static HttpHeaders createETagHeaders(Long version) {
+        HttpHeaders headers = new HttpHeaders();
+        if (version != null) {
+            headers.setETag("\"" + version + "\"");
+        }
+        return headers;
+    }
+
+    /**
+     * Resolve the versions an update is conditional on.
+     * <p>
+     * {@code If-Match} is either {@code *} or a comma-separated list of entity tags, compared with the strong
+     * comparison of RFC 7232: weak tags, and tags that are not a version of this API, never match.
+     *
+     * @param ifMatch the {@code If-Match} request header, which takes precedence when present.
+     * @param bodyVersion the version sent in the request body.
+     * @return the versions the entity may have, or {@code null} for an unconditional update.
+     * @throws ResponseStatusException with status {@code 412 (Precondition Failed)} if no entity tag of the header can match.
+     */
+    public static List<Long> expectedVersions(String ifMatch, Long bodyVersion) {
+        if (ifMatch == null) {
+            return bodyVersion != null ? List.of(bodyVersion) : null;
+        }
+        if ("*".equals(ifMatch.trim())) {
+            return null;
+        }
+        List<Long> versions = new ArrayList<>();
+        int i = 0;
+        while (i < ifMatch.length()) {
+            char c = ifMatch.charAt(i);
+            if (c == ',' || c == ' ' || c == '\t') {
+                i++;
+                continue;
+            }
+            boolean weak = ifMatch.startsWith(WEAK_PREFIX, i);
+            int start = weak ? i + WEAK_PREFIX.length() : i;
+            int end = start < ifMatch.length() && ifMatch.charAt(start) == '"' ? ifMatch.indexOf('"', start + 1) : -1;
+            if (end < 0) {
+                throw preconditionFailed();
+            }
+            if (!weak) {
+                try {
+                    versions.add(Long.valueOf(ifMatch.substring(start + 1, end)));
+                } catch (NumberFormatException e) {
+                    // an opaque tag, which no version of this API matches
+                }
+            }
+            i = end + 1;
+        }
+        if (versions.isEmpty()) {
+            throw preconditionFailed();
+        }
+        return versions;
+    }
+
+    private static ResponseStatusException preconditionFailed() {
+        return new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "If-Match does not match the current entity tag");
+    }
+
+    /**
+     * Explain why a conditional update matched no document.
+     *
+     * @param exists whether a document with the requested id exists.
+     * @param expectedVersions the versions the update was conditional on.
+     * @param entityName the name of the entity.
+     * @param <T> the entity type.
+     * @return an error with status {@code 412 (Precondition Failed)} if the document exists with another version,
+     * or with status {@code 400 (Bad Request)} if it does not exist.
+     */
+    public static <T> Mono<T> updateFailed(Mono<Boolean> exists, List<Long> expectedVersions, String entityName) {
+        Mono<T> notFound = Mono.error(new BadRequestAlertException("Entity not found", entityName, "idnotfound"));
+        if (expectedVersions == null) {
+            return notFound;
+        }
+        return exists.flatMap(found ->
+            found ? Mono.error(new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Entity was modified concurrently")) : notFound
+        );
+    }
+}
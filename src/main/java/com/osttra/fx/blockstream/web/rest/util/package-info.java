@@ -0,0 +1,4 @@
+/**
+ * Utility classes shared by the REST controllers.
+ */
+package com.osttra.fx.blockstream.web.rest.util;
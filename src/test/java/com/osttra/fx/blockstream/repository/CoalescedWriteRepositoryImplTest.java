@@ -0,0 +1,123 @@
+package com.osttra.fx.blockstream.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.Authority;
+import com.osttra.fx.blockstream.domain.Customer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.validation.ConstraintViolationException;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.event.MongoMappingEvent;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveBeforeConvertCallback;
+import org.springframework.data.mongodb.core.mapping.event.ValidatingMongoEventListener;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+import reactor.core.publisher.Mono;
+
+/**
+ * Unit tests for {@link CoalescedWriteRepositoryImpl}.
+ */
+class CoalescedWriteRepositoryImplTest {
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    private final GenericApplicationContext applicationContext = new GenericApplicationContext();
+
+    private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    private final MongoCollection<Document> collection = mock(MongoCollection.class);
+
+    private CoalescedWriteRepositoryImpl<Object> repository;
+
+    @BeforeEach
+    void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.getCollection(anyString())).thenReturn(Mono.just(collection));
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(Mono.just(BulkWriteResult.unacknowledged()));
+
+        LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+        validator.afterPropertiesSet();
+        applicationContext.registerBean(ValidatingMongoEventListener.class, () -> new ValidatingMongoEventListener(validator));
+        applicationContext.registerBean(NamingCallback.class, () -> new NamingCallback(events));
+        applicationContext.addApplicationListener(event -> {
+            if (event instanceof MongoMappingEvent) {
+                events.add(event.getClass().getSimpleName());
+            }
+        });
+        applicationContext.refresh();
+        repository =
+            new CoalescedWriteRepositoryImpl<>(mongoTemplate, applicationContext, new SimpleMeterRegistry(), new ApplicationProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        applicationContext.close();
+    }
+
+    @Test
+    void publishesTheMappingEventsAndCallbacksOfAnInsert() {
+        Customer inserted = repository.insert(new Customer()).block(Duration.ofSeconds(5));
+
+        assertThat(inserted.getId()).isNotNull();
+        assertThat(inserted.getVersion()).isZero();
+        assertThat(inserted.getCustomerName()).isEqualTo("named");
+        assertThat(events).containsExactly("BeforeConvertEvent", "ReactiveBeforeConvertCallback", "BeforeSaveEvent", "AfterSaveEvent");
+        verify(collection).bulkWrite(anyList(), any(BulkWriteOptions.class));
+    }
+
+    @Test
+    void validatesTheEntityBeforeWritingIt() {
+        Authority authority = new Authority();
+        authority.setName("A".repeat(51));
+
+        assertThatThrownBy(() -> repository.insert(authority).block(Duration.ofSeconds(5)))
+            .isInstanceOf(ConstraintViolationException.class);
+        verify(collection, never()).bulkWrite(anyList(), any(BulkWriteOptions.class));
+    }
+
+    static class NamingCallback implements ReactiveBeforeConvertCallback<Customer> {
+
+        private final List<String> events;
+
+        NamingCallback(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public Mono<Customer> onBeforeConvert(Customer entity, String collection) {
+            events.add(ReactiveBeforeConvertCallback.class.getSimpleName());
+            return Mono.just(entity.customerName("named"));
+        }
+    }
+}
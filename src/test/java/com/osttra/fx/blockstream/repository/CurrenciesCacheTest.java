@@ -0,0 +1,121 @@
+package com.osttra.fx.blockstream.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.Currencies;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Unit tests for {@link CurrenciesCache}.
+ */
+class CurrenciesCacheTest {
+
+    private final CurrenciesRepository currenciesRepository = mock(CurrenciesRepository.class);
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private final List<Currencies> stored = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        applicationProperties.getCurrenciesCache().setChangeStreams(false);
+        stored.add(new Currencies().id("1").currencyCode("EUR").currencyName("Euro"));
+        stored.add(new Currencies().id("2").currencyCode("USD").currencyName("US Dollar"));
+        when(currenciesRepository.findAll()).thenAnswer(invocation -> Flux.fromIterable(new ArrayList<>(stored)));
+        when(currenciesRepository.findById("1")).thenAnswer(invocation -> Mono.just(stored.get(0)));
+    }
+
+    @Test
+    void readsTheCurrenciesOnce() {
+        CurrenciesCache cache = newCache();
+        cache.start();
+
+        assertThat(cache.findAll().collectList().block()).extracting(Currencies::getCurrencyCode).containsExactly("EUR", "USD");
+        assertThat(cache.findById("2").block().getCurrencyCode()).isEqualTo("USD");
+        assertThat(cache.findById("3").blockOptional()).isEmpty();
+        assertThat(cache.findByCurrencyCode("EUR").block().getId()).isEqualTo("1");
+        assertThat(cache.findByCurrencyCode("GBP").blockOptional()).isEmpty();
+
+        verify(currenciesRepository, times(1)).findAll();
+    }
+
+    @Test
+    void readsTheCurrenciesAgainOnceInvalidatedOrExpired() {
+        CurrenciesCache cache = newCache();
+        cache.findAll().blockLast();
+
+        stored.add(new Currencies().id("3").currencyCode("GBP"));
+        assertThat(cache.findByCurrencyCode("GBP").blockOptional()).isEmpty();
+        cache.invalidate();
+        assertThat(cache.findByCurrencyCode("GBP").block().getId()).isEqualTo("3");
+
+        applicationProperties.getCurrenciesCache().setTimeToLive(Duration.ZERO);
+        cache.findAll().blockLast();
+
+        verify(currenciesRepository, times(3)).findAll();
+    }
+
+    @Test
+    void sharesTheLoadInProgress() {
+        Sinks.Empty<Void> read = Sinks.empty();
+        when(currenciesRepository.findAll())
+            .thenAnswer(invocation -> Flux.fromIterable(new ArrayList<>(stored)).delaySubscription(read.asMono()));
+        CurrenciesCache cache = newCache();
+
+        CompletableFuture<List<Currencies>> first = cache.findAll().collectList().toFuture();
+        CompletableFuture<Currencies> second = cache.findByCurrencyCode("USD").toFuture();
+        cache.invalidate();
+        CompletableFuture<Currencies> afterInvalidation = cache.findById("1").toFuture();
+        read.tryEmitEmpty();
+
+        assertThat(first.join()).hasSize(2);
+        assertThat(second.join().getId()).isEqualTo("2");
+        assertThat(afterInvalidation.join().getCurrencyCode()).isEqualTo("EUR");
+        verify(currenciesRepository, times(2)).findAll();
+
+        cache.findAll().blockLast();
+        verify(currenciesRepository, times(2)).findAll();
+    }
+
+    @Test
+    void readsTooManyCurrenciesFromTheDatabase() {
+        applicationProperties.getCurrenciesCache().setSize(1);
+        CurrenciesCache cache = newCache();
+
+        assertThat(cache.findAll().collectList().block()).hasSize(2);
+        assertThat(cache.findById("1").block().getCurrencyCode()).isEqualTo("EUR");
+
+        verify(currenciesRepository, times(2)).findAll();
+        verify(currenciesRepository).findById("1");
+    }
+
+    @Test
+    void readsEverythingFromTheDatabaseWhenDisabled() {
+        applicationProperties.getCurrenciesCache().setSize(0);
+        CurrenciesCache cache = newCache();
+        cache.start();
+
+        cache.findAll().blockLast();
+        cache.findAll().blockLast();
+
+        verify(currenciesRepository, times(2)).findAll();
+    }
+
+    private CurrenciesCache newCache() {
+        return new CurrenciesCache(currenciesRepository, mock(ReactiveMongoTemplate.class), applicationProperties);
+    }
+}
@@ -0,0 +1,99 @@
+package com.osttra.fx.blockstream.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.Customer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Flux;
+
+/**
+ * Unit tests for {@link CustomerCache}.
+ */
+class CustomerCacheTest {
+
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    @BeforeEach
+    void setUp() {
+        when(customerRepository.findAllById(anyIterable()))
+            .thenAnswer(invocation -> {
+                List<Customer> customers = new ArrayList<>();
+                Iterable<String> ids = invocation.getArgument(0);
+                ids.forEach(id -> {
+                    if (!id.startsWith("deleted")) {
+                        customers.add(new Customer().id(id).customerName("name of " + id));
+                    }
+                });
+                return Flux.fromIterable(customers);
+            });
+    }
+
+    @Test
+    void readsOnlyTheCustomersNotCached() {
+        CustomerCache cache = new CustomerCache(customerRepository, applicationProperties);
+
+        Map<String, Customer> first = cache.findAllById(List.of("a", "b", "deleted")).block();
+        Map<String, Customer> second = cache.findAllById(List.of("b", "c", "deleted")).block();
+
+        assertThat(first).containsOnlyKeys("a", "b");
+        assertThat(second).containsOnlyKeys("b", "c");
+        assertThat(second.get("b")).isSameAs(first.get("b"));
+        assertThat(requestedIds(2)).containsExactly(List.of("a", "b", "deleted"), List.of("c", "deleted"));
+    }
+
+    @Test
+    void readsEvictedAndExpiredCustomersAgain() {
+        CustomerCache cache = new CustomerCache(customerRepository, applicationProperties);
+        cache.findAllById(List.of("a", "b")).block();
+
+        cache.evict("a");
+        cache.findAllById(List.of("a", "b")).block();
+
+        applicationProperties.getCustomerCache().setTimeToLive(Duration.ZERO);
+        CustomerCache expiring = new CustomerCache(customerRepository, applicationProperties);
+        expiring.findAllById(List.of("b")).block();
+        expiring.findAllById(List.of("b")).block();
+
+        assertThat(requestedIds(4)).containsExactly(List.of("a", "b"), List.of("a"), List.of("b"), List.of("b"));
+    }
+
+    @Test
+    void keepsTheMostRecentlyUsedCustomers() {
+        applicationProperties.getCustomerCache().setSize(2);
+        CustomerCache cache = new CustomerCache(customerRepository, applicationProperties);
+
+        cache.findAllById(List.of("a", "b")).block();
+        cache.findAllById(List.of("a")).block();
+        cache.findAllById(List.of("c")).block();
+        cache.findAllById(List.of("a", "b", "c")).block();
+
+        assertThat(requestedIds(3)).containsExactly(List.of("a", "b"), List.of("c"), List.of("b"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<String>> requestedIds(int queries) {
+        ArgumentCaptor<Iterable<String>> ids = ArgumentCaptor.forClass(Iterable.class);
+        verify(customerRepository, times(queries)).findAllById(ids.capture());
+        List<List<String>> requested = new ArrayList<>();
+        for (Iterable<String> query : ids.getAllValues()) {
+            List<String> list = new ArrayList<>();
+            query.forEach(list::add);
+            requested.add(list);
+        }
+        return requested;
+    }
+}
@@ -0,0 +1,122 @@
+package com.osttra.fx.blockstream.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Unit tests for {@link WriteCoalescer}.
+ */
+class WriteCoalescerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final List<List<WriteModel<Document>>> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    void writesConcurrentWritesTogether() {
+        WriteCoalescer coalescer = coalescer(100, Duration.ofMillis(50), writes -> Mono.just(BulkWriteResult.unacknowledged()));
+
+        Flux.range(0, 10).flatMap(i -> coalescer.submit(insert(i))).then().block(Duration.ofSeconds(5));
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).hasSize(10);
+        DistributionSummary batchSizes = registry.get(WriteCoalescer.BATCH_SIZE_METER_NAME).tag("collection", "customer").summary();
+        assertThat(batchSizes.count()).isEqualTo(1);
+        assertThat(batchSizes.totalAmount()).isEqualTo(10.0);
+        assertThat(registry.get(WriteCoalescer.LATENCY_METER_NAME).tag("collection", "customer").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void writesAFullBatchWithoutWaiting() {
+        WriteCoalescer coalescer = coalescer(4, Duration.ofHours(1), writes -> Mono.just(BulkWriteResult.unacknowledged()));
+
+        Flux.range(0, 8).flatMap(i -> coalescer.submit(insert(i))).then().block(Duration.ofSeconds(5));
+
+        assertThat(batches).extracting(List::size).containsExactly(4, 4);
+    }
+
+    @Test
+    void failsOnlyTheWritesInError() {
+        WriteCoalescer coalescer = coalescer(
+            3,
+            Duration.ofHours(1),
+            writes ->
+                Mono.error(
+                    new MongoBulkWriteException(
+                        BulkWriteResult.unacknowledged(),
+                        List.of(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 1)),
+                        null,
+                        new ServerAddress()
+                    )
+                )
+        );
+
+        List<Mono<String>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(coalescer.submit(insert(i)).thenReturn("written").onErrorResume(e -> Mono.just(e.getClass().getSimpleName())));
+        }
+
+        assertThat(Flux.mergeSequential(results).collectList().block(Duration.ofSeconds(5)))
+            .containsExactly("written", DuplicateKeyException.class.getSimpleName(), "written");
+    }
+
+    @Test
+    void failsTheWholeBatchWhenTheBulkWriteFails() {
+        WriteCoalescer coalescer = coalescer(
+            2,
+            Duration.ofHours(1),
+            writes -> Mono.error(new MongoSocketReadException("Prematurely reached end of stream", new ServerAddress()))
+        );
+
+        Mono<Void> first = coalescer.submit(insert(0)).cache();
+        first.subscribe(null, e -> {});
+        assertThatThrownBy(() -> coalescer.submit(insert(1)).block(Duration.ofSeconds(5)))
+            .isInstanceOf(DataAccessResourceFailureException.class);
+        assertThatThrownBy(() -> first.block(Duration.ofSeconds(5))).isInstanceOf(DataAccessResourceFailureException.class);
+    }
+
+    private WriteCoalescer coalescer(
+        int maxBatchSize,
+        Duration window,
+        Function<List<WriteModel<Document>>, Mono<BulkWriteResult>> writer
+    ) {
+        return new WriteCoalescer(
+            "customer",
+            maxBatchSize,
+            window,
+            writes -> {
+                batches.add(writes);
+                return writer.apply(writes);
+            },
+            new MongoExceptionTranslator(),
+            registry
+        );
+    }
+
+    private static WriteModel<Document> insert(int i) {
+        return new InsertOneModel<>(new Document("_id", i));
+    }
+}
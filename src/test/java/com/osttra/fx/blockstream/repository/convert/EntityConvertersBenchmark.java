@@ -0,0 +1,140 @@
+package com.osttra.fx.blockstream.repository.convert;
+
+import com.osttra.fx.blockstream.config.DatabaseConfiguration;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+
+/**
+ * Compares the hand-written {@link SmartTrade} converters with the reflective mapping converter.
+ * <p>
+ * Reports the time and the heap allocated per document, and the heap retained by the trades read, for a batch of
+ * documents with realistic repetition of parties and currencies. Run the {@code main} method from the test classpath;
+ * it is not part of the test suite.
+ */
+public class EntityConvertersBenchmark {
+
+    private static final int DOCUMENTS = 100_000;
+
+    private static final int ROUNDS = 10;
+
+    private static final String[] PARTIES = { "BANK-A", "BANK-B", "BANK-C", "FUND-D", "FUND-E", "CORP-F", "CORP-G", "CORP-H" };
+
+    private static final String[] CURRENCIES = { "EUR", "USD", "GBP", "JPY", "CHF", "AUD", "CAD", "NZD", "SEK", "NOK" };
+
+    private static final String[] DIRECTIONS = { "BUY", "SELL" };
+
+    public static void main(String[] args) {
+        MappingMongoConverter mappingConverter = EntityConvertersTest.mappingConverter(EntityConvertersTest.scalarConversions());
+        MappingMongoConverter handWrittenConverter = EntityConvertersTest.mappingConverter(
+            new DatabaseConfiguration().customConversions()
+        );
+        List<Document> documents = documents(mappingConverter);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round == ROUNDS - 1;
+            read("mapping read", mappingConverter, documents, report);
+            read("hand-written read", handWrittenConverter, documents, report);
+            write("mapping write", mappingConverter, documents, report);
+            write("hand-written write", handWrittenConverter, documents, report);
+        }
+    }
+
+    private static void read(String name, MappingMongoConverter converter, List<Document> documents, boolean report) {
+        List<SmartTrade> smartTrades = new ArrayList<>(documents.size());
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (Document document : documents) {
+            smartTrades.add(converter.read(SmartTrade.class, document));
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        if (report) {
+            long distinctStrings = smartTrades
+                .stream()
+                .flatMap(smartTrade ->
+                    Stream.of(
+                        smartTrade.getCounterParty(),
+                        smartTrade.getTradingParty(),
+                        smartTrade.getCurrencyBuy(),
+                        smartTrade.getCurrencySell(),
+                        smartTrade.getDirection()
+                    )
+                )
+                .map(System::identityHashCode)
+                .distinct()
+                .count();
+            print(name, elapsed, allocated, documents.size());
+            System.out.printf("%-20s %,d distinct string instances held for the low-cardinality fields%n", "", distinctStrings);
+        }
+    }
+
+    private static void write(String name, MappingMongoConverter converter, List<Document> documents, boolean report) {
+        List<SmartTrade> smartTrades = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            smartTrades.add(converter.read(SmartTrade.class, document));
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long fields = 0;
+        for (SmartTrade smartTrade : smartTrades) {
+            Document document = new Document();
+            converter.write(smartTrade, document);
+            fields += document.size();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        if (report && fields > 0) {
+            print(name, elapsed, allocated, smartTrades.size());
+        }
+    }
+
+    private static void print(String name, long elapsedNanos, long allocatedBytes, int count) {
+        System.out.printf("%-20s %,8d ns/doc %,8d B/doc%n", name, elapsedNanos / count, allocatedBytes / count);
+    }
+
+    private static List<Document> documents(MappingMongoConverter converter) {
+        Random random = new Random(42);
+        List<Document> documents = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            SmartTrade smartTrade = new SmartTrade()
+                .id(new ObjectId().toHexString())
+                .version((long) random.nextInt(5))
+                .counterParty(copyOf(PARTIES[random.nextInt(PARTIES.length)]))
+                .tradingParty(copyOf(PARTIES[random.nextInt(PARTIES.length)]))
+                .currencyBuy(copyOf(CURRENCIES[random.nextInt(CURRENCIES.length)]))
+                .currencySell(copyOf(CURRENCIES[random.nextInt(CURRENCIES.length)]))
+                .rate(random.nextDouble() * 2)
+                .amount(BigDecimal.valueOf(random.nextInt(100_000_000), 2))
+                .contraAmount(BigDecimal.valueOf(random.nextInt(100_000_000), 2))
+                .valueDate(LocalDate.of(2022, 1, 1).plusDays(random.nextInt(365)))
+                .transactionId("TX-" + i)
+                .direction(copyOf(DIRECTIONS[random.nextInt(DIRECTIONS.length)]));
+            Document document = new Document();
+            converter.write(smartTrade, document);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    /**
+     * A distinct copy, as the driver decodes a new string for every document.
+     */
+    private static String copyOf(String value) {
+        return new String(value.toCharArray());
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,150 @@
+package com.osttra.fx.blockstream.repository.convert;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.osttra.fx.blockstream.config.DatabaseConfiguration;
+import com.osttra.fx.blockstream.domain.Customer;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.domain.Wallet;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.LocalDate;
+import java.util.List;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+/**
+ * Checks that the hand-written converters store the same documents as the mapping converter.
+ */
+class EntityConvertersTest {
+
+    private final MappingMongoConverter mappingConverter = mappingConverter(scalarConversions());
+
+    private final MappingMongoConverter handWrittenConverter = mappingConverter(new DatabaseConfiguration().customConversions());
+
+    @Test
+    void entitiesKeepTheirMappingMetadata() {
+        assertThat(handWrittenConverter.getMappingContext().getPersistentEntity(SmartTrade.class)).isNotNull();
+        assertThat(handWrittenConverter.getMappingContext().getPersistentEntity(Wallet.class)).isNotNull();
+    }
+
+    @Test
+    void smartTradeDocumentsMatchTheMappingConverter() {
+        SmartTrade smartTrade = new SmartTrade()
+            .id(new ObjectId().toHexString())
+            .version(3L)
+            .counterParty("BANK-B")
+            .tradingParty("BANK-A")
+            .currencyBuy("EUR")
+            .currencySell("USD")
+            .rate(1.0875)
+            .amount(new BigDecimal("1000000.00"))
+            .contraAmount(new BigDecimal("1087500.00"))
+            .valueDate(LocalDate.of(2022, 6, 15))
+            .transactionId("TX-1")
+            .direction("BUY");
+
+        Document expected = write(mappingConverter, smartTrade);
+        assertThat(expected.get("amount")).isInstanceOf(Decimal128.class);
+        assertThat(write(handWrittenConverter, smartTrade)).isEqualTo(expected);
+
+        SmartTrade read = handWrittenConverter.read(SmartTrade.class, expected);
+        assertThat(read).usingRecursiveComparison().isEqualTo(smartTrade);
+    }
+
+    @Test
+    void amountsAreRoundedToTheDigitsOfDecimal128() {
+        BigDecimal amount = new BigDecimal("1234567890123456789012345678901234567.891");
+        SmartTrade smartTrade = new SmartTrade().amount(amount).contraAmount(new BigDecimal("0.1"));
+
+        Document document = write(handWrittenConverter, smartTrade);
+        assertThat(document).isEqualTo(write(mappingConverter, smartTrade));
+        assertThat(((Decimal128) document.get("amount")).bigDecimalValue())
+            .isEqualByComparingTo("1234567890123456789012345678901235000")
+            .isEqualTo(amount.round(MathContext.DECIMAL128));
+        assertThat(handWrittenConverter.convertToMongoType(amount)).isEqualTo(document.get("amount"));
+        // Updates and ledger entries written without the converters round the same way.
+        assertThat(Decimals.toDecimal128(amount)).isEqualTo(document.get("amount"));
+    }
+
+    @Test
+    void smartTradeNullFieldsAreOmitted() {
+        SmartTrade smartTrade = new SmartTrade().id("not-an-object-id").currencyBuy("EUR");
+
+        assertThat(write(handWrittenConverter, smartTrade)).isEqualTo(write(mappingConverter, smartTrade));
+        assertThat(handWrittenConverter.read(SmartTrade.class, write(handWrittenConverter, smartTrade)))
+            .usingRecursiveComparison()
+            .isEqualTo(smartTrade);
+    }
+
+    @Test
+    void walletDocumentsMatchTheMappingConverter() {
+        Customer customer = new Customer().id(new ObjectId().toHexString()).customerName("ACME").customerPassword("secret");
+        Wallet wallet = new Wallet().id(new ObjectId().toHexString()).version(2L).currencyCode("GBP").customer(customer);
+
+        Document document = write(handWrittenConverter, wallet);
+        assertThat(document).isEqualTo(write(mappingConverter, wallet));
+        // Only the reference to the customer is stored.
+        assertThat(document.get("customer_id")).isEqualTo(customer.getId());
+        assertThat(document).doesNotContainKey("customer");
+
+        Wallet read = handWrittenConverter.read(Wallet.class, document);
+        assertThat(read).usingRecursiveComparison().ignoringFields("customer").isEqualTo(wallet);
+        assertThat(read.getCustomer()).isNull();
+    }
+
+    @Test
+    void repeatedValuesAreShared() {
+        Document first = write(handWrittenConverter, new SmartTrade().currencyBuy(new String("EUR")));
+        Document second = write(handWrittenConverter, new SmartTrade().currencyBuy(new String("EUR")));
+
+        assertThat(handWrittenConverter.read(SmartTrade.class, first).getCurrencyBuy())
+            .isSameAs(handWrittenConverter.read(SmartTrade.class, second).getCurrencyBuy());
+    }
+
+    private static Document write(MappingMongoConverter converter, Object entity) {
+        Document document = new Document();
+        converter.write(entity, document);
+        document.remove("_class");
+        return document;
+    }
+
+    /**
+     * The conversions of the application without the entity converters, so that entities go through the mapping converter.
+     */
+    static MongoCustomConversions scalarConversions() {
+        return new MongoCustomConversions(
+            List.of(
+                new Converter<BigDecimal, Decimal128>() {
+                    @Override
+                    public Decimal128 convert(BigDecimal source) {
+                        return new Decimal128(source.round(MathContext.DECIMAL128));
+                    }
+                },
+                new Converter<Decimal128, BigDecimal>() {
+                    @Override
+                    public BigDecimal convert(Decimal128 source) {
+                        return source.bigDecimalValue();
+                    }
+                }
+            )
+        );
+    }
+
+    static MappingMongoConverter mappingConverter(MongoCustomConversions conversions) {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+}
@@ -0,0 +1,138 @@
+package com.osttra.fx.blockstream.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mongodb.MongoClientSettings;
+import com.osttra.fx.blockstream.config.DatabaseConfiguration;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.types.ObjectId;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Compares writing the JSON lines of {@link SmartTrade}s from the stored bytes with decoding, reading and serializing them.
+ * <p>
+ * Reports the time and the heap allocated per document. Run the {@code main} method from the test classpath; it is not
+ * part of the test suite.
+ */
+public class BsonJsonTranscoderBenchmark {
+
+    private static final int DOCUMENTS = 100_000;
+
+    private static final int ROUNDS = 10;
+
+    private static final Codec<Document> DOCUMENT_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    private static final String[] PARTIES = { "BANK-A", "BANK-B", "BANK-C", "FUND-D", "FUND-E", "CORP-F", "CORP-G", "CORP-H" };
+
+    private static final String[] CURRENCIES = { "EUR", "USD", "GBP", "JPY", "CHF", "AUD", "CAD", "NZD", "SEK", "NOK" };
+
+    public static void main(String[] args) throws Exception {
+        MongoCustomConversions conversions = new DatabaseConfiguration().customConversions();
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder
+            .json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .modules(new JavaTimeModule(), new Jdk8Module())
+            .build();
+        BsonJsonTranscoder transcoder = new BsonJsonTranscoder(SmartTrade.class, objectMapper, converter);
+        DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+        List<RawBsonDocument> documents = documents(converter);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round == ROUNDS - 1;
+
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long bytes = 0;
+            for (RawBsonDocument document : documents) {
+                SmartTrade smartTrade = converter.read(SmartTrade.class, document.decode(DOCUMENT_CODEC));
+                DataBuffer buffer = bufferFactory.allocateBuffer(256);
+                objectMapper.writeValue(buffer.asOutputStream(), smartTrade);
+                buffer.write((byte) '\n');
+                bytes += buffer.readableByteCount();
+                DataBufferUtils.release(buffer);
+            }
+            if (report) {
+                print("entity path", System.nanoTime() - start, allocatedBytes() - allocatedBefore, bytes);
+            }
+
+            try (BsonJsonTranscoder.Writer writer = transcoder.newWriter()) {
+                allocatedBefore = allocatedBytes();
+                start = System.nanoTime();
+                bytes = 0;
+                for (RawBsonDocument document : documents) {
+                    DataBuffer buffer = writer.write(document, bufferFactory);
+                    bytes += buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                }
+                if (report) {
+                    print("raw path", System.nanoTime() - start, allocatedBytes() - allocatedBefore, bytes);
+                }
+            }
+        }
+    }
+
+    private static void print(String name, long elapsedNanos, long allocatedBytes, long bytes) {
+        System.out.printf(
+            "%-12s %,8d ns/doc %,8d B/doc (%,d bytes of JSON)%n",
+            name,
+            elapsedNanos / DOCUMENTS,
+            allocatedBytes / DOCUMENTS,
+            bytes
+        );
+    }
+
+    private static List<RawBsonDocument> documents(MappingMongoConverter converter) {
+        Random random = new Random(42);
+        List<RawBsonDocument> documents = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            SmartTrade smartTrade = new SmartTrade()
+                .id(new ObjectId().toHexString())
+                .version((long) random.nextInt(5))
+                .counterParty(PARTIES[random.nextInt(PARTIES.length)])
+                .tradingParty(PARTIES[random.nextInt(PARTIES.length)])
+                .currencyBuy(CURRENCIES[random.nextInt(CURRENCIES.length)])
+                .currencySell(CURRENCIES[random.nextInt(CURRENCIES.length)])
+                .rate(random.nextDouble() * 2)
+                .amount(BigDecimal.valueOf(random.nextInt(100_000_000), 2))
+                .contraAmount(BigDecimal.valueOf(random.nextInt(100_000_000), 2))
+                .valueDate(LocalDate.of(2022, 1, 1).plusDays(random.nextInt(365)))
+                .transactionId("TX-" + i)
+                .direction(random.nextBoolean() ? "BUY" : "SELL");
+            Document document = new Document();
+            converter.write(smartTrade, document);
+            documents.add(new RawBsonDocument(document, DOCUMENT_CODEC));
+        }
+        return documents;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,145 @@
+package com.osttra.fx.blockstream.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mongodb.MongoClientSettings;
+import com.osttra.fx.blockstream.config.DatabaseConfiguration;
+import com.osttra.fx.blockstream.domain.Customer;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.domain.Wallet;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Checks that the JSON written from stored documents is the JSON of the entities.
+ */
+class BsonJsonTranscoderTest {
+
+    private final MappingMongoConverter mongoConverter = mongoConverter();
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder
+        .json()
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .modules(new JavaTimeModule(), new Jdk8Module())
+        .build();
+
+    @Test
+    void smartTradesAreWrittenLikeEntities() throws Exception {
+        BsonJsonTranscoder transcoder = new BsonJsonTranscoder(SmartTrade.class, objectMapper, mongoConverter);
+        assertThat(transcoder.isRaw()).isTrue();
+
+        SmartTrade smartTrade = new SmartTrade()
+            .id(new ObjectId().toHexString())
+            .version(3L)
+            .counterParty("Société \"B\"\n")
+            .tradingParty("BANK-A")
+            .currencyBuy("EUR")
+            .currencySell("USD")
+            .rate(1.0)
+            .amount(new BigDecimal("1000000.00"))
+            .contraAmount(new BigDecimal("1E+3"))
+            .valueDate(LocalDate.of(2022, 6, 15))
+            .transactionId("TX-1")
+            .direction("BUY");
+        assertWrittenLikeEntity(transcoder, SmartTrade.class, write(smartTrade).append("_class", SmartTrade.class.getName()));
+        assertWrittenLikeEntity(transcoder, SmartTrade.class, write(new SmartTrade().id("not-an-object-id").currencyBuy("EUR")));
+    }
+
+    @Test
+    void legacyValuesAreWrittenLikeEntities() throws Exception {
+        BsonJsonTranscoder transcoder = new BsonJsonTranscoder(SmartTrade.class, objectMapper, mongoConverter);
+
+        // Fields in another order, an int version, a string amount, an explicit null and an unmapped field.
+        Document document = new Document("direction", "SELL")
+            .append("amount", "250.50")
+            .append("version", 1)
+            .append("rate", 2)
+            .append("_id", new ObjectId())
+            .append("counter_party", null)
+            .append("tags", new Document("a", 1));
+        assertWrittenLikeEntity(transcoder, SmartTrade.class, document);
+
+        // A type only the entity path reads.
+        assertWrittenLikeEntity(transcoder, SmartTrade.class, document.append("contra_amount", 12.5));
+    }
+
+    @Test
+    void walletsAreWrittenLikeEntities() throws Exception {
+        BsonJsonTranscoder transcoder = new BsonJsonTranscoder(Wallet.class, objectMapper, mongoConverter);
+        assertThat(transcoder.isRaw()).isTrue();
+
+        Customer customer = new Customer()
+            .id(new ObjectId().toHexString())
+            .version(1L)
+            .customerName("ACME")
+            .customerLegalEntity("ACME Ltd")
+            .customerPassword("secret")
+            .customerHashCode("hash");
+        Wallet wallet = new Wallet().id(new ObjectId().toHexString()).version(2L).currencyCode("GBP").amount(BigDecimal.TEN);
+        assertWrittenLikeEntity(transcoder, Wallet.class, write(wallet.customer(customer)));
+        assertWrittenLikeEntity(transcoder, Wallet.class, write(new Wallet().currencyCode("GBP").customerId("unknown")));
+        assertWrittenLikeEntity(transcoder, Wallet.class, write(new Wallet().currencyCode("GBP")));
+    }
+
+    @Test
+    void entitiesAreReadWhenTheMapperWritesValuesDifferently() throws Exception {
+        ObjectMapper timestamps = Jackson2ObjectMapperBuilder
+            .json()
+            .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .modules(new JavaTimeModule(), new Jdk8Module())
+            .build();
+        BsonJsonTranscoder transcoder = new BsonJsonTranscoder(SmartTrade.class, timestamps, mongoConverter);
+        assertThat(transcoder.isRaw()).isFalse();
+
+        Document document = write(new SmartTrade().id(new ObjectId().toHexString()).valueDate(LocalDate.of(2022, 6, 15)));
+        assertThat(transcode(transcoder, document)).isEqualTo(timestamps.writeValueAsString(mongoConverter.read(SmartTrade.class, document)));
+    }
+
+    private void assertWrittenLikeEntity(BsonJsonTranscoder transcoder, Class<?> entityClass, Document document) throws Exception {
+        String expected = objectMapper.writeValueAsString(mongoConverter.read(entityClass, document));
+        assertThat(transcode(transcoder, document)).isEqualTo(expected);
+    }
+
+    private String transcode(BsonJsonTranscoder transcoder, Document document) {
+        RawBsonDocument rawDocument = new RawBsonDocument(document, MongoClientSettings.getDefaultCodecRegistry().get(Document.class));
+        try (BsonJsonTranscoder.Writer writer = transcoder.newWriter()) {
+            DataBuffer buffer = writer.write(rawDocument, DefaultDataBufferFactory.sharedInstance);
+            String line = buffer.toString(UTF_8);
+            assertThat(line).endsWith("\n");
+            return line.substring(0, line.length() - 1);
+        }
+    }
+
+    private Document write(Object entity) {
+        Document document = new Document();
+        mongoConverter.write(entity, document);
+        return document;
+    }
+
+    private static MappingMongoConverter mongoConverter() {
+        MongoCustomConversions conversions = new DatabaseConfiguration().customConversions();
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+}
@@ -0,0 +1,73 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.osttra.fx.blockstream.domain.Currencies;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+/**
+ * Unit tests for {@link CurrencyRegistry}.
+ */
+class CurrencyRegistryTest {
+
+    private final CurrenciesCache currenciesCache = mock(CurrenciesCache.class);
+
+    private final CurrencyRegistry registry = new CurrencyRegistry(currenciesCache);
+
+    @Test
+    void registersTheStoredCurrenciesInTheOrderOfTheirCodes() {
+        when(currenciesCache.findAll())
+            .thenReturn(
+                Flux.just(
+                    new Currencies().currencyCode("USD"),
+                    new Currencies().currencyCode("EUR"),
+                    new Currencies(),
+                    new Currencies().currencyCode("USD")
+                )
+            );
+
+        assertThat(registry.preload().block()).isEqualTo(2);
+
+        assertThat(registry.find("EUR")).isZero();
+        assertThat(registry.find("USD")).isEqualTo(1);
+        assertThat(registry.find("GBP")).isEqualTo(-1);
+        assertThat(registry.codeOf(1)).isEqualTo("USD");
+        assertThat(registry.codeOf(2)).isNull();
+    }
+
+    @Test
+    void assignsDenseIdsToNewCodes() {
+        assertThat(registry.idOf("EUR")).isZero();
+        assertThat(registry.idOf("usd")).isEqualTo(1);
+        assertThat(registry.idOf("XBT-PERP")).isEqualTo(2);
+        assertThat(registry.idOf("EUR")).isZero();
+        assertThat(registry.find("usd")).isEqualTo(1);
+        assertThat(registry.size()).isEqualTo(3);
+        assertThat(registry.codeOf(2)).isEqualTo("XBT-PERP");
+    }
+
+    @Test
+    void packsPairsIntoOneInt() {
+        int pair = registry.pairOf("GBP", "JPY");
+
+        assertThat(CurrencyRegistry.baseOf(pair)).isEqualTo(registry.find("GBP"));
+        assertThat(CurrencyRegistry.quoteOf(pair)).isEqualTo(registry.find("JPY"));
+        assertThat(CurrencyRegistry.pair(CurrencyRegistry.CAPACITY - 1, CurrencyRegistry.CAPACITY - 1))
+            .isEqualTo(CurrencyRegistry.CAPACITY * CurrencyRegistry.CAPACITY - 1);
+    }
+
+    @Test
+    void refusesMoreCodesThanItsCapacity() {
+        for (int i = 0; i < CurrencyRegistry.CAPACITY; i++) {
+            registry.idOf("C" + i);
+        }
+
+        assertThat(registry.idOf("C0")).isZero();
+        assertThatThrownBy(() -> registry.idOf("ONE-TOO-MANY")).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,197 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.Wallet;
+import com.osttra.fx.blockstream.repository.WalletBalanceRepository.BalanceUpdate;
+import com.osttra.fx.blockstream.repository.WalletRepository;
+import com.osttra.fx.blockstream.service.dto.WalletBalanceDTO;
+import com.osttra.fx.blockstream.service.dto.WalletMovementDTO;
+import com.osttra.fx.blockstream.service.dto.WalletTransferDTO;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Unit tests for {@link HotWalletService}.
+ */
+class HotWalletServiceTest {
+
+    private static final String HOT = "hot";
+
+    private static final String MISSING = "missing";
+
+    @TempDir
+    Path journalDirectory;
+
+    private WalletRepository walletRepository;
+
+    private BigDecimal storedBalance;
+
+    @BeforeEach
+    void setUp() {
+        walletRepository = mock(WalletRepository.class);
+        storedBalance = new BigDecimal("100");
+        when(walletRepository.findById(anyString())).thenAnswer(invocation -> Mono.empty());
+        when(walletRepository.findById(HOT)).thenAnswer(invocation -> Mono.just(new Wallet().id(HOT).amount(storedBalance)));
+        when(walletRepository.findAppliedTo(anyCollection(), anyString())).thenReturn(Flux.empty());
+        when(walletRepository.addToBalances(anyMap(), anyString()))
+            .thenAnswer(invocation -> {
+                Map<String, BigDecimal> amounts = invocation.getArgument(0);
+                storedBalance = storedBalance.add(amounts.get(HOT));
+                return Flux.just(new BalanceUpdate(new Wallet().id(HOT).amount(storedBalance), true));
+            });
+    }
+
+    @Test
+    void coalescesChangesIntoOneWrite() {
+        HotWalletService hotWalletService = newService();
+
+        assertThat(hotWalletService.isHot(HOT)).isTrue();
+        assertThat(hotWalletService.isHot("cold")).isFalse();
+        assertThat(balance(hotWalletService.addToBalance(HOT, new BigDecimal("10")))).isEqualByComparingTo("110");
+        assertThat(balance(hotWalletService.addToBalance(HOT, new BigDecimal("-5")))).isEqualByComparingTo("105");
+        assertThat(balance(hotWalletService.addToBalance(HOT, new BigDecimal("1")))).isEqualByComparingTo("106");
+        hotWalletService.flush().block();
+        hotWalletService.flush().block();
+
+        verify(walletRepository).addToBalances(Map.of(HOT, new BigDecimal("6")), "hot:" + HOT + ":3");
+        assertThat(storedBalance).isEqualByComparingTo("106");
+    }
+
+    @Test
+    void refusesDebitsLargerThanTheBalance() {
+        HotWalletService hotWalletService = newService();
+
+        WalletBalanceDTO balance = hotWalletService.addToBalance(HOT, new BigDecimal("-100.01")).block();
+        hotWalletService.flush().block();
+
+        assertThat(balance.getStatus()).isEqualTo(WalletBalanceDTO.Status.INSUFFICIENT_FUNDS);
+        assertThat(hotWalletService.addToBalance(MISSING, BigDecimal.ONE).block().getStatus())
+            .isEqualTo(WalletBalanceDTO.Status.NOT_FOUND);
+        verify(walletRepository, never()).addToBalances(anyMap(), anyString());
+    }
+
+    @Test
+    void replaysChangesNotWrittenBeforeACrash() {
+        HotWalletService crashed = newService();
+        crashed.addToBalance(HOT, new BigDecimal("10")).block();
+        crashed.addToBalance(HOT, new BigDecimal("20")).block();
+
+        HotWalletService restarted = newService();
+
+        assertThat(balance(restarted.addToBalance(HOT, new BigDecimal("-130")))).isEqualByComparingTo("0");
+        restarted.flush().block();
+        verify(walletRepository).addToBalances(Map.of(HOT, new BigDecimal("-100")), "hot:" + HOT + ":3");
+        assertThat(storedBalance).isEqualByComparingTo("0");
+    }
+
+    @Test
+    void writesAgainTheChangesBeingWrittenDuringACrash() {
+        HotWalletService crashed = newService();
+        crashed.addToBalance(HOT, new BigDecimal("10")).block();
+        when(walletRepository.addToBalances(anyMap(), eq("hot:" + HOT + ":1"))).thenReturn(Flux.error(new IllegalStateException("crash")));
+        crashed.flush().block();
+        crashed.addToBalance(HOT, new BigDecimal("5")).block();
+
+        setUp();
+        HotWalletService restarted = newService();
+
+        assertThat(balance(restarted.addToBalance(HOT, BigDecimal.ZERO))).isEqualByComparingTo("115");
+        restarted.flush().block();
+        restarted.flush().block();
+        verify(walletRepository).addToBalances(Map.of(HOT, new BigDecimal("10")), "hot:" + HOT + ":1");
+        verify(walletRepository).addToBalances(Map.of(HOT, new BigDecimal("5")), "hot:" + HOT + ":3");
+        assertThat(storedBalance).isEqualByComparingTo("115");
+    }
+
+    @Test
+    void doesNotWriteAgainTheChangesAppliedDuringACrash() {
+        HotWalletService crashed = newService();
+        crashed.addToBalance(HOT, new BigDecimal("10")).block();
+        when(walletRepository.addToBalances(anyMap(), eq("hot:" + HOT + ":1"))).thenReturn(Flux.error(new IllegalStateException("crash")));
+        crashed.flush().block();
+
+        setUp();
+        storedBalance = new BigDecimal("110");
+        when(walletRepository.findAppliedTo(List.of(HOT), "hot:" + HOT + ":1")).thenReturn(Flux.just(HOT));
+        HotWalletService restarted = newService();
+
+        assertThat(balance(restarted.addToBalance(HOT, BigDecimal.ONE))).isEqualByComparingTo("111");
+        restarted.flush().block();
+        verify(walletRepository, never()).addToBalances(anyMap(), eq("hot:" + HOT + ":1"));
+        verify(walletRepository).addToBalances(Map.of(HOT, BigDecimal.ONE), "hot:" + HOT + ":2");
+    }
+
+    @Test
+    void givesBackTheChangesRejectedByTheDatabase() {
+        HotWalletService hotWalletService = newService();
+        hotWalletService.addToBalance(HOT, new BigDecimal("-60")).block();
+        // Debited meanwhile outside the hot wallet.
+        storedBalance = new BigDecimal("50");
+        when(walletRepository.addToBalances(any(), eq("hot:" + HOT + ":1")))
+            .thenReturn(Flux.just(new BalanceUpdate(new Wallet().id(HOT).amount(storedBalance), false)));
+        hotWalletService.flush().block();
+
+        assertThat(hotWalletService.addToBalance(HOT, new BigDecimal("-1")).block().getStatus())
+            .isEqualTo(WalletBalanceDTO.Status.INSUFFICIENT_FUNDS);
+        assertThat(balance(hotWalletService.addToBalance(HOT, new BigDecimal("20")))).isEqualByComparingTo("10");
+        hotWalletService.flush().block();
+        verify(walletRepository).addToBalances(Map.of(HOT, new BigDecimal("-40")), "hot:" + HOT + ":2");
+        assertThat(storedBalance).isEqualByComparingTo("10");
+    }
+
+    @Test
+    void isTheOnlyWriterOfTheBalance() {
+        HotWalletService hotWalletService = newService();
+        WalletBalanceService walletBalanceService = new WalletBalanceService(walletRepository, hotWalletService);
+        WalletTransferService walletTransferService = new WalletTransferService(
+            walletRepository,
+            mock(ReactiveMongoTemplate.class),
+            hotWalletService,
+            new ApplicationProperties()
+        );
+        List<WalletMovementDTO> movements = List.of(
+            new WalletMovementDTO("cold", BigDecimal.ONE),
+            new WalletMovementDTO(HOT, BigDecimal.ONE)
+        );
+        WalletTransferDTO transfer = new WalletTransferDTO("cold", HOT, BigDecimal.ONE);
+
+        assertThatThrownBy(() -> walletBalanceService.applyMovements(movements, "batch").collectList().block())
+            .isInstanceOf(HotWalletException.class);
+        assertThatThrownBy(() -> walletTransferService.transfer(List.of(transfer)).collectList().block())
+            .isInstanceOf(HotWalletException.class);
+        verify(walletRepository, never()).addToBalances(anyMap(), anyString());
+    }
+
+    private HotWalletService newService() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getHotWallets().setWalletIds(List.of(HOT, MISSING));
+        applicationProperties.getHotWallets().setJournalDirectory(journalDirectory.toString());
+        return new HotWalletService(walletRepository, applicationProperties);
+    }
+
+    private static BigDecimal balance(Mono<WalletBalanceDTO> balance) {
+        WalletBalanceDTO result = balance.block();
+        assertThat(result.getStatus()).isEqualTo(WalletBalanceDTO.Status.APPLIED);
+        return result.getBalance();
+    }
+}
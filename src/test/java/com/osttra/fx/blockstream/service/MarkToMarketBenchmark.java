@@ -0,0 +1,90 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.mockito.Mockito.mock;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
+import com.osttra.fx.blockstream.service.dto.RateDTO;
+import com.osttra.fx.blockstream.service.dto.RevaluationDTO;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures loading open trades into a {@link MarkToMarketBook}, revaluing it on rate ticks, and revaluing all the trades
+ * from scratch.
+ * <p>
+ * Run the {@code main} method from the test classpath, with the number of trades as argument; it is not part of the
+ * test suite.
+ */
+public class MarkToMarketBenchmark {
+
+    private static final String[] CURRENCIES = { "EUR", "USD", "GBP", "JPY", "CHF", "AUD", "CAD", "NZD", "SEK", "NOK" };
+
+    private static final int PARTIES = 200;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int trades = args.length > 0 ? Integer.parseInt(args[0]) : 3_000_000;
+        LocalDate today = LocalDate.now();
+        CurrencyRegistry currencyRegistry = new CurrencyRegistry(mock(CurrenciesCache.class));
+        RateMatrixService rateMatrixService = new RateMatrixService(currencyRegistry, new ApplicationProperties());
+        Random random = new Random(42);
+        updateRates(rateMatrixService, random);
+        MarkToMarketBook book = new MarkToMarketBook(currencyRegistry, rateMatrixService, today);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < trades; i++) {
+            int buy = random.nextInt(CURRENCIES.length);
+            int sell = (buy + 1 + random.nextInt(CURRENCIES.length - 1)) % CURRENCIES.length;
+            book.apply(
+                new SmartTrade()
+                    .id(Integer.toString(i))
+                    .version(0L)
+                    .tradingParty("PARTY-" + random.nextInt(PARTIES))
+                    .counterParty("BANK")
+                    .currencyBuy(CURRENCIES[buy])
+                    .currencySell(CURRENCIES[sell])
+                    .amount(BigDecimal.valueOf(random.nextInt(1_000_000_00), 2))
+                    .contraAmount(BigDecimal.valueOf(random.nextInt(1_000_000_00), 2))
+                    .valueDate(today.plusDays(random.nextInt(90)))
+            );
+        }
+        System.out.printf("applied %,d trades in %,d ms%n", trades, (System.nanoTime() - start) / 1_000_000);
+
+        ForkJoinPool pool = new ForkJoinPool();
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            updateRates(rateMatrixService, random);
+            int revalued = book.revalue(rateMatrixService.getMatrix().changedCurrencies());
+            long tickNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            RevaluationDTO revaluation = book.revalueAll(today, pool);
+            System.out.printf(
+                "tick: %,d buckets in %,d us; full revaluation: %,d trades in %,d ms on %d threads%n",
+                revalued,
+                tickNanos / 1_000,
+                revaluation.getTradeCount(),
+                (System.nanoTime() - start) / 1_000_000,
+                pool.getParallelism()
+            );
+        }
+        pool.shutdown();
+    }
+
+    private static void updateRates(RateMatrixService rateMatrixService, Random random) {
+        List<RateDTO> rates = new ArrayList<>();
+        for (String currency : CURRENCIES) {
+            if (!currency.equals("USD")) {
+                rates.add(new RateDTO(currency, "USD", BigDecimal.valueOf(0.5 + random.nextDouble()), null));
+            }
+        }
+        rateMatrixService.update(rates);
+    }
+}
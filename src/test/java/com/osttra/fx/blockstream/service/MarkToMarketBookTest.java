@@ -0,0 +1,235 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
+import com.osttra.fx.blockstream.service.dto.MarkToMarketDTO;
+import com.osttra.fx.blockstream.service.dto.RateDTO;
+import com.osttra.fx.blockstream.service.dto.RevaluationDTO;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link MarkToMarketBook}.
+ */
+class MarkToMarketBookTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2022, 3, 15);
+
+    private static final String[] PARTIES = { "BANK-A", "BANK-B", "FUND-C", "CORP-D" };
+
+    private static final String[] CURRENCIES = { "EUR", "USD", "GBP", "JPY", "CHF" };
+
+    private final CurrencyRegistry currencies = new CurrencyRegistry(mock(CurrenciesCache.class));
+
+    private final RateMatrixService rateMatrixService = new RateMatrixService(currencies, new ApplicationProperties());
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @BeforeEach
+    void setUp() {
+        updateRates("1.25", "150", "1.5", "1.1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void valuesTradesAtTheMarketRate() {
+        MarkToMarketBook book = new MarkToMarketBook(currencies, rateMatrixService, TODAY);
+        book.apply(trade("1", 0L, "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY));
+        book.apply(trade("2", 0L, "BANK-A", "EUR", "JPY", "100", null, 180.0, TODAY));
+        book.apply(trade("3", 0L, "BANK-A", "JPY", "EUR", "18000", "100", 180.0, TODAY));
+
+        MarkToMarketDTO eurUsd = find(book, "BANK-A", "EUR", "USD");
+        assertThat(eurUsd.getBaseAmount()).isEqualByComparingTo("100");
+        assertThat(eurUsd.getQuoteAmount()).isEqualByComparingTo("-120");
+        assertThat(eurUsd.getRate()).isEqualByComparingTo("1.25");
+        assertThat(eurUsd.getPnl().doubleValue()).isCloseTo(5, within(1e-9));
+        assertThat(eurUsd.getReportingCurrency()).isEqualTo("USD");
+        assertThat(eurUsd.getReportingPnl().doubleValue()).isCloseTo(5, within(1e-9));
+
+        // Bought 100 EUR for 18000 JPY, then sold them back for 18000 JPY: flat, whatever the rate.
+        MarkToMarketDTO eurJpy = find(book, "BANK-A", "EUR", "JPY");
+        assertThat(eurJpy.getBaseAmount().doubleValue()).isCloseTo(0, within(1e-9));
+        assertThat(eurJpy.getPnl().doubleValue()).isCloseTo(0, within(1e-6));
+        assertThat(eurJpy.getTradeCount()).isEqualTo(2);
+
+        book.remove("2");
+        eurJpy = find(book, "BANK-A", "EUR", "JPY");
+        assertThat(eurJpy.getPnl().doubleValue()).isCloseTo(-750, within(1e-6));
+        assertThat(eurJpy.getReportingPnl().doubleValue()).isCloseTo(-5, within(1e-9));
+        assertThat(book.find("BANK-B")).isEmpty();
+    }
+
+    @Test
+    void revaluesTheBucketsOfTheCurrenciesWhoseRatesChanged() {
+        MarkToMarketBook book = new MarkToMarketBook(currencies, rateMatrixService, TODAY);
+        book.apply(trade("1", 0L, "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY));
+        book.apply(trade("2", 0L, "BANK-A", "GBP", "USD", "100", "150", 1.5, TODAY));
+
+        rateMatrixService.update(List.of(new RateDTO("EUR", "USD", new BigDecimal("1.3"), null)));
+        assertThat(book.revalue(rateMatrixService.getMatrix().changedCurrencies())).isEqualTo(1);
+
+        assertThat(find(book, "BANK-A", "EUR", "USD").getPnl().doubleValue()).isCloseTo(10, within(1e-9));
+        assertThat(find(book, "BANK-A", "GBP", "USD").getPnl().doubleValue()).isCloseTo(0, within(1e-9));
+    }
+
+    @Test
+    void settlesTradesPastTheirValueDate() {
+        MarkToMarketBook book = new MarkToMarketBook(currencies, rateMatrixService, TODAY);
+        book.apply(trade("1", 0L, "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY.minusDays(1)));
+        book.apply(trade("2", 0L, "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY));
+        book.apply(trade("3", 0L, "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY.plusDays(1)));
+        book.apply(trade("4", 0L, "BANK-A", "EUR", "USD", "100", "120", 1.2, null));
+
+        assertThat(find(book, "BANK-A", "EUR", "USD").getTradeCount()).isEqualTo(3);
+
+        RevaluationDTO revaluation = book.revalueAll(TODAY.plusDays(1), pool);
+        assertThat(revaluation.getTradeCount()).isEqualTo(2);
+        assertThat(find(book, "BANK-A", "EUR", "USD").getTradeCount()).isEqualTo(2);
+
+        // The business date does not move back.
+        revaluation = book.revalueAll(TODAY, pool);
+        assertThat(revaluation.getTradeCount()).isEqualTo(3);
+        assertThat(find(book, "BANK-A", "EUR", "USD").getTradeCount()).isEqualTo(2);
+        book.apply(trade("2", 1L, "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY));
+        assertThat(find(book, "BANK-A", "EUR", "USD").getTradeCount()).isEqualTo(2);
+    }
+
+    @Test
+    void tombstonesKeepRemovedTradesOut() {
+        MarkToMarketBook book = new MarkToMarketBook(currencies, rateMatrixService, TODAY);
+        book.keepTombstones();
+        book.apply(trade("1", 0L, "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY));
+        book.remove("1");
+        book.apply(trade("1", 0L, "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY));
+        book.stopKeepingTombstones();
+
+        assertThat(book.find(null)).isEmpty();
+    }
+
+    @Test
+    void incrementalProfitAndLossMatchesFullRevaluation() {
+        Random random = new Random(42);
+        MarkToMarketBook book = new MarkToMarketBook(currencies, rateMatrixService, TODAY);
+        Map<String, SmartTrade> stored = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            int operation = random.nextInt(100);
+            if (operation < 60 || ids.isEmpty()) {
+                String id = Integer.toString(i);
+                stored.put(id, randomTrade(random, id, 0L));
+                ids.add(id);
+                book.apply(stored.get(id));
+            } else if (operation < 80) {
+                String id = ids.get(random.nextInt(ids.size()));
+                stored.put(id, randomTrade(random, id, stored.get(id).getVersion() + 1));
+                book.apply(stored.get(id));
+            } else if (operation < 95) {
+                String id = ids.remove(random.nextInt(ids.size()));
+                stored.remove(id);
+                book.remove(id);
+            } else {
+                updateRates(rate(random), rate(random), rate(random), rate(random));
+                book.revalue(rateMatrixService.getMatrix().changedCurrencies());
+            }
+        }
+
+        Map<String, MarkToMarketDTO> live = new HashMap<>();
+        book.find(null).forEach(position -> live.put(key(position), position));
+        RevaluationDTO revaluation = book.revalueAll(TODAY, pool);
+
+        assertThat(revaluation.getTradeCount()).isEqualTo(stored.size());
+        assertThat(revaluation.getPositions()).hasSameSizeAs(live.values());
+        for (MarkToMarketDTO position : revaluation.getPositions()) {
+            MarkToMarketDTO livePosition = live.get(key(position));
+            assertThat(livePosition.getTradeCount()).isEqualTo(position.getTradeCount());
+            assertThat(livePosition.getRate()).isEqualByComparingTo(position.getRate());
+            assertThat(livePosition.getPnl().doubleValue()).isCloseTo(position.getPnl().doubleValue(), within(1e-3));
+        }
+    }
+
+    private void updateRates(String eurUsd, String usdJpy, String gbpUsd, String chfUsd) {
+        rateMatrixService.update(
+            List.of(
+                new RateDTO("EUR", "USD", new BigDecimal(eurUsd), null),
+                new RateDTO("USD", "JPY", new BigDecimal(usdJpy), null),
+                new RateDTO("GBP", "USD", new BigDecimal(gbpUsd), null),
+                new RateDTO("CHF", "USD", new BigDecimal(chfUsd), null)
+            )
+        );
+    }
+
+    private static String rate(Random random) {
+        return BigDecimal.valueOf(50 + random.nextInt(100), 2).toPlainString();
+    }
+
+    private static MarkToMarketDTO find(MarkToMarketBook book, String tradingParty, String baseCurrency, String quoteCurrency) {
+        return book
+            .find(tradingParty)
+            .stream()
+            .filter(position -> position.getBaseCurrency().equals(baseCurrency) && position.getQuoteCurrency().equals(quoteCurrency))
+            .findFirst()
+            .orElse(null);
+    }
+
+    private static String key(MarkToMarketDTO position) {
+        return position.getTradingParty() + '/' + position.getBaseCurrency() + '/' + position.getQuoteCurrency();
+    }
+
+    private static SmartTrade randomTrade(Random random, String id, long version) {
+        int buy = random.nextInt(CURRENCIES.length);
+        int sell = (buy + 1 + random.nextInt(CURRENCIES.length - 1)) % CURRENCIES.length;
+        return trade(
+            id,
+            version,
+            PARTIES[random.nextInt(PARTIES.length)],
+            CURRENCIES[buy],
+            CURRENCIES[sell],
+            BigDecimal.valueOf(random.nextInt(1_000_000_00), 2).toPlainString(),
+            BigDecimal.valueOf(random.nextInt(1_000_000_00), 2).toPlainString(),
+            null,
+            TODAY.plusDays(random.nextInt(30))
+        );
+    }
+
+    private static SmartTrade trade(
+        String id,
+        Long version,
+        String tradingParty,
+        String currencyBuy,
+        String currencySell,
+        String amount,
+        String contraAmount,
+        Double rate,
+        LocalDate valueDate
+    ) {
+        return new SmartTrade()
+            .id(id)
+            .version(version)
+            .tradingParty(tradingParty)
+            .counterParty("BANK-Z")
+            .currencyBuy(currencyBuy)
+            .currencySell(currencySell)
+            .amount(amount == null ? null : new BigDecimal(amount))
+            .contraAmount(contraAmount == null ? null : new BigDecimal(contraAmount))
+            .rate(rate)
+            .valueDate(valueDate);
+    }
+}
@@ -0,0 +1,87 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.mockito.Mockito.mock;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
+import com.osttra.fx.blockstream.service.dto.MarkToMarketDTO;
+import com.osttra.fx.blockstream.service.dto.RateDTO;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures loading open trades into an {@link OpenTradeStore}, the heap it leaves behind, and summarizing them with
+ * scans.
+ * <p>
+ * Run the {@code main} method from the test classpath, with the number of trades as argument; it is not part of the
+ * test suite.
+ */
+public class OpenTradeStoreBenchmark {
+
+    private static final String[] CURRENCIES = { "EUR", "USD", "GBP", "JPY", "CHF", "AUD", "CAD", "NZD", "SEK", "NOK" };
+
+    private static final int PARTIES = 200;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int trades = args.length > 0 ? Integer.parseInt(args[0]) : 3_000_000;
+        LocalDate today = LocalDate.now();
+        CurrencyRegistry currencyRegistry = new CurrencyRegistry(mock(CurrenciesCache.class));
+        RateMatrixService rateMatrixService = new RateMatrixService(currencyRegistry, new ApplicationProperties());
+        rateMatrixService.update(
+            List.of(
+                new RateDTO("EUR", "USD", new BigDecimal("1.1"), null),
+                new RateDTO("GBP", "USD", new BigDecimal("1.3"), null),
+                new RateDTO("USD", "JPY", new BigDecimal("140"), null)
+            )
+        );
+        OpenTradeService openTradeService = new OpenTradeService(currencyRegistry, rateMatrixService);
+        Random random = new Random(42);
+        long heapBefore = usedHeap();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < trades; i++) {
+            int buy = random.nextInt(CURRENCIES.length);
+            int sell = (buy + 1 + random.nextInt(CURRENCIES.length - 1)) % CURRENCIES.length;
+            openTradeService.apply(
+                new SmartTrade()
+                    .id(Integer.toString(i))
+                    .version(0L)
+                    .transactionId("TX-" + i)
+                    .tradingParty("PARTY-" + random.nextInt(PARTIES))
+                    .counterParty("BANK")
+                    .direction(random.nextBoolean() ? "BUY" : "SELL")
+                    .currencyBuy(CURRENCIES[buy])
+                    .currencySell(CURRENCIES[sell])
+                    .amount(BigDecimal.valueOf(random.nextInt(1_000_000_00), 2))
+                    .contraAmount(BigDecimal.valueOf(random.nextInt(1_000_000_00), 2))
+                    .valueDate(today.plusDays(random.nextInt(90)))
+            );
+        }
+        System.out.printf("stored %,d trades in %,d ms%n", trades, (System.nanoTime() - start) / 1_000_000);
+        System.out.printf("heap retained: %,d KB%n", (usedHeap() - heapBefore) / 1024);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            List<MarkToMarketDTO> summary = openTradeService.summarize(null);
+            System.out.printf(
+                "summarized %,d trades into %,d positions in %,d ms%n",
+                trades,
+                summary.size(),
+                (System.nanoTime() - start) / 1_000_000
+            );
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
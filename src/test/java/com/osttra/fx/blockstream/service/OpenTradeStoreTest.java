@@ -0,0 +1,231 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
+import com.osttra.fx.blockstream.service.dto.MarkToMarketDTO;
+import com.osttra.fx.blockstream.service.dto.RateDTO;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link OpenTradeStore}.
+ */
+class OpenTradeStoreTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private static final String[] PARTIES = { "BANK-A", "BANK-B", "FUND-C", "CORP-D" };
+
+    private static final String[] CURRENCIES = { "EUR", "USD", "GBP", "JPY", "CHF" };
+
+    private final CurrencyRegistry currencies = new CurrencyRegistry(mock(CurrenciesCache.class));
+
+    @Test
+    void storesTradesAsRecords() {
+        OpenTradeStore store = new OpenTradeStore(currencies);
+        assertThat(store.put(trade("1", 0L, "TX-1", "BANK-A", "EUR", "USD", "100.5", null, 1.2, TODAY))).isTrue();
+
+        Map<String, Object> fields = fields(store, "TX-1");
+        assertThat(fields).containsEntry("pair", currencies.pairOf("EUR", "USD"));
+        assertThat(fields).containsEntry("tradingParty", "BANK-A");
+        assertThat(fields).containsEntry("direction", OpenTradeStore.BUY);
+        assertThat(fields).containsEntry("amount", 1_005_000L);
+        assertThat(fields).containsEntry("contraAmount", 1_206_000L);
+        assertThat(fields).containsEntry("rate", 1.2);
+        assertThat(fields).containsEntry("valueDay", (int) TODAY.toEpochDay());
+
+        // A later version replaces the record, and its transactionId; an earlier one does not.
+        assertThat(store.put(trade("1", 2L, "TX-2", "BANK-A", "EUR", "USD", "200", "240", 1.2, TODAY))).isTrue();
+        assertThat(store.put(trade("1", 1L, "TX-1", "BANK-A", "EUR", "USD", "300", "360", 1.2, TODAY))).isFalse();
+        assertThat(store.findByTransactionId("TX-1", (pair, party, direction, amount, contra, rate, day) -> {})).isFalse();
+        assertThat(fields(store, "TX-2")).containsEntry("amount", 2_000_000L);
+        assertThat(store.size()).isEqualTo(1);
+
+        assertThat(store.remove("1")).isTrue();
+        assertThat(store.remove("1")).isFalse();
+        assertThat(store.findByTransactionId("TX-2", (pair, party, direction, amount, contra, rate, day) -> {})).isFalse();
+        assertThat(store.size()).isZero();
+
+        assertThatThrownBy(() -> store.put(trade("2", 0L, null, "BANK-A", "EUR", "EUR", "1", "1", 1.0, TODAY)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> store.put(trade("3", 0L, null, "BANK-A", "EUR", "USD", "1e20", "1", 1.0, TODAY)))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void indexesManyTradesAndLongKeys() {
+        OpenTradeStore store = new OpenTradeStore(currencies);
+        String longPrefix = "A-TRANSACTION-ID-FAR-TOO-LONG-FOR-ITS-FIXED-WIDTH-FIELD-";
+        for (int i = 0; i < 200_000; i++) {
+            String transactionId = i % 10 == 0 ? longPrefix + i : "TX-" + i;
+            store.put(trade("TRADE-" + i, 0L, transactionId, PARTIES[i % PARTIES.length], "EUR", "USD", "1", "1", 1.0, TODAY));
+        }
+        for (int i = 0; i < 200_000; i += 2) {
+            assertThat(store.remove("TRADE-" + i)).isTrue();
+        }
+        assertThat(store.size()).isEqualTo(100_000);
+        for (int i = 0; i < 200_000; i++) {
+            String transactionId = i % 10 == 0 ? longPrefix + i : "TX-" + i;
+            boolean found = store.findByTransactionId(transactionId, (pair, party, direction, amount, contra, rate, day) -> {});
+            assertThat(found).as(transactionId).isEqualTo(i % 2 == 1);
+        }
+        // Freed slots are reused.
+        store.put(trade("NEW", 0L, longPrefix + "NEW", "BANK-A", "EUR", "USD", "1", "1", 1.0, TODAY));
+        assertThat(fields(store, longPrefix + "NEW")).containsEntry("tradingParty", "BANK-A");
+    }
+
+    @Test
+    void tombstonesAndSettlementRemoveTrades() {
+        OpenTradeStore store = new OpenTradeStore(currencies);
+        store.keepTombstones();
+        store.put(trade("1", 0L, "TX-1", "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY));
+        store.remove("1");
+        store.remove("2");
+        assertThat(store.put(trade("1", 0L, "TX-1", "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY))).isFalse();
+        assertThat(store.put(trade("2", 5L, "TX-2", "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY))).isFalse();
+        store.stopKeepingTombstones();
+        assertThat(store.size()).isZero();
+
+        store.put(trade("3", 0L, "TX-3", "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY.minusDays(1)));
+        store.put(trade("4", 0L, "TX-4", "BANK-A", "EUR", "USD", "100", "120", 1.2, TODAY));
+        store.put(trade("5", 0L, "TX-5", "BANK-A", "EUR", "USD", "100", "120", 1.2, null));
+        assertThat(store.removeSettled(TODAY.toEpochDay())).isEqualTo(1);
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.findByTransactionId("TX-3", (pair, party, direction, amount, contra, rate, day) -> {})).isFalse();
+    }
+
+    @Test
+    void scansWithoutAllocating() {
+        OpenTradeStore store = new OpenTradeStore(currencies);
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            store.put(randomTrade(random, Integer.toString(i)));
+        }
+        long[] sum = new long[1];
+        OpenTradeStore.TradeVisitor visitor = (pair, party, direction, amount, contra, rate, day) -> sum[0] += amount;
+        for (int i = 0; i < 20; i++) {
+            store.scan(visitor);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        store.scan(visitor);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertThat(sum[0]).isNotZero();
+        assertThat(allocated).isLessThan(1024);
+    }
+
+    @Test
+    void summaryMatchesTheMarkToMarketBook() {
+        RateMatrixService rateMatrixService = new RateMatrixService(currencies, new ApplicationProperties());
+        rateMatrixService.update(
+            List.of(
+                new RateDTO("EUR", "USD", new BigDecimal("1.25"), null),
+                new RateDTO("USD", "JPY", new BigDecimal("150"), null),
+                new RateDTO("GBP", "USD", new BigDecimal("1.5"), null),
+                new RateDTO("CHF", "USD", new BigDecimal("1.1"), null)
+            )
+        );
+        OpenTradeService openTradeService = new OpenTradeService(currencies, rateMatrixService);
+        MarkToMarketBook book = new MarkToMarketBook(currencies, rateMatrixService, TODAY);
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            SmartTrade trade = randomTrade(random, Integer.toString(random.nextInt(10_000)));
+            openTradeService.apply(trade);
+            book.apply(trade);
+        }
+
+        Map<String, MarkToMarketDTO> expected = new HashMap<>();
+        book.find(null).forEach(position -> expected.put(key(position), position));
+        List<MarkToMarketDTO> summary = openTradeService.summarize(null);
+        assertThat(summary).hasSameSizeAs(expected.values());
+        for (MarkToMarketDTO position : summary) {
+            MarkToMarketDTO bookPosition = expected.get(key(position));
+            assertThat(position.getTradeCount()).isEqualTo(bookPosition.getTradeCount());
+            assertThat(position.getBaseAmount().doubleValue()).isCloseTo(bookPosition.getBaseAmount().doubleValue(), within(1e-3));
+            assertThat(position.getPnl().doubleValue()).isCloseTo(bookPosition.getPnl().doubleValue(), within(1e-3));
+        }
+        assertThat(openTradeService.summarize("BANK-A")).allMatch(position -> position.getTradingParty().equals("BANK-A"));
+        assertThat(openTradeService.summarize("NOBODY")).isEmpty();
+    }
+
+    private static Map<String, Object> fields(OpenTradeStore store, String transactionId) {
+        Map<String, Object> fields = new HashMap<>();
+        boolean found = store.findByTransactionId(
+            transactionId,
+            (pair, party, direction, amount, contra, rate, day) -> {
+                fields.put("pair", pair);
+                fields.put("tradingParty", store.partyName(party));
+                fields.put("direction", direction);
+                fields.put("amount", amount);
+                fields.put("contraAmount", contra);
+                fields.put("rate", rate);
+                fields.put("valueDay", day);
+            }
+        );
+        assertThat(found).as(transactionId).isTrue();
+        return fields;
+    }
+
+    private static String key(MarkToMarketDTO position) {
+        return position.getTradingParty() + '/' + position.getBaseCurrency() + '/' + position.getQuoteCurrency();
+    }
+
+    private static SmartTrade randomTrade(Random random, String id) {
+        int buy = random.nextInt(CURRENCIES.length);
+        int sell = (buy + 1 + random.nextInt(CURRENCIES.length - 1)) % CURRENCIES.length;
+        return trade(
+            id,
+            (long) random.nextInt(1000),
+            "TX-" + id,
+            PARTIES[random.nextInt(PARTIES.length)],
+            CURRENCIES[buy],
+            CURRENCIES[sell],
+            BigDecimal.valueOf(random.nextInt(1_000_000_00), 2).toPlainString(),
+            BigDecimal.valueOf(random.nextInt(1_000_000_00), 2).toPlainString(),
+            null,
+            TODAY.plusDays(random.nextInt(30))
+        );
+    }
+
+    private static SmartTrade trade(
+        String id,
+        Long version,
+        String transactionId,
+        String tradingParty,
+        String currencyBuy,
+        String currencySell,
+        String amount,
+        String contraAmount,
+        Double rate,
+        LocalDate valueDate
+    ) {
+        return new SmartTrade()
+            .id(id)
+            .version(version)
+            .transactionId(transactionId)
+            .tradingParty(tradingParty)
+            .counterParty("BANK-Z")
+            .direction("BUY")
+            .currencyBuy(currencyBuy)
+            .currencySell(currencySell)
+            .amount(amount == null ? null : new BigDecimal(amount))
+            .contraAmount(contraAmount == null ? null : new BigDecimal(contraAmount))
+            .rate(rate)
+            .valueDate(valueDate);
+    }
+}
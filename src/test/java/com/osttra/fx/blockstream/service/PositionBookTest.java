@@ -0,0 +1,157 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
+import com.osttra.fx.blockstream.service.dto.PositionDTO;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link PositionBook}.
+ */
+class PositionBookTest {
+
+    private static final String[] PARTIES = { "BANK-A", "BANK-B", "FUND-C", "CORP-D" };
+
+    private static final String[] CURRENCIES = { "EUR", "USD", "GBP", "JPY", "CHF" };
+
+    private final CurrencyRegistry currencies = new CurrencyRegistry(mock(CurrenciesCache.class));
+
+    @Test
+    void nettingAcrossDirections() {
+        PositionBook book = new PositionBook(currencies);
+        book.apply(trade("1", 0L, "BANK-A", "BANK-B", "EUR", "USD", "100", "110"));
+        book.apply(trade("2", 0L, "BANK-A", "BANK-B", "USD", "EUR", "55", "50"));
+
+        PositionDTO position = book.find("BANK-A", "BANK-B", "USD", "EUR");
+        assertThat(position.getBaseCurrency()).isEqualTo("EUR");
+        assertThat(position.getQuoteCurrency()).isEqualTo("USD");
+        assertThat(position.getBaseAmount()).isEqualByComparingTo("50");
+        assertThat(position.getQuoteAmount()).isEqualByComparingTo("-55");
+        assertThat(position.getTradeCount()).isEqualTo(2);
+        assertThat(book.find("BANK-B", "BANK-A")).isEmpty();
+    }
+
+    @Test
+    void updatesAndRemovals() {
+        PositionBook book = new PositionBook(currencies);
+        book.apply(trade("1", 0L, "BANK-A", "BANK-B", "EUR", "USD", "100", "110"));
+        book.apply(trade("1", 1L, "BANK-A", "FUND-C", "EUR", "USD", "200", "220"));
+        // A stale copy of the trade is ignored.
+        book.apply(trade("1", 0L, "BANK-A", "BANK-B", "EUR", "USD", "100", "110"));
+
+        assertThat(book.find("BANK-A", "BANK-B")).isEmpty();
+        assertThat(book.find("BANK-A", "FUND-C", "EUR", "USD").getBaseAmount()).isEqualByComparingTo("200");
+
+        book.remove("1");
+        assertThat(book.find(null, null)).isEmpty();
+    }
+
+    @Test
+    void tombstonesKeepRemovedTradesOut() {
+        PositionBook book = new PositionBook(currencies);
+        book.keepTombstones();
+        book.apply(trade("1", 0L, "BANK-A", "BANK-B", "EUR", "USD", "100", "110"));
+        book.remove("1");
+        // The bootstrap read the trade before it was removed.
+        book.apply(trade("1", 0L, "BANK-A", "BANK-B", "EUR", "USD", "100", "110"));
+        book.stopKeepingTombstones();
+
+        assertThat(book.find(null, null)).isEmpty();
+    }
+
+    @Test
+    void incrementalPositionsMatchRebuiltPositions() {
+        Random random = new Random(42);
+        PositionBook incremental = new PositionBook(currencies);
+        Map<String, SmartTrade> stored = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            int operation = random.nextInt(10);
+            if (operation < 5 || ids.isEmpty()) {
+                String id = Integer.toString(i);
+                SmartTrade smartTrade = randomTrade(random, id, 0L);
+                stored.put(id, smartTrade);
+                ids.add(id);
+                incremental.apply(smartTrade);
+            } else if (operation < 8) {
+                String id = ids.get(random.nextInt(ids.size()));
+                SmartTrade smartTrade = randomTrade(random, id, stored.get(id).getVersion() + 1);
+                stored.put(id, smartTrade);
+                incremental.apply(smartTrade);
+            } else {
+                String id = ids.remove(random.nextInt(ids.size()));
+                stored.remove(id);
+                incremental.remove(id);
+            }
+        }
+
+        PositionBook rebuilt = new PositionBook(currencies);
+        stored.values().forEach(rebuilt::apply);
+
+        assertThat(rebuilt.find(null, null)).isNotEmpty();
+        assertThat(incremental.differencesFrom(rebuilt)).isEmpty();
+        assertThat(rebuilt.differencesFrom(incremental)).isEmpty();
+    }
+
+    @Test
+    void concurrentWritersMatchRebuiltPositions() {
+        PositionBook incremental = new PositionBook(currencies);
+        List<SmartTrade> smartTrades = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            smartTrades.add(randomTrade(random, Integer.toString(i), 0L));
+        }
+        IntStream.range(0, smartTrades.size()).parallel().forEach(i -> incremental.apply(smartTrades.get(i)));
+
+        PositionBook rebuilt = new PositionBook(currencies);
+        smartTrades.forEach(rebuilt::apply);
+
+        assertThat(incremental.differencesFrom(rebuilt)).isEmpty();
+    }
+
+    private static SmartTrade randomTrade(Random random, String id, long version) {
+        int buy = random.nextInt(CURRENCIES.length);
+        int sell = (buy + 1 + random.nextInt(CURRENCIES.length - 1)) % CURRENCIES.length;
+        return trade(
+            id,
+            version,
+            PARTIES[random.nextInt(PARTIES.length)],
+            PARTIES[random.nextInt(PARTIES.length)],
+            CURRENCIES[buy],
+            CURRENCIES[sell],
+            BigDecimal.valueOf(random.nextInt(1_000_000_00), 2).toPlainString(),
+            BigDecimal.valueOf(random.nextInt(1_000_000_00), 2).toPlainString()
+        );
+    }
+
+    private static SmartTrade trade(
+        String id,
+        Long version,
+        String tradingParty,
+        String counterParty,
+        String currencyBuy,
+        String currencySell,
+        String amount,
+        String contraAmount
+    ) {
+        return new SmartTrade()
+            .id(id)
+            .version(version)
+            .tradingParty(tradingParty)
+            .counterParty(counterParty)
+            .currencyBuy(currencyBuy)
+            .currencySell(currencySell)
+            .amount(new BigDecimal(amount))
+            .contraAmount(new BigDecimal(contraAmount));
+    }
+}
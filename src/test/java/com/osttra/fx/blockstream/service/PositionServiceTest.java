@@ -0,0 +1,121 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
+import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import com.osttra.fx.blockstream.service.dto.MarkToMarketDTO;
+import com.osttra.fx.blockstream.service.dto.PositionDTO;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Unit tests for {@link PositionService}.
+ */
+class PositionServiceTest {
+
+    private final CurrencyRegistry currencies = new CurrencyRegistry(mock(CurrenciesCache.class));
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private final RateMatrixService rateMatrixService = new RateMatrixService(currencies, applicationProperties);
+
+    private final MarkToMarketService markToMarketService = new MarkToMarketService(currencies, rateMatrixService, applicationProperties);
+
+    private final OpenTradeService openTradeService = new OpenTradeService(currencies, rateMatrixService);
+
+    private final TradeSnapshotService tradeSnapshotService = mock(TradeSnapshotService.class);
+
+    private final PositionService positionService = new PositionService(
+        mock(SmartTradeRepository.class),
+        currencies,
+        markToMarketService,
+        openTradeService,
+        tradeSnapshotService
+    );
+
+    @AfterEach
+    void stop() {
+        markToMarketService.stop();
+    }
+
+    @Test
+    void tradeDeletedDuringTheCatchUpStaysDeleted() {
+        SmartTrade trade = trade("1", "TX-1");
+        when(tradeSnapshotService.restore(any()))
+            .thenAnswer(invocation -> {
+                invocation.<Consumer<SmartTrade>>getArgument(0).accept(trade("2", "TX-2"));
+                return Mono.just(42L);
+            });
+        AtomicReference<Consumer<SmartTrade>> replay = new AtomicReference<>();
+        Sinks.One<Long> caughtUp = Sinks.one();
+        when(tradeSnapshotService.catchUp(anyLong(), any(), any()))
+            .thenAnswer(invocation -> {
+                replay.set(invocation.getArgument(1));
+                return caughtUp.asMono();
+            });
+
+        positionService.bootstrap();
+        assertThat(positionService.isReady()).isTrue();
+        assertThat(openTradeService.isReady()).isTrue();
+        assertThat(markToMarketService.isReady()).isTrue();
+
+        // Inserted before the catch-up ends, deleted live, then replayed from its insert event.
+        positionService.apply(trade);
+        positionService.remove("1");
+        replay.get().accept(trade);
+        caughtUp.tryEmitValue(1L);
+
+        assertThat(positionService.find("BANK-A", null)).extracting(PositionDTO::getTradeCount).containsExactly(1);
+        assertThat(markToMarketService.find("BANK-A")).extracting(MarkToMarketDTO::getTradeCount).containsExactly(1);
+        assertThat(openTradeService.summarize("BANK-A")).extracting(MarkToMarketDTO::getTradeCount).containsExactly(1);
+
+        // Removed trades are forgotten once caught up.
+        positionService.remove("2");
+        positionService.apply(trade("2", "TX-2"));
+        assertThat(positionService.find("BANK-A", null)).extracting(PositionDTO::getTradeCount).containsExactly(1);
+    }
+
+    @Test
+    void tradeInACurrencyBeyondTheRegistryIsLeftOut() {
+        SmartTrade trade = trade("1", "TX-1");
+        positionService.apply(trade);
+        for (int i = currencies.size(); i < CurrencyRegistry.CAPACITY; i++) {
+            currencies.idOf("CURRENCY-" + i);
+        }
+
+        positionService.apply(trade("1", "TX-1").version(1L).currencySell("CHF"));
+
+        assertThat(positionService.find("BANK-A", null)).isEmpty();
+        assertThat(markToMarketService.find("BANK-A")).isEmpty();
+        assertThat(openTradeService.summarize("BANK-A")).isEmpty();
+    }
+
+    private static SmartTrade trade(String id, String transactionId) {
+        return new SmartTrade()
+            .id(id)
+            .version(0L)
+            .transactionId(transactionId)
+            .tradingParty("BANK-A")
+            .counterParty("BANK-B")
+            .direction("BUY")
+            .currencyBuy("EUR")
+            .currencySell("USD")
+            .amount(new BigDecimal("100"))
+            .contraAmount(new BigDecimal("110"))
+            .rate(1.1)
+            .valueDate(LocalDate.now().plusDays(2));
+    }
+}
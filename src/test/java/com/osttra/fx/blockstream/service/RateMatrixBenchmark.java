@@ -0,0 +1,102 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.mockito.Mockito.mock;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
+import com.osttra.fx.blockstream.service.dto.RateDTO;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the cross-rate lookups of {@link RateMatrixService} made by concurrent readers while a writer keeps updating
+ * the rates.
+ * <p>
+ * Reports the lookups and updates per second. Run the {@code main} method from the test classpath; it is not part of
+ * the test suite.
+ */
+public class RateMatrixBenchmark {
+
+    private static final int CURRENCIES = 150;
+
+    private static final int RATES_PER_UPDATE = 20;
+
+    private static final long DURATION_SECONDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int readers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() - 1;
+        CurrencyRegistry currencyRegistry = new CurrencyRegistry(mock(CurrenciesCache.class));
+        RateMatrixService rateMatrixService = new RateMatrixService(currencyRegistry, new ApplicationProperties());
+        String[] codes = new String[CURRENCIES];
+        List<RateDTO> rates = new ArrayList<>(CURRENCIES);
+        Random random = new Random(42);
+        for (int i = 0; i < CURRENCIES; i++) {
+            codes[i] = String.valueOf(new char[] { (char) ('A' + i / 26 % 26), (char) ('A' + i % 26), 'X' });
+            rates.add(new RateDTO(codes[i], "USD", BigDecimal.valueOf(0.5 + random.nextDouble()), null));
+        }
+        rateMatrixService.update(rates);
+        int[] ids = new int[CURRENCIES];
+        for (int i = 0; i < CURRENCIES; i++) {
+            ids[i] = currencyRegistry.find(codes[i]);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder lookups = new LongAdder();
+        LongAdder updates = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            long seed = r;
+            threads.add(
+                new Thread(() -> {
+                    Random readerRandom = new Random(seed);
+                    double sum = 0;
+                    long count = 0;
+                    while (running.get()) {
+                        RateMatrix matrix = rateMatrixService.getMatrix();
+                        for (int i = 0; i < 1000; i++) {
+                            sum += matrix.rate(ids[readerRandom.nextInt(CURRENCIES)], ids[readerRandom.nextInt(CURRENCIES)]);
+                        }
+                        count += 1000;
+                    }
+                    lookups.add(count);
+                    if (sum == 0) {
+                        System.out.println("Unexpected sum");
+                    }
+                })
+            );
+        }
+        threads.add(
+            new Thread(() -> {
+                Random writerRandom = new Random(-1);
+                while (running.get()) {
+                    List<RateDTO> update = new ArrayList<>(RATES_PER_UPDATE);
+                    for (int i = 0; i < RATES_PER_UPDATE; i++) {
+                        String code = codes[writerRandom.nextInt(CURRENCIES)];
+                        update.add(new RateDTO(code, "USD", BigDecimal.valueOf(0.5 + writerRandom.nextDouble()), null));
+                    }
+                    rateMatrixService.update(update);
+                    updates.increment();
+                }
+            })
+        );
+
+        threads.forEach(Thread::start);
+        TimeUnit.SECONDS.sleep(DURATION_SECONDS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.printf(
+            "%d readers: %,d lookups/s, %,d updates/s of %d rates%n",
+            readers,
+            lookups.sum() / DURATION_SECONDS,
+            updates.sum() / DURATION_SECONDS,
+            RATES_PER_UPDATE
+        );
+    }
+}
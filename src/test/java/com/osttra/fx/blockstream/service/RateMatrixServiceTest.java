@@ -0,0 +1,118 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.Currencies;
+import com.osttra.fx.blockstream.repository.CurrenciesCache;
+import com.osttra.fx.blockstream.service.dto.CurrencyConversionDTO;
+import com.osttra.fx.blockstream.service.dto.RateDTO;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+/**
+ * Unit tests for {@link RateMatrixService}.
+ */
+class RateMatrixServiceTest {
+
+    private final CurrenciesCache currenciesCache = mock(CurrenciesCache.class);
+
+    private final CurrencyRegistry currencyRegistry = new CurrencyRegistry(currenciesCache);
+
+    private final RateMatrixService rateMatrixService = new RateMatrixService(currencyRegistry, new ApplicationProperties());
+
+    @BeforeEach
+    void setUp() {
+        rateMatrixService.update(List.of(rate("EUR", "USD", "1.25"), rate("USD", "JPY", "150"), rate("GBP", "USD", "1.5")));
+    }
+
+    @Test
+    void triangulatesThroughThePivotCurrency() {
+        assertThat(rate("EUR", "JPY")).isCloseTo(187.5, within(1e-9));
+        assertThat(rate("JPY", "EUR")).isCloseTo(1 / 187.5, within(1e-12));
+        assertThat(rate("GBP", "EUR")).isCloseTo(1.2, within(1e-12));
+        assertThat(rate("USD", "USD")).isEqualTo(1.0);
+        assertThat(rateMatrixService.findRate("EUR", "CHF")).isNull();
+        assertThat(rateMatrixService.findRate("EUR", "XXX")).isNull();
+    }
+
+    @Test
+    void prefersTheRatesQuotedDirectly() {
+        rateMatrixService.update(List.of(rate("EUR", "GBP", "0.8")));
+
+        assertThat(rate("EUR", "GBP")).isEqualTo(0.8);
+        assertThat(rate("GBP", "EUR")).isCloseTo(1.25, within(1e-12));
+
+        rateMatrixService.update(List.of(rate("GBP", "EUR", "1.3")));
+
+        assertThat(rate("GBP", "EUR")).isEqualTo(1.3);
+        assertThat(rate("EUR", "GBP")).isCloseTo(1 / 1.3, within(1e-12));
+    }
+
+    @Test
+    void leavesEarlierSnapshotsUnchanged() {
+        RateMatrix before = rateMatrixService.getMatrix();
+
+        rateMatrixService.update(List.of(rate("EUR", "USD", "2"), rate("CHF", "USD", "1.1")));
+        RateMatrix after = rateMatrixService.getMatrix();
+
+        int eur = currencyRegistry.find("EUR");
+        int usd = currencyRegistry.find("USD");
+        int chf = currencyRegistry.find("CHF");
+        assertThat(before.rate(eur, usd)).isEqualTo(1.25);
+        assertThat(before.rate(chf, usd)).isNaN();
+        assertThat(after.rate(eur, usd)).isEqualTo(2.0);
+        assertThat(after.rate(chf, usd)).isEqualTo(1.1);
+        assertThat(after.getVersion()).isEqualTo(before.getVersion() + 1);
+    }
+
+    @Test
+    void convertsWithOneSnapshot() {
+        List<CurrencyConversionDTO> conversions = rateMatrixService.convert(
+            List.of(new CurrencyConversionDTO("GBP", "EUR", new BigDecimal("100")), new CurrencyConversionDTO("EUR", "CHF", BigDecimal.ONE))
+        );
+
+        assertThat(conversions.get(0).getConvertedAmount()).isEqualByComparingTo("120");
+        assertThat(conversions.get(0).getRate()).isEqualByComparingTo("1.2");
+        assertThat(conversions.get(1).getRate()).isNull();
+        assertThat(conversions.get(1).getConvertedAmount()).isNull();
+    }
+
+    @Test
+    void updatesOnlyTheRatesOfKnownCurrencies() {
+        Set<String> known = Set.of("EUR", "USD", "CHF");
+        when(currenciesCache.findByCurrencyCode(anyString()))
+            .thenAnswer(invocation -> {
+                String code = invocation.getArgument(0);
+                return known.contains(code) ? Mono.just(new Currencies().currencyCode(code)) : Mono.empty();
+            });
+        long version = rateMatrixService.getMatrix().getVersion();
+
+        assertThatThrownBy(() -> rateMatrixService.updateKnown(List.of(rate("CHF", "USD", "1.1"), rate("ZZZ", "EUR", "2"))).block())
+            .isInstanceOf(UnknownCurrencyException.class)
+            .hasMessageContaining("ZZZ");
+        assertThat(currencyRegistry.find("ZZZ")).isEqualTo(-1);
+        assertThat(rateMatrixService.getMatrix().getVersion()).isEqualTo(version);
+
+        assertThat(rateMatrixService.updateKnown(List.of(rate("CHF", "USD", "1.1"))).block(Duration.ofSeconds(5))).isEqualTo(version + 1);
+        assertThat(rate("CHF", "USD")).isEqualTo(1.1);
+    }
+
+    private double rate(String base, String quote) {
+        return rateMatrixService.findRate(base, quote).getRate().doubleValue();
+    }
+
+    private static RateDTO rate(String base, String quote, String rate) {
+        return new RateDTO(base, quote, new BigDecimal(rate), null);
+    }
+}
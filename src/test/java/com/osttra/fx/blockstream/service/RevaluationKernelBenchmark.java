@@ -0,0 +1,89 @@
+package com.osttra.fx.blockstream.service;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+/**
+ * Compares summing the values of trades grouped by bucket with {@link BigDecimal}s, as the entities hold them, with the
+ * scalar {@link RevaluationKernel} and with the kernel selected for this JVM.
+ * <p>
+ * Reports the time per trade. Run the {@code main} method from the test classpath, built with the {@code vector} Maven
+ * profile and with {@code --add-modules jdk.incubator.vector} to measure the vector kernel; it is not part of the test
+ * suite.
+ */
+public class RevaluationKernelBenchmark {
+
+    private static final int TRADES = 2_000_000;
+
+    private static final int GROUPS = 1_000;
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        BigDecimal[] decimalBaseAmounts = new BigDecimal[TRADES];
+        BigDecimal[] decimalQuoteAmounts = new BigDecimal[TRADES];
+        double[] baseAmounts = new double[TRADES];
+        double[] quoteAmounts = new double[TRADES];
+        for (int i = 0; i < TRADES; i++) {
+            decimalBaseAmounts[i] = BigDecimal.valueOf(random.nextInt(200_000_000) - 100_000_000, 2);
+            decimalQuoteAmounts[i] = BigDecimal.valueOf(random.nextInt(200_000_000) - 100_000_000, 2);
+            baseAmounts[i] = decimalBaseAmounts[i].doubleValue();
+            quoteAmounts[i] = decimalQuoteAmounts[i].doubleValue();
+        }
+        double[] rates = new double[GROUPS];
+        for (int group = 0; group < GROUPS; group++) {
+            rates[group] = 0.5 + random.nextDouble();
+        }
+        RevaluationKernel scalar = new ScalarRevaluationKernel();
+        RevaluationKernel selected = RevaluationKernel.create();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round == ROUNDS - 1;
+
+            long start = System.nanoTime();
+            BigDecimal decimalTotal = BigDecimal.ZERO;
+            for (int group = 0; group < GROUPS; group++) {
+                BigDecimal rate = BigDecimal.valueOf(rates[group]);
+                BigDecimal value = BigDecimal.ZERO;
+                for (int i = from(group); i < from(group + 1); i++) {
+                    value = value.add(decimalBaseAmounts[i].multiply(rate)).add(decimalQuoteAmounts[i]);
+                }
+                decimalTotal = decimalTotal.add(value);
+            }
+            if (report) {
+                print("BigDecimal", System.nanoTime() - start, decimalTotal.doubleValue());
+            }
+
+            start = System.nanoTime();
+            double total = run(scalar, baseAmounts, quoteAmounts, rates);
+            if (report) {
+                print("scalar", System.nanoTime() - start, total);
+            }
+
+            start = System.nanoTime();
+            total = run(selected, baseAmounts, quoteAmounts, rates);
+            if (report) {
+                print(selected.getClass().getSimpleName(), System.nanoTime() - start, total);
+            }
+        }
+    }
+
+    private static double run(RevaluationKernel kernel, double[] baseAmounts, double[] quoteAmounts, double[] rates) {
+        double[] sums = new double[3];
+        double total = 0;
+        for (int group = 0; group < GROUPS; group++) {
+            kernel.accumulate(baseAmounts, quoteAmounts, rates[group], from(group), from(group + 1), sums);
+            total += sums[2];
+        }
+        return total;
+    }
+
+    private static int from(int group) {
+        return (int) ((long) group * TRADES / GROUPS);
+    }
+
+    private static void print(String name, long elapsedNanos, double total) {
+        System.out.printf("%-24s %,8.2f ns/trade (total %.2f)%n", name, (double) elapsedNanos / TRADES, total);
+    }
+}
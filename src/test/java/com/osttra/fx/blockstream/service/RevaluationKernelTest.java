@@ -0,0 +1,117 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the {@link RevaluationKernel}s, against exact sums.
+ * <p>
+ * Run with the {@code vector} Maven profile, the tests also cover the vector kernel.
+ */
+class RevaluationKernelTest {
+
+    private static final int TRADES = 1_000_000;
+
+    private static final double RATE = 1.0857;
+
+    /**
+     * The unit roundoff of a {@code double}.
+     */
+    private static final double UNIT_ROUNDOFF = Math.ulp(1.0) / 2;
+
+    @Test
+    void selectsTheScalarKernelWithoutTheVectorModule() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            assertThat(RevaluationKernel.create()).isInstanceOf(ScalarRevaluationKernel.class);
+        } else {
+            assertThat(RevaluationKernel.create()).isNotInstanceOf(ScalarRevaluationKernel.class);
+        }
+    }
+
+    @Test
+    void scalarKernelErrorIsBounded() {
+        assertErrorIsBounded(new ScalarRevaluationKernel());
+    }
+
+    @Test
+    void selectedKernelErrorIsBounded() {
+        assertErrorIsBounded(RevaluationKernel.create());
+    }
+
+    @Test
+    void kernelsAgree() {
+        double[] baseAmounts = amounts(new Random(1), 1000);
+        double[] quoteAmounts = amounts(new Random(2), 1000);
+        double[] scalar = new double[3];
+        double[] selected = new double[3];
+        // Ranges not aligned on the width of the vectors exercise the scalar tail of the vector kernel.
+        for (int from = 0; from < 9; from++) {
+            for (int to = 990; to <= 1000; to++) {
+                new ScalarRevaluationKernel().accumulate(baseAmounts, quoteAmounts, RATE, from, to, scalar);
+                RevaluationKernel.create().accumulate(baseAmounts, quoteAmounts, RATE, from, to, selected);
+                for (int k = 0; k < 3; k++) {
+                    assertThat(selected[k]).isCloseTo(scalar[k], within(1e-6));
+                }
+            }
+        }
+        RevaluationKernel.create().accumulate(baseAmounts, quoteAmounts, RATE, 500, 500, selected);
+        assertThat(selected).containsExactly(0, 0, 0);
+    }
+
+    private static void assertErrorIsBounded(RevaluationKernel kernel) {
+        Random random = new Random(42);
+        double[] baseAmounts = amounts(random, TRADES);
+        double[] quoteAmounts = amounts(random, TRADES);
+        double[] totals = new double[3];
+        kernel.accumulate(baseAmounts, quoteAmounts, RATE, 0, TRADES, totals);
+
+        BigDecimal rate = new BigDecimal(RATE);
+        BigDecimal base = BigDecimal.ZERO;
+        BigDecimal quote = BigDecimal.ZERO;
+        BigDecimal value = BigDecimal.ZERO;
+        double absoluteAmounts = 0;
+        double absoluteValues = 0;
+        for (int i = 0; i < TRADES; i++) {
+            BigDecimal baseAmount = new BigDecimal(baseAmounts[i]);
+            BigDecimal quoteAmount = new BigDecimal(quoteAmounts[i]);
+            base = base.add(baseAmount);
+            quote = quote.add(quoteAmount);
+            value = value.add(baseAmount.multiply(rate)).add(quoteAmount);
+            absoluteAmounts += Math.abs(baseAmounts[i]) + Math.abs(quoteAmounts[i]);
+            absoluteValues += Math.abs(baseAmounts[i] * RATE) + Math.abs(quoteAmounts[i]);
+        }
+
+        // Summing n terms in any order errs by at most (n - 1) u / (1 - (n - 1) u) times the sum of their magnitudes, and
+        // valuing a trade adds two roundings.
+        double gamma = gamma(TRADES + 2);
+        assertThat(error(totals[0], base)).isLessThanOrEqualTo(gamma * absoluteAmounts);
+        assertThat(error(totals[1], quote)).isLessThanOrEqualTo(gamma * absoluteAmounts);
+        assertThat(error(totals[2], value)).isLessThanOrEqualTo(gamma * absoluteValues);
+
+        // In practice, sums of a million amounts in cents stay exact once rounded to cents.
+        assertThat(BigDecimal.valueOf(totals[0]).setScale(2, RoundingMode.HALF_EVEN)).isEqualTo(base.setScale(2, RoundingMode.HALF_EVEN));
+        assertThat(BigDecimal.valueOf(totals[1]).setScale(2, RoundingMode.HALF_EVEN)).isEqualTo(quote.setScale(2, RoundingMode.HALF_EVEN));
+        assertThat(error(totals[2], value)).isLessThan(0.01);
+    }
+
+    private static double gamma(int n) {
+        return ((n - 1) * UNIT_ROUNDOFF) / (1 - (n - 1) * UNIT_ROUNDOFF);
+    }
+
+    private static double error(double actual, BigDecimal exact) {
+        return new BigDecimal(actual).subtract(exact).abs().doubleValue();
+    }
+
+    private static double[] amounts(Random random, int count) {
+        double[] amounts = new double[count];
+        for (int i = 0; i < count; i++) {
+            amounts[i] = BigDecimal.valueOf(random.nextInt(200_000_000) - 100_000_000, 2).doubleValue();
+        }
+        return amounts;
+    }
+}
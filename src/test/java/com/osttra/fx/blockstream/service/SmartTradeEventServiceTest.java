@@ -0,0 +1,116 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.service.SmartTradeEventService.OverflowStrategy;
+import com.osttra.fx.blockstream.service.dto.SmartTradeEventDTO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.BaseSubscriber;
+
+/**
+ * Unit tests for {@link SmartTradeEventService}.
+ */
+class SmartTradeEventServiceTest {
+
+    private static final int BUFFER_SIZE = 4;
+
+    private SmartTradeEventService smartTradeEventService;
+
+    @BeforeEach
+    void setUp() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getTradeFeed().setBufferSize(BUFFER_SIZE);
+        applicationProperties.getTradeFeed().setChangeStreams(false);
+        smartTradeEventService = new SmartTradeEventService(mock(ReactiveMongoTemplate.class), applicationProperties);
+    }
+
+    @Test
+    void publishesWritesInOrder() {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        smartTradeEventService.subscribe(OverflowStrategy.LATEST).subscribe(subscriber);
+
+        smartTradeEventService.created(new SmartTrade().id("1"));
+        smartTradeEventService.updated(new SmartTrade().id("1"));
+        smartTradeEventService.deleted("1");
+        subscriber.dispose();
+
+        assertThat(subscriber.events)
+            .extracting(SmartTradeEventDTO::getType)
+            .containsExactly(SmartTradeEventDTO.Type.CREATED, SmartTradeEventDTO.Type.UPDATED, SmartTradeEventDTO.Type.DELETED);
+        assertThat(subscriber.events.get(2).getId()).isEqualTo("1");
+        assertThat(subscriber.events.get(2).getSmartTrade()).isNull();
+    }
+
+    @Test
+    void slowSubscriberWithDropStrategyKeepsOldestEvents() {
+        assertThat(idsSeenBySlowSubscriber(OverflowStrategy.DROP)).containsExactly("0", "1", "2", "3");
+    }
+
+    @Test
+    void slowSubscriberWithLatestStrategyKeepsNewestEvents() {
+        assertThat(idsSeenBySlowSubscriber(OverflowStrategy.LATEST)).containsExactly("6", "7", "8", "9");
+    }
+
+    @Test
+    void slowSubscriberDoesNotHoldBackOthers() {
+        RecordingSubscriber slow = new RecordingSubscriber(0);
+        RecordingSubscriber fast = new RecordingSubscriber(Long.MAX_VALUE);
+        smartTradeEventService.subscribe(OverflowStrategy.DROP).subscribe(slow);
+        smartTradeEventService.subscribe(OverflowStrategy.DROP).subscribe(fast);
+
+        for (int i = 0; i < 10; i++) {
+            smartTradeEventService.created(new SmartTrade().id(Integer.toString(i)));
+        }
+        slow.dispose();
+        fast.dispose();
+
+        assertThat(slow.events).isEmpty();
+        assertThat(fast.events).hasSize(10);
+    }
+
+    private List<String> idsSeenBySlowSubscriber(OverflowStrategy strategy) {
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        smartTradeEventService.subscribe(strategy).subscribe(subscriber);
+
+        // The writer is never held up by the subscriber that requested nothing.
+        for (int i = 0; i < 10; i++) {
+            smartTradeEventService.created(new SmartTrade().id(Integer.toString(i)));
+        }
+        subscriber.request(Long.MAX_VALUE);
+        subscriber.dispose();
+
+        return subscriber.events.stream().map(SmartTradeEventDTO::getId).collect(Collectors.toList());
+    }
+
+    private static class RecordingSubscriber extends BaseSubscriber<SmartTradeEventDTO> {
+
+        private final long initialRequest;
+
+        private final List<SmartTradeEventDTO> events = new ArrayList<>();
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        protected void hookOnNext(SmartTradeEventDTO event) {
+            events.add(event);
+        }
+    }
+}
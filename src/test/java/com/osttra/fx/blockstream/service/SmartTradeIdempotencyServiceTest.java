@@ -0,0 +1,111 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import com.osttra.fx.blockstream.service.SmartTradeIdempotencyService.Outcome;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Unit tests for {@link SmartTradeIdempotencyService}.
+ */
+class SmartTradeIdempotencyServiceTest {
+
+    private final SmartTradeRepository smartTradeRepository = mock(SmartTradeRepository.class);
+
+    private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+
+    private final SmartTradeEventService smartTradeEventService = mock(SmartTradeEventService.class);
+
+    /**
+     * Number of inserts made, as opposed to only assembled.
+     */
+    private final AtomicInteger inserts = new AtomicInteger();
+
+    private SmartTradeIdempotencyService smartTradeIdempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getIdempotency().setCacheSize(1);
+        when(smartTradeRepository.insert(any(SmartTrade.class)))
+            .thenAnswer(invocation -> Mono.fromCallable(() -> invocation.<SmartTrade>getArgument(0).id("ID-" + inserts.incrementAndGet())));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("smart_trade")))
+            .thenReturn(Flux.just(new Document("transaction_id", "TX-STORED")));
+        when(smartTradeEventService.subscribe(any())).thenReturn(Flux.never());
+        smartTradeIdempotencyService =
+            new SmartTradeIdempotencyService(
+                smartTradeRepository,
+                mongoTemplate,
+                smartTradeEventService,
+                new WriteAheadLogService(smartTradeRepository, applicationProperties),
+                applicationProperties
+            );
+        smartTradeIdempotencyService.bootstrap();
+    }
+
+    @Test
+    void answersResentTradesFromTheRecentTrades() {
+        Outcome created = create("TX-1");
+        Outcome resent = create("TX-1");
+
+        assertThat(created.isCreated()).isTrue();
+        assertThat(resent.isCreated()).isFalse();
+        assertThat(resent.getSmartTrade()).isSameAs(created.getSmartTrade());
+        assertThat(inserts).hasValue(1);
+        verify(smartTradeRepository, never()).findOneByTransactionId(anyString());
+    }
+
+    @Test
+    void looksUpTheTransactionIdsTheFilterKnows() {
+        SmartTrade stored = trade("TX-STORED").id("STORED");
+        when(smartTradeRepository.findOneByTransactionId("TX-STORED")).thenReturn(Mono.just(stored));
+
+        Outcome resent = create("TX-STORED");
+
+        assertThat(resent.isCreated()).isFalse();
+        assertThat(resent.getSmartTrade()).isSameAs(stored);
+        assertThat(inserts).hasValue(0);
+    }
+
+    @Test
+    void looksUpTheTradesNoLongerRecent() {
+        SmartTrade first = create("TX-1").getSmartTrade();
+        SmartTrade second = create("TX-2").getSmartTrade();
+        when(smartTradeRepository.findOneByTransactionId("TX-1")).thenReturn(Mono.just(first));
+
+        assertThat(create("TX-1").getSmartTrade()).isSameAs(first);
+        verify(smartTradeRepository).findOneByTransactionId("TX-1");
+
+        // The lookup made the first trade the recent one again.
+        when(smartTradeRepository.findOneByTransactionId("TX-2")).thenReturn(Mono.just(second));
+        assertThat(create("TX-2").getSmartTrade()).isSameAs(second);
+        verify(smartTradeRepository).findOneByTransactionId("TX-2");
+        assertThat(inserts).hasValue(2);
+    }
+
+    private Outcome create(String transactionId) {
+        return smartTradeIdempotencyService.create(trade(transactionId)).block(Duration.ofSeconds(5));
+    }
+
+    private static SmartTrade trade(String transactionId) {
+        return new SmartTrade().transactionId(transactionId).tradingParty("BANK-A").counterParty("BANK-B");
+    }
+}
@@ -0,0 +1,96 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import com.osttra.fx.blockstream.service.dto.SmartTradeIngestionResultDTO;
+import com.osttra.fx.blockstream.service.dto.SmartTradeIngestionResultDTO.Status;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Unit tests for {@link SmartTradeIngestionService}.
+ */
+class SmartTradeIngestionServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final SmartTradeRepository smartTradeRepository = mock(SmartTradeRepository.class);
+
+    private final SmartTradeIdempotencyService smartTradeIdempotencyService = mock(SmartTradeIdempotencyService.class);
+
+    private WriteAheadLogService writeAheadLogService;
+
+    private SmartTradeIngestionService smartTradeIngestionService;
+
+    @BeforeEach
+    void setUp() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getWriteAheadLog().setEnabled(true);
+        applicationProperties.getWriteAheadLog().setDirectory(directory.toString());
+        writeAheadLogService = new WriteAheadLogService(smartTradeRepository, applicationProperties);
+        when(smartTradeIdempotencyService.findExisting(anyCollection())).thenAnswer(invocation -> Mono.just(new HashMap<>()));
+        smartTradeIngestionService =
+            new SmartTradeIngestionService(
+                smartTradeRepository,
+                applicationProperties,
+                mock(PositionService.class),
+                mock(SmartTradeEventService.class),
+                smartTradeIdempotencyService,
+                writeAheadLogService
+            );
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeAheadLogService.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void appendsTheTradesToTheWriteAheadLog() {
+        List<SmartTradeIngestionResultDTO> results = smartTradeIngestionService
+            .ingest(Flux.just(trade("TX-1"), trade("TX-2"), trade("TX-1")))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertThat(results)
+            .extracting(SmartTradeIngestionResultDTO::getStatus)
+            .containsExactly(Status.CREATED, Status.CREATED, Status.DUPLICATE);
+        assertThat(results.get(2).getId()).isEqualTo(results.get(0).getId());
+        assertThat(writeAheadLogService.isPending(results.get(0).getId())).isTrue();
+        assertThat(writeAheadLogService.isPending(results.get(1).getId())).isTrue();
+        verify(smartTradeRepository, never()).insert(any(Iterable.class));
+        verify(smartTradeRepository, never()).insert(any(SmartTrade.class));
+    }
+
+    private static SmartTrade trade(String transactionId) {
+        return new SmartTrade()
+            .transactionId(transactionId)
+            .tradingParty("BANK-A")
+            .counterParty("BANK-B")
+            .direction("BUY")
+            .currencyBuy("EUR")
+            .currencySell("USD")
+            .amount(new BigDecimal("100"))
+            .rate(1.1);
+    }
+}
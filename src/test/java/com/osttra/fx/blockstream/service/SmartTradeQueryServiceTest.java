@@ -0,0 +1,61 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.service.SmartTradeQueryService.Cursor;
+import java.time.LocalDate;
+import java.util.List;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * Unit tests for {@link SmartTradeQueryService}.
+ */
+class SmartTradeQueryServiceTest {
+
+    private final MongoMappingContext mappingContext = new MongoMappingContext();
+
+    private final QueryMapper queryMapper;
+
+    SmartTradeQueryServiceTest() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        queryMapper = new QueryMapper(converter);
+    }
+
+    @Test
+    void comparesTheCursorIdAsStored() {
+        ObjectId id = new ObjectId();
+
+        Document after = map(new SmartTrade().id(id.toHexString()).valueDate(LocalDate.of(2022, 6, 15)));
+        Document afterWithoutValueDate = map(new SmartTrade().id(id.toHexString()));
+        Document afterOtherId = map(new SmartTrade().id("not-an-object-id"));
+
+        assertThat(tieBreak(after).get("_id", Document.class).get("$gt")).isEqualTo(id);
+        assertThat(tieBreak(after)).containsKey("value_date");
+        assertThat(tieBreak(afterWithoutValueDate).get("_id", Document.class).get("$gt")).isEqualTo(id);
+        assertThat(tieBreak(afterOtherId).get("_id", Document.class).get("$gt")).isEqualTo("not-an-object-id");
+    }
+
+    private Document map(SmartTrade last) {
+        Query query = new Query(SmartTradeQueryService.after(Cursor.decode(Cursor.encode(last))));
+        return queryMapper.getMappedObject(query.getQueryObject(), mappingContext.getPersistentEntity(SmartTrade.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Document tieBreak(Document mapped) {
+        return ((List<Document>) mapped.get("$or")).get(1);
+    }
+}
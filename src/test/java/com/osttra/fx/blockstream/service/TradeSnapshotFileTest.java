@@ -0,0 +1,107 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link TradeSnapshotFile}.
+ */
+class TradeSnapshotFileTest {
+
+    private static final int REGION_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackTheTradesAcrossRegions() throws IOException {
+        Path file = directory.resolve("trades.snapshot");
+        List<SmartTrade> trades = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            trades.add(trade(i));
+        }
+        trades.add(new SmartTrade().id("EMPTY"));
+
+        try (TradeSnapshotFile.Writer writer = TradeSnapshotFile.create(file, REGION_SIZE)) {
+            for (SmartTrade trade : trades) {
+                writer.append(trade);
+            }
+            assertThat(writer.commit(42L)).isEqualTo(trades.size());
+        }
+        assertThat(Files.size(file)).isGreaterThan(10L * REGION_SIZE);
+
+        List<SmartTrade> read = new ArrayList<>();
+        assertThat(TradeSnapshotFile.read(file, read::add)).isEqualTo(42L);
+        assertThat(read).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(trades);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).containsExactly(file);
+        }
+    }
+
+    @Test
+    void keepsThePreviousSnapshotUntilCommitted() throws IOException {
+        Path file = directory.resolve("trades.snapshot");
+        try (TradeSnapshotFile.Writer writer = TradeSnapshotFile.create(file, REGION_SIZE)) {
+            writer.append(trade(1));
+            writer.commit(1L);
+        }
+        try (TradeSnapshotFile.Writer writer = TradeSnapshotFile.create(file, REGION_SIZE)) {
+            writer.append(trade(2));
+        }
+
+        List<SmartTrade> read = new ArrayList<>();
+        assertThat(TradeSnapshotFile.read(file, read::add)).isEqualTo(1L);
+        assertThat(read).extracting(SmartTrade::getId).containsExactly("TRADE-1");
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).containsExactly(file);
+        }
+    }
+
+    @Test
+    void rejectsATruncatedSnapshot() throws IOException {
+        Path file = directory.resolve("trades.snapshot");
+        try (TradeSnapshotFile.Writer writer = TradeSnapshotFile.create(file, REGION_SIZE)) {
+            for (int i = 0; i < 100; i++) {
+                writer.append(trade(i));
+            }
+            writer.commit(1L);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        assertThatThrownBy(() -> TradeSnapshotFile.read(file, trade -> {})).isInstanceOf(IOException.class);
+        Files.write(file, new byte[TradeSnapshotFile.HEADER_SIZE]);
+        assertThatThrownBy(() -> TradeSnapshotFile.read(file, trade -> {})).isInstanceOf(IOException.class);
+    }
+
+    private static SmartTrade trade(int i) {
+        return new SmartTrade()
+            .id("TRADE-" + i)
+            .version((long) i % 7)
+            .transactionId("TX-" + i)
+            .tradingParty("PARTY-" + i % 13)
+            .counterParty("BANK-" + i % 5)
+            .direction(i % 2 == 0 ? "BUY" : "SELL")
+            .currencyBuy("EUR")
+            .currencySell("USD")
+            .amount(BigDecimal.valueOf(i * 1_000_003L, 2))
+            .contraAmount(i % 3 == 0 ? null : new BigDecimal("-12345678901234567890.123456789"))
+            .rate(i % 4 == 0 ? null : 1.0 + i / 1000.0)
+            .valueDate(i % 5 == 0 ? null : LocalDate.of(2022, 3, 15).plusDays(i));
+    }
+}
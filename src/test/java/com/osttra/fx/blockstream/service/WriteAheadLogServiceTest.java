@@ -0,0 +1,71 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import com.osttra.fx.blockstream.config.ApplicationProperties;
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link WriteAheadLogService}.
+ */
+class WriteAheadLogServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private WriteAheadLogService writeAheadLogService;
+
+    @BeforeEach
+    void open() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getWriteAheadLog().setEnabled(true);
+        applicationProperties.getWriteAheadLog().setDirectory(directory.toString());
+        writeAheadLogService = new WriteAheadLogService(mock(SmartTradeRepository.class), applicationProperties);
+    }
+
+    @AfterEach
+    void close() {
+        writeAheadLogService.stop();
+    }
+
+    @Test
+    void rejectsOnlyTheTradesTooLargeForARecord() {
+        SmartTrade longParty = trade("TX-1").tradingParty("X".repeat(70_000));
+        SmartTrade largeAmount = trade("TX-2").amount(new BigDecimal(BigInteger.ONE.shiftLeft(1100)));
+
+        assertThatThrownBy(() -> writeAheadLogService.append(longParty).block(Duration.ofSeconds(5)))
+            .isInstanceOf(InvalidSmartTradeException.class);
+        assertThatThrownBy(() -> writeAheadLogService.append(largeAmount).block(Duration.ofSeconds(5)))
+            .isInstanceOf(InvalidSmartTradeException.class);
+        assertThat(writeAheadLogService.findPending("TX-1")).isNull();
+
+        SmartTrade smartTrade = trade("TX-3");
+        assertThat(writeAheadLogService.append(smartTrade).block(Duration.ofSeconds(5))).isSameAs(smartTrade);
+        assertThat(smartTrade.getId()).isNotNull();
+        assertThat(writeAheadLogService.findPending("TX-3")).isSameAs(smartTrade);
+        assertThat(writeAheadLogService.isPending(smartTrade.getId())).isTrue();
+    }
+
+    private static SmartTrade trade(String transactionId) {
+        return new SmartTrade()
+            .transactionId(transactionId)
+            .tradingParty("BANK-A")
+            .counterParty("BANK-B")
+            .direction("BUY")
+            .currencyBuy("EUR")
+            .currencySell("USD")
+            .amount(new BigDecimal("100"))
+            .rate(1.1);
+    }
+}
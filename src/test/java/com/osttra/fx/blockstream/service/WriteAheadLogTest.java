@@ -0,0 +1,124 @@
+package com.osttra.fx.blockstream.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.osttra.fx.blockstream.domain.SmartTrade;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link WriteAheadLog}.
+ */
+class WriteAheadLogTest {
+
+    private static final long SEGMENT_SIZE = 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheAppendedTradesAcrossSegments() throws IOException {
+        List<SmartTrade> trades = new ArrayList<>();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, SEGMENT_SIZE, (sequence, trade) -> {})) {
+            for (int i = 0; i < 100; i += 10) {
+                List<SmartTrade> group = new ArrayList<>();
+                for (int j = i; j < i + 10; j++) {
+                    group.add(trade(j));
+                }
+                assertThat(log.append(group)).isEqualTo(i + 10L);
+                trades.addAll(group);
+            }
+        }
+        assertThat(segments()).hasSizeGreaterThan(2);
+
+        List<Long> sequences = new ArrayList<>();
+        List<SmartTrade> replayed = new ArrayList<>();
+        try (
+            WriteAheadLog log = WriteAheadLog.open(
+                directory,
+                SEGMENT_SIZE,
+                (sequence, trade) -> {
+                    sequences.add(sequence);
+                    replayed.add(trade);
+                }
+            )
+        ) {
+            assertThat(log.getSequence()).isEqualTo(100L);
+            assertThat(log.append(List.of(trade(100)))).isEqualTo(101L);
+        }
+        assertThat(sequences).first().isEqualTo(1L);
+        assertThat(sequences).last().isEqualTo(100L);
+        assertThat(replayed).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(trades);
+    }
+
+    @Test
+    void dropsARecordCutShortByACrash() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, SEGMENT_SIZE, (sequence, trade) -> {})) {
+            log.append(List.of(trade(1), trade(2)));
+        }
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        List<SmartTrade> replayed = new ArrayList<>();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, SEGMENT_SIZE, (sequence, trade) -> replayed.add(trade))) {
+            assertThat(log.append(List.of(trade(3)))).isEqualTo(2L);
+        }
+        replayed.clear();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, SEGMENT_SIZE, (sequence, trade) -> replayed.add(trade))) {
+            assertThat(log.getSequence()).isEqualTo(2L);
+        }
+        assertThat(replayed).extracting(SmartTrade::getId).containsExactly("TRADE-1", "TRADE-3");
+    }
+
+    @Test
+    void deletesTheDrainedSegments() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, SEGMENT_SIZE, (sequence, trade) -> {})) {
+            for (int i = 0; i < 100; i++) {
+                log.append(List.of(trade(i)));
+            }
+            int written = segments().size();
+            log.drained(50);
+            assertThat(segments()).hasSizeBetween(2, written - 1);
+            log.drained(100);
+            assertThat(segments()).hasSize(1);
+        }
+
+        Path first = segments().get(0);
+        Files.write(first, new byte[] { 0, 0, 0, 8, 1, 2, 3, 4, 5, 6, 7, 8 }, StandardOpenOption.TRUNCATE_EXISTING);
+        Files.createFile(directory.resolve(String.format("%020d.wal", 1_000L)));
+        assertThatThrownBy(() -> WriteAheadLog.open(directory, SEGMENT_SIZE, (sequence, trade) -> {})).isInstanceOf(IOException.class);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static SmartTrade trade(int i) {
+        return new SmartTrade()
+            .id("TRADE-" + i)
+            .version(0L)
+            .transactionId("TX-" + i)
+            .tradingParty("PARTY-" + i % 13)
+            .counterParty("BANK-" + i % 5)
+            .direction(i % 2 == 0 ? "BUY" : "SELL")
+            .currencyBuy("EUR")
+            .currencySell("USD")
+            .amount(BigDecimal.valueOf(i * 1_000_003L, 2))
+            .rate(1.0 + i / 1000.0);
+    }
+}
@@ -0,0 +1,147 @@
+package com.osttra.fx.blockstream.web.rest;
+
+import static com.osttra.fx.blockstream.web.rest.TestUtil.sameNumber;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import com.osttra.fx.blockstream.IntegrationTest;
+import com.osttra.fx.blockstream.domain.Currencies;
+import com.osttra.fx.blockstream.repository.CurrenciesRepository;
+import com.osttra.fx.blockstream.service.dto.CurrencyConversionDTO;
+import com.osttra.fx.blockstream.service.dto.RateDTO;
+import java.math.BigDecimal;
+import java.util.List;
+import reactor.core.publisher.Flux;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Integration tests for the {@link RateResource} REST controller.
+ */
+@IntegrationTest
+@AutoConfigureWebTestClient(timeout = IntegrationTest.DEFAULT_ENTITY_TIMEOUT)
+@WithMockUser
+class RateResourceIT {
+
+    private static final String ENTITY_API_URL = "/api/rates";
+
+    @Autowired
+    private CurrenciesRepository currenciesRepository;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    public void initTest() throws Exception {
+        currenciesRepository.deleteAll().block();
+        currenciesRepository
+            .saveAll(Flux.just("EUR", "USD", "JPY", "GBP").map(code -> new Currencies().currencyName(code).currencyCode(code)))
+            .blockLast();
+        webTestClient
+            .put()
+            .uri(ENTITY_API_URL)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(
+                TestUtil.convertObjectToJsonBytes(
+                    List.of(
+                        new RateDTO("EUR", "USD", new BigDecimal("1.25"), null),
+                        new RateDTO("USD", "JPY", new BigDecimal("150"), null),
+                        new RateDTO("GBP", "USD", new BigDecimal("1.5"), null)
+                    )
+                )
+            )
+            .exchange()
+            .expectStatus()
+            .isNoContent();
+    }
+
+    @Test
+    void getTriangulatedRate() {
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "/{base}/{quote}", "EUR", "JPY")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.baseCurrency")
+            .isEqualTo("EUR")
+            .jsonPath("$.rate")
+            .value(is(sameNumber(new BigDecimal("187.5"))));
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "/{base}/{quote}", "EUR", "XXX")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isNotFound();
+    }
+
+    @Test
+    void convertAmounts() throws Exception {
+        List<CurrencyConversionDTO> conversions = webTestClient
+            .post()
+            .uri(ENTITY_API_URL + "/conversions")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(
+                TestUtil.convertObjectToJsonBytes(
+                    List.of(
+                        new CurrencyConversionDTO("GBP", "EUR", new BigDecimal("100")),
+                        new CurrencyConversionDTO("JPY", "USD", new BigDecimal("300")),
+                        new CurrencyConversionDTO("EUR", "XXX", new BigDecimal("1"))
+                    )
+                )
+            )
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBodyList(CurrencyConversionDTO.class)
+            .returnResult()
+            .getResponseBody();
+
+        assertThat(conversions).hasSize(3);
+        assertThat(conversions.get(0).getConvertedAmount()).isEqualByComparingTo("120");
+        assertThat(conversions.get(1).getConvertedAmount()).isEqualByComparingTo("2");
+        assertThat(conversions.get(2).getRate()).isNull();
+        assertThat(conversions.get(2).getConvertedAmount()).isNull();
+    }
+
+    @Test
+    void updateRatesWithInvalidRate() throws Exception {
+        webTestClient
+            .put()
+            .uri(ENTITY_API_URL)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(List.of(new RateDTO("EUR", "USD", BigDecimal.ZERO, null))))
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
+    @Test
+    void updateRatesWithUnknownCurrency() throws Exception {
+        webTestClient
+            .put()
+            .uri(ENTITY_API_URL)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(List.of(new RateDTO("EUR", "QQQ", BigDecimal.ONE, null))))
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "/{base}/{quote}", "EUR", "QQQ")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isNotFound();
+    }
+}
@@ -8,19 +8,34 @@ import static org.hamcrest.Matchers.is;
 import com.osttra.fx.blockstream.IntegrationTest;
 import com.osttra.fx.blockstream.domain.SmartTrade;
 import com.osttra.fx.blockstream.repository.SmartTradeRepository;
+import com.osttra.fx.blockstream.service.SmartTradeEventService;
+import com.osttra.fx.blockstream.service.dto.SmartTradeEventDTO;
+import com.osttra.fx.blockstream.service.dto.SmartTradeIngestionResultDTO;
+import com.osttra.fx.blockstream.service.dto.SmartTradeIngestionResultDTO.Status;
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Disposable;
 
 /**
  * Integration tests for the {@link SmartTradeResource} REST controller.
@@ -55,6 +70,7 @@ class SmartTradeResourceIT {
     private static final LocalDate UPDATED_VALUE_DATE = LocalDate.now(ZoneId.systemDefault());
 
     private static final String DEFAULT_TRANSACTION_ID = "AAAAAAAAAA";
+    private static final String OTHER_TRANSACTION_ID = "CCCCCCCCCC";
     private static final String UPDATED_TRANSACTION_ID = "BBBBBBBBBB";
 
     private static final String DEFAULT_DIRECTION = "AAAAAAAAAA";
@@ -66,9 +82,15 @@ class SmartTradeResourceIT {
     @Autowired
     private SmartTradeRepository smartTradeRepository;
 
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private SmartTradeEventService smartTradeEventService;
+
     private SmartTrade smartTrade;
 
     /**
@@ -148,6 +170,15 @@ class SmartTradeResourceIT {
         assertThat(testSmartTrade.getDirection()).isEqualTo(DEFAULT_DIRECTION);
     }
 
+    @Test
+    void createSmartTradeStoresAmountsAsDecimal128() {
+        smartTradeRepository.save(smartTrade).block();
+
+        Document document = mongoTemplate.findById(smartTrade.getId(), Document.class, "smart_trade").block();
+        assertThat(document.get("amount")).isEqualTo(new Decimal128(DEFAULT_AMOUNT));
+        assertThat(document.get("contra_amount")).isEqualTo(new Decimal128(DEFAULT_CONTRA_AMOUNT));
+    }
+
     @Test
     void createSmartTradeWithExistingId() throws Exception {
         // Create the SmartTrade with an existing ID
@@ -170,6 +201,116 @@ class SmartTradeResourceIT {
         assertThat(smartTradeList).hasSize(databaseSizeBeforeCreate);
     }
 
+    @Test
+    void createSmartTradesInBulk() throws Exception {
+        int databaseSizeBeforeCreate = smartTradeRepository.findAll().collectList().block().size();
+
+        // Send two new smartTrades and one with an existing ID as NDJSON
+        SmartTrade existing = createEntity().transactionId(UPDATED_TRANSACTION_ID);
+        existing.setId("existing_id");
+        String body =
+            new String(TestUtil.convertObjectToJsonBytes(smartTrade)) +
+            "\n" +
+            new String(TestUtil.convertObjectToJsonBytes(existing)) +
+            "\n" +
+            new String(TestUtil.convertObjectToJsonBytes(createUpdatedEntity())) +
+            "\n";
+
+        List<SmartTradeIngestionResultDTO> results = webTestClient
+            .post()
+            .uri(ENTITY_API_URL + "/bulk")
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .accept(MediaType.APPLICATION_NDJSON)
+            .bodyValue(body)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(SmartTradeIngestionResultDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertThat(results).extracting(SmartTradeIngestionResultDTO::getIndex).containsExactly(0L, 1L, 2L);
+        assertThat(results)
+            .extracting(SmartTradeIngestionResultDTO::getStatus)
+            .containsExactly(Status.CREATED, Status.REJECTED, Status.CREATED);
+        assertThat(results.get(0).getTransactionId()).isEqualTo(DEFAULT_TRANSACTION_ID);
+        assertThat(results.get(2).getTransactionId()).isEqualTo(UPDATED_TRANSACTION_ID);
+
+        // Validate the SmartTrades in the database
+        List<SmartTrade> smartTradeList = smartTradeRepository.findAll().collectList().block();
+        assertThat(smartTradeList).hasSize(databaseSizeBeforeCreate + 2);
+        assertThat(smartTradeList).extracting(SmartTrade::getId).contains(results.get(0).getId(), results.get(2).getId());
+    }
+
+    @Test
+    void createSmartTradeWithExistingTransactionId() throws Exception {
+        SmartTrade created = webTestClient
+            .post()
+            .uri(ENTITY_API_URL)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(smartTrade))
+            .exchange()
+            .expectStatus()
+            .isCreated()
+            .expectBody(SmartTrade.class)
+            .returnResult()
+            .getResponseBody();
+
+        // Resending the same trade returns the stored one instead of creating another
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(createEntity()))
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.id")
+            .value(is(created.getId()));
+
+        List<SmartTrade> smartTradeList = smartTradeRepository.findAll().collectList().block();
+        assertThat(smartTradeList).extracting(SmartTrade::getId).containsExactly(created.getId());
+    }
+
+    @Test
+    void createSmartTradesInBulkWithExistingTransactionIds() throws Exception {
+        smartTradeRepository.save(smartTrade).block();
+
+        // Resend the stored smartTrade, then send a new one twice
+        String body =
+            new String(TestUtil.convertObjectToJsonBytes(createEntity())) +
+            "\n" +
+            new String(TestUtil.convertObjectToJsonBytes(createUpdatedEntity())) +
+            "\n" +
+            new String(TestUtil.convertObjectToJsonBytes(createUpdatedEntity())) +
+            "\n";
+
+        List<SmartTradeIngestionResultDTO> results = webTestClient
+            .post()
+            .uri(ENTITY_API_URL + "/bulk")
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .accept(MediaType.APPLICATION_NDJSON)
+            .bodyValue(body)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(SmartTradeIngestionResultDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertThat(results)
+            .extracting(SmartTradeIngestionResultDTO::getStatus)
+            .containsExactly(Status.DUPLICATE, Status.CREATED, Status.DUPLICATE);
+        assertThat(results.get(0).getId()).isEqualTo(smartTrade.getId());
+        assertThat(results.get(2).getId()).isEqualTo(results.get(1).getId());
+
+        List<SmartTrade> smartTradeList = smartTradeRepository.findAll().collectList().block();
+        assertThat(smartTradeList).hasSize(2);
+    }
+
     @Test
     void getAllSmartTradesAsStream() {
         // Initialize the database
@@ -245,6 +386,134 @@ class SmartTradeResourceIT {
             .value(hasItem(DEFAULT_DIRECTION));
     }
 
+    @Test
+    void getAllSmartTradesByCursor() {
+        // Initialize the database with three smartTrades, two of them on the same value date
+        smartTradeRepository.save(createEntity()).block();
+        smartTradeRepository.save(createEntity().transactionId(OTHER_TRANSACTION_ID)).block();
+        smartTradeRepository.save(createUpdatedEntity()).block();
+
+        // Get the first page
+        EntityExchangeResult<List<SmartTrade>> firstPage = webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?size=2")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .exists(HttpHeaders.LINK)
+            .expectBodyList(SmartTrade.class)
+            .returnResult();
+        assertThat(firstPage.getResponseBody()).hasSize(2);
+        assertThat(firstPage.getResponseBody()).extracting(SmartTrade::getValueDate).containsOnly(DEFAULT_VALUE_DATE);
+        String cursor = firstPage.getResponseHeaders().getFirst("X-Next-Cursor");
+        assertThat(cursor).isNotNull();
+
+        // Get the last page
+        EntityExchangeResult<List<SmartTrade>> lastPage = webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?size=2&cursor=" + cursor)
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .doesNotExist("X-Next-Cursor")
+            .expectBodyList(SmartTrade.class)
+            .returnResult();
+        assertThat(lastPage.getResponseBody()).hasSize(1);
+        assertThat(lastPage.getResponseBody().get(0).getValueDate()).isEqualTo(UPDATED_VALUE_DATE);
+    }
+
+    @Test
+    void getAllSmartTradesByCursorWithinOneValueDate() {
+        // Initialize the database with more smartTrades on the same value date than a page holds
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(smartTradeRepository.save(createEntity().transactionId("TX-" + i)).block().getId());
+        }
+        Collections.sort(ids);
+
+        // Walk the pages, whose boundaries fall between smartTrades of the same value date
+        List<String> pagedIds = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            EntityExchangeResult<List<SmartTrade>> page = webTestClient
+                .get()
+                .uri(ENTITY_API_URL + "?size=2" + (cursor == null ? "" : "&cursor=" + cursor))
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(SmartTrade.class)
+                .returnResult();
+            page.getResponseBody().forEach(smartTrade -> pagedIds.add(smartTrade.getId()));
+            cursor = page.getResponseHeaders().getFirst("X-Next-Cursor");
+            pages++;
+        } while (cursor != null && pages < 10);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(pagedIds).containsExactlyElementsOf(ids);
+    }
+
+    @Test
+    void getAllSmartTradesWithInvalidCursor() {
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL + "?cursor=not-a-cursor")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
+    @Test
+    void getSmartTradesByCriteria() {
+        // Initialize the database
+        smartTradeRepository.save(smartTrade).block();
+        smartTradeRepository.save(createUpdatedEntity()).block();
+
+        List<SmartTrade> smartTradeList = webTestClient
+            .get()
+            .uri(
+                ENTITY_API_URL +
+                "/query?counterParty=" +
+                DEFAULT_COUNTER_PARTY +
+                "&currencyBuy=" +
+                DEFAULT_CURRENCY_BUY +
+                "&valueDateTo=" +
+                DEFAULT_VALUE_DATE
+            )
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(SmartTrade.class)
+            .getResponseBody()
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertThat(smartTradeList).extracting(SmartTrade::getId).containsExactly(smartTrade.getId());
+
+        // No smartTrade matches a value date range after both of them
+        smartTradeList =
+            webTestClient
+                .get()
+                .uri(ENTITY_API_URL + "/query?valueDateFrom=" + UPDATED_VALUE_DATE.plusDays(1))
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(SmartTrade.class)
+                .getResponseBody()
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(smartTradeList).isEmpty();
+    }
+
     @Test
     void getSmartTrade() {
         // Initialize the database
@@ -363,6 +632,115 @@ class SmartTradeResourceIT {
         assertThat(smartTradeList).hasSize(databaseSizeBeforeUpdate);
     }
 
+    @Test
+    void putSmartTradeWithStaleIfMatch() throws Exception {
+        // Initialize the database
+        smartTradeRepository.save(smartTrade).block();
+
+        // Read the current entity tag, then let a concurrent update bump the version
+        String eTag = webTestClient
+            .get()
+            .uri(ENTITY_API_URL_ID, smartTrade.getId())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals(HttpHeaders.ETAG, "\"0\"")
+            .returnResult(SmartTrade.class)
+            .getResponseHeaders()
+            .getETag();
+        smartTradeRepository.partialUpdate(smartTrade.getId(), new SmartTrade().direction(UPDATED_DIRECTION), null).block();
+
+        SmartTrade updatedSmartTrade = createUpdatedEntity();
+        updatedSmartTrade.setId(smartTrade.getId());
+        webTestClient
+            .put()
+            .uri(ENTITY_API_URL_ID, updatedSmartTrade.getId())
+            .header(HttpHeaders.IF_MATCH, eTag)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(updatedSmartTrade))
+            .exchange()
+            .expectStatus()
+            .isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        // Validate the SmartTrade in the database kept the concurrent update only
+        SmartTrade testSmartTrade = smartTradeRepository.findById(smartTrade.getId()).block();
+        assertThat(testSmartTrade.getVersion()).isEqualTo(1L);
+        assertThat(testSmartTrade.getCounterParty()).isEqualTo(DEFAULT_COUNTER_PARTY);
+        assertThat(testSmartTrade.getDirection()).isEqualTo(UPDATED_DIRECTION);
+    }
+
+    @Test
+    void patchSmartTradeWithIfMatch() throws Exception {
+        // Initialize the database
+        smartTradeRepository.save(smartTrade).block();
+
+        SmartTrade partialUpdatedSmartTrade = new SmartTrade();
+        partialUpdatedSmartTrade.setId(smartTrade.getId());
+        partialUpdatedSmartTrade.counterParty(UPDATED_COUNTER_PARTY);
+
+        webTestClient
+            .patch()
+            .uri(ENTITY_API_URL_ID, partialUpdatedSmartTrade.getId())
+            .header(HttpHeaders.IF_MATCH, "\"0\"")
+            .contentType(MediaType.valueOf("application/merge-patch+json"))
+            .bodyValue(TestUtil.convertObjectToJsonBytes(partialUpdatedSmartTrade))
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+        // The same entity tag no longer matches
+        webTestClient
+            .patch()
+            .uri(ENTITY_API_URL_ID, partialUpdatedSmartTrade.getId())
+            .header(HttpHeaders.IF_MATCH, "\"0\"")
+            .contentType(MediaType.valueOf("application/merge-patch+json"))
+            .bodyValue(TestUtil.convertObjectToJsonBytes(partialUpdatedSmartTrade))
+            .exchange()
+            .expectStatus()
+            .isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        SmartTrade testSmartTrade = smartTradeRepository.findById(smartTrade.getId()).block();
+        assertThat(testSmartTrade.getVersion()).isEqualTo(1L);
+        assertThat(testSmartTrade.getCounterParty()).isEqualTo(UPDATED_COUNTER_PARTY);
+        assertThat(testSmartTrade.getTradingParty()).isEqualTo(DEFAULT_TRADING_PARTY);
+    }
+
+    @Test
+    void updateSmartTradeWithUsedTransactionId() throws Exception {
+        // Initialize the database
+        smartTradeRepository.save(smartTrade).block();
+        smartTradeRepository.save(createUpdatedEntity()).block();
+
+        SmartTrade updatedSmartTrade = createUpdatedEntity();
+        updatedSmartTrade.setId(smartTrade.getId());
+        webTestClient
+            .put()
+            .uri(ENTITY_API_URL_ID, updatedSmartTrade.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(updatedSmartTrade))
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+
+        SmartTrade partialUpdatedSmartTrade = new SmartTrade().transactionId(UPDATED_TRANSACTION_ID);
+        partialUpdatedSmartTrade.setId(smartTrade.getId());
+        webTestClient
+            .patch()
+            .uri(ENTITY_API_URL_ID, partialUpdatedSmartTrade.getId())
+            .contentType(MediaType.valueOf("application/merge-patch+json"))
+            .bodyValue(TestUtil.convertObjectToJsonBytes(partialUpdatedSmartTrade))
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+
+        SmartTrade testSmartTrade = smartTradeRepository.findById(smartTrade.getId()).block();
+        assertThat(testSmartTrade.getTransactionId()).isEqualTo(DEFAULT_TRANSACTION_ID);
+        assertThat(testSmartTrade.getVersion()).isZero();
+    }
+
     @Test
     void putWithIdMismatchSmartTrade() throws Exception {
         int databaseSizeBeforeUpdate = smartTradeRepository.findAll().collectList().block().size();
@@ -569,4 +947,23 @@ class SmartTradeResourceIT {
         List<SmartTrade> smartTradeList = smartTradeRepository.findAll().collectList().block();
         assertThat(smartTradeList).hasSize(databaseSizeBeforeDelete - 1);
     }
+
+    @Test
+    void deleteUnknownSmartTradePublishesNothing() {
+        List<SmartTradeEventDTO> events = new CopyOnWriteArrayList<>();
+        Disposable subscription = smartTradeEventService.subscribe(SmartTradeEventService.OverflowStrategy.LATEST).subscribe(events::add);
+        try {
+            webTestClient
+                .delete()
+                .uri(ENTITY_API_URL_ID, new ObjectId().toHexString())
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+        } finally {
+            subscription.dispose();
+        }
+
+        assertThat(events).isEmpty();
+    }
 }
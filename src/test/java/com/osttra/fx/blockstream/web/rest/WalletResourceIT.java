@@ -2,17 +2,26 @@ package com.osttra.fx.blockstream.web.rest;
 
 import static com.osttra.fx.blockstream.web.rest.TestUtil.sameNumber;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.*;
 
 import com.osttra.fx.blockstream.IntegrationTest;
+import com.osttra.fx.blockstream.domain.Customer;
 import com.osttra.fx.blockstream.domain.Wallet;
+import com.osttra.fx.blockstream.repository.CustomerRepository;
 import com.osttra.fx.blockstream.repository.WalletRepository;
+import com.osttra.fx.blockstream.service.WalletLedgerService;
+import com.osttra.fx.blockstream.service.dto.WalletBalanceDTO;
+import com.osttra.fx.blockstream.service.dto.WalletMovementDTO;
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -22,6 +31,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -49,6 +62,15 @@ class WalletResourceIT {
     @Autowired
     private WalletRepository walletRepository;
 
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    private WalletLedgerService walletLedgerService;
+
     @Mock
     private WalletRepository walletRepositoryMock;
 
@@ -221,6 +243,47 @@ class WalletResourceIT {
             .value(is(sameNumber(DEFAULT_AMOUNT)));
     }
 
+    @Test
+    void getWalletsWithTheirCustomer() {
+        // Initialize the database
+        Customer customer = customerRepository.save(new Customer().customerName("ACME").customerPassword("secret")).block();
+        walletRepository.save(wallet.customer(customer)).block();
+        walletRepository.save(createEntity().customerId("deleted-customer")).block();
+
+        webTestClient
+            .get()
+            .uri(ENTITY_API_URL_ID, wallet.getId())
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.customerId")
+            .value(is(customer.getId()))
+            .jsonPath("$.customer.customerName")
+            .value(is("ACME"))
+            .jsonPath("$.customer.customerPassword")
+            .doesNotExist();
+
+        List<Wallet> wallets = webTestClient
+            .get()
+            .uri(ENTITY_API_URL)
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBodyList(Wallet.class)
+            .returnResult()
+            .getResponseBody();
+        assertThat(wallets)
+            .extracting(Wallet::getCustomerId, w -> w.getCustomer() != null ? w.getCustomer().getCustomerName() : null)
+            .containsExactlyInAnyOrder(tuple(customer.getId(), "ACME"), tuple("deleted-customer", null));
+
+        // Only the reference is stored.
+        Document stored = mongoTemplate.findById(wallet.getId(), Document.class, "wallet").block();
+        assertThat(stored).containsEntry("customer_id", customer.getId()).doesNotContainKey("customer");
+    }
+
     @Test
     void getNonExistingWallet() {
         // Get the wallet
@@ -461,4 +524,199 @@ class WalletResourceIT {
         List<Wallet> walletList = walletRepository.findAll().collectList().block();
         assertThat(walletList).hasSize(databaseSizeBeforeDelete - 1);
     }
+
+    @Test
+    void creditAndDebitWallet() throws Exception {
+        // Initialize the database
+        walletRepository.save(wallet.amount(new BigDecimal("100.00"))).block();
+
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL_ID + "/credit", wallet.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(new WalletMovementDTO(null, new BigDecimal("25.50"))))
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.status")
+            .isEqualTo(WalletBalanceDTO.Status.APPLIED.name())
+            .jsonPath("$.balance")
+            .value(is(sameNumber(new BigDecimal("125.50"))));
+
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL_ID + "/debit", wallet.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(new WalletMovementDTO(null, new BigDecimal("125.50"))))
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.balance")
+            .value(is(sameNumber(BigDecimal.ZERO)));
+
+        Wallet testWallet = walletRepository.findById(wallet.getId()).block();
+        assertThat(testWallet.getAmount()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(testWallet.getVersion()).isEqualTo(wallet.getVersion() + 2);
+    }
+
+    @Test
+    void getWalletBalanceFromTheLedger() throws Exception {
+        Wallet created = webTestClient
+            .post()
+            .uri(ENTITY_API_URL)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(wallet.amount(new BigDecimal("100"))))
+            .exchange()
+            .expectStatus()
+            .isCreated()
+            .expectBody(Wallet.class)
+            .returnResult()
+            .getResponseBody();
+        Thread.sleep(10);
+        Instant beforeMovements = Instant.now();
+        Thread.sleep(10);
+
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL_ID + "/credit", created.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(new WalletMovementDTO(null, new BigDecimal("25.50"))))
+            .exchange()
+            .expectStatus()
+            .isOk();
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL_ID + "/debit", created.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(new WalletMovementDTO(null, new BigDecimal("10"))))
+            .exchange()
+            .expectStatus()
+            .isOk();
+
+        expectLedgerBalance(created.getId(), null, new BigDecimal("115.50"));
+        expectLedgerBalance(created.getId(), beforeMovements, new BigDecimal("100"));
+
+        // The movements are pending on the wallet until drained, and read from there meanwhile.
+        assertThat(mongoTemplate.count(new Query(Criteria.where("pending_movements._id").exists(true)), "wallet").block()).isOne();
+
+        // The snapshot drains and folds the movements without changing the balances read.
+        assertThat(walletLedgerService.snapshot().block()).isPositive();
+        expectLedgerBalance(created.getId(), null, new BigDecimal("115.50"));
+        expectLedgerBalance(created.getId(), beforeMovements, new BigDecimal("100"));
+        assertThat(mongoTemplate.count(new Query(), "wallet_snapshot").block()).isPositive();
+        assertThat(mongoTemplate.count(new Query(Criteria.where("pending_movements._id").exists(true)), "wallet").block()).isZero();
+        assertThat(mongoTemplate.count(new Query(Criteria.where("wallet_id").is(created.getId())), "wallet_movement").block())
+            .isEqualTo(3);
+        assertThat(mongoTemplate.count(new Query(), "wallet_snapshot_cursor").block()).isOne();
+
+        webTestClient
+            .get()
+            .uri(uriBuilder ->
+                uriBuilder.path(ENTITY_API_URL_ID + "/balance").queryParam("at", "2000-01-01T00:00:00Z").build(created.getId())
+            )
+            .exchange()
+            .expectStatus()
+            .isNotFound();
+    }
+
+    private void expectLedgerBalance(String id, Instant at, BigDecimal balance) {
+        webTestClient
+            .get()
+            .uri(uriBuilder ->
+                uriBuilder.path(ENTITY_API_URL_ID + "/balance").queryParamIfPresent("at", Optional.ofNullable(at)).build(id)
+            )
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBody()
+            .jsonPath("$.walletId")
+            .isEqualTo(id)
+            .jsonPath("$.balance")
+            .value(is(sameNumber(balance)));
+    }
+
+    @Test
+    void debitWalletWithInsufficientFunds() throws Exception {
+        // Initialize the database
+        walletRepository.save(wallet.amount(new BigDecimal("10.00"))).block();
+
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL_ID + "/debit", wallet.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(new WalletMovementDTO(null, new BigDecimal("10.01"))))
+            .exchange()
+            .expectStatus()
+            .isEqualTo(HttpStatus.CONFLICT);
+
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL_ID + "/debit", wallet.getId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(new WalletMovementDTO(null, new BigDecimal("-1"))))
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL_ID + "/debit", "unknown-wallet")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(new WalletMovementDTO(null, BigDecimal.ONE)))
+            .exchange()
+            .expectStatus()
+            .isNotFound();
+
+        Wallet testWallet = walletRepository.findById(wallet.getId()).block();
+        assertThat(testWallet.getAmount()).isEqualByComparingTo(new BigDecimal("10.00"));
+        assertThat(testWallet.getVersion()).isEqualTo(wallet.getVersion());
+    }
+
+    @Test
+    void applyWalletMovementsInBatch() throws Exception {
+        // Initialize the database
+        Wallet payer = walletRepository.save(createEntity().amount(new BigDecimal("100"))).block();
+        Wallet payee = walletRepository.save(createEntity().amount(new BigDecimal("0"))).block();
+        Wallet poor = walletRepository.save(createEntity().amount(new BigDecimal("5"))).block();
+        List<WalletMovementDTO> movements = List.of(
+            new WalletMovementDTO(payer.getId(), new BigDecimal("-60")),
+            new WalletMovementDTO(payee.getId(), new BigDecimal("60")),
+            new WalletMovementDTO(poor.getId(), new BigDecimal("-6")),
+            new WalletMovementDTO(payer.getId(), new BigDecimal("-40")),
+            new WalletMovementDTO("unknown-wallet", BigDecimal.ONE)
+        );
+
+        for (int run = 0; run < 2; run++) {
+            List<WalletBalanceDTO> balances = webTestClient
+                .post()
+                .uri(ENTITY_API_URL + "/movements?batchId=settlement-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(TestUtil.convertObjectToJsonBytes(movements))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals("X-Batch-Id", "settlement-1")
+                .expectBodyList(WalletBalanceDTO.class)
+                .returnResult()
+                .getResponseBody();
+
+            // Resending the batch leaves the balances unchanged.
+            assertThat(balances)
+                .extracting(WalletBalanceDTO::getWalletId, WalletBalanceDTO::getStatus)
+                .containsExactly(
+                    tuple(payer.getId(), WalletBalanceDTO.Status.APPLIED),
+                    tuple(payee.getId(), WalletBalanceDTO.Status.APPLIED),
+                    tuple(poor.getId(), WalletBalanceDTO.Status.INSUFFICIENT_FUNDS),
+                    tuple("unknown-wallet", WalletBalanceDTO.Status.NOT_FOUND)
+                );
+            assertThat(balances.get(0).getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+            assertThat(balances.get(1).getBalance()).isEqualByComparingTo(new BigDecimal("60"));
+            assertThat(balances.get(2).getBalance()).isEqualByComparingTo(new BigDecimal("5"));
+        }
+        assertThat(walletRepository.findById(payer.getId()).block().getVersion()).isEqualTo(payer.getVersion() + 1);
+    }
 }
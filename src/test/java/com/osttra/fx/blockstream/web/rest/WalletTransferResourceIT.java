@@ -0,0 +1,125 @@
+package com.osttra.fx.blockstream.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.osttra.fx.blockstream.IntegrationTest;
+import com.osttra.fx.blockstream.domain.Wallet;
+import com.osttra.fx.blockstream.repository.WalletRepository;
+import com.osttra.fx.blockstream.service.dto.WalletTransferDTO;
+import java.math.BigDecimal;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Integration tests for the {@link WalletTransferResource} REST controller.
+ */
+@IntegrationTest
+@AutoConfigureWebTestClient(timeout = IntegrationTest.DEFAULT_ENTITY_TIMEOUT)
+@WithMockUser
+class WalletTransferResourceIT {
+
+    private static final String ENTITY_API_URL = "/api/wallet-transfers";
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    public void initTest() {
+        walletRepository.deleteAll().block();
+    }
+
+    @Test
+    void transferBetweenWallets() throws Exception {
+        Wallet alice = walletRepository.save(new Wallet().currencyCode("EUR").amount(new BigDecimal("100"))).block();
+        Wallet bob = walletRepository.save(new Wallet().currencyCode("EUR").amount(new BigDecimal("0"))).block();
+        Wallet carol = walletRepository.save(new Wallet().currencyCode("EUR").amount(new BigDecimal("10"))).block();
+        Wallet dollars = walletRepository.save(new Wallet().currencyCode("USD").amount(new BigDecimal("10"))).block();
+
+        List<WalletTransferDTO> transfers = transfer(
+            new WalletTransferDTO(alice.getId(), bob.getId(), new BigDecimal("60")),
+            new WalletTransferDTO(carol.getId(), bob.getId(), new BigDecimal("11")),
+            new WalletTransferDTO(alice.getId(), carol.getId(), new BigDecimal("40")),
+            new WalletTransferDTO(alice.getId(), "unknown-wallet", BigDecimal.ONE),
+            new WalletTransferDTO(dollars.getId(), bob.getId(), BigDecimal.ONE)
+        );
+
+        // The transfer not covered by its wallet is isolated, the others are applied.
+        assertThat(transfers)
+            .extracting(WalletTransferDTO::getStatus)
+            .containsExactly(
+                WalletTransferDTO.Status.COMMITTED,
+                WalletTransferDTO.Status.INSUFFICIENT_FUNDS,
+                WalletTransferDTO.Status.COMMITTED,
+                WalletTransferDTO.Status.NOT_FOUND,
+                WalletTransferDTO.Status.CURRENCY_MISMATCH
+            );
+        assertThat(transfers).extracting(WalletTransferDTO::getTransferId).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(walletRepository.findById(alice.getId()).block().getAmount()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(walletRepository.findById(bob.getId()).block().getAmount()).isEqualByComparingTo(new BigDecimal("60"));
+        assertThat(walletRepository.findById(carol.getId()).block().getAmount()).isEqualByComparingTo(new BigDecimal("50"));
+        assertThat(walletRepository.findById(dollars.getId()).block().getAmount()).isEqualByComparingTo(new BigDecimal("10"));
+    }
+
+    @Test
+    void transferFundsReceivedInTheSameRequest() throws Exception {
+        Wallet alice = walletRepository.save(new Wallet().currencyCode("EUR").amount(new BigDecimal("0"))).block();
+        Wallet bob = walletRepository.save(new Wallet().currencyCode("EUR").amount(new BigDecimal("20"))).block();
+
+        // Alice cannot spend what bob sends her in the same group, but the group is split and applied in order.
+        List<WalletTransferDTO> transfers = transfer(
+            new WalletTransferDTO(bob.getId(), alice.getId(), new BigDecimal("20")),
+            new WalletTransferDTO(alice.getId(), bob.getId(), new BigDecimal("5"))
+        );
+
+        assertThat(transfers).extracting(WalletTransferDTO::getStatus).containsOnly(WalletTransferDTO.Status.COMMITTED);
+        assertThat(walletRepository.findById(alice.getId()).block().getAmount()).isEqualByComparingTo(new BigDecimal("15"));
+        assertThat(walletRepository.findById(bob.getId()).block().getAmount()).isEqualByComparingTo(new BigDecimal("5"));
+    }
+
+    @Test
+    void transferWithInvalidAmount() throws Exception {
+        Wallet alice = walletRepository.save(new Wallet().currencyCode("EUR").amount(new BigDecimal("5"))).block();
+        Wallet bob = walletRepository.save(new Wallet().currencyCode("EUR").amount(new BigDecimal("5"))).block();
+
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(List.of(new WalletTransferDTO(alice.getId(), bob.getId(), BigDecimal.ZERO))))
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+
+        webTestClient
+            .post()
+            .uri(ENTITY_API_URL)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(List.of(new WalletTransferDTO(alice.getId(), alice.getId(), BigDecimal.ONE))))
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
+    private List<WalletTransferDTO> transfer(WalletTransferDTO... transfers) throws Exception {
+        return webTestClient
+            .post()
+            .uri(ENTITY_API_URL)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(TestUtil.convertObjectToJsonBytes(List.of(transfers)))
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectBodyList(WalletTransferDTO.class)
+            .returnResult()
+            .getResponseBody();
+    }
+}
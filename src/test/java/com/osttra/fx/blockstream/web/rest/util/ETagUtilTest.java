@@ -0,0 +1,40 @@
+package com.osttra.fx.blockstream.web.rest.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Unit tests for {@link ETagUtil}.
+ */
+class ETagUtilTest {
+
+    @Test
+    void resolvesTheVersionsOfIfMatch() {
+        assertThat(ETagUtil.expectedVersions(null, 3L)).containsExactly(3L);
+        assertThat(ETagUtil.expectedVersions(null, null)).isNull();
+        assertThat(ETagUtil.expectedVersions(" * ", 3L)).isNull();
+        assertThat(ETagUtil.expectedVersions("\"1\"", 3L)).containsExactly(1L);
+        assertThat(ETagUtil.expectedVersions("\"1\", W/\"2\",\"x,y\" ,\"4\"", null)).containsExactly(1L, 4L);
+    }
+
+    @Test
+    void failsWhenNoTagCanMatch() {
+        assertPreconditionFailed("W/\"1\"");
+        assertPreconditionFailed("\"abc\"");
+        assertPreconditionFailed("1");
+        assertPreconditionFailed("\"1\", \"2");
+        assertPreconditionFailed("");
+    }
+
+    private static void assertPreconditionFailed(String ifMatch) {
+        assertThatThrownBy(() -> ETagUtil.expectedVersions(ifMatch, 1L))
+            .isInstanceOfSatisfying(
+                ResponseStatusException.class,
+                e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.PRECONDITION_FAILED)
+            );
+    }
+}